@@ -0,0 +1,123 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package relex;
+
+/**
+ * The time by which the processing of a sentence should be over.
+ * The deadline is carried along with the sentence (in the
+ * RelexContext, for the RelEx algs), and the long-running loops
+ * check it every so often; once it has passed, check() throws
+ * Deadline.Exceeded, and the sentence is given back as it stands,
+ * marked as timed out (see Sentence.isTimedOut()).
+ *
+ * Nothing is interrupted: a deadline only takes effect where it is
+ * checked.  Link-grammar does not check it; its time is bounded by
+ * LGConfig.setMaxParseSeconds() instead, which LGParser.parse(String,
+ * Deadline) lowers to the time left, if that is less, for the one
+ * parse.  A PooledLGParser shares its config among threads, and
+ * leaves it alone.
+ */
+public class Deadline
+{
+	/** A deadline that never passes */
+	public static final Deadline NONE = new Deadline(0, true);
+
+	/** When the deadline passes, in System.nanoTime() terms */
+	private final long due;
+	private final boolean never;
+
+	private Deadline(long due, boolean never)
+	{
+		this.due = due;
+		this.never = never;
+	}
+
+	/**
+	 * A deadline the given number of milliseconds from now; if that
+	 * is not a positive number, the deadline has already passed.
+	 */
+	public static Deadline afterMillis(long millis)
+	{
+		return new Deadline(System.nanoTime() + 1000000L * millis, false);
+	}
+
+	/**
+	 * Return a deadline millis from now, or NONE if millis is zero
+	 * (or less); handy for settings where zero means "no limit".
+	 */
+	public static Deadline orNone(long millis)
+	{
+		if (millis <= 0) return NONE;
+		return afterMillis(millis);
+	}
+
+	public boolean isNone()
+	{
+		return never;
+	}
+
+	public boolean isExpired()
+	{
+		return !never && due - System.nanoTime() <= 0;
+	}
+
+	/**
+	 * Milliseconds left, which may be negative; Long.MAX_VALUE if
+	 * there is no deadline.
+	 */
+	public long remainingMillis()
+	{
+		if (never) return Long.MAX_VALUE;
+		return (due - System.nanoTime()) / 1000000L;
+	}
+
+	/**
+	 * Throw Deadline.Exceeded if the deadline has passed.
+	 * @param where what was being done, for the message
+	 */
+	public void check(String where)
+	{
+		if (isExpired()) throw new Exceeded(where, -remainingMillis());
+	}
+
+	public String toString()
+	{
+		if (never) return "no deadline";
+		return remainingMillis() + " ms left";
+	}
+
+	/**
+	 * Thrown by check() once the deadline has passed.  It is not an
+	 * error in the sentence, and should not be reported as one.
+	 */
+	public static class Exceeded extends RuntimeException
+	{
+		private static final long serialVersionUID = 1L;
+
+		private String where;
+
+		public Exceeded(String where, long lateMillis)
+		{
+			super("Deadline passed " + lateMillis + " ms ago, in " + where);
+			this.where = where;
+		}
+
+		/** What was being done when the deadline was noticed */
+		public String getWhere()
+		{
+			return where;
+		}
+	}
+}
@@ -26,6 +26,10 @@ import relex.feature.Atom;
  * The Document class stores a sequence of Sentence objects.
  * It is primarily useful for any post-processing steps, anything
  * that needs to access multiple sentences at a time.
+ *
+ * A Sentence, with all of its parses, is big; where only the order of
+ * the sentences is needed, setKeepSentences(false) has the document
+ * remember just their IDs.
  */
 public class Document extends Atom implements Serializable
 {
@@ -36,6 +40,8 @@ public class Document extends Atom implements Serializable
 
 	// Sequence of sentences
 	private ArrayList<Sentence> sentences;
+	private ArrayList<String> sentenceIDs;
+	private boolean keepSentences;
 
 	/* -------------------------------------------------------------------- */
 	/* Constructors, and setters/getters for private members. */
@@ -43,6 +49,8 @@ public class Document extends Atom implements Serializable
 	public Document()
 	{
 		sentences = new ArrayList<Sentence>();
+		sentenceIDs = new ArrayList<String>();
+		keepSentences = true;
 
 		// Assign a unique document ID to each document;
 		// this is required for OpenCog output, where each
@@ -58,12 +66,34 @@ public class Document extends Atom implements Serializable
 
 	public void addSentence(Sentence sntc)
 	{
-		sentences.add(sntc);
+		sentenceIDs.add(sntc.getID());
+		if (keepSentences) sentences.add(sntc);
 	}
 
+	/**
+	 * The sentences added so far; empty if the sentences are not
+	 * being kept.
+	 */
 	public ArrayList<Sentence> getSentences()
 	{
 		return sentences;
 	}
 
+	/**
+	 * The IDs of all of the sentences added so far, in order.
+	 */
+	public ArrayList<String> getSentenceIDs()
+	{
+		return sentenceIDs;
+	}
+
+	/**
+	 * If false, sentences added from now on are not kept, only their
+	 * IDs.  The default is true.
+	 */
+	public void setKeepSentences(boolean keep)
+	{
+		keepSentences = keep;
+	}
+
 } // end Document
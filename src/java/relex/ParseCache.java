@@ -0,0 +1,467 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package relex;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import relex.feature.FeatureNode;
+import relex.feature.LinkableView;
+
+/**
+ * Remembers the fully processed Sentence for a given sentence string,
+ * so that repeated sentences (boilerplate in web pages, "ok" and "lol"
+ * in chat logs) are link-parsed and run through the RelEx rules only
+ * once.
+ *
+ * There are two tiers: a bounded, in-memory LRU of the most recently
+ * used sentences, and, optionally, a directory on disk, holding one
+ * file per sentence, which is kept from one run to the next. A sentence
+ * found on disk is promoted to the memory tier.  The disk tier is not
+ * bounded; delete the directory to empty it.
+ *
+ * Sentences are stored in the binary form of SentenceCodec, and every
+ * hit is a freshly decoded copy, with sentence, parse and word ID's
+ * of its own; the caller may modify it at will.
+ *
+ * The key is built by RelationExtractor; it holds the normalized text
+ * of the sentence together with every parser setting and RelEx stage
+ * that could change the result, and a fingerprint of the rule files,
+ * the RelEx version and the format of SentenceCodec.  Sentences that
+ * differ only in their whitespace share an entry; see realign().
+ *
+ * A process-wide cache, shared by all RelationExtractors, is set up by
+ * the system properties relex.parse.cache.size (the number of sentences
+ * kept in memory) and relex.parse.cache.dir (the disk tier).  If neither
+ * is set, there is no cache.
+ */
+public class ParseCache
+{
+	public static final String SIZE_PROPERTY = "relex.parse.cache.size";
+	public static final String DIR_PROPERTY = "relex.parse.cache.dir";
+	public static final int DEFAULT_SIZE = 10000;
+
+	private static final int SEGMENTS = 16;
+
+	private static ParseCache shared;
+	private static boolean sharedInited = false;
+
+	private Segment[] segments;
+	private File dir;
+
+	private AtomicLong hits = new AtomicLong();
+	private AtomicLong diskHits = new AtomicLong();
+	private AtomicLong misses = new AtomicLong();
+	private AtomicLong evictions = new AtomicLong();
+	private AtomicLong bytes = new AtomicLong();
+
+	/**
+	 * One part of the memory tier; a LinkedHashMap in access order,
+	 * so that the eldest entry is the least recently used one.
+	 */
+	private class Segment extends LinkedHashMap<String, byte[]>
+	{
+		private static final long serialVersionUID = 1L;
+		private int capacity;
+
+		Segment(int cap)
+		{
+			super(16, 0.75f, true);
+			capacity = cap;
+		}
+
+		protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest)
+		{
+			if (size() <= capacity) return false;
+			evictions.incrementAndGet();
+			bytes.addAndGet(-eldest.getValue().length);
+			return true;
+		}
+	}
+
+	/**
+	 * @param size max number of sentences held in memory
+	 * @param directory where to keep sentences on disk; null for
+	 *        a memory-only cache.
+	 */
+	public ParseCache(int size, File directory)
+	{
+		if (size < SEGMENTS) size = SEGMENTS;
+		segments = new Segment[SEGMENTS];
+		for (int i = 0; i < SEGMENTS; i++)
+			segments[i] = new Segment((size + SEGMENTS - 1) / SEGMENTS);
+
+		dir = directory;
+		if (dir != null && !dir.isDirectory() && !dir.mkdirs())
+			throw new RuntimeException("Error: cannot create parse cache directory " + dir);
+	}
+
+	/**
+	 * Return the cache described by the system properties, or null
+	 * if they don't ask for one.
+	 */
+	public static synchronized ParseCache getShared()
+	{
+		if (sharedInited) return shared;
+		sharedInited = true;
+
+		Integer size = Integer.getInteger(SIZE_PROPERTY);
+		String path = System.getProperty(DIR_PROPERTY);
+		if (size == null && path == null) return null;
+		if (size == null) size = DEFAULT_SIZE;
+
+		shared = new ParseCache(size, path == null ? null : new File(path));
+		System.err.println("Info: Caching up to " + size + " parsed sentences"
+			+ (path == null ? "" : ", and on disk in " + path));
+		return shared;
+	}
+
+	/**
+	 * The form of a sentence that goes into the key: leading and
+	 * trailing whitespace dropped, and every other run of whitespace
+	 * turned into a single blank.  The parser splits words at
+	 * whitespace, so this doesn't change the parse, but it does
+	 * change the character offsets of the words.
+	 */
+	public static String normalize(String text)
+	{
+		StringBuilder sb = new StringBuilder(text.length());
+		boolean blank = false;
+		for (int i = 0; i < text.length(); i++)
+		{
+			char c = text.charAt(i);
+			if (Character.isWhitespace(c))
+			{
+				blank = true;
+				continue;
+			}
+			if (blank && sb.length() > 0) sb.append(' ');
+			blank = false;
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	private Segment segment(String key)
+	{
+		return segments[(key.hashCode() & 0x7fffffff) % SEGMENTS];
+	}
+
+	/**
+	 * Return a copy of the sentence cached under key, or null.
+	 */
+	public Sentence get(String key)
+	{
+		Segment seg = segment(key);
+		byte[] data;
+		synchronized (seg)
+		{
+			data = seg.get(key);
+		}
+		if (data != null)
+		{
+			hits.incrementAndGet();
+			return thaw(data);
+		}
+
+		if (dir != null)
+		{
+			Sentence sntc = readFile(seg, key);
+			if (sntc != null)
+			{
+				diskHits.incrementAndGet();
+				return sntc;
+			}
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Cache the sentence under key.  The sentence is copied, and may
+	 * be modified afterwards without affecting the cache.
+	 */
+	public void put(String key, Sentence sntc)
+	{
+		byte[] data = freeze(sntc);
+		remember(segment(key), key, data);
+		if (dir != null) writeFile(key, data);
+	}
+
+	private void remember(Segment seg, String key, byte[] data)
+	{
+		synchronized (seg)
+		{
+			byte[] old = seg.put(key, data);
+			if (old != null) bytes.addAndGet(-old.length);
+			bytes.addAndGet(data.length);
+		}
+	}
+
+	private static byte[] freeze(Sentence sntc)
+	{
+		return SentenceCodec.encode(sntc);
+	}
+
+	private static Sentence thaw(byte[] data)
+	{
+		Sentence sntc = SentenceCodec.decode(data);
+		sntc.assign_id();
+		return sntc;
+	}
+
+	/**
+	 * Move the character offsets of the words of a sentence, taken
+	 * from the cache, over to a text that differs from the one it was
+	 * parsed from only in its whitespace, as do all the sentences
+	 * that share a key.  The n'th non-blank char of the one text is
+	 * the n'th non-blank char of the other.
+	 */
+	static void realign(Sentence sntc, String text)
+	{
+		String old = sntc.getSentence();
+		if (old == null || text == null || old.equals(text)) return;
+
+		// rank[i] is the number of non-blank chars before i in the
+		// old text; pos[n] is where the n'th one is in the new text.
+		int[] rank = new int[old.length() + 1];
+		for (int i = 0; i < old.length(); i++)
+			rank[i+1] = rank[i] + (Character.isWhitespace(old.charAt(i)) ? 0 : 1);
+		int[] pos = new int[text.length()];
+		int n = 0;
+		for (int i = 0; i < text.length(); i++)
+			if (!Character.isWhitespace(text.charAt(i))) pos[n++] = i;
+
+		// A word that absorbed another (see WordSequenceCombineAlg)
+		// may share its offsets with it; move each one once only.
+		IdentityHashMap<FeatureNode,Boolean> moved = new IdentityHashMap<FeatureNode,Boolean>();
+		for (ParsedSentence parse : sntc.getParses())
+		{
+			for (FeatureNode word : parse.getLeafConstituents())
+			{
+				FeatureNode start = word.get("start_char");
+				FeatureNode end = word.get("end_char");
+				int s = LinkableView.getStartChar(word);
+				int e = LinkableView.getEndChar(word);
+				if (start != null && moved.put(start, Boolean.TRUE) == null &&
+				    0 <= s && s < old.length() && rank[s] < n)
+					start.setValue(pos[rank[s]]);
+				if (end != null && moved.put(end, Boolean.TRUE) == null &&
+				    0 < e && e <= old.length() && 0 < rank[e] && rank[e] <= n)
+					end.setValue(pos[rank[e] - 1] + 1);
+			}
+			parse.setOriginalSentence(text);
+		}
+		sntc.setSentence(text);
+	}
+
+	/* ---------------------------------------------------------- */
+	/* The disk tier. Each file holds the key, as a count of bytes
+	 * followed by its UTF-8 encoding, and then the encoded sentence;
+	 * it is named after a digest of the key.  The key holds the
+	 * fingerprint of the rules and the codec, so that a file written
+	 * under other rules is never taken for this one.
+	 */
+	private File fileFor(String key)
+	{
+		try
+		{
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			byte[] digest = md.digest(key.getBytes("UTF-8"));
+			StringBuilder sb = new StringBuilder();
+			for (byte b : digest)
+				sb.append(String.format("%02x", b & 0xff));
+			return new File(dir, sb.toString() + ".ser");
+		}
+		catch (Exception e)
+		{
+			throw new RuntimeException("Error: cannot hash cache key: " + e.getMessage());
+		}
+	}
+
+	private Sentence readFile(Segment seg, String key)
+	{
+		File f = fileFor(key);
+		if (!f.exists()) return null;
+		DataInputStream in = null;
+		try
+		{
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+			if (!key.equals(readString(in, f.length()))) return null;
+			int len = in.readInt();
+			if (len < 0 || f.length() < len)
+				throw new IOException("bad length " + len);
+			byte[] data = new byte[len];
+			in.readFully(data);
+
+			Sentence sntc = thaw(data);
+			remember(seg, key, data);
+			return sntc;
+		}
+		catch (Exception e)
+		{
+			System.err.println("Warning: dropping unreadable parse cache file "
+				+ f + ": " + e.getMessage());
+			f.delete();
+			return null;
+		}
+		finally
+		{
+			if (in != null)
+			{
+				try { in.close(); } catch (IOException e) {}
+			}
+		}
+	}
+
+	private static String readString(DataInputStream in, long max)
+		throws IOException
+	{
+		int len = in.readInt();
+		if (len < 0 || max < len)
+			throw new IOException("bad key length " + len);
+		byte[] b = new byte[len];
+		in.readFully(b);
+		return new String(b, "UTF-8");
+	}
+
+	private void writeFile(String key, byte[] data)
+	{
+		File tmp = null;
+		DataOutputStream out = null;
+		boolean written = false;
+		try
+		{
+			// Write to a scratch file first, so that a reader never
+			// sees half a file.
+			tmp = File.createTempFile("parse", ".tmp", dir);
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			byte[] k = key.getBytes("UTF-8");
+			out.writeInt(k.length);
+			out.write(k);
+			out.writeInt(data.length);
+			out.write(data);
+			out.close();
+			out = null;
+			File f = fileFor(key);
+			if (!tmp.renameTo(f))
+			{
+				f.delete();
+				if (!tmp.renameTo(f)) tmp.delete();
+			}
+			written = true;
+		}
+		catch (IOException e)
+		{
+			System.err.println("Warning: cannot write parse cache file: " + e.getMessage());
+		}
+		finally
+		{
+			if (out != null)
+			{
+				try { out.close(); } catch (IOException e) {}
+			}
+			if (!written && tmp != null) tmp.delete();
+		}
+	}
+
+	/* ---------------------------------------------------------- */
+	/* Statistics */
+
+	/** Lookups answered from memory */
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	/** Lookups answered from the disk tier */
+	public long getDiskHits()
+	{
+		return diskHits.get();
+	}
+
+	public long getMisses()
+	{
+		return misses.get();
+	}
+
+	public long getEvictions()
+	{
+		return evictions.get();
+	}
+
+	/** Number of sentences held in memory */
+	public int getSize()
+	{
+		int n = 0;
+		for (Segment seg : segments)
+		{
+			synchronized (seg) { n += seg.size(); }
+		}
+		return n;
+	}
+
+	/** Size of the encoded sentences held in memory */
+	public long getBytes()
+	{
+		return bytes.get();
+	}
+
+	/** Fraction of lookups answered from either tier */
+	public double getHitRate()
+	{
+		long h = getHits() + getDiskHits();
+		long total = h + getMisses();
+		if (total == 0) return 0.0;
+		return ((double) h) / total;
+	}
+
+	/**
+	 * Empty the memory tier, and reset the statistics.
+	 * The disk tier is left alone.
+	 */
+	public void clear()
+	{
+		for (Segment seg : segments)
+		{
+			synchronized (seg) { seg.clear(); }
+		}
+		hits.set(0);
+		diskHits.set(0);
+		misses.set(0);
+		evictions.set(0);
+		bytes.set(0);
+	}
+
+	public String toString()
+	{
+		return String.format(
+			"Parse cache: hits=%d disk hits=%d misses=%d hit rate=%.1f%% " +
+			"evictions=%d size=%d (%d KBytes)",
+			getHits(), getDiskHits(), getMisses(), 100.0 * getHitRate(),
+			getEvictions(), getSize(), getBytes() / 1024);
+	}
+}
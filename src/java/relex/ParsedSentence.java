@@ -77,6 +77,10 @@ public class ParsedSentence
 
 	private String errorString;
 
+	// True if the deadline passed before RelEx was done with this
+	// parse; its relations may be missing, or half-built.
+	private boolean timedOut = false;
+
 	// An ArrayList of FeatureNodes, each one representing a word in the
 	// sentence.  If there are no "link islands", each can be reached by
 	// following arcs from the others.
@@ -113,6 +117,11 @@ public class ParsedSentence
 		return original;
 	}
 
+	/** Used by ParseCache, when the sentence differs only in whitespace. */
+	void setOriginalSentence(String s) {
+		original = s;
+	}
+
 	public String getIDString() {
 		return idString;
 	}
@@ -153,6 +162,20 @@ public class ParsedSentence
 		return errorString;
 	}
 
+	public void setTimedOut(boolean t)
+	{
+		timedOut = t;
+	}
+
+	/**
+	 * True if the deadline passed before all of the RelEx algs had
+	 * been applied to this parse; see relex.Deadline.
+	 */
+	public boolean isTimedOut()
+	{
+		return timedOut;
+	}
+
 	/* -------------------------------------------------------------------- */
 	public int getNumWords()
 	{
@@ -320,6 +343,22 @@ public class ParsedSentence
 		truth_value = stv;
 		stv.setMean(1.0);  // 1.0 == true -- this is a parse.
 
+		double weight = simpleRank(getNumSkippedWords(),
+			getDisjunctCost(), getLinkCost());
+
+		stv.setConfidence(weight);
+		return weight;
+	}
+
+	/**
+	 * The score that simpleRankParse() gives a parse with these
+	 * link-grammar costs.  The parser uses it to rank linkages
+	 * before any feature nodes are built for them.
+	 */
+	public static double simpleRank(double numSkippedWords,
+	                                double disjunctCost,
+	                                double linkCost)
+	{
 		// The weights used here are rather ad-hoc; but the
 		// basic idea is that we want to penalize skipped words
 		// strongly, but disjunct costs not as much. Low link
@@ -345,14 +384,11 @@ public class ParsedSentence
 		//
 		// This is all a manula balancing act, until automatic weighting
 		// is implemented in link-grammar.
-		double weight = 1.0 * getNumSkippedWords();
-		weight += 0.2 * getDisjunctCost();
-		weight += 0.003 * getLinkCost();
-
-		weight = Math.exp(-weight);
+		double weight = 1.0 * numSkippedWords;
+		weight += 0.2 * disjunctCost;
+		weight += 0.003 * linkCost;
 
-		stv.setConfidence(weight);
-		return weight;
+		return Math.exp(-weight);
 	}
 
 	/**
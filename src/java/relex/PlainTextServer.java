@@ -17,19 +17,31 @@
 package relex;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.InputStreamReader;
 import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.linkgrammar.JSONUtils;
+import relex.morphy.MorphyFactory;
 import relex.output.LogicView;
 import relex.output.OpenCogScheme;
 import relex.output.SimpleView;
 import relex.output.StanfordView;
+import relex.parser.JSONReader;
 import relex.Version;
 
 
@@ -53,27 +65,419 @@ import relex.Version;
  * <li><b>showStanford</b> Return the Stanford Dependency relations</li>
  * <li><b>showOpenCog</b> Return link-grammar and relex output in OpenCog scheme format.</li>
  * <li><b>showLogic</b>  Return relations in OpenCog Logic format</li>
+ * <li><b>keepAlive</b> Keep the connection open for further requests</li>
  * </ul>
  *
  * Example usage:
  * echo "maxLinkages:1,showLink:true,showLogic:true,text:this is a test" | netcat localhost 3333
+ *
+ * A request may also be a proper JSON object, on a single line, in
+ * which case it may carry several sentences at once:
+ * {"sentences": ["this is a test", "so is this"], "showRelex": true}
+ *
+ * Each sentence gets its own block of output, ending with either
+ * "==== END OF SENTENCE ====" or "==== NO PARSES ====", which is sent
+ * as soon as the sentence (and those before it) are done.  Several
+ * connections are served at once, by a pool of worker threads, each
+ * with its own RelationExtractor.  If keepAlive is set, the reply ends
+ * with "==== END OF REQUEST ====", and the next request may be sent
+ * on the same connection; otherwise the connection is closed.
+ *
+ * A request may carry no more than relex.server.maxSentences sentences
+ * (default 1000); a bigger one gets "==== BAD REQUEST ====".  No more
+ * than relex.server.inFlight sentences (default: twice the number of
+ * threads) of a connection are queued for the workers at a time; the
+ * next is queued as each reply is sent.
  */
 
 public class PlainTextServer
 {
 	private int listen_port;
+	private boolean verbose = false;
+	private String lang = "en";
+	private String dict_path = null;
+
+	public static final String MAX_SENTENCES_PROPERTY = "relex.server.maxSentences";
+	public static final String IN_FLIGHT_PROPERTY = "relex.server.inFlight";
+	public static final int DEFAULT_MAX_SENTENCES = 1000;
+
+	/** Number of worker threads, each with its own parser. */
+	private int num_threads = 1;
+
+	/** Most sentences in one request. */
+	private int max_sentences =
+		Integer.getInteger(MAX_SENTENCES_PROPERTY, DEFAULT_MAX_SENTENCES);
+
+	/** Most sentences of one connection queued at a time; 0 for twice num_threads. */
+	private int in_flight = Integer.getInteger(IN_FLIGHT_PROPERTY, 0);
+
+	private ExecutorService workers;
+	private ExecutorService connections;
+	private AtomicInteger connection_count = new AtomicInteger();
 
 	public PlainTextServer()
 	{
 		listen_port = 3333;
 	}
 
+	/**
+	 * What the client wants to see; set per request.
+	 */
+	private static class Options
+	{
+		int num_show = 3;
+		boolean show_link = false;
+		boolean show_phrase = false;
+		boolean show_relex = false;
+		boolean show_stanford = false;
+		boolean show_opencog = false;
+		boolean show_logic = false;
+		boolean keep_alive = false;
+
+		void setDefaults()
+		{
+			if (!show_link && !show_phrase && !show_relex &&
+			    !show_stanford && !show_opencog && !show_logic)
+			{
+				// Turn everything on by default
+				show_link = true;
+				show_phrase = true;
+				show_relex = true;
+				show_stanford = true;
+				show_logic = true;
+			}
+		}
+	}
+
+	/**
+	 * The per-thread state of a worker.
+	 */
+	private class Worker
+	{
+		RelationExtractor r;
+		LogicView lv;
+		OpenCogScheme oc;
+
+		Worker()
+		{
+			r = new RelationExtractor();
+			if (null != lang) r.setLanguage(lang);
+			if (null != dict_path) r.setDictPath(dict_path);
+
+			lv = new LogicView();
+			lv.loadRules();
+			oc = new OpenCogScheme();
+			oc.setShowLinkage(true);
+			oc.setShowRelex(true);
+		}
+
+		String process(String line, Options opts)
+		{
+			StringWriter sw = new StringWriter();
+			PrintWriter out = new PrintWriter(sw);
+
+			r.do_stanford = opts.show_stanford;
+			r.do_penn_tagging = opts.show_stanford;
+
+			Sentence sntc = r.processSentence(line);
+			if (sntc.getParses().size() == 0)
+			{
+				out.println("==== NO PARSES ====");
+				out.flush();
+				return sw.toString();
+			}
+
+			int num_show = opts.num_show;
+			int num_parses = sntc.getParses().size();
+			if (num_parses < num_show) num_show = num_parses;
+
+			for (int i=0; i < num_show; i++)
+			{
+				ParsedSentence parse = sntc.getParses().get(i);
+
+				// Print the phrase string .. why ??
+
+				int ialt = i+1;
+				out.println("==== Parse alternative " + ialt + " ====\n");
+
+				if (opts.show_link)
+				{
+					out.println("Link Grammar parse diagram:");
+					out.println(parse.getLinkString());
+				}
+				if (opts.show_phrase)
+				{
+					out.println("Phrase Structure parse:\n");
+					out.println("    " + parse.getPhraseString());
+				}
+				if (opts.show_relex)
+				{
+					out.println("Dependency relations:\n");
+					String fin = SimpleView.printRelations(parse);
+					out.println(fin);
+				}
+				if (opts.show_stanford)
+				{
+					out.println("Stanford-style dependency relations:\n");
+					String fin = StanfordView.printRelations(parse, true, "    ");
+					out.println(fin);
+				}
+				if (opts.show_opencog)
+				{
+					out.println("OpenCog Scheme:\n");
+					oc.setParse(parse);
+					out.println(oc.toString());
+					out.println("(ListLink (stv 1 1)");
+					out.println("   (AnchorNode \"# New Parsed Sentence\")");
+					out.println("   (SentenceNode \"" + sntc.getID() + "\")");
+					out.println(")\n");
+				}
+				if (opts.show_logic)
+				{
+					out.println("Logic relations:\n");
+					String fin = lv.printRelationsNew(parse);
+					out.println(fin);
+				}
+				if (verbose)
+					System.out.print(SimpleView.printRelations(parse));
+			}
+			out.println("==== END OF SENTENCE ====");
+			out.flush();
+			return sw.toString();
+		}
+	}
+
+	private final ThreadLocal<Worker> worker = new ThreadLocal<Worker>()
+	{
+		protected Worker initialValue()
+		{
+			return new Worker();
+		}
+	};
+
+	/**
+	 * Reads the options and sentences of one request, either in the
+	 * quasi-JSON format understood by link-grammar, or as a JSON object.
+	 */
+	private static List<String> readRequest(String line, Options opts)
+	{
+		List<String> sentences = new ArrayList<String>();
+		if (line.startsWith("{"))
+		{
+			Object o = new JSONReader().read(line);
+			if (!(o instanceof Map))
+				throw new RuntimeException("Error: expected a JSON object");
+			Map<?,?> msg = (Map<?,?>) o;
+
+			Object text = msg.get("text");
+			if (text != null) sentences.add(text.toString());
+			Object sents = msg.get("sentences");
+			if (sents instanceof List)
+			{
+				for (Object s : (List<?>) sents)
+					sentences.add(s.toString());
+			}
+			else if (sents != null)
+				sentences.add(sents.toString());
+
+			opts.num_show = getInt("maxLinkages", msg, opts.num_show);
+			opts.show_link = getBool("showLink", msg, opts.show_link);
+			opts.show_phrase = getBool("showPhrase", msg, opts.show_phrase);
+			opts.show_relex = getBool("showRelex", msg, opts.show_relex);
+			opts.show_stanford = getBool("showStanford", msg, opts.show_stanford);
+			opts.show_opencog = getBool("showOpenCog", msg, opts.show_opencog);
+			opts.show_logic = getBool("showLogic", msg, opts.show_logic);
+			opts.keep_alive = getBool("keepAlive", msg, opts.keep_alive);
+		}
+		else
+		{
+			// The link-grammar reader consumes input up to the end of
+			// the line, or beyond; give it just the one line, so that
+			// nothing of the next request is lost.
+			JSONUtils msgreader = new JSONUtils();
+			String text;
+			try {
+				Map<String, String> msg = msgreader.readMsg(new StringReader(line + "\n"));
+				text = msg.get("text");
+				opts.num_show = JSONUtils.getInt("maxLinkages", msg, opts.num_show);
+				opts.show_link = JSONUtils.getBool("showLink", msg, opts.show_link);
+				opts.show_phrase = JSONUtils.getBool("showPhrase", msg, opts.show_phrase);
+				opts.show_relex = JSONUtils.getBool("showRelex", msg, opts.show_relex);
+				opts.show_stanford = JSONUtils.getBool("showStanford", msg, opts.show_stanford);
+				opts.show_opencog = JSONUtils.getBool("showOpenCog", msg, opts.show_opencog);
+				opts.show_logic = JSONUtils.getBool("showLogic", msg, opts.show_logic);
+				opts.keep_alive = JSONUtils.getBool("keepAlive", msg, opts.keep_alive);
+			} catch (Exception e) {
+				text = line.trim();
+			}
+			if (text != null) sentences.add(text);
+		}
+		opts.setDefaults();
+		return sentences;
+	}
+
+	private static int getInt(String name, Map<?,?> msg, int dflt)
+	{
+		Object v = msg.get(name);
+		if (v instanceof Number) return ((Number) v).intValue();
+		if (v != null) return Integer.parseInt(v.toString());
+		return dflt;
+	}
+
+	private static boolean getBool(String name, Map<?,?> msg, boolean dflt)
+	{
+		Object v = msg.get(name);
+		if (v instanceof Boolean) return ((Boolean) v).booleanValue();
+		if (v != null) return Boolean.parseBoolean(v.toString());
+		return dflt;
+	}
+
+	/**
+	 * One client connection; handles requests until the client hangs
+	 * up, or sends a request without keepAlive.
+	 */
+	private class Connection implements Runnable
+	{
+		private Socket sock;
+		private int id;
+
+		Connection(Socket s)
+		{
+			sock = s;
+			id = connection_count.incrementAndGet();
+		}
+
+		public void run()
+		{
+			try
+			{
+				BufferedReader in = new BufferedReader(new InputStreamReader(sock.getInputStream()));
+				PrintWriter out = new PrintWriter(sock.getOutputStream(), true);
+
+				boolean keep_alive = true;
+				while (keep_alive)
+				{
+					String line = in.readLine();
+					if (line == null) break;
+					if (line.trim().length() == 0) continue;
+
+					Options opts = new Options();
+					List<String> sentences;
+					try
+					{
+						sentences = readRequest(line, opts);
+					}
+					catch (RuntimeException e)
+					{
+						System.err.println("Error: [" + id + "] Bad request: " + e.getMessage());
+						out.println("==== BAD REQUEST ====");
+						break;
+					}
+					if (max_sentences < sentences.size())
+					{
+						System.err.println("Error: [" + id + "] Bad request: " +
+							sentences.size() + " sentences, at most " +
+							max_sentences + " allowed");
+						out.println("==== BAD REQUEST ====");
+						break;
+					}
+					keep_alive = opts.keep_alive;
+					System.err.println("Info: [" + id + "] recv input: \"" + line + "\"");
+
+					// Start the first few sentences, then send the replies
+					// back in order, each one as soon as it is ready,
+					// starting another as each one is sent.
+					int window = (0 < in_flight) ? in_flight : 2 * num_threads;
+					LinkedList<Future<String>> replies = new LinkedList<Future<String>>();
+					int next = 0;
+					while (next < sentences.size() && replies.size() < window)
+						replies.add(submit(sentences.get(next++), opts));
+
+					while (!replies.isEmpty() && !out.checkError())
+					{
+						out.print(getReply(replies.removeFirst()));
+						out.flush();
+						if (next < sentences.size())
+							replies.add(submit(sentences.get(next++), opts));
+					}
+					if (keep_alive)
+					{
+						out.println("==== END OF REQUEST ====");
+						out.flush();
+					}
+					if (out.checkError())
+					{
+						System.err.println("Error: [" + id + "] Write failed");
+						for (Future<String> reply : replies)
+							reply.cancel(false);
+						break;
+					}
+				}
+			}
+			catch (IOException e)
+			{
+				System.err.println("Error: [" + id + "] Processing input failed");
+			}
+
+			try
+			{
+				sock.close();
+				System.err.println("Info: [" + id + "] Closed socket");
+			}
+			catch (IOException e)
+			{
+				System.err.println("Error: Socket close failed");
+			}
+		}
+
+		private String getReply(Future<String> reply)
+		{
+			try
+			{
+				return reply.get();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return "==== NO PARSES ====\n";
+			}
+			catch (ExecutionException e)
+			{
+				System.err.println("Error: [" + id + "] Failed to parse: " + e.getCause());
+				return "==== NO PARSES ====\n";
+			}
+		}
+	}
+
+	private Future<String> submit(final String sentence, final Options opts)
+	{
+		return workers.submit(new Callable<String>()
+		{
+			public String call()
+			{
+				return worker.get().process(sentence, opts);
+			}
+		});
+	}
+
+	private static ThreadFactory namedThreads(final String prefix)
+	{
+		return new ThreadFactory()
+		{
+			private AtomicInteger n = new AtomicInteger();
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, prefix + n.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+
 	public static void main(String[] args)
 	{
+		PlainTextServer s = new PlainTextServer();
 		int listen_port = 3333;
-		boolean verbose = false;
-		String lang = "en";
-		String dict_path = null;
 
 		String usageString = "Plain-text RelEx server.\n" +
 			"Given a sentence, it returns a plain-output parse.\n" +
@@ -81,6 +485,7 @@ public class PlainTextServer
 			" --port num \t Port number to listen on (default: 3333)\n" +
 			" --lang     \t Language (en, fr, de, ru) default: en\n" +
 			" --dict     \t Dictionary location, default: data/en \n" +
+			" --threads n\t Number of sentences to parse at once (default: 1)\n" +
 			" --verbose  \t Print parse output to server stdout.\n";
 
 		for (int i = 0; i < args.length; i++)
@@ -97,7 +502,7 @@ public class PlainTextServer
 					System.err.println("Error: Expected a language after the --lang flag.");
 					System.exit(1);
 				}
-				lang = args[i];
+				s.lang = args[i];
 			}
 			else if (args[i].equals("--dict"))
 			{
@@ -106,7 +511,7 @@ public class PlainTextServer
 					System.err.println("Error: Expected a dictionary path after the --lang flag.");
 					System.exit(1);
 				}
-				dict_path = args[i];
+				s.dict_path = args[i];
 			}
 			else if (args[i].equals("--port") || args[i].equals("-p"))
 			{
@@ -123,10 +528,20 @@ public class PlainTextServer
 					System.exit(1);
 				}
 			}
+			else if (args[i].equals("--threads"))
+			{
+				i++;
+				try {
+					s.num_threads = Math.max(1, Integer.parseInt(args[i]));
+				} catch (RuntimeException e) {
+					System.err.println("Error: Expected a number after the --threads flag.");
+					System.exit(1);
+				}
+			}
 			else if (args[i].equals("--verbose") )
 			{
 				System.err.println("Info: Verbose server mode set.");
-				verbose = true;
+				s.verbose = true;
 			}
 			else
 			{
@@ -138,19 +553,19 @@ public class PlainTextServer
 
 		System.err.println("Info: Version: " + Version.getVersion());
 
-		RelationExtractor r = new RelationExtractor();
-		if (null != lang) r.setLanguage(lang);
-		if (null != dict_path) r.setDictPath(dict_path);
+		// The JWNL dictionary behind the default morphy is one per JVM.
+		if (1 < s.num_threads &&
+		    System.getProperty(MorphyFactory.MORPHY_IMPLEMENTATION_PROPERTY) == null)
+		{
+			System.setProperty(MorphyFactory.MORPHY_IMPLEMENTATION_PROPERTY,
+				MorphyFactory.DEFAULT_MULTI_THREAD_IMPLEMENTATION);
+		}
 
-		PlainTextServer s = new PlainTextServer();
 		s.listen_port = listen_port;
 		ServerSocket listen_sock = null;
 
-		LogicView lv = new LogicView();
-		lv.loadRules();
-		OpenCogScheme oc = new OpenCogScheme();
-		oc.setShowLinkage(true);
-		oc.setShowRelex(true);
+		// Catch a missing rule file now, rather than on the first request.
+		new LogicView().loadRules();
 
 		try
 		{
@@ -161,158 +576,25 @@ public class PlainTextServer
 			System.err.println("Error: Listen failed on port " + s.listen_port);
 			System.exit(-1);
 		}
-		System.err.println("Info: Listening on port " + s.listen_port);
+		System.err.println("Info: Listening on port " + s.listen_port +
+			", " + s.num_threads + " worker threads");
+
+		s.workers = Executors.newFixedThreadPool(s.num_threads,
+			namedThreads("relex-worker-"));
+		s.connections = Executors.newCachedThreadPool(namedThreads("relex-conn-"));
 
 		while(true)
 		{
-			Socket out_sock = null;
-			OutputStream outs = null;
-			InputStream ins = null;
+			Socket sock = null;
 			try {
-				out_sock = listen_sock.accept();
-				ins = out_sock.getInputStream();
-				outs = out_sock.getOutputStream();
+				sock = listen_sock.accept();
 			} catch (IOException e) {
 				System.err.println("Error: Socket accept failed");
 				continue;
 			}
 
 			System.err.println("Info: Socket accept");
-			BufferedReader in = new BufferedReader(new InputStreamReader(ins));
-			PrintWriter out = new PrintWriter(outs, true);
-			JSONUtils msgreader = new JSONUtils();
-
-			try {
-
-				String line = "";
-				int num_show = 3;
-				boolean show_link = false;
-				boolean show_phrase = false;
-				boolean show_relex = false;
-				boolean show_stanford = false;
-				boolean show_opencog = false;
-				boolean show_logic = false;
-				try {
-					Map<String, String> msg = msgreader.readMsg(in);
-					line = msg.get("text");
-					num_show = JSONUtils.getInt("maxLinkages", msg, num_show);
-					show_link = JSONUtils.getBool("showLink", msg, show_link);
-					show_phrase = JSONUtils.getBool("showPhrase", msg, show_phrase);
-					show_relex = JSONUtils.getBool("showRelex", msg, show_relex);
-					show_stanford = JSONUtils.getBool("showStanford", msg, show_stanford);
-					show_opencog = JSONUtils.getBool("showOpenCog", msg, show_opencog);
-					show_logic = JSONUtils.getBool("showLogic", msg, show_logic);
-				} catch (RuntimeException e) {
-					line = msgreader.getRawText();
-					line = line.trim();
-				}
-				System.err.println("Info: recv input: \"" + line + "\"");
-
-				if (!show_link && !show_phrase && !show_relex &&
-				    !show_stanford && !show_opencog && !show_logic)
-				{
-					// Turn everything on by default
-					show_link = true;
-					show_phrase = true;
-					show_relex = true;
-					show_stanford = true;
-					show_logic = true;
-				}
-
-				r.do_stanford = show_stanford;
-				r.do_penn_tagging = show_stanford;
-
-				Sentence sntc = r.processSentence(line);
-				if (sntc.getParses().size() == 0)
-				{
-					out.println("==== NO PARSES ====");
-					try
-					{
-						out_sock.close();
-						System.err.println("Info: Closed socket");
-					}
-					catch (IOException e)
-					{
-						System.err.println("Error: Socket close failed");
-					}
-					continue;
-				}
-
-				int num_parses = sntc.getParses().size();
-				if (num_parses < num_show) num_show = num_parses;
-
-				for (int i=0; i < num_show; i++)
-				{
-					ParsedSentence parse = sntc.getParses().get(i);
-
-					// Print the phrase string .. why ??
-
-					int ialt = i+1;
-					out.println("==== Parse alternative " + ialt + " ====\n");
-
-					if (show_link)
-					{
-						out.println("Link Grammar parse diagram:");
-						out.println(parse.getLinkString());
-					}
-					if (show_phrase)
-					{
-						out.println("Phrase Structure parse:\n");
-						out.println("    " + parse.getPhraseString());
-					}
-					if (show_relex)
-					{
-						out.println("Dependency relations:\n");
-						String fin = SimpleView.printRelations(parse);
-						out.println(fin);
-					}
-					if (show_stanford)
-					{
-						out.println("Stanford-style dependency relations:\n");
-						String fin = StanfordView.printRelations(parse, true, "    ");
-						out.println(fin);
-					}
-					if (show_opencog)
-					{
-						out.println("OpenCog Scheme:\n");
-						oc.setParse(parse);
-						out.println(oc.toString());
-						out.println("(ListLink (stv 1 1)");
-						out.println("   (AnchorNode \"# New Parsed Sentence\")");
-						out.println("   (SentenceNode \"" + sntc.getID() + "\")");
-						out.println(")\n");
-					}
-					if (show_logic)
-					{
-						out.println("Logic relations:\n");
-						String fin = lv.printRelationsNew(parse);
-						out.println(fin);
-					}
-					if (verbose)
-						System.out.print(SimpleView.printRelations(parse));
-				}
-				out.println("==== END OF SENTENCE ====");
-
-				out.close();
-				System.err.println("Info: Closed printer");
-			}
-			catch (IOException e)
-			{
-				System.err.println("Error: Processing input failed");
-				continue;
-			}
-
-			try
-			{
-				out_sock.close();
-				System.err.println("Info: Closed socket");
-			}
-			catch (IOException e)
-			{
-				System.err.println("Error: Socket close failed");
-				continue;
-			}
+			s.connections.execute(s.new Connection(sock));
 		}
 	}
 }
-
@@ -17,15 +17,22 @@
 package relex;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.FileWriter;
 import java.io.PrintWriter;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 
+import relex.algs.RuleProfiler;
 import relex.algs.SentenceAlgorithmApplier;
 import relex.concurrent.RelexContext;
 // import relex.corpus.QuotesParensSentenceDetector;
@@ -33,6 +40,7 @@ import relex.corpus.DocSplitter;
 import relex.corpus.DocSplitterFactory;
 import relex.feature.FeatureNode;
 import relex.feature.LinkView;
+import relex.morphy.CachingMorphy;
 import relex.morphy.Morphy;
 import relex.morphy.MorphyFactory;
 import relex.output.NLGInputView;
@@ -42,12 +50,17 @@ import relex.output.PrologList;
 import relex.output.RawView;
 import relex.output.SimpleView;
 import relex.output.StanfordView;
+import relex.parser.ArchiveLGParser;
 import relex.parser.LGParser;
+import relex.parser.LinkageArchive;
 import relex.parser.LocalLGParser;
 import relex.parser.RemoteLGParser;
+import relex.stats.LatencyHistogram;
 import relex.stats.TruthValue;
 import relex.stats.SimpleTruthValue;
 
+import org.linkgrammar.LGConfig;
+
 /**
  * The RelationExtractor class provides the central processing
  * point for parsing sentences and extracting dependency
@@ -68,6 +81,14 @@ public class RelationExtractor
 	public static final int DEFAULT_MAX_PARSE_SECONDS = 30;
 	public static final double DEFAULT_MAX_PARSE_COST = 1000;
 
+	/** Names of the processing stages that are timed */
+	public static final String STAGE_PARSE = "parse";
+	public static final String STAGE_TAGGING = "tagging";
+	public static final String STAGE_SEMANTIC = "semantic";
+	public static final String STAGE_STANFORD = "stanford";
+	public static final String STAGE_PENN = "penn";
+	public static final String STAGE_OUTPUT = "output";
+
 	private boolean _is_inited;
 	private boolean _use_sock;
 	private String _lang;
@@ -103,6 +124,15 @@ public class RelationExtractor
 	/** Statistics */
 	private ParseStats stats;
 
+	/** Previously processed sentences; null if not caching. */
+	private ParseCache cache;
+
+	/** Digest of what the cached results depend on; see cacheKey(). */
+	private String cacheFingerprint;
+
+	/** Time allowed for each sentence, in millisecs; zero for no limit. */
+	private long maxSentenceMillis = 0;
+
 	/* ---------------------------------------------------------- */
 	/* Constructors, etc. */
 
@@ -159,10 +189,17 @@ public class RelationExtractor
 		setMaxCost(DEFAULT_MAX_PARSE_COST);
 
 		doco = new Document();
+		cache = ParseCache.getShared();
 
 		stats = new ParseStats();
-		sumtime = new TreeMap<String,Long>();
-		cnttime = new TreeMap<String,Long>();
+		stageTimes = new LinkedHashMap<String,LatencyHistogram>();
+		stageTimes.put(STAGE_PARSE, new LatencyHistogram());
+		stageTimes.put(STAGE_TAGGING, new LatencyHistogram());
+		stageTimes.put(STAGE_SEMANTIC, new LatencyHistogram());
+		stageTimes.put(STAGE_STANFORD, new LatencyHistogram());
+		stageTimes.put(STAGE_PENN, new LatencyHistogram());
+		stageTimes.put(STAGE_OUTPUT, new LatencyHistogram());
+		relexTime = new LatencyHistogram();
 	}
 
 	public String getVersion()
@@ -179,6 +216,42 @@ public class RelationExtractor
 		_dict_path = dict_path;
 	}
 
+	/**
+	 * Use the given parser instead of link-grammar, e.g. an
+	 * ArchiveLGParser.  The settings of the current parser are
+	 * carried over to the new one.
+	 */
+	public void setParser(LGParser p)
+	{
+		if (!_is_inited) init();
+		p.setConfig(parser.getConfig());
+		p.setMaxLinkages(parser.getMaxLinkages());
+		p.setRankFirst(parser.isRankFirst());
+		if (null != _lang) p.setLanguage(_lang);
+		if (null != _dict_path) p.setDictPath(_dict_path);
+		parser = p;
+		context = new RelexContext(parser, context.getMorphy());
+	}
+
+	public LGParser getParser()
+	{
+		if (!_is_inited) init();
+		return parser;
+	}
+
+	/**
+	 * Save the link-grammar output for every sentence parsed from
+	 * now on, so that it can be replayed with ArchiveLGParser.
+	 * Only works with the local link-grammar parser.
+	 */
+	public void setLinkageArchive(LinkageArchive.Writer archive)
+	{
+		if (!_is_inited) init();
+		if (!(parser instanceof LocalLGParser))
+			throw new RuntimeException("Error: linkages can only be archived from the local link-grammar parser");
+		((LocalLGParser) parser).setArchive(archive);
+	}
+
 	/* ---------------------------------------------------------- */
 	/* Control parameters, etc. */
 	/**
@@ -233,58 +306,265 @@ public class RelationExtractor
 		parser.getConfig().setMaxParseSeconds(maxParseSeconds);
 	}
 
+	/**
+	 * Set the time allowed for each sentence, from the start of
+	 * parsing to the end of the RelEx algs, in millisecs; zero (the
+	 * default) for no limit.  A sentence that takes longer comes
+	 * back marked as timed out; see processSentence(String, Deadline).
+	 */
+	public void setMaxSentenceMillis(long millis)
+	{
+		maxSentenceMillis = millis;
+	}
+
+	public long getMaxSentenceMillis()
+	{
+		return maxSentenceMillis;
+	}
+
+	/**
+	 * Rank all of the linkages that link-grammar finds by their
+	 * costs, and build and process only the best of them, as many
+	 * as setMaxParses() asks for.  The others can still be had with
+	 * processDeferredParses().  See LGParser.setRankFirst().
+	 */
+	public void setRankFirst(boolean rankFirst)
+	{
+		if (!_is_inited) init();
+		parser.setRankFirst(rankFirst);
+	}
+
+	/**
+	 * Use the given cache, instead of the one set up by the
+	 * relex.parse.cache.* system properties; null to stop caching.
+	 * Several RelationExtractors may share a single cache.
+	 */
+	public void setParseCache(ParseCache pc)
+	{
+		if (!_is_inited) init();
+		cache = pc;
+	}
+
+	public ParseCache getParseCache()
+	{
+		if (!_is_inited) init();
+		return cache;
+	}
+
+	/**
+	 * The cache key: the sentence, and everything that was used to
+	 * process it. Changing any of the settings above, or one of the
+	 * do_* flags, gives a different key; so does editing the algs
+	 * or the relex2logic rules, or a new RelEx version or format of
+	 * the encoded sentences, which a disk cache may outlive.
+	 */
+	private String cacheKey(String sentence)
+	{
+		if (cacheFingerprint == null)
+			cacheFingerprint = fingerprint();
+		LGConfig cfg = parser.getConfig();
+		return cacheFingerprint + "|" + _lang + "|" + _dict_path + "|" + _use_sock
+			+ "|" + parser.getMaxLinkages()
+			+ "|" + cfg.getMaxLinkages()
+			+ "|" + cfg.getMaxCost()
+			+ "|" + cfg.isAllowSkippedWords()
+			+ "|" + cfg.getMaxParseSeconds()
+			+ "|" + parser.isRankFirst()
+			+ "|" + do_apply_algs + "," + do_stanford
+			+ "," + do_penn_tagging + "," + do_expand_preps
+			+ "|" + sentence;
+	}
+
+	private String fingerprint()
+	{
+		try
+		{
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			md.update(Version.getVersion().getBytes("UTF-8"));
+			md.update(("|" + SentenceCodec.VERSION + "|").getBytes("UTF-8"));
+			md.update(sentenceAlgorithmApplier.getFingerprint().getBytes("UTF-8"));
+			File rules = new File(LogicView.getRuleFileName());
+			if (rules.exists())
+			{
+				InputStream in = new FileInputStream(rules);
+				try
+				{
+					byte[] buf = new byte[8192];
+					int n;
+					while ((n = in.read(buf)) > 0)
+						md.update(buf, 0, n);
+				}
+				finally
+				{
+					in.close();
+				}
+			}
+			StringBuilder sb = new StringBuilder();
+			for (byte b : md.digest())
+				sb.append(String.format("%02x", b & 0xff));
+			return sb.toString();
+		}
+		catch (Exception e)
+		{
+			throw new RuntimeException("Error: cannot fingerprint the rules: " + e.getMessage());
+		}
+	}
+
 	/* ---------------------------------------------------------- */
 
+	/**
+	 * Parse the sentence, and run the RelEx algs on each parse.
+	 *
+	 * When caching, a sentence that was seen before, give or take
+	 * some whitespace (see ParseCache.normalize()), is not processed
+	 * again; instead, a copy of the earlier result is returned, with
+	 * the character offsets of its words moved to this sentence.
+	 */
 	public Sentence processSentence(String sentence)
+	{
+		return processSentence(sentence, Deadline.orNone(maxSentenceMillis));
+	}
+
+	/**
+	 * Same as above, but give up on the RelEx algs once the deadline
+	 * has passed.  The sentence is then returned as it stands, with
+	 * Sentence.isTimedOut() set, and with the parses that were not
+	 * fully processed marked by ParsedSentence.isTimedOut().  Such
+	 * a sentence is not cached.
+	 */
+	public Sentence processSentence(String sentence, Deadline deadline)
 	{
 		if (!_is_inited) init();
-		starttime = System.currentTimeMillis();
 
+		String key = null;
+		if (cache != null && sentence != null)
+		{
+			key = cacheKey(ParseCache.normalize(sentence));
+			Sentence hit = cache.get(key);
+			if (hit != null)
+			{
+				ParseCache.realign(hit, sentence);
+				return hit;
+			}
+		}
+
+		long start = System.nanoTime();
+		long relexStart = start;
+
+		int maxParseSeconds = parser.getConfig().getMaxParseSeconds();
+		boolean capped = LGParser.parseSecondsLeft(maxParseSeconds, deadline) != maxParseSeconds;
 		Sentence sntc = null;
 		try
 		{
-			if (verbosity > 0) starttime = System.currentTimeMillis();
-			sntc = parseSentence(sentence);
-			if (verbosity > 0) reportTime("Link-parsing: ");
-
-			for (ParsedSentence parse : sntc.getParses())
+			sntc = parseSentence(sentence, deadline);
+			start = recordStage(STAGE_PARSE, start);
+			relexStart = start;
+			if (verbosity > 0)
+				reportTime("Link-parsing: ", stageTimes.get(STAGE_PARSE));
+
+			context.setDeadline(deadline);
+			int done = 0;
+			try
 			{
-				if (do_expand_preps)
+				deadline.check(STAGE_PARSE);
+				for (ParsedSentence parse : sntc.getParses())
 				{
-					parse.getLeft().set("expand-preps", new FeatureNode("T"));
+					start = processParse(parse, start);
+					done++;
 				}
-
-				// The actual relation extraction is done here.
-				if (do_apply_algs) sentenceAlgorithmApplier.applyAlgs(parse, context);
-				if (do_stanford) sentenceAlgorithmApplier.extractStanford(parse, context);
-				if (do_penn_tagging) sentenceAlgorithmApplier.pennTag(parse, context);
-
+			}
+			catch (Deadline.Exceeded e)
+			{
+				sntc.markTimedOut(done);
+				System.err.println("Warning: " + e.getMessage() +
+					": " + sentence);
+			}
+			finally
+			{
+				context.setDeadline(Deadline.NONE);
 			}
 
 			// Assign a simple parse-ranking score, based on LinkGrammar data.
 			sntc.simpleParseRank();
+
+			// Only remember complete results; a parse that was given
+			// less than the usual time may have been cut short.
+			if (key != null && !sntc.isTimedOut() && !capped) cache.put(key, sntc);
 		}
 		catch (Exception e)
 		{
 			System.err.println("Error: Failed to process sentence: " + sentence);
 			e.printStackTrace();
 		}
-		if (verbosity > 0) reportTime("RelEx processing: ");
+		relexTime.record(System.nanoTime() - relexStart);
+		if (verbosity > 0) reportTime("RelEx processing: ", relexTime);
 		return sntc;
 	}
 
 	/**
-	 * Parses a sentence, using the parser. The private ArrayList of
+	 * Run the RelEx algs on one parse.  Returns the time at which
+	 * the last stage ended.
+	 */
+	private long processParse(ParsedSentence parse, long start)
+	{
+		if (do_expand_preps)
+		{
+			parse.getLeft().set("expand-preps", new FeatureNode("T"));
+		}
+
+		// The actual relation extraction is done here.
+		if (do_apply_algs)
+		{
+			sentenceAlgorithmApplier.tagFeatures(parse, context);
+			start = recordStage(STAGE_TAGGING, start);
+			sentenceAlgorithmApplier.extractSemantics(parse, context);
+			start = recordStage(STAGE_SEMANTIC, start);
+		}
+		if (do_stanford)
+		{
+			sentenceAlgorithmApplier.extractStanford(parse, context);
+			start = recordStage(STAGE_STANFORD, start);
+		}
+		if (do_penn_tagging)
+		{
+			sentenceAlgorithmApplier.pennTag(parse, context);
+			start = recordStage(STAGE_PENN, start);
+		}
+		return start;
+	}
+
+	/**
+	 * Build up to n more of the parses that were set aside when the
+	 * sentence was processed in rank-first mode (see setRankFirst()),
+	 * and run the RelEx algs on them.  The parses of the sentence are
+	 * then ranked again.  Returns the parses that were added.
+	 */
+	public List<ParsedSentence> processDeferredParses(Sentence sntc, int n)
+	{
+		if (!_is_inited) init();
+		long start = System.nanoTime();
+		List<ParsedSentence> added = sntc.buildDeferredParses(n);
+		for (ParsedSentence parse : added)
+		{
+			start = processParse(parse, start);
+		}
+		if (added.size() > 0) sntc.simpleParseRank();
+		return added;
+	}
+
+	/**
+	 * Parses a sentence, using the parser, in no more than the time
+	 * left before the deadline. The private ArrayList of
 	 * currentParses is filled with the ParsedSentences.
 	 */
 	private Sentence
-	parseSentence(String sentence)
+	parseSentence(String sentence, Deadline deadline)
 	{
 		if (sentence == null) return null;
 
 		Sentence sent = null;
 		if (sentence.length() < DEFAULT_MAX_SENTENCE_LENGTH) {
-			sent = parser.parse(sentence);
+			sent = parser.parse(sentence, deadline);
 		} else {
 			System.err.println("Sentence too long, len=" + sentence.length()
 				+ " : " + sentence);
@@ -295,31 +575,51 @@ public class RelationExtractor
 
 	/* ---------------------------------------------------------- */
 	// Provide some basic timing info
-	Long starttime;
-	TreeMap<String,Long> sumtime;
-	TreeMap<String,Long> cnttime;
 
-	private void reportTime(String msg)
+	/** Latency of each stage, per sentence (per parse, for the algs) */
+	private LinkedHashMap<String,LatencyHistogram> stageTimes;
+
+	/** Latency of all of the algs stages, per sentence */
+	private LatencyHistogram relexTime;
+
+	/**
+	 * Add the time elapsed since start to the given stage.
+	 * Returns the current time, as a start time for the next stage.
+	 */
+	private long recordStage(String stage, long start)
+	{
+		long now = System.nanoTime();
+		stageTimes.get(stage).record(now - start);
+		return now;
+	}
+
+	private void reportTime(String msg, LatencyHistogram h)
+	{
+		System.err.println(String.format(
+			"%s%.1f milliseconds (avg=%.1f millisecs, cnt=%d)",
+			msg, h.getLast(), h.getMean(), h.getCount()));
+	}
+
+	/**
+	 * Per-stage latency histograms, in pipeline order: parse,
+	 * tagging, semantic, stanford, penn and output.
+	 */
+	public Map<String,LatencyHistogram> getStageTimes()
 	{
-		Long now = System.currentTimeMillis();
-		Long elapsed = now - starttime;
-		starttime = now;
+		if (!_is_inited) init();
+		return stageTimes;
+	}
 
-		Long sum = sumtime.get(msg);
-		Long cnt = cnttime.get(msg);
-		if (sum == null)
+	public String getStageReport()
+	{
+		if (!_is_inited) init();
+		StringBuilder sb = new StringBuilder("Stage latencies:\n");
+		for (Map.Entry<String,LatencyHistogram> e : stageTimes.entrySet())
 		{
-			sum = 0L;
-			cnt = 0L;
+			if (e.getValue().getCount() == 0) continue;
+			sb.append(String.format("  %-9s %s\n", e.getKey(), e.getValue()));
 		}
-		cnt ++;
-		sum += elapsed;
-		sumtime.put(msg, sum);
-		cnttime.put(msg, cnt);
-
-		Long avg = sum / cnt;
-		System.err.println(msg + elapsed + " milliseconds (avg="
-			+ avg + " millisecs, cnt=" + cnt + ")");
+		return sb.toString();
 	}
 
 	/* ---------------------------------------------------------- */
@@ -336,15 +636,20 @@ public class RelationExtractor
 			" [--lang language (default en for English)]" +
 			" [-m (show parse metadata)]" +
 			" [--maxParseSeconds N]" +
+			" [--maxSentenceMillis N (give up on RelEx for a sentence after this long)]" +
+			" [--archive filename (save the link-grammar parses to file)]" +
+			" [--replay filename (re-use the parses saved with --archive)]" +
 			" [-n max number of parses to display]" +
 			" [-o (show opencog scheme output)]" +
 			" [--or (show opencog rule-based scheme output)]" +
 			" [--penn (generate Penn treebank-style POS tags)]" +
 			" [--prolog (show prolog output)]" +
 			" [-q (do NOT show relations)]" +
+			" [--rank-first (rank all linkages by cost, build only the -n best)]" +
 			" [-r (show raw output)]" +
 			" [-s Sentence (in quotes)]" +
 			" [--stanford (generate stanford-compatible output)]" +
+			" [--stream (don't keep the document; print its links as we go)]" +
 			" [-t (show parse tree)]" +
 			" [-v (verbose, full graph output)]" +
 			" [--html filename (output HTML to file)]"
@@ -362,7 +667,9 @@ public class RelationExtractor
 		flags.add("--prolog");
 		flags.add("-q");
 		flags.add("-r");
+		flags.add("--rank-first");
 		flags.add("--stanford");
+		flags.add("--stream");
 		flags.add("-t");
 		flags.add("-v");
 		HashSet<String> opts = new HashSet<String>();
@@ -371,6 +678,9 @@ public class RelationExtractor
 		opts.add("--html");
 		opts.add("--lang");
 		opts.add("--maxParseSeconds");
+		opts.add("--maxSentenceMillis");
+		opts.add("--archive");
+		opts.add("--replay");
 		Map<String,String> commandMap = CommandLineArgParser.parse(args, opts, flags);
 
 		// Things that can be set via command line flags; cache till needed.
@@ -378,6 +688,7 @@ public class RelationExtractor
 		String language = "en";
 		int maxParses = 1;
 		int maxParseSeconds = 6;
+		long maxSentenceMillis = 0;
 		PrintWriter html = null;
 
 		// Check for optional command line arguments.
@@ -397,6 +708,9 @@ public class RelationExtractor
 
 			opt = commandMap.get("--maxParseSeconds");
 			if (opt != null) maxParseSeconds = Integer.parseInt(opt);
+
+			opt = commandMap.get("--maxSentenceMillis");
+			if (opt != null) maxSentenceMillis = Long.parseLong(opt);
 		}
 		catch (Exception e)
 		{
@@ -424,6 +738,7 @@ public class RelationExtractor
 		re.setAllowSkippedWords(true);
 		re.setMaxParses(maxParses);
 		re.setMaxParseSeconds(maxParseSeconds);
+		re.setMaxSentenceMillis(maxSentenceMillis);
 		System.out.println("; Version: " + re.getVersion());
 
 		if (commandMap.get("-t") != null) 
@@ -446,6 +761,47 @@ public class RelationExtractor
 			re.do_expand_preps = true;
 		}
 
+		if (commandMap.get("--rank-first") != null)
+		{
+			re.setRankFirst(true);
+		}
+
+		// Replay saved parses; unless a sentence was given, run
+		// through all of them, in order, instead of reading stdin.
+		Iterator<String> replayed = null;
+		if (commandMap.get("--replay") != null)
+		{
+			try
+			{
+				ArchiveLGParser ap = new ArchiveLGParser(new File(commandMap.get("--replay")));
+				re.setParser(ap);
+				if (sentence == null) replayed = ap.getArchive().sentences();
+				System.err.println("Info: Replaying " + ap.getArchive().size() +
+					" parses from " + commandMap.get("--replay"));
+			}
+			catch (IOException e)
+			{
+				System.err.println("Error: cannot read linkage archive: " + e.getMessage());
+				return;
+			}
+		}
+
+		LinkageArchive.Writer archive = null;
+		if (commandMap.get("--archive") != null)
+		{
+			try
+			{
+				archive = new LinkageArchive.Writer(new File(commandMap.get("--archive")),
+					re.parser.getVersion(), false);
+				re.setLinkageArchive(archive);
+			}
+			catch (IOException e)
+			{
+				System.err.println("Error: cannot write linkage archive: " + e.getMessage());
+				return;
+			}
+		}
+
 		// If sentence is not passed at command line, read from standard input:
 		BufferedReader stdin = new BufferedReader(new InputStreamReader(System.in));
 		DocSplitter ds = DocSplitterFactory.create();
@@ -453,6 +809,12 @@ public class RelationExtractor
 		// QuotesParens is currently broken, it fails to handle possesives.
 		// QuotesParensSentenceDetector ds = QuotesParensSentenceDetector.create();
 
+		// Nothing looks at the sentences once they've been printed;
+		// the document only needs their IDs.  When streaming, it
+		// doesn't even need those.
+		boolean streaming = commandMap.get("--stream") != null;
+		re.doco.setKeepSentences(false);
+
 		OpenCogScheme opencog = null;
 		if (commandMap.get("-o") != null)
 		{
@@ -466,6 +828,7 @@ public class RelationExtractor
 			{
 				opencog.setShowRelex(false);
 			}
+			opencog.setStreaming(streaming);
 		}
 		
 		boolean do_logic_output = false;
@@ -483,6 +846,16 @@ public class RelationExtractor
 			// (with the "-s" flag), then read it from stdin.
 			while (sentence == null)
 			{
+				if (replayed != null)
+				{
+					if (!replayed.hasNext())
+					{
+						more_input = false;
+						break;
+					}
+					sentence = replayed.next();
+					break;
+				}
 				try {
 					sentence = stdin.readLine();
 					if ((sentence == null) || "END.".equals(sentence))
@@ -509,7 +882,7 @@ public class RelationExtractor
 				// Crazy error condition ... the parser is broken somehow ...
 				if (null == sntc) { sentence = ds.getNextSentence(); break; }
 
-				re.doco.addSentence(sntc);
+				if (!streaming) re.doco.addSentence(sntc);
 
 				if (html != null)
 					html.printf("<div id='relex-%d'><table><tr><td>%d: %s</td></tr><tr>\n",
@@ -527,6 +900,7 @@ public class RelationExtractor
 				votes *= parse_weight;
 
 				// Print output
+				long outputStart = System.nanoTime();
 				int numParses = 0;
 				for (ParsedSentence parse: sntc.getParses())
 				{
@@ -638,11 +1012,17 @@ public class RelationExtractor
 
 					if (++numParses >= maxParses) break;
 				}
+				if (streaming && opencog != null)
+					System.out.println(opencog.printDocumentSentence(re.doco, sntc.getID()));
+				re.recordStage(STAGE_OUTPUT, outputStart);
 
 				// Print out the stats every now and then.
 				if (sentence_count%5 == 0)
 				{
 					System.err.println ("\n" + re.stats.toString());
+					System.err.println (re.getStageReport());
+					if (re.cache != null)
+						System.err.println ("Info: " + re.cache);
 				}
 
 				if (commandMap.get("-s") != null) break;
@@ -657,10 +1037,35 @@ public class RelationExtractor
 		}
 
 		// Dump the list of document sentences
-		if (commandMap.get("-o") != null)
+		if (commandMap.get("-o") != null && !streaming)
 		{
 			System.out.println(opencog.printDocument(re.doco));
 		}
+		if (RuleProfiler.isProfiling())
+		{
+			System.err.println("Most expensive rules:\n" +
+				RuleProfiler.getInstance().getTopRules());
+		}
+		if (re.context.getMorphy() instanceof CachingMorphy)
+		{
+			System.err.println("Info: " + re.context.getMorphy());
+		}
+		if (re.cache != null)
+		{
+			System.err.println("Info: " + re.cache);
+		}
+		if (archive != null)
+		{
+			try
+			{
+				archive.close();
+				System.err.println("Info: Archived " + archive.getCount() + " parses");
+			}
+			catch (IOException e)
+			{
+				System.err.println("Error: cannot write linkage archive: " + e.getMessage());
+			}
+		}
 		System.out.println("; Bye.");
 		if (commandMap.get("-o") != null)
 		{
@@ -24,9 +24,11 @@ package relex;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 
 import relex.output.SimpleView;
+import relex.parser.DeferredLinkages;
 
 /**
  * This class encapsulates various information about a sentence,
@@ -47,6 +49,16 @@ public class Sentence implements Serializable
 
 	private String sentenceID;
 
+	/**
+	 * Linkages that were ranked below the parses above, and not
+	 * built; see LGParser.setRankFirst().  These are not kept when
+	 * the sentence is copied or serialized.
+	 */
+	private transient DeferredLinkages deferred = null;
+
+	/** True if the deadline passed before processing was done */
+	private boolean timedOut = false;
+
 	public Sentence()
 	{
 		originalSentence = null;
@@ -66,8 +78,10 @@ public class Sentence implements Serializable
 	 * Assign a unique sentence ID to each sentence; this is required
 	 * for OpenCog output, where each sentence and parse needs to be
 	 * tagged. In addition, each word is tagged with UUID's as well.
+	 * ParseCache calls this again on the copies that it hands out,
+	 * so that no two of them share an ID.
 	 */
-	private void assign_id()
+	void assign_id()
 	{
 		UUID guid = UUID.randomUUID();
 		sentenceID = "sentence@" + guid;
@@ -75,19 +89,30 @@ public class Sentence implements Serializable
 		int n = 0;
 		for (ParsedSentence parse: parses)
 		{
-			String id = sentenceID + "_parse_" + n;
-			parse.setIDString(id);
-			parse.setSentence(this);
-			parse.assign_id();
+			assign_parse_id(parse, n);
 			n++;
 		}
 	}
 
+	private void assign_parse_id(ParsedSentence parse, int n)
+	{
+		String id = sentenceID + "_parse_" + n;
+		parse.setIDString(id);
+		parse.setSentence(this);
+		parse.assign_id();
+	}
+
 	public String getID()
 	{
 		return sentenceID;
 	}
 
+	/** Used by SentenceCodec, to restore the ID of a decoded sentence. */
+	void setID(String id)
+	{
+		sentenceID = id;
+	}
+
 	public void setSentence(String s)
 	{
 		originalSentence = s;
@@ -119,6 +144,69 @@ public class Sentence implements Serializable
 		return numParses;
 	}
 
+	/**
+	 * Mark the sentence as timed out, and the parses from the n'th
+	 * one on as not fully processed.
+	 */
+	public void markTimedOut(int n)
+	{
+		timedOut = true;
+		for (int i = n; i < parses.size(); i++)
+			parses.get(i).setTimedOut(true);
+	}
+
+	/**
+	 * True if the deadline passed before RelEx was done with the
+	 * sentence.  The parses are all there, but some of them have
+	 * not been (fully) processed; these are the ones for which
+	 * ParsedSentence.isTimedOut() is true.
+	 */
+	public boolean isTimedOut()
+	{
+		return timedOut;
+	}
+
+	public void setDeferredParses(DeferredLinkages d)
+	{
+		deferred = d;
+	}
+
+	/**
+	 * Return the number of parses that can still be had from
+	 * buildDeferredParses().
+	 */
+	public int getNumDeferredParses()
+	{
+		if (deferred == null) return 0;
+		return deferred.size();
+	}
+
+	/**
+	 * Build up to n of the parses that were set aside when the
+	 * sentence was parsed, best first, and add them to the parses.
+	 * Only their feature nodes are built; the RelEx algs have not
+	 * been run on them (RelationExtractor.processDeferredParses()
+	 * does both).  Returns the parses that were added.
+	 */
+	public List<ParsedSentence> buildDeferredParses(int n)
+	{
+		ArrayList<ParsedSentence> built = new ArrayList<ParsedSentence>();
+		while (deferred != null && built.size() < n)
+		{
+			ParsedSentence parse = deferred.next();
+			if (parse == null)
+			{
+				deferred = null;
+				break;
+			}
+			assign_parse_id(parse, parses.size());
+			parses.add(parse);
+			built.add(parse);
+		}
+		if (deferred != null && deferred.size() == 0) deferred = null;
+		return built;
+	}
+
 	/**
 	 * Return an array of the words in the sentence
 	 */
@@ -0,0 +1,510 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package relex;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import relex.feature.FeatureNode;
+import relex.stats.SimpleTruthValue;
+import relex.stats.TruthValue;
+
+/**
+ * A compact binary form for a Sentence, its parses, and their
+ * feature-node graphs; much smaller, and much faster to write and
+ * read, than Java serialization of the same objects.
+ *
+ * The format is:
+ *
+ *   "RLX" and a version byte;
+ *   the sentence string, its ID, the number of parses, and
+ *   whether it timed out;
+ *   for each parse, its ID and strings, its truth value, whether
+ *   it timed out, and a reference to each of its words;
+ *   then every feature node reachable from the words, in the order
+ *   in which they were first referred to.
+ *
+ * All integers are varints. A string is written out the first time
+ * it is seen, and is afterwards referred to by its position in a
+ * string table; most feature names and values are thus a single
+ * byte. A node is referred to by its position in the node list;
+ * since the nodes are written breadth-first, with an explicit queue,
+ * there is no limit on the depth of the graph.
+ *
+ * The parent sets of the feature nodes are not written: they are
+ * rebuilt as the features are set, exactly as they were made in
+ * the first place.  Features are set in the order in which they
+ * were listed, so that the feature names come out in the same order.
+ * The sentence and parse ID's, and the word UUID's, are kept as-is.
+ *
+ * The truth values of SimpleTruthValue type are written field by
+ * field; those of any other type are written with Java serialization.
+ */
+public class SentenceCodec
+{
+	private static final byte[] MAGIC = { 'R', 'L', 'X' };
+
+	/** The version of the format; ParseCache keys on it. */
+	static final int VERSION = 2;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	// Flags that start each node
+	private static final int NODE_VALUED = 1;
+	private static final int NODE_TRUTH = 2;
+
+	// Kinds of truth value
+	private static final int TV_NONE = 0;
+	private static final int TV_SIMPLE = 1;
+	private static final int TV_SERIALIZED = 2;
+
+	/* ---------------------------------------------------------- */
+	/* Encoding */
+
+	/**
+	 * Return the sentence in binary form.
+	 */
+	public static byte[] encode(Sentence sntc)
+	{
+		Writer w = new Writer();
+		w.sentence(sntc);
+		return w.toByteArray();
+	}
+
+	/**
+	 * Write the sentence to a stream, preceded by its length, so
+	 * that many sentences can be written to the same file or socket
+	 * and read back with read().
+	 */
+	public static void write(Sentence sntc, OutputStream out)
+		throws IOException
+	{
+		byte[] data = encode(sntc);
+		Writer len = new Writer();
+		len.varint(data.length);
+		out.write(len.buf, 0, len.len);
+		out.write(data);
+	}
+
+	private static class Writer
+	{
+		byte[] buf = new byte[4096];
+		int len = 0;
+
+		HashMap<String,Integer> strings = new HashMap<String,Integer>();
+		IdentityHashMap<FeatureNode,Integer> nodeIds =
+			new IdentityHashMap<FeatureNode,Integer>();
+		ArrayList<FeatureNode> nodes = new ArrayList<FeatureNode>();
+
+		void ensure(int n)
+		{
+			if (len + n <= buf.length) return;
+			byte[] b = new byte[Math.max(2 * buf.length, len + n)];
+			System.arraycopy(buf, 0, b, 0, len);
+			buf = b;
+		}
+
+		void raw(int b)
+		{
+			ensure(1);
+			buf[len++] = (byte) b;
+		}
+
+		void raw(byte[] b)
+		{
+			ensure(b.length);
+			System.arraycopy(b, 0, buf, len, b.length);
+			len += b.length;
+		}
+
+		void varint(int v)
+		{
+			ensure(5);
+			while ((v & ~0x7f) != 0)
+			{
+				buf[len++] = (byte) ((v & 0x7f) | 0x80);
+				v >>>= 7;
+			}
+			buf[len++] = (byte) v;
+		}
+
+		void dbl(double d)
+		{
+			long v = Double.doubleToRawLongBits(d);
+			ensure(8);
+			for (int i = 56; i >= 0; i -= 8)
+				buf[len++] = (byte) (v >>> i);
+		}
+
+		/** 0 is null, 1 is a new string, n+2 is string number n. */
+		void string(String s)
+		{
+			if (s == null)
+			{
+				varint(0);
+				return;
+			}
+			Integer id = strings.get(s);
+			if (id != null)
+			{
+				varint(id + 2);
+				return;
+			}
+			strings.put(s, strings.size());
+			byte[] b = s.getBytes(UTF8);
+			varint(1);
+			varint(b.length);
+			raw(b);
+		}
+
+		void node(FeatureNode fn)
+		{
+			Integer id = nodeIds.get(fn);
+			if (id == null)
+			{
+				id = nodes.size();
+				nodeIds.put(fn, id);
+				nodes.add(fn);
+			}
+			varint(id);
+		}
+
+		void truth(TruthValue tv)
+		{
+			if (tv == null)
+			{
+				varint(TV_NONE);
+			}
+			else if (tv.getClass() == SimpleTruthValue.class)
+			{
+				SimpleTruthValue stv = (SimpleTruthValue) tv;
+				varint(TV_SIMPLE);
+				dbl(stv.getMean());
+				dbl(stv.getCount());
+				varint(stv.getOffset());
+			}
+			else
+			{
+				try
+				{
+					ByteArrayOutputStream bos = new ByteArrayOutputStream();
+					ObjectOutputStream oos = new ObjectOutputStream(bos);
+					oos.writeObject(tv);
+					oos.close();
+					byte[] b = bos.toByteArray();
+					varint(TV_SERIALIZED);
+					varint(b.length);
+					raw(b);
+				}
+				catch (IOException e)
+				{
+					throw new RuntimeException("Error: cannot encode truth value: " + e.getMessage());
+				}
+			}
+		}
+
+		void sentence(Sentence sntc)
+		{
+			raw(MAGIC);
+			raw(VERSION);
+			string(sntc.getSentence());
+			string(sntc.getID());
+			varint(sntc.getNumParses());
+			varint(sntc.isTimedOut() ? 1 : 0);
+
+			ArrayList<ParsedSentence> parses = sntc.getParses();
+			varint(parses.size());
+			for (ParsedSentence parse : parses)
+			{
+				string(parse.getIDString());
+				string(parse.getOriginalSentence());
+				string(parse.getLinkString());
+				string(parse.getPhraseString());
+				string(parse.getErrorString());
+				truth(parse.getTruthValue());
+				varint(parse.isTimedOut() ? 1 : 0);
+
+				List<FeatureNode> words = parse.getLeafConstituents();
+				varint(words.size());
+				for (FeatureNode fn : words) node(fn);
+			}
+
+			// The list grows as new nodes are referred to.
+			for (int i = 0; i < nodes.size(); i++)
+			{
+				FeatureNode fn = nodes.get(i);
+				TruthValue tv = fn.getTruthValue();
+				int flags = 0;
+				if (fn.isValued()) flags |= NODE_VALUED;
+				if (tv != null) flags |= NODE_TRUTH;
+				raw(flags);
+
+				if (fn.isValued())
+				{
+					string(fn.getValue());
+				}
+				else
+				{
+					Set<String> names = fn.getFeatureNames();
+					varint(names.size());
+					for (String name : names)
+					{
+						string(name);
+						node(fn.get(name));
+					}
+				}
+				if (tv != null) truth(tv);
+			}
+		}
+
+		byte[] toByteArray()
+		{
+			byte[] b = new byte[len];
+			System.arraycopy(buf, 0, b, 0, len);
+			return b;
+		}
+	}
+
+	/* ---------------------------------------------------------- */
+	/* Decoding */
+
+	/**
+	 * Rebuild a sentence from its binary form.
+	 */
+	public static Sentence decode(byte[] data)
+	{
+		return new Reader(data).sentence();
+	}
+
+	/**
+	 * Read a sentence written by write(); returns null at the end
+	 * of the stream.
+	 */
+	public static Sentence read(InputStream in)
+		throws IOException
+	{
+		int len = 0;
+		for (int shift = 0; ; shift += 7)
+		{
+			int b = in.read();
+			if (b < 0)
+			{
+				if (shift == 0) return null;
+				throw new EOFException("Error: truncated sentence length");
+			}
+			len |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) break;
+		}
+
+		byte[] data = new byte[len];
+		int off = 0;
+		while (off < len)
+		{
+			int n = in.read(data, off, len - off);
+			if (n < 0) throw new EOFException("Error: truncated sentence");
+			off += n;
+		}
+		return decode(data);
+	}
+
+	private static class Reader
+	{
+		byte[] buf;
+		int pos = 0;
+
+		ArrayList<String> strings = new ArrayList<String>();
+		ArrayList<FeatureNode> nodes = new ArrayList<FeatureNode>();
+
+		Reader(byte[] data)
+		{
+			buf = data;
+		}
+
+		int raw()
+		{
+			if (pos >= buf.length)
+				throw new RuntimeException("Error: truncated sentence encoding");
+			return buf[pos++] & 0xff;
+		}
+
+		int varint()
+		{
+			int v = 0;
+			for (int shift = 0; shift < 35; shift += 7)
+			{
+				int b = raw();
+				v |= (b & 0x7f) << shift;
+				if ((b & 0x80) == 0) return v;
+			}
+			throw new RuntimeException("Error: bad varint in sentence encoding");
+		}
+
+		double dbl()
+		{
+			long v = 0;
+			for (int i = 0; i < 8; i++)
+				v = (v << 8) | raw();
+			return Double.longBitsToDouble(v);
+		}
+
+		byte[] bytes()
+		{
+			int n = varint();
+			if (n < 0 || pos + n > buf.length)
+				throw new RuntimeException("Error: truncated sentence encoding");
+			byte[] b = new byte[n];
+			System.arraycopy(buf, pos, b, 0, n);
+			pos += n;
+			return b;
+		}
+
+		String string()
+		{
+			int id = varint();
+			if (id == 0) return null;
+			if (id == 1)
+			{
+				int n = varint();
+				if (n < 0 || pos + n > buf.length)
+					throw new RuntimeException("Error: truncated sentence encoding");
+				String s = new String(buf, pos, n, UTF8);
+				pos += n;
+				strings.add(s);
+				return s;
+			}
+			if (id - 2 >= strings.size())
+				throw new RuntimeException("Error: bad string reference in sentence encoding");
+			return strings.get(id - 2);
+		}
+
+		/**
+		 * A node may be referred to before it is read; it is made
+		 * empty, and filled in later.
+		 */
+		FeatureNode node()
+		{
+			int id = varint();
+			if (id < nodes.size()) return nodes.get(id);
+			if (id != nodes.size())
+				throw new RuntimeException("Error: bad node reference in sentence encoding");
+			FeatureNode fn = new FeatureNode();
+			nodes.add(fn);
+			return fn;
+		}
+
+		TruthValue truth()
+		{
+			int kind = varint();
+			if (kind == TV_NONE) return null;
+			if (kind == TV_SIMPLE)
+			{
+				SimpleTruthValue stv = new SimpleTruthValue();
+				stv.setMean(dbl());
+				stv.setCount(dbl());
+				stv.setOffset(varint());
+				return stv;
+			}
+			if (kind == TV_SERIALIZED)
+			{
+				try
+				{
+					ObjectInputStream ois =
+						new ObjectInputStream(new ByteArrayInputStream(bytes()));
+					TruthValue tv = (TruthValue) ois.readObject();
+					ois.close();
+					return tv;
+				}
+				catch (Exception e)
+				{
+					throw new RuntimeException("Error: cannot decode truth value: " + e.getMessage());
+				}
+			}
+			throw new RuntimeException("Error: unknown truth value kind " + kind);
+		}
+
+		Sentence sentence()
+		{
+			for (int i = 0; i < MAGIC.length; i++)
+			{
+				if (raw() != MAGIC[i])
+					throw new RuntimeException("Error: not an encoded sentence");
+			}
+			int version = raw();
+			if (version != VERSION)
+				throw new RuntimeException("Error: unsupported sentence encoding version " + version);
+
+			Sentence sntc = new Sentence();
+			sntc.setSentence(string());
+			sntc.setID(string());
+			sntc.setNumParses(varint());
+			boolean timedOut = (varint() != 0);
+
+			int nparses = varint();
+			ArrayList<ParsedSentence> parses = sntc.getParses();
+			for (int p = 0; p < nparses; p++)
+			{
+				String id = string();
+				ParsedSentence parse = new ParsedSentence(string());
+				parse.setIDString(id);
+				parse.setLinkString(string());
+				parse.setPhraseString(string());
+				parse.setErrorString(string());
+				parse.setTruthValue(truth());
+				parse.setTimedOut(varint() != 0);
+				parse.setSentence(sntc);
+
+				int nwords = varint();
+				for (int i = 0; i < nwords; i++) parse.addWord(node());
+				parses.add(parse);
+			}
+			if (timedOut) sntc.markTimedOut(nparses);
+
+			for (int i = 0; i < nodes.size(); i++)
+			{
+				FeatureNode fn = nodes.get(i);
+				int flags = raw();
+				if ((flags & NODE_VALUED) != 0)
+				{
+					fn.forceValue(string());
+				}
+				else
+				{
+					int n = varint();
+					for (int k = 0; k < n; k++)
+					{
+						String name = string();
+						fn.set(name, node());
+					}
+				}
+				if ((flags & NODE_TRUTH) != 0) fn.setTruthValue(truth());
+			}
+			if (pos != buf.length)
+				throw new RuntimeException("Error: trailing bytes after encoded sentence");
+			return sntc;
+		}
+	}
+}
@@ -22,12 +22,28 @@ import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.InputStreamReader;
 import java.io.BufferedReader;
+import java.io.StringWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import relex.corpus.DocSplitter;
 import relex.corpus.DocSplitterFactory;
+import relex.morphy.MorphyFactory;
 import relex.output.SimpleView;
 import relex.output.LogicView;
 import relex.output.OpenCogScheme;
@@ -41,28 +57,500 @@ import relex.Version;
  * It is intended that this server be used by OpenCog agents to process
  * text; the text is sent from opencog to this server, and the returned
  * parses are then further processed by OpenCog.
+ *
+ * Several clients may be connected at once.  Each connection has a
+ * thread that reads its sentences, and hands them to a pool of worker
+ * threads; the results are written back in the order in which the
+ * sentences arrived on that connection.  Each worker has its own
+ * RelationExtractor, so that a slow sentence only holds up its own
+ * connection.  Sentences that can't be queued for a worker are turned
+ * away with a "; SERVER BUSY" comment, and a sentence that takes longer
+ * than the timeout is answered with "; PARSE TIMEOUT".  The timeout is
+ * also the deadline of the worker: once it passes, the RelEx and R2L
+ * rules stop where they are, and whatever output there is goes back,
+ * marked "; PARSE TIMEOUT (PARTIAL)".
  */
 
 public class Server
 {
 	private int listen_port;
 
+	private int max_parses = 1;
+	private boolean relex_on = false;
+	private boolean logic_on = false;
+	private boolean link_on = false;
+	private boolean free_text = false;
+	private boolean verbose = false;
+	private boolean rank_first = false;
+	private String lang = "en";
+
+	/** Number of worker threads, each with its own parser. */
+	private int num_threads = 1;
+
+	/** Max number of sentences waiting for a worker. */
+	private int queue_size = 32;
+
+	/** Max seconds from arrival to reply, or zero for no limit. */
+	private int timeout_secs = 0;
+
+	/**
+	 * How long past the timeout to wait for a worker that has been
+	 * cut short by the deadline to hand in its partial reply.
+	 */
+	private static final long GRACE_MILLIS = 250;
+
+	private ExecutorService workers;
+	private ExecutorService connections;
+	private AtomicInteger connection_count = new AtomicInteger();
+
+	/** The output socket, if output goes to a single OpenCog server. */
+	private PrintWriter host_out = null;
+
+	/** Marks the end of the requests on a connection. */
+	private static final Request END_OF_INPUT = new Request(null, null, 0);
+
 	public Server()
 	{
 		listen_port = 4444;
 	}
 
+	/**
+	 * The per-thread state of a worker: the parser, and the output
+	 * formatters, none of which may be shared between threads.
+	 */
+	private class Worker
+	{
+		RelationExtractor re;
+		OpenCogScheme opencog;
+		LogicView logicView;
+
+		Worker()
+		{
+			re = new RelationExtractor(false);
+			re.setLanguage(lang);
+			re.setMaxParses(max_parses);
+			if (1000 < max_parses) re.setMaxLinkages(max_parses+100);
+			re.setRankFirst(rank_first);
+
+			// No point in having link-grammar work on a sentence
+			// long after the reply has been given up on.
+			if (0 < timeout_secs) re.setMaxParseSeconds(timeout_secs);
+			if (!relex_on && !logic_on) re.do_apply_algs = false;
+
+			opencog = new OpenCogScheme();
+			opencog.setShowLinkage(link_on);
+			opencog.setShowRelex(relex_on);
+
+			logicView = new LogicView();
+			if (logic_on) logicView.loadRules();
+		}
+
+		/**
+		 * Parse the sentence, and return the complete reply for it.
+		 * @param due the time by which the reply is due, as given by
+		 *            System.currentTimeMillis(); zero for no limit.
+		 */
+		String process(String sentence, long due)
+		{
+			StringWriter sw = new StringWriter();
+			PrintWriter out = new PrintWriter(sw);
+
+			Deadline deadline = Deadline.NONE;
+			if (0 != due)
+				deadline = Deadline.afterMillis(due - System.currentTimeMillis());
+
+			System.err.println("Info: sentence: \"" + sentence + "\"");
+			Sentence sntc = re.processSentence(sentence, deadline);
+			if (sntc.getParses().size() == 0)
+			{
+				System.err.println("Info: No parses!");
+				out.println("; NO PARSES");
+				out.flush();
+				return sw.toString();
+			}
+			if (sntc.isTimedOut())
+				out.println("; PARSE TIMEOUT (PARTIAL)");
+			int np = Math.min(max_parses, sntc.getParses().size());
+			int pn;
+			for (pn = 0; pn < np; pn++)
+			{
+				ParsedSentence parse = sntc.getParses().get(pn);
+
+				// Print the phrase string ... handy for debugging.
+				out.println("; " + parse.getPhraseString());
+
+				if (verbose)
+				{
+					String fin = SimpleView.printRelationsAlt(parse);
+					System.out.print(fin);
+				}
+				opencog.setParse(parse);
+				out.println(opencog.toString());
+
+				if (logic_on)
+				{
+					out.println("; ##### START OF R2L #####");
+					out.println(logicView.printRelationsNew(parse, deadline));
+				}
+
+				// This is for simplifying pre-processing of scheme string
+				// before evaluating it in opencog, for Relex2Logic.
+				out.println("; ##### END OF A PARSE #####");
+			}
+
+			// Add a special tag to tell the cog server that it's
+			// just recieved a brand new sentence. The OpenCog scheme
+			// code depends on this being visible, in order to find
+			// the new sentence.
+			out.println("(ListLink (stv 1 1)");
+			out.println("   (AnchorNode \"# New Parsed Sentence\")");
+			out.println("   (SentenceNode \"" + sntc.getID() + "\")");
+			out.println(")");
+
+			out.println("; END OF SENTENCE");
+			out.flush();
+			return sw.toString();
+		}
+	}
+
+	private final ThreadLocal<Worker> worker = new ThreadLocal<Worker>()
+	{
+		protected Worker initialValue()
+		{
+			return new Worker();
+		}
+	};
+
+	/**
+	 * A sentence that has been handed to the workers, together with
+	 * the time by which its reply is due.
+	 */
+	private static class Request
+	{
+		final Future<String> reply;
+		final String sentence;
+		final long deadline;
+
+		Request(String s, Future<String> r, long due)
+		{
+			sentence = s;
+			reply = r;
+			deadline = due;
+		}
+	}
+
+	/**
+	 * Hand the sentence to the worker pool; if the queue is full, the
+	 * sentence is refused straight away.
+	 */
+	private Request submit(final String sentence)
+	{
+		long t = 0;
+		if (0 < timeout_secs)
+			t = System.currentTimeMillis() + 1000L * timeout_secs;
+		final long due = t;
+
+		Callable<String> job = new Callable<String>()
+		{
+			public String call()
+			{
+				return worker.get().process(sentence, due);
+			}
+		};
+
+		try
+		{
+			return new Request(sentence, workers.submit(job), due);
+		}
+		catch (RejectedExecutionException e)
+		{
+			System.err.println("Warning: Server busy, dropping sentence: \"" +
+				sentence + "\"");
+			FutureTask<String> busy = new FutureTask<String>(new Callable<String>()
+			{
+				public String call()
+				{
+					return "; SERVER BUSY\n";
+				}
+			});
+			busy.run();
+			return new Request(sentence, busy, due);
+		}
+	}
+
+	/**
+	 * One client connection.  This thread reads the sentences, and
+	 * passes them on to the workers as soon as they are complete; the
+	 * replies are written by a second thread, in the same order.
+	 */
+	private class Connection implements Runnable
+	{
+		private Socket in_sock;
+		private int id;
+		private PrintWriter out;
+		private LinkedBlockingQueue<Request> pending;
+
+		Connection(Socket sock, PrintWriter o)
+		{
+			in_sock = sock;
+			out = o;
+			id = connection_count.incrementAndGet();
+			pending = new LinkedBlockingQueue<Request>();
+		}
+
+		public void run()
+		{
+			connections.execute(new Runnable()
+			{
+				public void run()
+				{
+					writeReplies();
+				}
+			});
+
+			try
+			{
+				readSentences();
+			}
+			finally
+			{
+				pending.add(END_OF_INPUT);
+			}
+		}
+
+		private void readSentences()
+		{
+			BufferedReader in;
+			try
+			{
+				InputStream ins = in_sock.getInputStream();
+				in = new BufferedReader(new InputStreamReader(ins));
+			}
+			catch (IOException e)
+			{
+				System.err.println("Error: Read of input failed:" + e.getMessage());
+				return;
+			}
+
+			// Each connection splits its own text; a sentence fragment
+			// from one client must not end up glued to another's.
+			DocSplitter ds = null;
+			if (free_text) ds = DocSplitterFactory.create();
+
+			// Loop over multiple input lines, looking for complete sentences.
+			while (true)
+			{
+				try {
+					// Break if EOF encountered.  This should have been easy
+					// to figure out, but its not. Java sux rox. What is wrong
+					// with these people? Are they all stupid, or what? Arghhhh.
+					int one_char = in.read();
+					// 0x4 is ASCII EOT aka ctrl-D via telnet.
+					if (-1 == one_char || 4 == one_char)
+					{
+						if (ds != null)
+						{
+							String sentence = ds.getRemainder().trim();
+							if (!sentence.equals(""))
+								pending.add(submit(sentence));
+						}
+						return;
+					}
+					if ('\r' == one_char)
+						continue;
+					if ('\n' == one_char)
+						continue;
+
+					// Another bright shining example of more java idiocy.
+					char junk[] = {(char)one_char};
+					String line = new String(junk);
+					line += in.readLine();
+
+					System.err.println("Info: [" + id + "] recv input: \"" + line + "\"");
+
+					// If the free-text flag is set, then use the document
+					// splitter to find sentence boundaries. Otherwise,
+					// assume one sentence per line, and one sentence per
+					// connection.
+					if (ds == null)
+					{
+						pending.add(submit(line));
+						return;
+					}
+					ds.addText(line + " ");
+					String sentence = ds.getNextSentence();
+					while (sentence != null)
+					{
+						pending.add(submit(sentence));
+						sentence = ds.getNextSentence();
+					}
+				}
+				catch (Exception e)
+				{
+					System.err.println("Error: Read of input failed:" + e.getMessage());
+					return;
+				}
+			}
+		}
+
+		private void writeReplies()
+		{
+			try
+			{
+				while (true)
+				{
+					Request req = pending.take();
+					if (req == END_OF_INPUT) break;
+
+					String reply = getReply(req);
+					synchronized (out)
+					{
+						out.print(reply);
+						out.flush();
+					}
+					if (out.checkError())
+					{
+						System.err.println("Error: [" + id + "] Write failed, dropping connection");
+						cancelPending();
+						break;
+					}
+				}
+			}
+			catch (InterruptedException e)
+			{
+				cancelPending();
+			}
+
+			try
+			{
+				in_sock.close();
+				System.err.println("Info: [" + id + "] Closed input socket");
+			}
+			catch (IOException e)
+			{
+				System.err.println("Error: Socket close failed: " + e.getMessage());
+			}
+		}
+
+		/**
+		 * Wait for the reply, but no later than its deadline.
+		 */
+		private String getReply(Request req) throws InterruptedException
+		{
+			try
+			{
+				if (0 == req.deadline)
+					return req.reply.get();
+
+				// A sentence that is being worked on stops at the
+				// deadline; give it a moment to hand in what it has.
+				long wait = req.deadline + GRACE_MILLIS - System.currentTimeMillis();
+				return req.reply.get(Math.max(wait, 1), TimeUnit.MILLISECONDS);
+			}
+			catch (TimeoutException e)
+			{
+				// If the sentence hasn't been started yet, it never will
+				// be.  One that has is left to run to its own deadline:
+				// interrupting it could leave the parser half-way through.
+				req.reply.cancel(false);
+				System.err.println("Warning: [" + id + "] Parse timed out: \"" +
+					req.sentence + "\"");
+				return "; PARSE TIMEOUT\n";
+			}
+			catch (ExecutionException e)
+			{
+				System.err.println("Error: Failed to parse: " + e.getCause());
+				e.getCause().printStackTrace();
+				return "; PARSE FAILED\n";
+			}
+		}
+
+		/**
+		 * Drain the sentences that are still waiting, so that the
+		 * workers don't spend time on them.
+		 */
+		private void cancelPending()
+		{
+			Request req = pending.poll();
+			while (req != null)
+			{
+				if (req.reply != null) req.reply.cancel(false);
+				req = pending.poll();
+			}
+		}
+	}
+
+	private static ThreadFactory namedThreads(final String prefix)
+	{
+		return new ThreadFactory()
+		{
+			private AtomicInteger n = new AtomicInteger();
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, prefix + n.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+
+	/**
+	 * Listen for connections, and hand each one to its own thread.
+	 * Never returns.
+	 */
+	private void serve(ServerSocket listen_sock, OutputStream host_outs)
+	{
+		workers = new ThreadPoolExecutor(num_threads, num_threads,
+			0L, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<Runnable>(queue_size),
+			namedThreads("relex-worker-"));
+		connections = Executors.newCachedThreadPool(namedThreads("relex-conn-"));
+
+		while (true)
+		{
+			Socket in_sock = null;
+			PrintWriter out = host_out;
+			try {
+				System.err.println("Info: Waiting for socket connection");
+				in_sock = listen_sock.accept();
+
+				// If no end-point, return data on same socket.
+				if (host_out == null)
+					out = new PrintWriter(in_sock.getOutputStream(), true);
+			} catch (IOException e) {
+				System.err.println("Error: Accept failed: " + e.getMessage());
+				continue;
+			}
+
+			System.err.println("Info: Socket accept");
+
+			// Attempt to detect a dead socket. This could happen if the
+			// remote end died. This should be easy to do, but for some
+			// reason, the below fails ... programming in Java sucks. Oh well.
+			if (host_outs != null)
+			{
+				try
+				{
+					// Send a lone newline char.
+					synchronized (host_out)
+					{
+						host_outs.write(10);
+					}
+				}
+				catch (Exception e)
+				{
+					System.err.println("Error: Remote end has closed socket! " + e.getMessage());
+				}
+			}
+
+			connections.execute(new Connection(in_sock, out));
+		}
+	}
+
 	public static void main(String[] args)
 	{
+		Server s = new Server();
 		int host_port = 0;
-		int listen_port = 4444;
-		int max_parses = 1;
-		boolean relex_on = false;
-		boolean logic_on = false;
-		boolean link_on = false;
-		boolean free_text = false;
-		boolean verbose = false;
-		String lang = "en";
 		String host_name = null;
 		String usageString = "RelEx server (designed for OpenCog interaction).\n" +
 			"Given a sentence, it returns a parse in opencog-style scheme format.\n" +
@@ -72,10 +560,14 @@ public class Server
 			" --host host:port\t Send output to indicated host:port (example: localhost:17001)\n" +
 			" --lang lang\t Set langauge (default: en)\n" +
 			" -n number  \t Max number of parses to return (default: 1)\n" +
+			" --rank-first\t Rank all linkages by cost; build only the best -n\n" +
 			" --relex    \t Output RelEx relations (default)\n" +
 			" --logic    \t Output of Relex2Logic scheme function calls and Relex relations" +
 			" --link     \t Output Link Grammar Linkages\n" +
 			" --free-text\t Don't assume one sentence per line; look for !?. to end sentence.\n" +
+			" --threads n\t Number of sentences to parse at once (default: 1)\n" +
+			" --queue n  \t Max number of sentences waiting to be parsed (default: 32)\n" +
+			" --timeout s\t Give up on a sentence after this many seconds (default: none)\n" +
 			" --verbose  \t Print parse output to server stdout.\n";
 
 		HashSet<String> flags = new HashSet<String>();
@@ -85,6 +577,7 @@ public class Server
 		flags.add("--relex");
 		flags.add("--free-text");
 		flags.add("--verbose");
+		flags.add("--rank-first");
 		flags.add("--logic");
 		HashSet<String> opts = new HashSet<String>();
 		opts.add("-n");
@@ -92,6 +585,9 @@ public class Server
 		opts.add("--host");
 		opts.add("--lang");
 		opts.add("--port");
+		opts.add("--threads");
+		opts.add("--queue");
+		opts.add("--timeout");
 		Map<String,String> commandMap = CommandLineArgParser.parse(args, opts, flags);
 
 		try
@@ -99,10 +595,10 @@ public class Server
 			String opt;
 
 			opt = commandMap.get("-n");
-			if (opt != null) max_parses = Integer.parseInt(opt);
+			if (opt != null) s.max_parses = Integer.parseInt(opt);
 
 			opt = commandMap.get("-p");
-			if (opt != null) listen_port = Integer.parseInt(opt);
+			if (opt != null) s.listen_port = Integer.parseInt(opt);
 
 			opt = commandMap.get("--host");
 			if (opt != null)
@@ -113,10 +609,19 @@ public class Server
 			}
 
 			opt = commandMap.get("--lang");
-			if (opt != null) lang = opt;
+			if (opt != null) s.lang = opt;
 
 			opt = commandMap.get("--port");
-			if (opt != null) listen_port = Integer.parseInt(opt);
+			if (opt != null) s.listen_port = Integer.parseInt(opt);
+
+			opt = commandMap.get("--threads");
+			if (opt != null) s.num_threads = Math.max(1, Integer.parseInt(opt));
+
+			opt = commandMap.get("--queue");
+			if (opt != null) s.queue_size = Math.max(1, Integer.parseInt(opt));
+
+			opt = commandMap.get("--timeout");
+			if (opt != null) s.timeout_secs = Math.max(0, Integer.parseInt(opt));
 		}
 		catch (Exception e)
 		{
@@ -131,62 +636,50 @@ public class Server
 			System.err.println(usageString);
 			System.exit(0);
 		}
-		if (commandMap.get("--link") != null) link_on = true;
-		if (commandMap.get("--relex") != null) relex_on = true;
-		if (commandMap.get("--free-text") != null) free_text = true;
-		if (commandMap.get("--logic") != null) logic_on = true;
+		if (commandMap.get("--link") != null) s.link_on = true;
+		if (commandMap.get("--relex") != null) s.relex_on = true;
+		if (commandMap.get("--free-text") != null) s.free_text = true;
+		if (commandMap.get("--logic") != null) s.logic_on = true;
+		if (commandMap.get("--rank-first") != null) s.rank_first = true;
 
 		if (commandMap.get("--verbose") != null)
 		{
 			System.err.println("Info: Verbose server mode set.");
-			verbose = true;
+			s.verbose = true;
 		}
 
 		System.err.println("Info: Version: " + Version.getVersion());
 
 		// -----------------------------------------------------------------
 		// After parsing the commmand arguments, set up the assorted classes.
-		RelationExtractor re = new RelationExtractor(false);
-		re.setLanguage(lang);
-		re.setMaxParses(max_parses);
-		if (1000 < max_parses) re.setMaxLinkages(max_parses+100);
-		OpenCogScheme opencog = new OpenCogScheme();
-		DocSplitter ds = DocSplitterFactory.create();
-		LogicView logicView = new LogicView();
-
-		if (!relex_on && !link_on && !logic_on)
+		if (!s.relex_on && !s.link_on && !s.logic_on)
 		{
 			// By default just export RelEx output.
-			relex_on = true;
+			s.relex_on = true;
 		}
-		if (link_on)
-		{
+		if (s.link_on)
 			System.err.println("Info: Link grammar output on.");
-			opencog.setShowLinkage(link_on);
-		}
-		if (logic_on)
-		{
+		if (s.logic_on)
 			System.err.println("Info: Relex2Logic ouptut on");
-			logicView.loadRules();
-		}
-		if (relex_on)
-		{
+		if (s.relex_on)
 			System.err.println("Info: RelEx output on.");
-			opencog.setShowRelex(relex_on);
-		}
-		if (!relex_on && !logic_on)
+
+		// The default morphy keeps its state in the JWNL dictionary,
+		// which is one per JVM; it can't serve several workers at once.
+		if (1 < s.num_threads &&
+		    System.getProperty(MorphyFactory.MORPHY_IMPLEMENTATION_PROPERTY) == null)
 		{
-			re.do_apply_algs = false;
+			System.setProperty(MorphyFactory.MORPHY_IMPLEMENTATION_PROPERTY,
+				MorphyFactory.DEFAULT_MULTI_THREAD_IMPLEMENTATION);
 		}
+		System.err.println("Info: " + s.num_threads + " worker threads, queue of " +
+			s.queue_size + (0 < s.timeout_secs ?
+				", timeout " + s.timeout_secs + " s" : ""));
 
 		// -----------------------------------------------------------------
 		// Socket setup
-		Server s = new Server();
-		s.listen_port = listen_port;
 		ServerSocket listen_sock = null;
-		Socket send_sock = null;
 		OutputStream outs = null;
-		PrintWriter out = null;
 
 		try
 		{
@@ -205,16 +698,16 @@ public class Server
 		{
 			try
 			{
-				send_sock = new Socket(host_name, host_port);
+				Socket send_sock = new Socket(host_name, host_port);
 				send_sock.setKeepAlive(true);
 				// send_sock.shutdownInput();
 				outs = send_sock.getOutputStream();
-				out = new PrintWriter(outs, true);
+				s.host_out = new PrintWriter(outs, true);
 
 				// Assume we're talking to an opencog server.
 				// Escape it into a scheme shell.
-				out.println("scm hush");
-				out.flush();
+				s.host_out.println("scm hush");
+				s.host_out.flush();
 			}
 			catch (Exception e)
 			{
@@ -227,181 +720,6 @@ public class Server
 
 		// -----------------------------------------------------------------
 		// Main loop -- listen for connections, accept them, and process.
-		while (true)
-		{
-			Socket in_sock = null;
-			InputStream ins = null;
-			try {
-				System.err.println("Info: Waiting for socket connection");
-				in_sock = listen_sock.accept();
-				ins = in_sock.getInputStream();
-
-				// If no end-point, return data on same socket.
-				if (send_sock == null)
-				{
-					outs = in_sock.getOutputStream();
-					out = new PrintWriter(outs, true);
-				}
-			} catch (IOException e) {
-				System.err.println("Error: Accept failed: " + e.getMessage());
-				continue;
-			}
-
-			System.err.println("Info: Socket accept");
-			BufferedReader in = new BufferedReader(new InputStreamReader(ins));
-
-			// Attempt to detect a dead socket. This could happen if the
-			// remote end died. This should be easy to do, but for some
-			// reason, the below fails ... programming in Java sucks. Oh well.
-			if (send_sock != null)
-			{
-				try
-				{
-					// Send a lone newline char.
-					outs.write(10);
-				}
-				catch (Exception e)
-				{
-					System.err.println("Error: Remote end has closed socket! " + e.getMessage());
-				}
-			}
-
-			// Loop over multiple sentences that may be present in input.
-			while (true)
-			{
-				// Loop over multiple input lines, looking for one complete sentence.
-				String sentence = null;
-				while (null == sentence)
-				{
-					try {
-						// Break if EOF encountered.  This should have been easy
-						// to figure out, but its not. Java sux rox. What is wrong
-						// with these people? Are they all stupid, or what? Arghhhh.
-						int one_char = in.read();
-						// 0x4 is ASCII EOT aka ctrl-D via telnet.
-						if (-1 == one_char || 4 == one_char)
-						{
-							sentence = ds.getRemainder();
-							sentence = sentence.trim();
-							break;
-						}
-						if ('\r' == one_char)
-							continue;
-						if ('\n' == one_char)
-							continue;
-
-						// Another bright shining example of more java idiocy.
-						char junk[] = {(char)one_char};
-						String line = new String(junk);
-						line += in.readLine();
-
-						System.err.println("Info: recv input: \"" + line + "\"");
-
-						// If the free-text flag is set, then use the document
-						// splitter to find sentence boundaries. Otherwise,
-						// Assume one sentence per line.
-						if (free_text)
-						{
-							ds.addText(line + " ");
-							sentence = ds.getNextSentence();
-						}
-						else
-						{
-							sentence = line;
-						}
-					}
-					catch (Exception e)
-					{
-						System.err.println("Error: Read of input failed:" + e.getMessage());
-						break;
-					}
-				}
-
-				// If the sentence is null; we've run out of input.
-				if (null == sentence || sentence.equals(""))
-					break;
-
-				try
-				{
-					System.err.println("Info: sentence: \"" + sentence + "\"");
-					Sentence sntc = re.processSentence(sentence);
-					if (sntc.getParses().size() == 0)
-					{
-						System.err.println("Info: No parses!");
-						out.println("; NO PARSES");
-
-						// Only one sentence per connection in the non-free-text mode.
-						if (!free_text) break;
-						continue;
-					}
-					int np = Math.min(max_parses, sntc.getParses().size());
-					int pn;
-					for (pn = 0; pn < np; pn++)
-					{
-						ParsedSentence parse = sntc.getParses().get(pn);
-
-						// Print the phrase string ... handy for debugging.
-						out.println("; " + parse.getPhraseString());
-
-						if (verbose)
-						{
-							String fin = SimpleView.printRelationsAlt(parse);
-							System.out.print(fin);
-						}
-						opencog.setParse(parse);
-						out.println(opencog.toString());
-						out.flush();
-						System.err.println("Info: sent parse " + (pn + 1) + " of " + np);
-
-						if (logic_on)
-						{
-							out.println("; ##### START OF R2L #####");
-							out.println(logicView.printRelationsNew(parse));
-							out.flush();
-							System.err.println("Info: called relex2logic functions");
-						}
-
-						// This is for simplifying pre-processing of scheme string
-						// before evaluating it in opencog, for Relex2Logic.
-						out.println("; ##### END OF A PARSE #####");
-						out.flush();
-					}
-
-					// Add a special tag to tell the cog server that it's
-					// just recieved a brand new sentence. The OpenCog scheme
-					// code depends on this being visible, in order to find
-					// the new sentence.
-					out.println("(ListLink (stv 1 1)");
-					out.println("   (AnchorNode \"# New Parsed Sentence\")");
-					out.println("   (SentenceNode \"" + sntc.getID() + "\")");
-					out.println(")");
-
-					out.println("; END OF SENTENCE");
-					out.flush();
-				}
-				catch (Exception e)
-				{
-					System.err.println("Error: Failed to parse: " + e.getMessage());
-					e.printStackTrace();
-					break;
-				}
-
-				// Only one sentence per connection in the non-free-text mode.
-				if (!free_text) break;
-			}
-
-			try
-			{
-				in_sock.close();
-				System.err.println("Info: Closed input socket");
-			}
-			catch (IOException e)
-			{
-				System.err.println("Error: Socket close failed: " + e.getMessage());
-			}
-
-			// Something here is leaking memory ... 10GB a day ... can this help?
-			System.gc();
-		}
+		s.serve(listen_sock, outs);
 	}
 }
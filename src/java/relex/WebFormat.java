@@ -16,6 +16,7 @@
 package relex;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.HashSet;
@@ -24,6 +25,7 @@ import java.util.Map;
 import relex.corpus.DocSplitter;
 import relex.corpus.DocSplitterFactory;
 import relex.output.CompactView;
+import relex.parser.LinkageArchive;
 
 /**
  * The WebFormat class provides the central processing point for parsing
@@ -57,7 +59,8 @@ public class WebFormat extends RelationExtractor
 			" [-n max number of parses to display]" +
 			" [-t (do not show constituent tree)]" +
 			" [--url source URL]" +
-			" [--maxParseSeconds N]";
+			" [--maxParseSeconds N]" +
+			" [--archive filename (also save the link-grammar parses to file)]";
 		HashSet<String> flags = new HashSet<String>();
 		flags.add("-h");
 		flags.add("-l");
@@ -67,6 +70,7 @@ public class WebFormat extends RelationExtractor
 		opts.add("-n");
 		opts.add("--maxParseSeconds");
 		opts.add("--url");
+		opts.add("--archive");
 		Map<String,String> commandMap = CommandLineArgParser.parse(args, opts, flags);
 
 		String url = null;
@@ -115,6 +119,24 @@ public class WebFormat extends RelationExtractor
 		// Pass along the version string.
 		cv.setVersion(re.getVersion());
 
+		// The compact file format holds the results; the archive
+		// holds what is needed to recompute them.
+		LinkageArchive.Writer archive = null;
+		if (commandMap.get("--archive") != null)
+		{
+			try
+			{
+				archive = new LinkageArchive.Writer(new File(commandMap.get("--archive")),
+					re.getParser().getVersion(), false);
+				re.setLinkageArchive(archive);
+			}
+			catch (IOException e)
+			{
+				System.err.println("Error: cannot write linkage archive: " + e.getMessage());
+				return;
+			}
+		}
+
 		// If sentence is not passed at command line, read from standard input:
 		BufferedReader stdin = new BufferedReader(new InputStreamReader(System.in));
 		DocSplitter ds = DocSplitterFactory.create();
@@ -135,6 +157,7 @@ public class WebFormat extends RelationExtractor
 					if ((sentence == null) || "END.".equals(sentence))
 					{
 						System.out.println(cv.footer());
+						if (archive != null) archive.close();
 						return;
 					}
 				} catch (IOException e) {
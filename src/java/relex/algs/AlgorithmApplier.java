@@ -22,7 +22,10 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.List;
 
 import relex.ParsedSentence;
 import relex.concurrent.RelexContext;
@@ -39,6 +42,9 @@ public class AlgorithmApplier
 	/** The list of algorithms to be applied */
 	private ArrayList<SentenceAlgorithm> algs;
 
+	/** SHA-1 of the algorithms file, as read */
+	private String fingerprint;
+
 	/** The name of the algorithms package */
 	private static String ALGS_PACKAGE = "relex.algs";
 
@@ -53,9 +59,12 @@ public class AlgorithmApplier
 		read(prop, filename);
 	}
 
-	private void addAlg(SentenceAlgorithm alg, String initString)
+	private void addAlg(SentenceAlgorithm alg, String initString,
+	                    String filename)
 	{
 		alg.init(initString); // init the algorithm
+		alg.counters = RuleProfiler.getInstance().getCounters(
+			filename, alg.getSignature());
 		algs.add(alg); // add it to algs vector
 		if (verbosity > 1)
 			System.err.println("Info: Adding alg: " + alg.getSignature());
@@ -64,9 +73,12 @@ public class AlgorithmApplier
 	// The apply method!
 	public void applyAlgs(ParsedSentence sentence, RelexContext context)
 	{
+		// One index serves all of the algs, being rebuilt only
+		// after an alg has actually modified the sentence.
+		NodeIndex index = new NodeIndex(sentence);
 		for (SentenceAlgorithm alg: algs)
 		{
-			alg.apply(sentence, context);
+			alg.apply(sentence, context, index);
 		}
 	}
 
@@ -83,15 +95,18 @@ public class AlgorithmApplier
 		StringBuffer sb = new StringBuffer();
 		String line = null;
 		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
 			while (br.ready()) {
 				line = br.readLine();
+				md.update(line.getBytes("UTF-8"));
+				md.update((byte) '\n');
 				if (line.length() > 0) {
 					if (line.charAt(0) == CLASS_CHAR) {
 						// If the line begins with CLASS_CHAR, use the current
 						// buffer to create a new algorithm
 						// System.err.println(sb);
 						if (curAlg != null) {
-							addAlg(curAlg, sb.toString());
+							addAlg(curAlg, sb.toString(), filename);
 							sb.delete(0, sb.length()); // ready the buffer for next alg
 						}
 						Class<?> c = Class.forName(ALGS_PACKAGE + "." + line.substring(1));
@@ -103,8 +118,11 @@ public class AlgorithmApplier
 				}
 			}
 			if (curAlg != null) {
-				addAlg(curAlg, sb.toString());
+				addAlg(curAlg, sb.toString(), filename);
 			}
+			fingerprint = hex(md.digest());
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("Error: no SHA-1 digest: " + e);
 		} catch (IOException e) {
 			throw new RuntimeException("Problem reading relex semantic algorithms file.");
 		} catch (ClassNotFoundException e) {
@@ -174,4 +192,29 @@ public class AlgorithmApplier
 			throw new RuntimeException(exception);
 		}
 	}
+
+	/**
+	 * A digest of the text of the algorithms file; it changes when
+	 * the file does.
+	 */
+	public String getFingerprint()
+	{
+		return fingerprint;
+	}
+
+	private static String hex(byte[] digest)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (byte b : digest)
+			sb.append(String.format("%02x", b & 0xff));
+		return sb.toString();
+	}
+
+	/**
+	 * The algorithms, in the order in which they are applied.
+	 */
+	List<SentenceAlgorithm> getAlgs()
+	{
+		return algs;
+	}
 }
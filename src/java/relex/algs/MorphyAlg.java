@@ -79,6 +79,11 @@ public class MorphyAlg extends SentenceAlgorithm
 		}
 	}
 
+	protected String getIndexFeature()
+	{
+		return "str";
+	}
+
 	protected Map<String,FeatureNode> canApplyTo(FeatureNode node)
 	{
 		if ((!node.isValued()) && (node.get("str") != null))
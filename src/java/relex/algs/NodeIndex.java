@@ -0,0 +1,171 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package relex.algs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import relex.ParsedSentence;
+import relex.feature.FeatureNode;
+
+/**
+ * A per-sentence index over all of the FeatureNodes reachable from
+ * the left wall. The nodes are listed in the same order in which
+ * SentenceAlgorithm used to walk the graph; in addition, the
+ * position of each node is recorded under every feature name it
+ * carries, and, for string-valued features, under the feature value
+ * as well.  This allows an algorithm whose template requires, say,
+ * <POS> = noun to visit only the nouns, instead of every node in
+ * the sentence.
+ *
+ * The index is a snapshot. Any algorithm that actually modifies
+ * the graph must call invalidate(); the index is then rebuilt the
+ * next time it is asked for nodes. Since most algorithms fail to
+ * match anywhere in a given sentence, the snapshot is usually shared
+ * by long runs of algorithms.
+ */
+public class NodeIndex
+{
+	private ParsedSentence sentence;
+
+	/** All nodes, in left-to-right depth-first order */
+	private ArrayList<FeatureNode> nodes;
+
+	/** Feature name to positions (in nodes) of nodes having it */
+	private HashMap<String,ArrayList<Integer>> byFeature;
+
+	/** Feature name to value to positions of nodes having it */
+	private HashMap<String,HashMap<String,ArrayList<Integer>>> byValue;
+
+	private boolean stale;
+
+	public NodeIndex(ParsedSentence sent)
+	{
+		sentence = sent;
+		stale = true;
+	}
+
+	/**
+	 * Mark the index as out of date; must be called whenever the
+	 * feature graph has been (or may have been) modified.
+	 */
+	public void invalidate()
+	{
+		stale = true;
+	}
+
+	/**
+	 * Returns ALL the FeatureNodes in the parse. That is, not only
+	 * are nodes representing the constituents returned, but also
+	 * all their sub-FeatureNodes representing links, semantic info,
+	 * etc.  The returned list must not be modified.
+	 */
+	public List<FeatureNode> getNodes()
+	{
+		if (stale) rebuild();
+		return nodes;
+	}
+
+	/**
+	 * Returns the positions, in ascending order, of the nodes that
+	 * have the feature "name". If values is not null, only those
+	 * nodes whose feature "name" is string-valued, with one of the
+	 * indicated values, are returned.  Positions refer to the list
+	 * returned by getNodes().
+	 */
+	public List<Integer> getCandidates(String name, Set<String> values)
+	{
+		if (stale) rebuild();
+		if (values == null)
+			return nonNull(byFeature.get(name));
+
+		HashMap<String,ArrayList<Integer>> vals = byValue.get(name);
+		if (vals == null)
+			return Collections.emptyList();
+		if (values.size() == 1)
+			return nonNull(vals.get(values.iterator().next()));
+
+		ArrayList<Integer> merged = new ArrayList<Integer>();
+		for (String v : values)
+		{
+			ArrayList<Integer> pos = vals.get(v);
+			if (pos != null) merged.addAll(pos);
+		}
+		Collections.sort(merged);
+		return merged;
+	}
+
+	private static List<Integer> nonNull(List<Integer> l)
+	{
+		if (l == null)
+			return Collections.emptyList();
+		return l;
+	}
+
+	private void rebuild()
+	{
+		nodes = new ArrayList<FeatureNode>();
+		byFeature = new HashMap<String,ArrayList<Integer>>();
+		byValue = new HashMap<String,HashMap<String,ArrayList<Integer>>>();
+		walk(sentence.getLeft(), new HashSet<FeatureNode>());
+		stale = false;
+	}
+
+	private void walk(FeatureNode f, HashSet<FeatureNode> alreadyVisited)
+	{
+		if (!alreadyVisited.add(f))
+			return;
+		Integer pos = nodes.size();
+		nodes.add(f);
+		if (f.isValued())
+			return;
+
+		for (String name : f.getFeatureNames())
+		{
+			ArrayList<Integer> l = byFeature.get(name);
+			if (l == null)
+			{
+				l = new ArrayList<Integer>();
+				byFeature.put(name, l);
+			}
+			l.add(pos);
+
+			FeatureNode target = f.get(name);
+			if (target.isValued() && target.getValue() != null)
+			{
+				HashMap<String,ArrayList<Integer>> vals = byValue.get(name);
+				if (vals == null)
+				{
+					vals = new HashMap<String,ArrayList<Integer>>();
+					byValue.put(name, vals);
+				}
+				ArrayList<Integer> vl = vals.get(target.getValue());
+				if (vl == null)
+				{
+					vl = new ArrayList<Integer>();
+					vals.put(target.getValue(), vl);
+				}
+				vl.add(pos);
+			}
+		}
+
+		for (String name : f.getFeatureNames())
+			walk(f.get(name), alreadyVisited);
+	}
+}
@@ -0,0 +1,260 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package relex.algs;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Per-rule counters for the SentenceAlgorithms: how many nodes each
+ * rule was tried on, how often it matched, how often its action threw
+ * an exception, and how much time was spent matching the template,
+ * and applying the action.
+ *
+ * Profiling is off by default; it is turned on by setting the system
+ * property relex.algs.profile=true, or by calling setEnabled().  The
+ * counters are then available through JMX, under the name
+ * relex:type=RuleProfiler, and can be written out as CSV.  When off,
+ * the cost is one flag test per rule, per sentence.
+ */
+public class RuleProfiler implements RuleProfilerMBean
+{
+	public static final String PROFILE_PROPERTY = "relex.algs.profile";
+
+	private static final String MBEAN_NAME = "relex:type=RuleProfiler";
+
+	private static volatile boolean enabled = false;
+
+	private static RuleProfiler instance = new RuleProfiler();
+
+	private boolean registered = false;
+
+	/** Counters, keyed by algs file and rule signature */
+	private LinkedHashMap<String,Counters> rules;
+
+	/**
+	 * The counters for a single rule. Updated once per sentence,
+	 * so that the locking cost is negligible.
+	 */
+	public static class Counters
+	{
+		final String source;
+		final String signature;
+		long tried;
+		long matched;
+		long errors;
+		long match_nanos;
+		long apply_nanos;
+
+		Counters(String src, String sig)
+		{
+			source = src;
+			signature = sig;
+		}
+
+		public synchronized void add(int ntried, int nmatched, int nerrors,
+		                             long match_ns, long apply_ns)
+		{
+			tried += ntried;
+			matched += nmatched;
+			errors += nerrors;
+			match_nanos += match_ns;
+			apply_nanos += apply_ns;
+		}
+
+		synchronized void reset()
+		{
+			tried = 0;
+			matched = 0;
+			errors = 0;
+			match_nanos = 0;
+			apply_nanos = 0;
+		}
+
+		synchronized long totalNanos()
+		{
+			return match_nanos + apply_nanos;
+		}
+
+		synchronized String toCSV()
+		{
+			return quote(source) + "," + quote(signature) + "," +
+				tried + "," + matched + "," + errors + "," +
+				match_nanos + "," + apply_nanos;
+		}
+	}
+
+	static
+	{
+		if (Boolean.getBoolean(PROFILE_PROPERTY))
+			instance.setEnabled(true);
+	}
+
+	private RuleProfiler()
+	{
+		rules = new LinkedHashMap<String,Counters>();
+	}
+
+	public static RuleProfiler getInstance()
+	{
+		return instance;
+	}
+
+	/** Fast, static test, used on the hot path. */
+	public static boolean isProfiling()
+	{
+		return enabled;
+	}
+
+	/**
+	 * Returns the counters for the rule with the given signature,
+	 * loaded from the given algs file, creating them if needed.
+	 */
+	public synchronized Counters getCounters(String source, String signature)
+	{
+		String key = source + "\t" + signature;
+		Counters c = rules.get(key);
+		if (c == null)
+		{
+			c = new Counters(source, signature);
+			rules.put(key, c);
+		}
+		return c;
+	}
+
+	public boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	public synchronized void setEnabled(boolean on)
+	{
+		enabled = on;
+		if (on && !registered)
+		{
+			registered = true;
+			try
+			{
+				MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+				mbs.registerMBean(this, new ObjectName(MBEAN_NAME));
+			}
+			catch (Exception e)
+			{
+				System.err.println("Warning: Unable to register " +
+					MBEAN_NAME + ": " + e);
+			}
+		}
+	}
+
+	public synchronized void reset()
+	{
+		for (Counters c : rules.values()) c.reset();
+	}
+
+	public synchronized int getRuleCount()
+	{
+		return rules.size();
+	}
+
+	public synchronized double getMatchMillis()
+	{
+		long sum = 0;
+		for (Counters c : rules.values())
+		{
+			synchronized (c) { sum += c.match_nanos; }
+		}
+		return sum * 1.0e-6;
+	}
+
+	public synchronized double getApplyMillis()
+	{
+		long sum = 0;
+		for (Counters c : rules.values())
+		{
+			synchronized (c) { sum += c.apply_nanos; }
+		}
+		return sum * 1.0e-6;
+	}
+
+	/** Returns the counters, most expensive rule first. */
+	private synchronized ArrayList<Counters> sorted()
+	{
+		ArrayList<Counters> l = new ArrayList<Counters>(rules.values());
+		final LinkedHashMap<Counters,Long> cost = new LinkedHashMap<Counters,Long>();
+		for (Counters c : l) cost.put(c, c.totalNanos());
+		Collections.sort(l, new Comparator<Counters>()
+		{
+			public int compare(Counters a, Counters b)
+			{
+				return cost.get(b).compareTo(cost.get(a));
+			}
+		});
+		return l;
+	}
+
+	public String getTopRules()
+	{
+		StringBuilder sb = new StringBuilder();
+		ArrayList<Counters> l = sorted();
+		for (int i = 0; i < l.size() && i < 20; i++)
+		{
+			Counters c = l.get(i);
+			synchronized (c)
+			{
+				sb.append(String.format("%s %s: %.3f ms, tried %d, matched %d\n",
+					c.source, c.signature, c.totalNanos() * 1.0e-6,
+					c.tried, c.matched));
+			}
+		}
+		return sb.toString();
+	}
+
+	public String dumpCSV()
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append("algs_file,rule,nodes_tried,matches,errors,match_nanos,apply_nanos\n");
+		for (Counters c : sorted())
+			sb.append(c.toCSV()).append("\n");
+		return sb.toString();
+	}
+
+	public void dumpCSV(String filename)
+	{
+		try
+		{
+			FileWriter fw = new FileWriter(filename);
+			fw.write(dumpCSV());
+			fw.close();
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException("Unable to write rule profile: " + e);
+		}
+	}
+
+	private static String quote(String s)
+	{
+		if (s.indexOf(',') < 0 && s.indexOf('"') < 0) return s;
+		return "\"" + s.replace("\"", "\"\"") + "\"";
+	}
+}
@@ -0,0 +1,46 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package relex.algs;
+
+/**
+ * JMX management interface for the RuleProfiler.
+ */
+public interface RuleProfilerMBean
+{
+	public boolean isEnabled();
+
+	public void setEnabled(boolean on);
+
+	/** Zero all of the counters. */
+	public void reset();
+
+	/** Number of rules being tracked. */
+	public int getRuleCount();
+
+	/** Total time spent matching templates, in milliseconds. */
+	public double getMatchMillis();
+
+	/** Total time spent in applyTo, in milliseconds. */
+	public double getApplyMillis();
+
+	/** The most expensive rules, one per line. */
+	public String getTopRules();
+
+	/** All counters, in comma-separated-value format. */
+	public String dumpCSV();
+
+	/** Write the counters, in CSV format, to the named file. */
+	public void dumpCSV(String filename);
+}
@@ -19,9 +19,11 @@ package relex.algs;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.util.Iterator;
-import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import relex.Deadline;
 import relex.ParsedSentence;
 import relex.concurrent.RelexContext;
 import relex.feature.FeatureNode;
@@ -35,17 +37,72 @@ public abstract class SentenceAlgorithm
 
 	public static boolean INTERACTIVE = false;
 
+	/** Profiling counters; set when loaded by an AlgorithmApplier. */
+	RuleProfiler.Counters counters = null;
+
+	/** Nodes tried between checks of the deadline, less one */
+	private static final int DEADLINE_MASK = 63;
+
 	/**
 	 * Iterates over the entire feature structure in the ParsedSentence,
 	 * applying the algorithm where-ever it can be applied.
 	 */
 	public void apply(ParsedSentence sentence, RelexContext context)
 	{
-		Iterator<FeatureNode> i = iteratorFromLeft(sentence);
-		while (i.hasNext()) {
-			FeatureNode c = i.next();
+		apply(sentence, context, new NodeIndex(sentence));
+	}
+
+	/**
+	 * Same as above, but uses the node index to skip over nodes that
+	 * the algorithm cannot possibly apply to. The nodes that are
+	 * visited are visited in the same order as a full walk of the
+	 * graph would visit them. Once the algorithm has been applied
+	 * somewhere, the graph has changed, and so every remaining node
+	 * is tried, and the index is marked out of date.
+	 *
+	 * The deadline in the context is checked as the nodes are
+	 * tried; once it has passed, Deadline.Exceeded is thrown,
+	 * leaving the sentence as it is at that point.
+	 */
+	public void apply(ParsedSentence sentence, RelexContext context,
+	                  NodeIndex index)
+	{
+		Deadline deadline = (context == null) ? Deadline.NONE : context.getDeadline();
+		List<FeatureNode> nodes = index.getNodes();
+		List<Integer> candidates = null;
+		String feature = getIndexFeature();
+		if (feature != null)
+			candidates = index.getCandidates(feature, getIndexValues());
+
+		boolean profiling = (counters != null) && RuleProfiler.isProfiling();
+		long startTime = profiling ? System.nanoTime() : 0;
+		long applyTime = 0;
+		int tried = 0;
+		int matched = 0;
+		int errors = 0;
+
+		boolean modified = false;
+		int next = 0;
+		int pos = -1;
+		while (true) {
+			if (candidates != null && !modified) {
+				if (next >= candidates.size()) break;
+				pos = candidates.get(next++);
+			} else {
+				pos++;
+				if (pos >= nodes.size()) break;
+			}
+			if ((tried & DEADLINE_MASK) == 0)
+				deadline.check(getSignature());
+			FeatureNode c = nodes.get(pos);
+			tried++;
 			Map<String,FeatureNode> vars = canApplyTo(c);
 			if (null != vars) {
+				matched++;
+				if (!modified) {
+					modified = true;
+					index.invalidate();
+				}
 				boolean printResult = false;
 				if (VERBOSE)
 					System.err.print(" " + getSignature());
@@ -58,9 +115,11 @@ public abstract class SentenceAlgorithm
 						e.printStackTrace();
 					}
 				} // end if(INTERACTIVE)
+				long applyStart = profiling ? System.nanoTime() : 0;
 				try {
 					applyTo(c, context, vars);
 				} catch (Exception e) {
+					errors++;
 					if (DEBUG)
 					{
 						// System.err.println(sentence);
@@ -70,6 +129,8 @@ public abstract class SentenceAlgorithm
 					}
 					sentence.setErrorString(this + "\n" + e.toString());
 				}
+				if (profiling)
+					applyTime += System.nanoTime() - applyStart;
 				if (printResult)
 					System.err.println("Info: " + sentence);
 
@@ -82,6 +143,11 @@ public abstract class SentenceAlgorithm
 				}
 			}
 		}
+
+		if (profiling) {
+			long matchTime = System.nanoTime() - startTime - applyTime;
+			counters.add(tried, matched, errors, matchTime, applyTime);
+		}
 	}
 
 	/* ---------------------------------------------------------------- */
@@ -95,22 +161,26 @@ public abstract class SentenceAlgorithm
 	 */
 	public Iterator<FeatureNode> iteratorFromLeft(ParsedSentence sent)
 	{
-		return _iteratorFromLeft(sent.getLeft(),
-		                         new LinkedHashSet<FeatureNode>()).iterator();
+		return new NodeIndex(sent).getNodes().iterator();
+	}
+
+	/**
+	 * Returns the name of a feature that must be present on any node
+	 * that this algorithm can be applied to, or null if any node at
+	 * all might qualify.
+	 */
+	protected String getIndexFeature()
+	{
+		return null;
 	}
 
-	private LinkedHashSet<FeatureNode>
-	_iteratorFromLeft(FeatureNode f, LinkedHashSet<FeatureNode> alreadyVisited)
+	/**
+	 * Returns the acceptable string values of the feature named by
+	 * getIndexFeature(), or null if there is no constraint on them.
+	 */
+	protected Set<String> getIndexValues()
 	{
-		if (alreadyVisited.contains(f))
-			return alreadyVisited;
-		alreadyVisited.add(f);
-		if (f.isValued())
-			return alreadyVisited;
-		Iterator<String> i = f.getFeatureNames().iterator();
-		while (i.hasNext())
-			_iteratorFromLeft(f.get(i.next()), alreadyVisited);
-		return alreadyVisited;
+		return null;
 	}
 
 	/**
@@ -74,6 +74,16 @@ public class SentenceAlgorithmApplier
 		semant.applyAlgs(sentence, context);
 	}
 
+	/**
+	 * A digest of the four algorithms files; it changes when any of
+	 * them does.
+	 */
+	public String getFingerprint()
+	{
+		return tagger.getFingerprint() + semant.getFingerprint()
+			+ penn.getFingerprint() + stanford.getFingerprint();
+	}
+
 	public static void main(String[] args)
 	{
 		new SentenceAlgorithmApplier();
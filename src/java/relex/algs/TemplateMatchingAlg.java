@@ -17,6 +17,8 @@
 package relex.algs;
 
 import java.util.Map;
+import java.util.Set;
+
 import relex.feature.FeatureNode;
 import relex.feature.FeatureTemplate;
 
@@ -50,6 +52,16 @@ public abstract class TemplateMatchingAlg extends SentenceAlgorithm {
 		return template.match(node);
 	}
 
+	protected String getIndexFeature()
+	{
+		return template.getIndexFeature();
+	}
+
+	protected Set<String> getIndexValues()
+	{
+		return template.getIndexValues();
+	}
+
 	protected String getSignature()
 	{
 		return signature;
@@ -36,6 +36,8 @@ public class WordSequenceCombineAlg extends TemplateMatchingAlg
 
 	static String allLabelRegex = "(" + nameLabelRegex + ")|(" + entityOrIdiomLabelRegex + ")";
 
+	static Pattern allLabelPattern = Pattern.compile(allLabelRegex);
+
 	static int directionLeft = -1;
 
 	static int directionRight = 1;
@@ -43,7 +45,7 @@ public class WordSequenceCombineAlg extends TemplateMatchingAlg
 	/*
 	 * Finds the next node
 	 */
-	private FeatureNode nextNode(FeatureNode node, int dir, String labelRegex)
+	private FeatureNode nextNode(FeatureNode node, int dir, Pattern labelRegex)
 	{
  		// Iterate on right links.
  		int nl = LinkableView.numLinks(node, dir);
@@ -51,18 +53,18 @@ public class WordSequenceCombineAlg extends TemplateMatchingAlg
 		{
 			FeatureNode fn = LinkableView.getLink(node, dir, i);
 			String label = LinkView.getLabel(fn, 0);
-			if (Pattern.matches(labelRegex, label))
+			if (labelRegex.matcher(label).matches())
 				return (dir == directionLeft ? LinkView.getLeft(fn) : LinkView.getRight(fn));
 		}
 		return null;
 	}
 
-	private boolean isRightMost(FeatureNode node, String labelRegex)
+	private boolean isRightMost(FeatureNode node, Pattern labelRegex)
 	{
 		return nextNode(node, directionRight, labelRegex) == null;
 	}
 
-	private FeatureNode getLeftMost(FeatureNode node, String labelRegex)
+	private FeatureNode getLeftMost(FeatureNode node, Pattern labelRegex)
 	{
 		FeatureNode next = nextNode(node, directionLeft, labelRegex);
 		if (next == null)
@@ -71,7 +73,7 @@ public class WordSequenceCombineAlg extends TemplateMatchingAlg
 	}
 
 	private String collectNames(FeatureNode current, FeatureNode rightNode,
-	                    String labelRegex, boolean shouldEraseStrAndRef)
+	                    Pattern labelRegex, boolean shouldEraseStrAndRef)
 	{
 		String name = current.get("str").getValue();
 
@@ -112,12 +114,12 @@ public class WordSequenceCombineAlg extends TemplateMatchingAlg
 		FeatureNode rightNode = getTemplate().val("right", vars);
 		if (rightNode != LinkView.getRight(node))
 			throw new RuntimeException("variable 'right' is not properly assigned");
-		if (!isRightMost(rightNode, allLabelRegex))
+		if (!isRightMost(rightNode, allLabelPattern))
 			return;
 
-		FeatureNode leftNode = getLeftMost(rightNode, allLabelRegex);
+		FeatureNode leftNode = getLeftMost(rightNode, allLabelPattern);
 
-		String bigName = collectNames(leftNode, rightNode, allLabelRegex, true);
+		String bigName = collectNames(leftNode, rightNode, allLabelPattern, true);
 		FeatureNode bigNameF = new FeatureNode(bigName);
 		rightNode.get("ref").set("name", bigNameF);
 
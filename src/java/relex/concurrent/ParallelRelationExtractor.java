@@ -19,125 +19,641 @@ package relex.concurrent;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 
+import relex.CommandLineArgParser;
 import relex.algs.SentenceAlgorithmApplier;
 import relex.corpus.DocSplitter;
 import relex.corpus.DocSplitterFactory;
+import relex.corpus.DocSplitterOpenNLP15Impl;
 import relex.morphy.Morphy;
 import relex.morphy.MorphyFactory;
-import relex.parser.RemoteLGParser;
-
-public class ParallelRelationExtractor {
+import relex.parser.LGParser;
+import relex.parser.LocalLGParser;
+import relex.parser.PooledLGParser;
 
+/**
+ * Processes sentences on several threads at once, returning the
+ * results in the order in which the sentences were submitted (or,
+ * optionally, in the order in which they are done).
+ *
+ * Each worker thread has its own RelexContext, created the first
+ * time the thread is used.  By default, the parser is a LocalLGParser,
+ * so that a single JVM will use as many cores as there are workers.
+ * Alternately, the workers may share a PooledLGParser, which sends
+ * each sentence to the least busy of a farm of link-grammar servers;
+ * by default, one per worker, at FIRST_PORT, FIRST_PORT+1, and so on
+ * (see setServers()).
+ * The Morphy and the SentenceAlgorithmApplier are shared by all the
+ * workers.
+ *
+ * Parsing time grows much faster than sentence length, so sentences
+ * wait for a worker in one of two lanes: long and short.  Each lane
+ * is served in order of submission, by the same workers, but only
+ * so many workers (setMaxLongThreads()) may be on long sentences at
+ * once; the rest stay free for the short ones, which thus never wait
+ * behind a run of long ones.  A sentence is long if it has at least
+ * setLongSentenceTokens() words, or, with setLongSentenceMillis(), if
+ * sentences of about its length have been taking at least that long.
+ *
+ * The results that are done out of turn wait in a reorder buffer
+ * until the earlier ones have been taken.  A consumer that has no
+ * need of the order can call setOrdered(false), and take each result
+ * as soon as it is done; its index tells where it belongs.  (In
+ * order, a short sentence still waits for the long ones pushed before
+ * it, so the lanes help most when the results are taken unordered.)
+ *
+ * At most maxInFlight sentences are submitted but not yet taken;
+ * push() blocks beyond that, so that a fast producer cannot fill
+ * memory with results that a slow consumer has not yet gotten to.
+ */
+public class ParallelRelationExtractor implements Iterable<RelexTaskResult>
+{
 	private static final String DEFAULT_HOST = "localhost";
 	public static final int FIRST_PORT = 9000;
 	public static final int CLIENT_POOL_SIZE = 1;
+	public static final int DEFAULT_LONG_TOKENS = 40;
+
+	/** Sentence lengths are grouped this many words to a bucket */
+	private static final int HISTORY_BUCKET_TOKENS = 4;
+	private static final int HISTORY_BUCKETS = 32;
+
+	/** Sentences timed in a bucket before its average is used */
+	private static final int HISTORY_MIN_SAMPLES = 8;
 
-    private ExecutorService exec;
+	private Thread[] workers;
 
-	private BlockingQueue<RelexContext> pool;
+	/**
+	 * The sentences waiting for a worker, in order of submission.
+	 * The lanes, and everything about them below, are guarded by
+	 * the lock on the lanes object.
+	 */
+	private final Object lanes = new Object();
+	private LinkedList<Job> shortLane = new LinkedList<Job>();
+	private LinkedList<Job> longLane = new LinkedList<Job>();
+	private int longRunning = 0;
+	private int maxLong;
+	private int longTokens = DEFAULT_LONG_TOKENS;
+	private long longMillis = 0;
+	private int numLong = 0;
 
+	/** Sentences timed, and their total time, by length bucket */
+	private long[] historyCount = new long[HISTORY_BUCKETS];
+	private long[] historyNanos = new long[HISTORY_BUCKETS];
+
+	/** The results, in order of submission */
 	private LinkedBlockingQueue<Future<RelexTaskResult>> results;
 
+	/** The results, in order of completion; used if not ordered */
+	private LinkedBlockingQueue<Future<RelexTaskResult>> completed;
+
+	private boolean ordered = true;
+
+	/** Sentences pushed, but not done */
+	private int unfinished = 0;
+
+	/** Marks the end of the results, once shutdown() is called */
+	private Future<RelexTaskResult> endOfResults;
+
+	private Semaphore inFlight;
+
 	public int count = 0;
 
-	private boolean stop;
+	private volatile boolean stop;
+
+	private int numThreads;
+	private boolean useSocket;
+	private String servers;
+	private PooledLGParser pool;
+
+	/** Worker threads that have not yet ended */
+	private int liveWorkers;
+	private int maxParses = 1;
+	private long maxSentenceMillis = 0;
+
+	/** The context of each worker thread */
+	private ThreadLocal<RelexContext> contexts;
 
 	// Thread-safe processors
-	/** Syntactic processing */
-//	private LinkParser linkParser;
+	private Morphy morphy;
 
 	/** Semantic (RelEx) processing */
 	private SentenceAlgorithmApplier sentenceAlgorithmApplier;
 
+	/**
+	 * A sentence, from the time it is pushed until its result is
+	 * taken.
+	 */
+	private class Job extends FutureTask<RelexTaskResult>
+	{
+		final int index;
+		final int tokens;
+		final boolean isLong;
+
+		Job(Callable<RelexTaskResult> c, int index, int tokens, boolean isLong)
+		{
+			super(c);
+			this.index = index;
+			this.tokens = tokens;
+			this.isLong = isLong;
+		}
+
+		protected void done()
+		{
+			if (!ordered) completed.add(this);
+			synchronized (ParallelRelationExtractor.this)
+			{
+				unfinished--;
+				if (!ordered && stop && unfinished == 0)
+					completed.add(endOfResults);
+			}
+		}
+	}
+
+	/**
+	 * A single worker, using the link-grammar server at FIRST_PORT.
+	 */
 	public ParallelRelationExtractor()
 	{
-		initializePool();
+		this(CLIENT_POOL_SIZE, true);
+	}
+
+	/**
+	 * @param threads   The number of worker threads.
+	 * @param useSocket If true, the workers use link-grammar servers
+	 *                  on ports FIRST_PORT, FIRST_PORT+1, ...;
+	 *                  else, each parses in-process.
+	 */
+	public ParallelRelationExtractor(int threads, boolean useSocket)
+	{
+		this(threads, useSocket, 2 * threads);
+	}
+
+	/**
+	 * @param maxInFlight The number of sentences that may be submitted
+	 *                    but not yet taken, before push() blocks.
+	 */
+	public ParallelRelationExtractor(int threads, boolean useSocket, int maxInFlight)
+	{
+		if (threads < 1 || maxInFlight < 1)
+			throw new RuntimeException("Error: need at least one worker thread " +
+				"and one sentence in flight");
+		numThreads = threads;
+		maxLong = (threads + 1) / 2;
+		this.useSocket = useSocket;
+		inFlight = new Semaphore(maxInFlight);
 		results = new LinkedBlockingQueue<Future<RelexTaskResult>>();
-//		linkParser = new LinkParser();
+		completed = new LinkedBlockingQueue<Future<RelexTaskResult>>();
+		FutureTask<RelexTaskResult> end = new FutureTask<RelexTaskResult>(new Callable<RelexTaskResult>()
+		{
+			public RelexTaskResult call() { return null; }
+		});
+		end.run();
+		endOfResults = end;
+
+		initializePool();
 		sentenceAlgorithmApplier = new SentenceAlgorithmApplier();
 	}
 
 	/**
-	 * Initialize the pool of LinkParserClients, creating
-	 * CLIENT_POOL_SIZE instances, which connects to ports FIRST_PORT,
-	 * FIRST_PORT+1, ..., FIRST_PORT+(CLIENT_POOL_SIZE-1)
+	 * Create the worker threads. The parser of each is created the
+	 * first time the thread runs a task.
 	 */
 	private void initializePool()
 	{
-		exec = Executors.newFixedThreadPool(CLIENT_POOL_SIZE); // thread pool
-		pool = new ArrayBlockingQueue<RelexContext>(CLIENT_POOL_SIZE);
-		Morphy morphy = MorphyFactory.getImplementation(MorphyFactory.DEFAULT_MULTI_THREAD_IMPLEMENTATION);
-		morphy.initialize();
+		morphy = MorphyFactory.getImplementation(MorphyFactory.DEFAULT_MULTI_THREAD_IMPLEMENTATION);
+
+		contexts = new ThreadLocal<RelexContext>()
+		{
+			protected RelexContext initialValue()
+			{
+				return createContext();
+			}
+		};
+
+		workers = new Thread[numThreads];
+		liveWorkers = numThreads;
+		for (int i = 0; i < numThreads; i++)
+		{
+			workers[i] = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					work();
+				}
+			}, "relex-worker-" + i);
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+
+	private RelexContext createContext()
+	{
+		LGParser parser;
+		if (useSocket)
+		{
+			parser = getPool();
+		}
+		else
+		{
+			parser = new LocalLGParser();
+		}
+		parser.getConfig().setMaxLinkages(maxParses);
+		return new RelexContext(parser, morphy);
+	}
+
+	/**
+	 * The parser pool shared by the workers, when using link-grammar
+	 * servers.
+	 */
+	private synchronized PooledLGParser getPool()
+	{
+		if (pool == null)
+		{
+			String s = servers;
+			if (s == null)
+				s = DEFAULT_HOST + ":" + FIRST_PORT + "-" + (FIRST_PORT + numThreads - 1);
+			pool = new PooledLGParser(s);
+		}
+		return pool;
+	}
+
+	/**
+	 * Set the link-grammar servers to use, as host:port or
+	 * host:first-last, separated by commas; see PooledLGParser.
+	 * Must be called before the first sentence is pushed.
+	 */
+	public synchronized void setServers(String servers)
+	{
+		this.servers = servers;
+	}
+
+	/**
+	 * Set the number of parses to generate per sentence; must be
+	 * called before the first sentence is pushed.
+	 */
+	public void setMaxParses(int maxParses)
+	{
+		this.maxParses = maxParses;
+	}
+
+	/**
+	 * Set the time allowed for each sentence, from when a worker
+	 * starts on it, in millisecs; zero (the default) for no limit.
+	 * See RelexTask.setMaxMillis().
+	 */
+	public void setMaxSentenceMillis(long millis)
+	{
+		maxSentenceMillis = millis;
+	}
+
+	/**
+	 * If false, take() returns the results as soon as they are done,
+	 * rather than in order of submission.  Must be called before the
+	 * first sentence is pushed.
+	 */
+	public synchronized void setOrdered(boolean ordered)
+	{
+		if (0 < count)
+			throw new RuntimeException("Error: the order of the results " +
+				"must be set before the first sentence is pushed");
+		this.ordered = ordered;
+	}
+
+	public boolean isOrdered()
+	{
+		return ordered;
+	}
+
+	/**
+	 * Sentences with at least this many words are long.
+	 * Default: DEFAULT_LONG_TOKENS.
+	 */
+	public void setLongSentenceTokens(int tokens)
+	{
+		synchronized (lanes)
+		{
+			longTokens = tokens;
+		}
+	}
+
+	/**
+	 * Go by the time sentences have been taking, instead of their
+	 * word count, once there is enough history: a sentence is long if
+	 * the sentences of about its length have been taking, on average,
+	 * at least this many millisecs.  Zero (the default) to go by the
+	 * word count only.
+	 */
+	public void setLongSentenceMillis(long millis)
+	{
+		synchronized (lanes)
+		{
+			longMillis = millis;
+		}
+	}
+
+	/**
+	 * Set the max number of workers that may be working on long
+	 * sentences at once; by default, half of them, rounded up.
+	 */
+	public void setMaxLongThreads(int n)
+	{
+		synchronized (lanes)
+		{
+			maxLong = Math.max(1, Math.min(n, numThreads));
+			lanes.notifyAll();
+		}
+	}
+
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+
+	/**
+	 * Number of sentences that have gone through the long lane.
+	 */
+	public int getNumLong()
+	{
+		synchronized (lanes)
+		{
+			return numLong;
+		}
+	}
+
+	/**
+	 * The number of words in the sentence; that is, of runs of
+	 * non-blank characters.
+	 */
+	static int countTokens(String sentence)
+	{
+		int n = 0;
+		boolean inWord = false;
+		for (int i = 0; i < sentence.length(); i++)
+		{
+			boolean blank = Character.isWhitespace(sentence.charAt(i));
+			if (!blank && !inWord) n++;
+			inWord = !blank;
+		}
+		return n;
+	}
+
+	private static int bucket(int tokens)
+	{
+		return Math.min(tokens / HISTORY_BUCKET_TOKENS, HISTORY_BUCKETS - 1);
+	}
 
-		for (int i = 0 ; i < CLIENT_POOL_SIZE; i++)
+	/** Call with the lanes locked */
+	private boolean isLong(int tokens)
+	{
+		if (0 < longMillis)
 		{
-//			LinkParserClient lpc = new LinkParserSocketClient(DEFAULT_HOST, FIRST_PORT+i);
-//			lpc.setAllowSkippedWords(true);
-			RemoteLGParser parser = new RemoteLGParser();
-			parser.getLinkGrammarClient().setHostname(DEFAULT_HOST);
-			parser.getLinkGrammarClient().setPort(FIRST_PORT+i);
-			RelexContext context = new RelexContext(parser, morphy);
-			try
+			int b = bucket(tokens);
+			if (HISTORY_MIN_SAMPLES <= historyCount[b])
+				return longMillis * 1000000L <= historyNanos[b] / historyCount[b];
+		}
+		return longTokens <= tokens;
+	}
+
+	/**
+	 * Wait for the next sentence to work on: the earliest one that
+	 * may be started.  Returns null once shutdown() has been called,
+	 * and there are no more.
+	 */
+	private Job nextJob() throws InterruptedException
+	{
+		synchronized (lanes)
+		{
+			while (true)
 			{
-				pool.put(context);
+				Job s = shortLane.peek();
+				Job l = (longRunning < maxLong) ? longLane.peek() : null;
+
+				// Both lanes are in order of submission, so the
+				// earlier of their heads is the one pushed first.
+				if (l != null && (s == null || l.index < s.index))
+				{
+					longLane.removeFirst();
+					longRunning++;
+					return l;
+				}
+				if (s != null)
+				{
+					shortLane.removeFirst();
+					return s;
+				}
+				if (stop && shortLane.isEmpty() && longLane.isEmpty())
+					return null;
+				lanes.wait();
 			}
-			catch (InterruptedException e)
+		}
+	}
+
+	private void work()
+	{
+		try
+		{
+			Job job = nextJob();
+			while (job != null)
 			{
+				long start = System.nanoTime();
+				job.run();
+				long elapsed = System.nanoTime() - start;
+				synchronized (lanes)
+				{
+					if (job.isLong)
+					{
+						longRunning--;
+						lanes.notifyAll();
+					}
+					int b = bucket(job.tokens);
+					historyCount[b]++;
+					historyNanos[b] += elapsed;
+				}
+				job = nextJob();
 			}
 		}
+		catch (InterruptedException e)
+		{
+			// Let the thread end.
+		}
+		finally
+		{
+			workerEnded();
+		}
+	}
+
+	/**
+	 * The last worker to end closes the parser pool, if one was made;
+	 * no more sentences can reach it by then.
+	 */
+	private void workerEnded()
+	{
+		PooledLGParser p;
+		synchronized (this)
+		{
+			if (--liveWorkers > 0) return;
+			p = pool;
+		}
+		if (p != null) p.close();
 	}
 
 	/**
-	 * Submit a new sentence to be processed, blocking if no resources
-	 * are available. Results are obtained calling take(), and are
-	 * returned in order of submission.
+	 * Submit a new sentence to be processed, blocking if too many are
+	 * already in flight. Results are obtained by calling take(), and
+	 * are returned in order of submission.
 	 *
 	 * @param sentence The sentence to be processed.
 	 * @throws InterruptedException
 	 */
 	public void push(String sentence) throws InterruptedException
 	{
-		RelexContext context = pool.take();
-		Callable<RelexTaskResult> callable =
-			new RelexTask(count++, sentence,
-					sentenceAlgorithmApplier, context, pool);
-		Future<RelexTaskResult> submit = exec.submit(callable);
-        results.add(submit);
+		inFlight.acquire();
+		synchronized (this)
+		{
+			if (stop)
+			{
+				inFlight.release();
+				throw new RuntimeException("Error: sentence pushed after shutdown");
+			}
+			final int index = count++;
+			final String sntc = sentence;
+			Callable<RelexTaskResult> callable = new Callable<RelexTaskResult>()
+			{
+				public RelexTaskResult call()
+				{
+					RelexTask task = new RelexTask(index, sntc,
+						sentenceAlgorithmApplier, contexts.get(), null);
+					task.setMaxMillis(maxSentenceMillis);
+					return task.call();
+				}
+			};
+			int tokens = countTokens(sentence);
+			unfinished++;
+			synchronized (lanes)
+			{
+				Job job = new Job(callable, index, tokens, isLong(tokens));
+				if (ordered) results.add(job);
+				if (job.isLong)
+				{
+					longLane.add(job);
+					numLong++;
+				}
+				else
+				{
+					shortLane.add(job);
+				}
+				lanes.notifyAll();
+			}
+		}
 	}
 
 	/**
-	 * Return the next result, in order of submission, or blocks until
-	 * it's ready
+	 * Return the next result, in order of submission (unless not
+	 * ordered), or block until it's ready.  Returns null once
+	 * shutdown() has been called, and all results have been taken.
 	 *
 	 * @return The next result
 	 * @throws InterruptedException
 	 * @throws ExecutionException
 	 */
-	protected RelexTaskResult take() throws InterruptedException, ExecutionException
+	public RelexTaskResult take() throws InterruptedException, ExecutionException
 	{
-		Future<RelexTaskResult> first = results.take();
-		RelexTaskResult taskResult = first.get();
+		LinkedBlockingQueue<Future<RelexTaskResult>> q = ordered ? results : completed;
+		Future<RelexTaskResult> first = q.take();
+		if (first == endOfResults)
+		{
+			// Leave it there for any other consumer.
+			q.add(endOfResults);
+			return null;
+		}
+		try
+		{
+			return first.get();
+		}
+		finally
+		{
+			inFlight.release();
+		}
+	}
+
+	/**
+	 * Iterates over the results, in the order of take(), blocking until
+	 * each is ready; ends once shutdown() has been called and all the
+	 * results have been delivered.
+	 */
+	public Iterator<RelexTaskResult> iterator()
+	{
+		return new Iterator<RelexTaskResult>()
+		{
+			private RelexTaskResult next;
+			private boolean done;
 
-		return taskResult;
+			public boolean hasNext()
+			{
+				if (next == null && !done)
+				{
+					try
+					{
+						next = take();
+					}
+					catch (InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+						throw new RuntimeException("Error: interrupted: " + e);
+					}
+					catch (ExecutionException e)
+					{
+						throw new RuntimeException("Error: " + e.getCause(), e);
+					}
+					done = (next == null);
+				}
+				return next != null;
+			}
+
+			public RelexTaskResult next()
+			{
+				if (!hasNext()) throw new NoSuchElementException();
+				RelexTaskResult r = next;
+				next = null;
+				return r;
+			}
+
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
 	}
 
 	/**
-	 * Stop accepting requests, and shutdown the thread pool after all
-	 * remaining requests are done.
+	 * Stop accepting requests; the worker threads end after all
+	 * remaining requests are done, and the last of them closes the
+	 * parser pool.
 	 */
-	public void shutdown()
+	public synchronized void shutdown()
 	{
+		if (stop) return;
 		stop = true;
-		exec.shutdown();
+		if (ordered) results.add(endOfResults);
+		else if (unfinished == 0) completed.add(endOfResults);
+
+		// Idle workers end once they find the lanes empty.
+		synchronized (lanes)
+		{
+			lanes.notifyAll();
+		}
 	}
 
 	/**
@@ -146,28 +662,109 @@ public class ParallelRelationExtractor {
 	 */
 	protected boolean isRunning()
 	{
-		return !stop || !results.isEmpty();
+		LinkedBlockingQueue<Future<RelexTaskResult>> q = ordered ? results : completed;
+		return !stop || q.peek() != endOfResults;
 	}
 
 	/**
-	 * Unit test. Read a text file and process its sentences in parallel.
-	 * Assumes link-grammar servers running on DEFAULT_HOST,
-	 * listening to ports FIRST_PORT, FIRST_PORT+1, ..., FIRST_PORT+(CLIENT_POOL_SIZE-1)
+	 * Read a text file and process its sentences in parallel, printing
+	 * the results in order (or, with --unordered, as they are done).
+	 * By default, uses one in-process parser per
+	 * core; with --remote, assumes link-grammar servers running on
+	 * DEFAULT_HOST, listening to ports FIRST_PORT, FIRST_PORT+1, ...
+	 * or else on the servers given with --servers.
 	 *
-	 * @param args The text file to be read
+	 * @param args The options, followed by the text file to be read
 	 * @throws IOException
 	 * @throws InterruptedException
 	 */
 	public static void main(final String[] args)
 		throws IOException, InterruptedException
 	{
+		String callString = "ParallelRelationExtractor" +
+			" [-t number of threads (default: one per core)]" +
+			" [-q max sentences in flight (default: twice the threads)]" +
+			" [-n max number of parses (default: 1)]" +
+			" [--maxSentenceMillis N (give up on a sentence after this long)]" +
+			" [--remote (use link-grammar servers on ports " + FIRST_PORT + "...)]" +
+			" [--servers host:port,... (use these link-grammar servers)]" +
+			" [--longTokens N (sentences of N words or more are long; default: " +
+				DEFAULT_LONG_TOKENS + ")]" +
+			" [--longThreads N (max threads on long sentences; default: half)]" +
+			" [--unordered (print the results as they are done)]" +
+			" filename";
+		HashSet<String> flags = new HashSet<String>();
+		flags.add("-h");
+		flags.add("--remote");
+		flags.add("--unordered");
+		HashSet<String> opts = new HashSet<String>();
+		opts.add("-t");
+		opts.add("-q");
+		opts.add("-n");
+		opts.add("--maxSentenceMillis");
+		opts.add("--servers");
+		opts.add("--longTokens");
+		opts.add("--longThreads");
+		Map<String,String> commandMap = CommandLineArgParser.parse(args, opts, flags);
+
+		int threads = Runtime.getRuntime().availableProcessors();
+		int queue = -1;
+		int maxParses = 1;
+		long timeout = 0;
+		int longTokens = DEFAULT_LONG_TOKENS;
+		int longThreads = -1;
+		try
+		{
+			String opt = commandMap.get("-t");
+			if (opt != null) threads = Integer.parseInt(opt);
+
+			opt = commandMap.get("-q");
+			if (opt != null) queue = Integer.parseInt(opt);
+
+			opt = commandMap.get("-n");
+			if (opt != null) maxParses = Integer.parseInt(opt);
+
+			opt = commandMap.get("--maxSentenceMillis");
+			if (opt != null) timeout = Long.parseLong(opt);
+
+			opt = commandMap.get("--longTokens");
+			if (opt != null) longTokens = Integer.parseInt(opt);
+
+			opt = commandMap.get("--longThreads");
+			if (opt != null) longThreads = Integer.parseInt(opt);
+		}
+		catch (Exception e)
+		{
+			System.err.println("Unrecognized parameter.");
+			System.err.println(callString);
+			return;
+		}
+		if (args.length == 0 || commandMap.get("-h") != null ||
+		    args[args.length - 1].startsWith("-"))
+		{
+			System.err.println(callString);
+			return;
+		}
+		final String filename = args[args.length - 1];
+		if (queue < 0) queue = 2 * threads;
+
 		long t = System.currentTimeMillis();
-		final ParallelRelationExtractor pre = new ParallelRelationExtractor();
+		final ParallelRelationExtractor pre = new ParallelRelationExtractor(
+			threads, commandMap.get("--remote") != null ||
+			commandMap.get("--servers") != null, queue);
+		if (commandMap.get("--servers") != null)
+			pre.setServers(commandMap.get("--servers"));
+		pre.setMaxParses(maxParses);
+		pre.setMaxSentenceMillis(timeout);
+		pre.setLongSentenceTokens(longTokens);
+		if (0 < longThreads) pre.setMaxLongThreads(longThreads);
+		if (commandMap.get("--unordered") != null) pre.setOrdered(false);
+		System.err.println("Info: " + threads + " worker threads");
 		System.err.println("Initialization time: "+((System.currentTimeMillis() - t)/1000)+" s");
 
 		final long xt = System.currentTimeMillis();
 		// Producer - submits sentences from a file
-		new Thread(new Runnable()
+		Thread producer = new Thread(new Runnable()
 		{
 			public void run()
 			{
@@ -176,23 +773,39 @@ public class ParallelRelationExtractor {
 				{
 					// Read entire file
 					StringBuilder sb = new StringBuilder();
-					BufferedReader in = new BufferedReader(new FileReader(args[0]));
+					BufferedReader in = new BufferedReader(new FileReader(filename));
 					String line = in.readLine();
 					while (line!=null){
-						sb.append(" "+line+" ");
+						// Keep the paragraph breaks; the splitter
+						// can cut the text there.
+						if (line.trim().length() == 0)
+							sb.append("\n\n");
+						else
+							sb.append(" "+line+" ");
 						line = in.readLine();
 					}
 					in.close();
 
 					// Break text into sentences and submit
-					ds.addText(sb.toString());
-					sb = null;
-
-					String sentence = ds.getNextSentence();
-					while (sentence!=null)
+					if (ds instanceof DocSplitterOpenNLP15Impl)
+					{
+						List<String> sentences =
+							((DocSplitterOpenNLP15Impl) ds).split(sb.toString(), pre.getNumThreads());
+						sb = null;
+						for (String sentence : sentences)
+							pre.push(sentence);
+					}
+					else
 					{
-						pre.push(sentence);
-						sentence = ds.getNextSentence();
+						ds.addText(sb.toString());
+						sb = null;
+
+						String sentence = ds.getNextSentence();
+						while (sentence!=null)
+						{
+							pre.push(sentence);
+							sentence = ds.getNextSentence();
+						}
 					}
 				}
 				catch (Exception e)
@@ -200,26 +813,22 @@ public class ParallelRelationExtractor {
 					e.printStackTrace();
 				}
 				pre.shutdown(); // end all threads in the pool after finishing all requests
-		}}).start();
+		}});
+		// Don't keep the JVM alive if the consumer gives up.
+		producer.setDaemon(true);
+		producer.start();
 
 		// Consumer - print the results, in the original order
-		new Thread(new Runnable()
+		// unless --unordered
+		int n = 0;
+		for (RelexTaskResult result : pre)
 		{
-			public void run()
-			{
-				try
-				{
-					while (pre.isRunning())
-					{
-						System.err.println(pre.take());
-					}
-				}
-				catch (Exception e)
-				{
-					e.printStackTrace();
-				}
-				System.err.println("Elapsed time: "+((System.currentTimeMillis() - xt)/1000)+" s");
-			}
-		}).start();
+			System.out.println(result);
+			n++;
+		}
+		long elapsed = System.currentTimeMillis() - xt;
+		System.err.println("Elapsed time: " + (elapsed/1000) + " s, " + n +
+			" sentences, " + (elapsed / Math.max(n, 1)) + " ms per sentence");
+		System.err.println("Info: " + pre.getNumLong() + " long sentences");
 	}
 }
@@ -16,6 +16,7 @@
 
 package relex.concurrent;
 
+import relex.Deadline;
 import relex.morphy.Morphy;
 import relex.parser.IParser;
 
@@ -25,6 +26,9 @@ public class RelexContext
 	private IParser parser;
 	private Morphy morphy;
 
+	/** The deadline of the sentence being processed */
+	private Deadline deadline = Deadline.NONE;
+
 /*	public LinkParserClient getLinkParserClient() {
 		return linkParserClient;
 	}
@@ -46,6 +50,20 @@ public class RelexContext
 		this.morphy = morphy;
 	}
 
+	public Deadline getDeadline()
+	{
+		return deadline;
+	}
+
+	/**
+	 * Set the deadline of the sentence about to be processed; the
+	 * RelEx algs check it as they go.  Null means no deadline.
+	 */
+	public void setDeadline(Deadline d)
+	{
+		deadline = (d == null) ? Deadline.NONE : d;
+	}
+
 	public RelexContext() {
 	}
 
@@ -19,13 +19,17 @@ package relex.concurrent;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 
+import relex.Deadline;
 import relex.ParsedSentence;
 import relex.Sentence;
 import relex.algs.SentenceAlgorithmApplier;
+import relex.parser.IParser;
+import relex.parser.LGParser;
 
 /**
  * Processes a sentence using the given LinkParserClient. When processing is
- * finished, returns the LPC to the pool.
+ * finished, returns the LPC to the pool, if there is one; the pool may be
+ * null if the context belongs to the calling thread.
  *
  * @author muriloq
  */
@@ -43,6 +47,9 @@ public class RelexTask implements Callable<RelexTaskResult>
 	private RelexContext context;
 	private BlockingQueue<RelexContext> pool;
 
+	// Time allowed, from the start of call(); zero for no limit
+	private long maxMillis = 0;
+
 	public RelexTask(int index, String sentence,
 			SentenceAlgorithmApplier sentenceAlgorithmApplier,
 			RelexContext context, BlockingQueue<RelexContext> pool){
@@ -53,15 +60,34 @@ public class RelexTask implements Callable<RelexTaskResult>
 		this.sentence = sentence;
 	}
 
+	/**
+	 * Give up on the RelEx algs once this many millisecs have gone
+	 * by since the start of call(); the sentence is then returned
+	 * marked as timed out (see Sentence.isTimedOut()).  The parse is
+	 * held to the same time, see LGParser.parse(String, Deadline).
+	 */
+	public void setMaxMillis(long millis)
+	{
+		maxMillis = millis;
+	}
+
 	public RelexTaskResult call()
 	{
 		try
 		{
 			if (DEBUG > 0) System.err.println("[" + index + "] Start processing "+ sentence);
+			Deadline deadline = Deadline.orNone(maxMillis);
 			Sentence sntc = null;
 			try {
-				sntc = context.getParser().parse(sentence);//, context.getLinkParserClient());
+				IParser parser = context.getParser();
+				if (parser instanceof LGParser)
+					sntc = ((LGParser) parser).parse(sentence, deadline);
+				else
+					sntc = parser.parse(sentence);
 			} catch (RuntimeException ex) {
+				sntc = null;
+			}
+			if (sntc == null) {
 				sntc = new Sentence();
 				sntc.setSentence(sentence);
 			}
@@ -69,17 +95,35 @@ public class RelexTask implements Callable<RelexTaskResult>
 			if (DEBUG > 0) System.err.println("[" + index + "] End parsing");
 
 			int i = 0;
-			for (ParsedSentence parse : sntc.getParses())
+			context.setDeadline(deadline);
+			try
 			{
-				try {
-					// The actual relation extraction is done here.
-					sentenceAlgorithmApplier.applyAlgs(parse, context);
-				} catch (Exception e) {
-					e.printStackTrace();
+				deadline.check("parse");
+				for (ParsedSentence parse : sntc.getParses())
+				{
+					try {
+						// The actual relation extraction is done here.
+						sentenceAlgorithmApplier.applyAlgs(parse, context);
+					} catch (Deadline.Exceeded e) {
+						throw e;
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+					i++;
+					if (DEBUG > 0)
+						System.err.println("[" + index+ "] end post-processing sentence " +
+								i + "/"+ sntc.getParses().size());
 				}
-				if (DEBUG > 0)
-					System.err.println("[" + index+ "] end post-processing sentence " +
-							(i++) + "/"+ sntc.getParses().size());
+			}
+			catch (Deadline.Exceeded e)
+			{
+				sntc.markTimedOut(i);
+				System.err.println("Warning: [" + index + "] " + e.getMessage() +
+					": " + sentence);
+			}
+			finally
+			{
+				context.setDeadline(Deadline.NONE);
 			}
 			return new RelexTaskResult(index, sentence, sntc);
 		}
@@ -87,10 +131,12 @@ public class RelexTask implements Callable<RelexTaskResult>
 		{
 			if (DEBUG > 0)
 				System.err.println("[" + index + "] End processing");
-			try {
-				pool.put(context);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
+			if (pool != null) {
+				try {
+					pool.put(context);
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
 			}
 			if (DEBUG > 0) System.err.println("[" + index + "] Release resources");
 		}
@@ -25,7 +25,15 @@ import java.io.FileInputStream;
 import java.io.InputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * DocSplitterOpenNLP15Impl -- split document into sentences.
@@ -53,14 +61,59 @@ public class DocSplitterOpenNLP15Impl implements DocSplitter
 		unacceptableSentenceEnds.add("Mr.");
 	}
 
-	private static SentenceDetectorME detector;
+	// The model is loaded once, and shared; the detectors made from it
+	// are not thread-safe, so each thread gets its own.
+	private static SentenceModel model;
+	private static final ThreadLocal<SentenceDetectorME> detector =
+		new ThreadLocal<SentenceDetectorME>()
+		{
+			protected SentenceDetectorME initialValue()
+			{
+				return new SentenceDetectorME(model);
+			}
+		};
+
+	// When splitting in parallel, the text is cut into pieces at
+	// least this big.
+	private static final int MIN_CHUNK = 64 * 1024;
 
 	// Returned values
 	private ArrayList<TextInterval> lst;
 	private ArrayList<String> snl;
 
-	// Buffered text, for FIFO mode.
-	private String buffer;
+	// Buffered text, for FIFO mode.  The text before bufferStart has
+	// already been returned; it is dropped once it is more than half
+	// of the buffer.  A null buffer means that no text has been added.
+	private StringBuilder buffer;
+	private int bufferStart;
+
+	// The buffer has been scanned for sentence-ending punctuation up
+	// to scanned; the last such character found is at lastPunct.
+	private int scanned;
+	private int lastPunct;
+
+	// The end of the last window that was searched without finding a
+	// sentence, and the value of lastPunct at the time; -1 if none.
+	private int failedEnd;
+	private int failedPunct;
+
+	// The sentence detector is run over a window of the buffer, rather
+	// than all of it.  The window starts out this size, and is doubled
+	// for sentences that don't fit.
+	private static final int WINDOW = 2048;
+
+	// The last window given to the detector, where it starts in the
+	// buffer, the spans found in it, the next span to look at, and
+	// the last point at which the spans can be trusted.
+	private String window;
+	private int windowStart;
+	private Span[] windowSpans;
+	private int nextSpan;
+	private int windowMaxEnd;
+
+	// A sentence end is only trusted if the detector got to see at
+	// least this much of the text that follows it.
+	private static final int CONTEXT = 128;
 
 	// parameters
 	private String englishModelFilename;
@@ -74,39 +127,49 @@ public class DocSplitterOpenNLP15Impl implements DocSplitter
 
 	public boolean operational()
 	{
-		if (detector == null) return false;
+		if (model == null) return false;
 		return true;
 	}
 
+	private static Span[] detect(String text)
+	{
+		return detector.get().sentPosDetect(text);
+	}
+
 	private void initialize()
 	{
-		if (detector == null)
+		synchronized (DocSplitterOpenNLP15Impl.class)
 		{
-			try
-			{
-				if (englishModelFilename == null)
-					englishModelFilename = System.getProperty("EnglishModelFilename");
-				if (englishModelFilename == null || englishModelFilename.length() == 0)
-					englishModelFilename = DEFAULT_ENGLISH_FILENAME;
+			if (model == null) loadDetector();
+		}
+	}
 
-			}
-			catch (Exception e)
-			{
-				// e.printStackTrace();
-				System.err.println(e.getMessage());
-			}
+	private void loadDetector()
+	{
+		try
+		{
+			if (englishModelFilename == null)
+				englishModelFilename = System.getProperty("EnglishModelFilename");
+			if (englishModelFilename == null || englishModelFilename.length() == 0)
+				englishModelFilename = DEFAULT_ENGLISH_FILENAME;
 
-			try
-			{
-				InputStream modelIn = new FileInputStream(englishModelFilename);
-				SentenceModel model = new SentenceModel(modelIn);
-				modelIn.close();
-				detector = new SentenceDetectorME(model);
-			}
-			catch (IOException e)
-			{
-				System.err.println(e.getMessage());
-			}
+		}
+		catch (Exception e)
+		{
+			// e.printStackTrace();
+			System.err.println(e.getMessage());
+		}
+
+		try
+		{
+			InputStream modelIn = new FileInputStream(englishModelFilename);
+			SentenceModel m = new SentenceModel(modelIn);
+			modelIn.close();
+			model = m;
+		}
+		catch (IOException e)
+		{
+			System.err.println(e.getMessage());
 		}
 	}
 
@@ -159,8 +222,13 @@ public class DocSplitterOpenNLP15Impl implements DocSplitter
 	 */
 	public void addText(String newText)
 	{
-		if (null == buffer) buffer = "";
-		buffer += newText;
+		if (null == buffer) clearBuffer();
+
+		// A break found at the very end of the text may not hold up,
+		// now that there is more.
+		if (window != null && windowStart + window.length() == buffer.length())
+			window = null;
+		buffer.append(newText);
 	}
 
 	/**
@@ -168,41 +236,136 @@ public class DocSplitterOpenNLP15Impl implements DocSplitter
 	 */
 	public void clearBuffer()
 	{
-		buffer = null;
+		buffer = new StringBuilder();
+		bufferStart = 0;
+		scanned = 0;
+		lastPunct = -1;
+		failedEnd = -1;
+		failedPunct = -1;
+		window = null;
 	}
 
 	/**
 	 * Get the next sentence out of the buffered text.
 	 * Return null if there are no complete sentences in the buffer.
+	 *
+	 * This takes time proportional to the length of the sentence, not
+	 * of the buffer: the detector only looks at a window of text after
+	 * the previous sentence, and only once there is a full stop, or a
+	 * question or exclamation mark, that might end a sentence.
 	 */
 	public String getNextSentence()
 	{
+		if (buffer == null) return null;
+
 		// punt if no sentence detector
-		if (detector == null)
+		if (model == null)
 		{
-			String rc = buffer;
+			String rc = buffer.substring(bufferStart);
 			buffer = null;
 			return rc;
 		}
 
-		Span spans[] = detector.sentPosDetect(buffer);
-		if (0 == spans.length) return null;
+		// Use up the sentences found by the last run of the detector.
+		if (window != null)
+		{
+			if (nextInWindow()) return trimmedSentence;
+			window = null;
+		}
 
-		start = 0;
-		for (Span span : spans)
+		// Only a break after punctuation is acceptable, so don't
+		// bother the detector until there is some.
+		int len = buffer.length();
+		for (int i = Math.max(scanned, bufferStart); i < len; i++)
 		{
-			end = span.getEnd();
-			if (foundSentence(buffer)) break;
+			char c = buffer.charAt(i);
+			if (c == '.' || c == '?' || c == '!') lastPunct = i;
 		}
-		if (!foundSentence(buffer)) return null;
+		scanned = len;
+		if (lastPunct < bufferStart) return null;
+
+		// The detector needs some of the text after the punctuation,
+		// but not more.
+		int limit = (int) Math.min(len, lastPunct + 1L + CONTEXT);
+
+		// Nothing new since the last fruitless search.
+		if (failedEnd == limit && failedPunct == lastPunct) return null;
+
+		int size = WINDOW;
+		while (true)
+		{
+			int windowEnd = (int) Math.min(limit, (long) bufferStart + size);
+			window = buffer.substring(bufferStart, windowEnd);
+			windowStart = bufferStart;
+			windowSpans = detect(window);
+			nextSpan = 0;
+
+			// Unless the window reaches the end of the buffer, a break
+			// close to the end of the window might be moved once the
+			// detector sees more of the text.
+			windowMaxEnd = window.length();
+			if (windowEnd < len) windowMaxEnd -= CONTEXT;
+
+			if (nextInWindow())
+			{
+				failedEnd = -1;
+				return trimmedSentence;
+			}
+			window = null;
+			if (windowEnd == limit)
+			{
+				failedEnd = limit;
+				failedPunct = lastPunct;
+				return null;
+			}
+			size *= 2;
+		}
+	}
+
+	/**
+	 * Finds the next acceptable sentence among the spans of the
+	 * current window, and removes it from the buffer.
+	 */
+	private boolean nextInWindow()
+	{
+		start = bufferStart - windowStart;
+		while (nextSpan < windowSpans.length)
+		{
+			end = windowSpans[nextSpan].getEnd();
+			if (windowMaxEnd < end) return false;
+			nextSpan++;
+
+			// Skip what has already been returned.
+			if (end <= start) continue;
+			if (foundSentence(window))
+			{
+				bufferStart = windowStart + trimmedEnd;
+				compact();
+				return true;
+			}
+		}
+		return false;
+	}
 
-		buffer = buffer.substring(trimmedEnd);
-		return trimmedSentence;
+	/**
+	 * Drop the text that has been returned already, once it makes up
+	 * most of the buffer; this keeps the cost of the copying linear.
+	 */
+	private void compact()
+	{
+		if (bufferStart < WINDOW || bufferStart < buffer.length() / 2)
+			return;
+		buffer.delete(0, bufferStart);
+		scanned -= bufferStart;
+		lastPunct -= bufferStart;
+		windowStart -= bufferStart;
+		bufferStart = 0;
 	}
 
 	public String getRemainder()
 	{
-		String s = buffer;
+		if (buffer == null) return null;
+		String s = buffer.substring(bufferStart);
 		buffer = null;
 		return s;
 	}
@@ -232,7 +395,7 @@ public class DocSplitterOpenNLP15Impl implements DocSplitter
 	 */
 	public ArrayList<TextInterval> process(String docText)
 	{
-		_process(docText);
+		_process(docText, 1);
 		return lst;
 	}
 
@@ -242,37 +405,191 @@ public class DocSplitterOpenNLP15Impl implements DocSplitter
 	 */
 	public ArrayList<String> split(String docText)
 	{
-		_process(docText);
+		_process(docText, 1);
 		return snl;
 	}
 
-	private void _process(String docText)
+	/**
+	 * Split a document text string into sentences, using up to
+	 * nThreads threads.  The result is the same as that of
+	 * process(docText).
+	 */
+	public ArrayList<TextInterval> process(String docText, int nThreads)
+	{
+		_process(docText, nThreads);
+		return lst;
+	}
+
+	/**
+	 * Split a document text string into sentences, using up to
+	 * nThreads threads.  The result is the same as that of
+	 * split(docText).
+	 */
+	public ArrayList<String> split(String docText, int nThreads)
+	{
+		_process(docText, nThreads);
+		return snl;
+	}
+
+	private void _process(String docText, int nThreads)
 	{
 		lst = new ArrayList<TextInterval>();
 		snl = new ArrayList<String>();
 		if (docText == null) return;
 
-		Span spans[] = detector.sentPosDetect(buffer);
+		List<Span> spans;
+		if (model == null)
+			spans = Arrays.asList(new Span(0, docText.length()));
+		else if (nThreads < 2 || docText.length() < 2 * MIN_CHUNK)
+			spans = Arrays.asList(detect(docText));
+		else
+			spans = detectParallel(docText, nThreads);
 
+		// Spans that don't end in an acceptable break are joined up
+		// with the ones that follow.
 		start = 0;
 		end = 0;
 		for (Span span : spans)
 		{
-			int sentenceEnd = span.getEnd();
-			int prevstart = start;
-			start = end; // from previous loop iteration
-			end = sentenceEnd;
-			if (!foundSentence(docText))
-			{
-				// go back to previous start
-				start = prevstart;
-				end = prevstart;
-				continue;
-			}
+			end = span.getEnd();
+			if (!foundSentence(docText)) continue;
 
 			if (DEBUG > 0) System.out.println(start + "," + end + ": " + trimmedSentence);
 			lst.add(new TextInterval(trimmedStart, trimmedEnd));
 			snl.add(trimmedSentence);
+			start = end;
+		}
+	}
+
+	/* --------------------------------------------------------------- */
+	/**
+	 * Cuts the text into pieces at paragraph breaks, runs the detector
+	 * on each piece in a thread of its own, and then puts the spans
+	 * back together.
+	 *
+	 * The detector treats the end of its text as the end of a sentence,
+	 * and so the spans next to each cut are not to be trusted.  They
+	 * are replaced by running the detector once more, over the text
+	 * from the last trusted break before the cut to the first trusted
+	 * break after it.  A break is trusted if the detector saw at least
+	 * CONTEXT chars of text after it.
+	 */
+	private static List<Span> detectParallel(final String docText, int nThreads)
+	{
+		int len = docText.length();
+		int chunk = Math.max(MIN_CHUNK, len / (2 * nThreads));
+
+		List<Integer> cuts = new ArrayList<Integer>();
+		cuts.add(0);
+		int cut = paragraphBreak(docText, chunk);
+		while (cut < len)
+		{
+			cuts.add(cut);
+			cut = paragraphBreak(docText, cut + chunk);
+		}
+		cuts.add(len);
+		if (cuts.size() == 2)
+			return Arrays.asList(detect(docText));
+
+		ExecutorService exec = Executors.newFixedThreadPool(
+			Math.min(nThreads, cuts.size() - 1), new ThreadFactory()
+			{
+				public Thread newThread(Runnable r)
+				{
+					Thread t = new Thread(r, "relex-splitter");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		List<Future<Span[]>> pieces = new ArrayList<Future<Span[]>>();
+		try
+		{
+			for (int i = 0; i + 1 < cuts.size(); i++)
+			{
+				final int from = cuts.get(i);
+				final int to = cuts.get(i + 1);
+				pieces.add(exec.submit(new Callable<Span[]>()
+				{
+					public Span[] call()
+					{
+						return detect(docText.substring(from, to));
+					}
+				}));
+			}
+
+			List<Span> all = new ArrayList<Span>();
+			for (int i = 0; i < pieces.size(); i++)
+			{
+				Span[] piece = pieces.get(i).get();
+				int from = cuts.get(i);
+				int to = cuts.get(i + 1);
+
+				// The last trusted break before the cut.
+				int keep = all.size();
+				while (0 < keep && from - CONTEXT < all.get(keep - 1).getEnd())
+					keep--;
+				int seamStart = (0 < keep) ? all.get(keep - 1).getEnd() : 0;
+
+				// The first trusted break after it.
+				int next = 0;
+				while (next < piece.length && piece[next].getEnd() < CONTEXT)
+					next++;
+				int seamEnd = to;
+				if (next < piece.length - 1)
+					seamEnd = piece[next].getEnd() + from;
+				else
+					next = piece.length - 1;
+
+				all.subList(keep, all.size()).clear();
+				if (0 < from)
+					addSpans(all, detect(docText.substring(seamStart, seamEnd)), seamStart);
+				else
+					next = -1;
+				for (int j = next + 1; j < piece.length; j++)
+					all.add(new Span(piece[j].getStart() + from, piece[j].getEnd() + from));
+			}
+			return all;
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Error: interrupted while splitting text");
+		}
+		catch (ExecutionException e)
+		{
+			throw new RuntimeException("Error: " + e.getCause(), e.getCause());
+		}
+		finally
+		{
+			exec.shutdown();
+		}
+	}
+
+	private static void addSpans(List<Span> all, Span[] spans, int offset)
+	{
+		for (Span span : spans)
+			all.add(new Span(span.getStart() + offset, span.getEnd() + offset));
+	}
+
+	/**
+	 * Returns the start of the first paragraph at or after pos, that
+	 * is, the position after the next blank line; or the end of the
+	 * text, if there is none.
+	 */
+	private static int paragraphBreak(String text, int pos)
+	{
+		int len = text.length();
+		int nl = text.indexOf('\n', pos);
+		while (0 <= nl)
+		{
+			int i = nl + 1;
+			while (i < len && text.charAt(i) != '\n' &&
+			       Character.isWhitespace(text.charAt(i)))
+				i++;
+			if (i < len && text.charAt(i) == '\n')
+				return i + 1;
+			nl = text.indexOf('\n', i);
 		}
+		return len;
 	}
 }
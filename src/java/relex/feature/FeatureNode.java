@@ -16,10 +16,18 @@
 
 package relex.feature;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import relex.output.PrologList;
@@ -42,7 +50,7 @@ import relex.output.PrologList;
  */
 public class FeatureNode extends Atom
 {
-	private static final long serialVersionUID = -1498736655984934453L;
+	private static final long serialVersionUID = -3047418596046719482L;
 
 	// Width of output of toString(), before it is truncated with "..."
 	private static int PRINT_LIMIT = 300;
@@ -59,25 +67,166 @@ public class FeatureNode extends Atom
 	 * This is used to properly implement mergeWith(other: FeatureNode) In this
 	 * case, the other is destroyed, and the parents must be notified in order
 	 * to reset their features to point to the new FeatureNode.
+	 *
+	 * Each parent is counted once for every feature of it that points
+	 * here, so that dropping one of those features need not look at
+	 * the others.  Most nodes have a single parent, through a single
+	 * feature; parents is then that FeatureNode.  Otherwise it is a
+	 * Parents, or null if there are none.
+	 */
+	private Object parents;
+
+	private static final int SMALL_PARENTS = 8;
+
+	/**
+	 * Parents with their counts.  Looked up by a scan while there are
+	 * few, and through an identity map of positions when there are
+	 * more.  Removal moves the last parent into the freed slot, so the
+	 * order is not that in which the parents were added.
 	 */
-	private HashSet<FeatureNode> parents;
+	private static final class Parents implements Serializable
+	{
+		private static final long serialVersionUID = 1L;
+
+		FeatureNode[] nodes = new FeatureNode[4];
+		int[] counts = new int[4];
+		int size = 0;
+		transient IdentityHashMap<FeatureNode,Integer> index;
+
+		int indexOf(FeatureNode p)
+		{
+			if (size <= SMALL_PARENTS)
+			{
+				for (int i = 0; i < size; i++)
+				{
+					if (nodes[i] == p) return i;
+				}
+				return -1;
+			}
+			if (index == null)
+			{
+				index = new IdentityHashMap<FeatureNode,Integer>(2 * size);
+				for (int i = 0; i < size; i++)
+					index.put(nodes[i], i);
+			}
+			Integer pos = index.get(p);
+			return (pos == null) ? -1 : pos.intValue();
+		}
+
+		void add(FeatureNode p, int n)
+		{
+			int pos = indexOf(p);
+			if (pos >= 0)
+			{
+				counts[pos] += n;
+				return;
+			}
+			if (size == nodes.length)
+			{
+				FeatureNode[] a = new FeatureNode[2 * size];
+				int[] c = new int[2 * size];
+				System.arraycopy(nodes, 0, a, 0, size);
+				System.arraycopy(counts, 0, c, 0, size);
+				nodes = a;
+				counts = c;
+			}
+			nodes[size] = p;
+			counts[size] = n;
+			if (index != null) index.put(p, size);
+			size++;
+		}
+
+		/** Returns false if p is not a parent */
+		boolean remove(FeatureNode p)
+		{
+			int pos = indexOf(p);
+			if (pos < 0) return false;
+			if (--counts[pos] > 0) return true;
+
+			size--;
+			if (index != null) index.remove(p);
+			if (pos < size)
+			{
+				nodes[pos] = nodes[size];
+				counts[pos] = counts[size];
+				if (index != null) index.put(nodes[pos], pos);
+			}
+			nodes[size] = null;
+			if (size <= SMALL_PARENTS) index = null;
+			return true;
+		}
+	}
 
 	/**
 	 * FeatureNodes may store either a set of key-value pairs, where the
 	 * values are other FeatureNodes, or they may store a single string.
 	 * Most access routines to this class will throw an exception if
 	 * the wrong one of these two different things is requested.
+	 *
+	 * The key-value pairs are kept in three arrays: the keys, their
+	 * Symbols ids, and their targets.  A key that is in the Symbols
+	 * table is stored as its shared copy, so that it is mostly found
+	 * by identity, and with its id, so that get(int) and set(int, ...)
+	 * compare ints; any other key is stored as given, with the id -1,
+	 * and is never added to the table, which would otherwise grow with
+	 * every new word that ends up in a feature name.  Lookup is a linear scan while there are
+	 * few of them; beyond that, an open-addressed index (of array
+	 * positions, plus one) is kept too.  A valued node has kv_names ==
+	 * null, and holds no arrays.
+	 *
+	 * The features used to be kept in a HashMap, and the order in which
+	 * they came out of it shows in the output: in the order of the
+	 * relations, and in the numbering of the relex2logic instances.  So
+	 * the arrays are kept in the order of iteration of a HashMap that
+	 * had the same features put into it: sorted by the bucket that the
+	 * hash of the name falls in, and within a bucket, in the order in
+	 * which they were added.  kv_log2cap is the log of the number of
+	 * buckets that HashMap would have; like it, it never shrinks.
 	 */
-	private HashMap<String,FeatureNode> kv_pairs;
+	private transient String[] kv_names;
+	private transient int[] kv_ids;
+	private transient FeatureNode[] kv_targets;
+	private transient int kv_size;
+	private transient int[] kv_index;
+	private transient int kv_modcount;
+	private transient byte kv_log2cap;
 	private String value;
 
+	/**
+	 * If the value is a decimal integer, the same, as an int, so that
+	 * counts and offsets (see LinkableView) are read without parsing;
+	 * otherwise NO_NUMBER.  The string is kept too, and is what the
+	 * algs templates and the output formats see.
+	 */
+	private int number = NO_NUMBER;
+	private static final int NO_NUMBER = Integer.MIN_VALUE;
+
+	/** The strings of the small numbers, so that setting them is free */
+	private static final String[] SMALL_NUMBERS = new String[256];
+	static
+	{
+		for (int i = 0; i < SMALL_NUMBERS.length; i++)
+			SMALL_NUMBERS[i] = Integer.toString(i);
+	}
+
+	private static final String[] NO_NAMES = new String[0];
+	private static final int[] NO_IDS = new int[0];
+	private static final FeatureNode[] NO_TARGETS = new FeatureNode[0];
+	private static final int LINEAR_MAX = 8;
+
+	/** The bucket counts of a new, and of a full, HashMap */
+	private static final int LOG2_CAPACITY_MIN = 4;
+	private static final int LOG2_CAPACITY_MAX = 30;
+
 	/**
 	 * By default, feature structures have no string value
 	 */
 	public FeatureNode()
 	{
-		parents = new HashSet<FeatureNode>();
-		kv_pairs = new HashMap<String,FeatureNode>();
+		kv_names = NO_NAMES;
+		kv_ids = NO_IDS;
+		kv_targets = NO_TARGETS;
+		kv_log2cap = LOG2_CAPACITY_MIN;
 		value = null;
 	}
 
@@ -108,9 +257,85 @@ public class FeatureNode extends Atom
 		forceValue(str);
 	}
 
+	/**
+	 * Return the parents, as of now; the node may be modified while
+	 * they are being iterated over.
+	 */
 	protected Iterator<FeatureNode> getParents()
 	{
-		return parents.iterator();
+		return parentList().iterator();
+	}
+
+	private ArrayList<FeatureNode> parentList()
+	{
+		ArrayList<FeatureNode> l = new ArrayList<FeatureNode>();
+		if (parents instanceof FeatureNode)
+		{
+			l.add((FeatureNode) parents);
+		}
+		else if (parents != null)
+		{
+			Parents ps = (Parents) parents;
+			for (int i = 0; i < ps.size; i++)
+				l.add(ps.nodes[i]);
+		}
+		return l;
+	}
+
+	/**
+	 * The number of features of p that point to this node.
+	 */
+	private int parentCount(FeatureNode p)
+	{
+		if (parents == p)
+			return 1;
+		if (parents instanceof Parents)
+		{
+			Parents ps = (Parents) parents;
+			int pos = ps.indexOf(p);
+			return (pos < 0) ? 0 : ps.counts[pos];
+		}
+		return 0;
+	}
+
+	/** Count one more feature of p pointing to this node. */
+	private void addParent(FeatureNode p)
+	{
+		if (parents == null)
+		{
+			parents = p;
+			return;
+		}
+		if (parents instanceof FeatureNode)
+		{
+			Parents ps = new Parents();
+			ps.add((FeatureNode) parents, 1);
+			parents = ps;
+		}
+		((Parents) parents).add(p, 1);
+	}
+
+	/** Count one less feature of p pointing to this node. */
+	private void removeParent(FeatureNode p)
+	{
+		if (parents == p)
+		{
+			parents = null;
+		}
+		else if (parents instanceof Parents)
+		{
+			Parents ps = (Parents) parents;
+			ps.remove(p);
+			if (ps.size == 0)
+				parents = null;
+			else if (ps.size == 1 && ps.counts[0] == 1)
+				parents = ps.nodes[0];
+		}
+	}
+
+	private boolean hasParents()
+	{
+		return parents != null;
 	}
 
 	/**
@@ -118,7 +343,7 @@ public class FeatureNode extends Atom
 	 */
 	public boolean isValued()
 	{
-		return kv_pairs == null;
+		return kv_names == null;
 	}
 
 	/**
@@ -129,8 +354,15 @@ public class FeatureNode extends Atom
 		if (value != null)
 			throw new RuntimeException(
 					"Must set value to null before forcing features.");
-		if (kv_pairs == null)
-			kv_pairs = new HashMap<String,FeatureNode>();
+		if (kv_names == null)
+		{
+			kv_names = NO_NAMES;
+			kv_ids = NO_IDS;
+			kv_targets = NO_TARGETS;
+			kv_size = 0;
+			kv_index = null;
+			kv_log2cap = LOG2_CAPACITY_MIN;
+		}
 	}
 
 	/**
@@ -138,15 +370,27 @@ public class FeatureNode extends Atom
 	 */
 	public void forceValue(String val)
 	{
-		if (kv_pairs != null) {
-			if (getFeatureNames().size() > 0)
+		if (kv_names != null) {
+			if (kv_size > 0)
 				throw new RuntimeException(
 						"Must clear features before forcing value.");
 		}
-		kv_pairs = null;
+		kv_names = null;
+		kv_ids = null;
+		kv_targets = null;
+		kv_index = null;
 		setValue(val);
 	}
 
+	/**
+	 * Force node to store a number; see setValue(int).
+	 */
+	public void forceValue(int val)
+	{
+		forceValue(numberString(val));
+		number = val;
+	}
+
 	/**
 	 * @return true if this feature structure has no values or features
 	 */
@@ -154,7 +398,7 @@ public class FeatureNode extends Atom
 	{
 		if (isValued())
 			return value == null;
-		return kv_pairs.size() == 0;
+		return kv_size == 0;
 	}
 
 	/**
@@ -174,7 +418,66 @@ public class FeatureNode extends Atom
 		if (value == null)
 			throw new RuntimeException("Cannot set to null value");
 		// this.value = new String(value);
-		this.value = value;
+		this.value = Symbols.value(value);
+		this.number = parseNumber(value);
+	}
+
+	/**
+	 * Sets the value of this feature node to a number.  The value is
+	 * still a string, as far as getValue() is concerned, but
+	 * getNumber() returns it without parsing it.
+	 */
+	public void setValue(int n)
+	{
+		setValue(numberString(n));
+		number = n;
+	}
+
+	/**
+	 * @return the value of this FeatureNode as an int, or otherwise,
+	 * if this node has no value, or the value is not a decimal integer.
+	 */
+	public int getNumber(int otherwise)
+	{
+		if (!isValued() || number == NO_NUMBER)
+			return otherwise;
+		return number;
+	}
+
+	/**
+	 * @return true if this node holds a value that is a decimal integer
+	 */
+	public boolean isNumber()
+	{
+		return isValued() && number != NO_NUMBER;
+	}
+
+	private static String numberString(int n)
+	{
+		if (0 <= n && n < SMALL_NUMBERS.length)
+			return SMALL_NUMBERS[n];
+		return Integer.toString(n);
+	}
+
+	/**
+	 * Accepts what Integer.parseInt() accepts, save for numbers of
+	 * ten digits or more, which are left as strings.  Word values are
+	 * turned down on their first character, so this is cheap.
+	 */
+	private static int parseNumber(String s)
+	{
+		int len = s.length();
+		int i = (len > 0 && s.charAt(0) == '-') ? 1 : 0;
+		if (i == len || len - i > 9)
+			return NO_NUMBER;
+		int n = 0;
+		for (; i < len; i++)
+		{
+			char c = s.charAt(i);
+			if (c < '0' || '9' < c) return NO_NUMBER;
+			n = 10 * n + (c - '0');
+		}
+		return (s.charAt(0) == '-') ? -n : n;
 	}
 
 	/**
@@ -230,13 +533,16 @@ public class FeatureNode extends Atom
 	 */
 	public void substitute(FeatureNode oldF, FeatureNode newF)
 	{
-		if (oldF == newF)
+		if (oldF == newF || isValued())
 			return;
-		Iterator<String> i = getFeatureNames().iterator();
-		while (i.hasNext()) {
-			String name = i.next();
-			if (get(name).equiv(oldF))
-				set(name, newF);
+		// oldF knows how many of our features point to it; stop
+		// looking once they have all been found.
+		int n = oldF.parentCount(this);
+		for (int i = 0; i < kv_size && n > 0; i++) {
+			if (kv_targets[i] == oldF) {
+				setAt(i, newF);
+				n--;
+			}
 		}
 	}
 
@@ -302,8 +608,8 @@ public class FeatureNode extends Atom
 					throw new RuntimeException(
 						"Cannot merge two non-valued feature nodes with inconsistent features.\n" +
 						"\tSuggest using += instead of = in algs file. fName = " + fName + "\n" +
-						"\tthis = " + thisf.get("orig_str") + "-" + thisf.get("index_in_sentence") + "\n" +
-						"\tother = " + otherf.get("orig_str") + "-" + otherf.get("index_in_sentence") + "\n");
+						"\tthis = " + describe(thisf) + "\n" +
+						"\tother = " + describe(otherf) + "\n");
 				}
 			}
 		}
@@ -311,6 +617,14 @@ public class FeatureNode extends Atom
 		return this;
 	}
 
+	/** Short description of a node, for error messages */
+	private static String describe(FeatureNode f)
+	{
+		if (f == null) return "null";
+		if (f.isValued()) return "<<" + f.getValue() + ">>";
+		return f.get("orig_str") + "-" + f.get("index_in_sentence");
+	}
+
 	public FeatureNode copyInto(FeatureNode other)
 	{
 		if (other == this)
@@ -350,15 +664,14 @@ public class FeatureNode extends Atom
 	{
 		if (other == this)
 			return;
-		// Create a new hashset to avoid ConcurrentModificationException.
-		// That is, we will be modifying parents as we iterate through its
-		// *copy*.
-		Iterator<FeatureNode> i = new HashSet<FeatureNode>(parents).iterator();
+		// Iterate over a copy, as substitute() removes each parent
+		// from the set as it goes.
+		Iterator<FeatureNode> i = parentList().iterator();
 		while (i.hasNext()) {
 			FeatureNode p = i.next();
 			p.substitute(this, other);
 		}
-		if (!parents.isEmpty())
+		if (hasParents())
 			throw new RuntimeException("replace self failed");
 	}
 
@@ -380,18 +693,363 @@ public class FeatureNode extends Atom
 			throw new RuntimeException("Cannot set key-value pair for a string-valued FeatureNode");
 		if (key == null)
 			throw new RuntimeException("key must be non-null");
-		FeatureNode oldTarget = get(key);
+		int id = Symbols.lookup(key);
+		String name = (id < 0) ? key : Symbols.name(id);
+		put(find(name), name, id, target);
+	}
+
+	/**
+	 * Like set(String, FeatureNode), with the key given by its
+	 * Symbols id.
+	 */
+	public void set(int key, FeatureNode target)
+	{
+		if (isValued())
+			throw new RuntimeException("Cannot set key-value pair for a string-valued FeatureNode");
+		put(find(key), Symbols.name(key), key, target);
+	}
+
+	/** Set the feature at pos, or, if pos is -1, add it. */
+	private void put(int pos, String key, int id, FeatureNode target)
+	{
+		if (pos >= 0) {
+			setAt(pos, target);
+		} else if (target != null) {
+			target.addParent(this);
+			insert(key, id, target);
+		}
+	}
+
+	/**
+	 * Set, or, if target is null, remove, the feature at position pos.
+	 */
+	private void setAt(int pos, FeatureNode target)
+	{
+		FeatureNode oldTarget = kv_targets[pos];
+		if (oldTarget == target)
+			return;
 		if (target == null) {
-			kv_pairs.remove(key);
+			removeAt(pos);
 		} else {
-			target.parents.add(this);
-			kv_pairs.put(key, target);
+			target.addParent(this);
+			kv_targets[pos] = target;
+		}
+		// One less of our features points to the old target.
+		oldTarget.removeParent(this);
+	}
+
+	/* ---------------------------------------------------------- */
+	/* The key-value array */
+
+	private static int hash(String key)
+	{
+		return key.hashCode() * 0x9E3779B9;
+	}
+
+	/** Position of the key in kv_names, or -1 */
+	private int find(String key)
+	{
+		if (kv_index == null)
+		{
+			for (int i = 0; i < kv_size; i++)
+			{
+				String k = kv_names[i];
+				if (k == key || k.equals(key)) return i;
+			}
+			return -1;
+		}
+		int mask = kv_index.length - 1;
+		for (int h = hash(key) & mask; ; h = (h + 1) & mask)
+		{
+			int slot = kv_index[h];
+			if (slot == 0) return -1;
+			String k = kv_names[slot-1];
+			if (k == key || k.equals(key)) return slot-1;
+		}
+	}
+
+	/**
+	 * Position of the key, given by its Symbols id, or -1.  A key
+	 * that was added before its name was put in the table has no id;
+	 * it is compared by name, and given its id once found.
+	 */
+	private int find(int id)
+	{
+		if (kv_index == null)
+		{
+			for (int i = 0; i < kv_size; i++)
+			{
+				if (kv_ids[i] == id) return i;
+				if (kv_ids[i] < 0 && sameName(i, id)) return i;
+			}
+			return -1;
 		}
-		if (oldTarget != null) {
-			// If there are no other features pointing to the old target,
-			// remove this from the list of oldTarget's parents.
-			if (!kv_pairs.containsValue(oldTarget))
-				oldTarget.parents.remove(this);
+		int mask = kv_index.length - 1;
+		for (int h = hash(Symbols.name(id)) & mask; ; h = (h + 1) & mask)
+		{
+			int slot = kv_index[h];
+			if (slot == 0) return -1;
+			if (kv_ids[slot-1] == id) return slot-1;
+			if (kv_ids[slot-1] < 0 && sameName(slot-1, id)) return slot-1;
+		}
+	}
+
+	private boolean sameName(int pos, int id)
+	{
+		String name = Symbols.name(id);
+		if (!kv_names[pos].equals(name)) return false;
+		kv_names[pos] = name;
+		kv_ids[pos] = id;
+		return true;
+	}
+
+	/**
+	 * The bucket of the key in a HashMap of 2^log2cap buckets; this
+	 * is how java.util.HashMap spreads the hash of a key.
+	 */
+	private static int bucket(String key, int log2cap)
+	{
+		int h = key.hashCode();
+		return (h ^ (h >>> 16)) & ((1 << log2cap) - 1);
+	}
+
+	/**
+	 * Add a new key, after the keys that come before it, or with it,
+	 * in HashMap order.
+	 */
+	private void insert(String key, int id, FeatureNode target)
+	{
+		int n = kv_size;
+		if (n == kv_names.length)
+		{
+			int cap = Math.max(4, 2*n);
+			String[] k = new String[cap];
+			int[] d = new int[cap];
+			FeatureNode[] t = new FeatureNode[cap];
+			System.arraycopy(kv_names, 0, k, 0, n);
+			System.arraycopy(kv_ids, 0, d, 0, n);
+			System.arraycopy(kv_targets, 0, t, 0, n);
+			kv_names = k;
+			kv_ids = d;
+			kv_targets = t;
+		}
+
+		// HashMap doubles its buckets once it is more than 3/4 full.
+		if (n + 1 > (3 << kv_log2cap) / 4 && kv_log2cap < LOG2_CAPACITY_MAX)
+			rehash(kv_log2cap + 1);
+
+		int b = bucket(key, kv_log2cap);
+		int pos = n;
+		while (pos > 0 && bucket(kv_names[pos-1], kv_log2cap) > b)
+			pos--;
+		System.arraycopy(kv_names, pos, kv_names, pos+1, n-pos);
+		System.arraycopy(kv_ids, pos, kv_ids, pos+1, n-pos);
+		System.arraycopy(kv_targets, pos, kv_targets, pos+1, n-pos);
+		kv_names[pos] = key;
+		kv_ids[pos] = id;
+		kv_targets[pos] = target;
+		kv_size++;
+		kv_modcount++;
+
+		if (pos == n && kv_index != null && 2*kv_size <= kv_index.length)
+			index(key, n);
+		else if (kv_index != null || kv_size > LINEAR_MAX)
+			reindex();
+	}
+
+	/**
+	 * Re-sort the keys for a HashMap of 2^log2cap buckets.  When a
+	 * HashMap grows, each bucket is split in two, keeping its order,
+	 * so a stable sort on the new buckets puts the keys in the order
+	 * that it would have.
+	 */
+	private void rehash(int log2cap)
+	{
+		kv_log2cap = (byte) log2cap;
+		int n = kv_size;
+		int[] buckets = new int[n];
+		for (int i = 0; i < n; i++)
+			buckets[i] = bucket(kv_names[i], log2cap);
+		for (int i = 1; i < n; i++)
+		{
+			int b = buckets[i];
+			String key = kv_names[i];
+			int id = kv_ids[i];
+			FeatureNode target = kv_targets[i];
+			int j = i;
+			for (; j > 0 && buckets[j-1] > b; j--)
+			{
+				buckets[j] = buckets[j-1];
+				kv_names[j] = kv_names[j-1];
+				kv_ids[j] = kv_ids[j-1];
+				kv_targets[j] = kv_targets[j-1];
+			}
+			buckets[j] = b;
+			kv_names[j] = key;
+			kv_ids[j] = id;
+			kv_targets[j] = target;
+		}
+		if (kv_index != null) reindex();
+	}
+
+	private void removeAt(int pos)
+	{
+		int n = kv_size;
+		System.arraycopy(kv_names, pos+1, kv_names, pos, n-pos-1);
+		System.arraycopy(kv_ids, pos+1, kv_ids, pos, n-pos-1);
+		System.arraycopy(kv_targets, pos+1, kv_targets, pos, n-pos-1);
+		kv_names[n-1] = null;
+		kv_targets[n-1] = null;
+		kv_size--;
+		kv_modcount++;
+		if (kv_index != null) reindex();
+	}
+
+	private void index(String key, int pos)
+	{
+		int mask = kv_index.length - 1;
+		int h = hash(key) & mask;
+		while (kv_index[h] != 0) h = (h + 1) & mask;
+		kv_index[h] = pos+1;
+	}
+
+	private void reindex()
+	{
+		if (kv_size <= LINEAR_MAX)
+		{
+			kv_index = null;
+			return;
+		}
+		int cap = 16;
+		while (cap < 4*kv_size) cap <<= 1;
+		kv_index = new int[cap];
+		for (int i = 0; i < kv_size; i++)
+			index(kv_names[i], i);
+	}
+
+	/*
+	 * Positional access to the features, for the few loops in this
+	 * package that visit every feature of every node.  Positions are
+	 * 0 .. featureCount()-1, in the order of getFeatureNames(), and
+	 * are only good until the node is next modified.
+	 */
+	int featureCount()
+	{
+		return isValued() ? 0 : kv_size;
+	}
+
+	String featureName(int pos)
+	{
+		return kv_names[pos];
+	}
+
+	FeatureNode featureAt(int pos)
+	{
+		return kv_targets[pos];
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException
+	{
+		out.defaultWriteObject();
+		if (isValued())
+		{
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(kv_size);
+		for (int i = 0; i < kv_size; i++)
+		{
+			out.writeObject(kv_names[i]);
+			out.writeObject(kv_targets[i]);
+		}
+	}
+
+	private void readObject(ObjectInputStream in)
+		throws IOException, ClassNotFoundException
+	{
+		in.defaultReadObject();
+		int n = in.readInt();
+		if (n < 0) return;
+		kv_names = new String[n];
+		kv_ids = new int[n];
+		kv_targets = new FeatureNode[n];
+
+		// A HashMap read back is made just big enough for its keys,
+		// which are then put in, in the order in which they were
+		// written.
+		kv_log2cap = LOG2_CAPACITY_MIN;
+		while (kv_log2cap < LOG2_CAPACITY_MAX && (1 << kv_log2cap) < (int) (n / 0.75f + 1.0f))
+			kv_log2cap++;
+		for (int i = 0; i < n; i++)
+		{
+			String key = (String) in.readObject();
+			int id = Symbols.lookup(key);
+			if (id >= 0) key = Symbols.name(id);
+			insert(key, id, (FeatureNode) in.readObject());
+		}
+		if (value != null) value = Symbols.value(value);
+	}
+
+	/**
+	 * A live view of the keys, in the order of the arrays.  Like the
+	 * key set of a HashMap, its iterators fail if a key is added or
+	 * removed while they are in use, except through them.
+	 */
+	private class KeySet extends AbstractSet<String>
+	{
+		public int size()
+		{
+			return isValued() ? 0 : kv_size;
+		}
+
+		public boolean contains(Object o)
+		{
+			if (!(o instanceof String) || isValued()) return false;
+			return find((String) o) >= 0;
+		}
+
+		public boolean remove(Object o)
+		{
+			if (!contains(o)) return false;
+			set((String) o, null);
+			return true;
+		}
+
+		public Iterator<String> iterator()
+		{
+			return new Iterator<String>()
+			{
+				private int next = 0;
+				private int last = -1;
+				private int expected = kv_modcount;
+
+				public boolean hasNext()
+				{
+					return !isValued() && next < kv_size;
+				}
+
+				public String next()
+				{
+					if (expected != kv_modcount)
+						throw new ConcurrentModificationException();
+					if (!hasNext())
+						throw new NoSuchElementException();
+					last = next++;
+					return kv_names[last];
+				}
+
+				public void remove()
+				{
+					if (last < 0)
+						throw new IllegalStateException();
+					if (expected != kv_modcount)
+						throw new ConcurrentModificationException();
+					set(kv_names[last], null);
+					next = last;
+					last = -1;
+					expected = kv_modcount;
+				}
+			};
 		}
 	}
 
@@ -408,7 +1066,19 @@ public class FeatureNode extends Atom
 			throw new RuntimeException("String-valued FeatureNodes have no keys.");
 		if (key == null)
 			throw new RuntimeException("Key was null");
-		return kv_pairs.get(key);
+		int pos = find(key);
+		return (pos < 0) ? null : kv_targets[pos];
+	}
+
+	/**
+	 * Like get(String), with the key given by its Symbols id.
+	 */
+	public FeatureNode get(int key)
+	{
+		if (isValued())
+			throw new RuntimeException("String-valued FeatureNodes have no keys.");
+		int pos = find(key);
+		return (pos < 0) ? null : kv_targets[pos];
 	}
 
 	// Like "get" but makes the feature node if it doesn't exist.
@@ -431,7 +1101,7 @@ public class FeatureNode extends Atom
 	{
 		if (isValued())
 			throw new RuntimeException("valued FeatureNodes have no features");
-		return kv_pairs.keySet();
+		return new KeySet();
 	}
 
 	/**
@@ -570,11 +1240,11 @@ public class FeatureNode extends Atom
 	public FeatureNode pathTarget(FeaturePath path)
 	{
 		FeatureNode cur = this;
-		Iterator<String> feats = path.iterator();
-		while (feats.hasNext() && cur != null) {
+		int[] feats = path.getStepIds();
+		for (int i = 0; i < feats.length && cur != null; i++) {
 			if (cur.isValued())
 				return null;
-			cur = cur.get(feats.next());
+			cur = cur.get(feats[i]);
 		}
 		return cur;
 	}
@@ -614,13 +1284,13 @@ public class FeatureNode extends Atom
 	                     boolean forceTarget)
 	{
 		FeatureNode cur = this;
-		Iterator<String> feats = path.iterator();
-		while (feats.hasNext()) {
+		int[] feats = path.getStepIds();
+		for (int i = 0; i < feats.length; i++) {
 			FeatureNode last = cur;
-			String name = feats.next();
+			int name = feats[i];
 			cur = cur.get(name);
 			if (cur == null) {
-				if (feats.hasNext()) {
+				if (i + 1 < feats.length) {
 					cur = new FeatureNode();
 				} else {
 					cur = target;
@@ -32,6 +32,19 @@ public class FeaturePath
 	 */
 	private ArrayList<String> path;
 
+	/**
+	 * The same sequence, as an array, for fast traversal; rebuilt
+	 * whenever the path is changed.  Volatile, as paths are shared by
+	 * the threads applying the algs.
+	 */
+	private volatile String[] steps;
+
+	/**
+	 * The Symbols ids of the steps, looked up once, so that following
+	 * the path never hashes a name; rebuilt along with steps.
+	 */
+	private volatile int[] stepIds;
+
 	protected FeaturePath()
 	{
 		path = new ArrayList<String>();
@@ -47,7 +60,8 @@ public class FeaturePath
 			throw new RuntimeException("invalid feature path init string: " + str);
 
 		StringTokenizer st = new StringTokenizer(str.substring(1, str.indexOf('>')));
-		while (st.hasMoreTokens()) path.add(st.nextToken());
+		while (st.hasMoreTokens()) path.add(Symbols.intern(st.nextToken()));
+		getStepIds();
 	}
 
 	public FeaturePath(FeaturePath other)
@@ -68,6 +82,41 @@ public class FeaturePath
 	public void removeLastStep()
 	{
 		path.remove(path.size() - 1);
+		steps = null;
+		stepIds = null;
+	}
+
+	/**
+	 * Returns the sequence of feature names in the path. The returned
+	 * array is shared, and must not be modified.
+	 */
+	String[] getSteps()
+	{
+		String[] s = steps;
+		if (s == null)
+		{
+			s = path.toArray(new String[path.size()]);
+			steps = s;
+		}
+		return s;
+	}
+
+	/**
+	 * Returns the Symbols ids of the feature names in the path. The
+	 * returned array is shared, and must not be modified.
+	 */
+	int[] getStepIds()
+	{
+		int[] ids = stepIds;
+		if (ids == null)
+		{
+			String[] s = getSteps();
+			ids = new int[s.length];
+			for (int i = 0; i < s.length; i++)
+				ids[i] = Symbols.id(s[i]);
+			stepIds = ids;
+		}
+		return ids;
 	}
 
 	public String toString()
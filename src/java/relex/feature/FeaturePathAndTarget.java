@@ -15,6 +15,7 @@
  */
 package relex.feature;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
@@ -35,6 +36,15 @@ public class FeaturePathAndTarget
 
 	private String separator;
 
+	/**
+	 * The target string, compiled when it is set: the name of the
+	 * variable, if the target is $var; else the literal alternatives
+	 * and the regular expressions of a target such as M N | \O.*
+	 */
+	private String variable;
+	private HashSet<String> literals;
+	private Pattern[] patterns;
+
 	private static HashSet<String> pathSeparators;
 	static {
 		pathSeparators = new HashSet<String>();
@@ -120,13 +130,81 @@ public class FeaturePathAndTarget
 	public void setTarget(String str) {
 		targetString = null;
 		targetPath = null;
+		variable = null;
+		literals = null;
+		patterns = null;
 		try {
 			targetPath = new FeaturePath(str);
 		} catch (Exception e) {
 			// Trim whitespace!! Else crapola whitespace in the algs file
 			// will damage results e.g. blah != %  with trailing whitespace.
 			targetString = str.trim();
+			compileTarget();
+		}
+	}
+
+	/**
+	 * If the target begins with $, it names a variable. Otherwise,
+	 * it is a disjunction of strings separated by | characters.
+	 * A string beginning with "\" is interpretted as a regular
+	 * expression (unless it begins with "\\" in which case the first
+	 * character is removed), and "\." is replaced with "[a-z\*]".
+	 */
+	private void compileTarget()
+	{
+		if (targetString.length() == 0) return;
+		if (targetString.charAt(0) == '$') {
+			variable = targetString.substring(1);
+			return;
+		}
+		literals = new HashSet<String>();
+		ArrayList<Pattern> regexes = new ArrayList<Pattern>();
+		String[] toks = targetString.split("[ ]*\\|[ ]*");
+		for (int i = 0; i < toks.length; i++) {
+			String test = toks[i];
+			if (test.length() > 1 && test.charAt(0) == '\\') {
+				test = test.substring(1);
+				if (test.charAt(0) != '\\') {
+					test = test.replaceAll("\\\\.", "[a-z\\*]");
+					regexes.add(Pattern.compile(test));
+					continue;
+				}
+			}
+			literals.add(test.intern());
 		}
+		patterns = regexes.toArray(new Pattern[regexes.size()]);
+	}
+
+	/**
+	 * Returns the variable name if the target is of the form $var,
+	 * else null.
+	 */
+	public String getVariable() {
+		return variable;
+	}
+
+	/**
+	 * Returns the set of acceptable values if the target is a
+	 * disjunction of plain strings, with no regular expressions;
+	 * else null.
+	 */
+	public Set<String> getLiteralValues() {
+		if (patterns == null || patterns.length > 0)
+			return null;
+		return literals;
+	}
+
+	/**
+	 * Returns true if the string value matches one of the alternatives
+	 * of the target string.
+	 */
+	public boolean matchesValue(String val) {
+		if (literals.contains(val))
+			return true;
+		for (int i = 0; i < patterns.length; i++)
+			if (patterns[i].matcher(val).matches())
+				return true;
+		return false;
 	}
 
 	public String lastStep() {
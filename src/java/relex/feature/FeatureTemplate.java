@@ -20,7 +20,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.ArrayList;
 import java.util.Map;
-import java.util.regex.Pattern;
+import java.util.Set;
 
 public class FeatureTemplate
 {
@@ -28,76 +28,55 @@ public class FeatureTemplate
 
 	private ArrayList<FeaturePathAndTarget> pathsAndTargs;
 
-//	private HashMap<String,FeatureNode> vars;
-
 	/**
-	 * if test begins with "\" it is interpretted as a regular expression
-	 * (unless it begins with "\\" in which case the first character is removed)
-	 *
-	 * Also "\." is replaced with "[a-z\*]"
+	 * A feature which any matching node must carry, and, optionally,
+	 * the values that feature must have. Computed on first use;
+	 * see getIndexFeature().  The flag is volatile, and set last, so
+	 * that templates may be shared by several threads.
 	 */
-	private boolean matchesVal(String test, String val)
-	{
-		if (test.charAt(0) == '\\') {
-			test = test.substring(1);
-			if (test.charAt(0) != '\\') {
-				test = test.replaceAll("\\\\.", "[a-z\\*]");
-				// System.err.println(test + " --- " + val + " --- " +
-				// Pattern.matches(test,val));
-				return Pattern.matches(test, val); // interprets test as a regex
-			}
-		}
-		return test.equals(val);
-	}
+	private volatile boolean indexComputed = false;
+	private String indexFeature;
+	private Set<String> indexValues;
 
-	private boolean matchesString(FeatureNode target, String pathTarget, Map<String,FeatureNode> vars)
-	{
-		// if path target is a variable name, set that variable name to the
-		// FeatureNode target
-		if (pathTarget.charAt(0) == '$') {
-			vars.put(pathTarget.substring(1), target);
-			return true;
-		}
-		// otherwise, interpret path target as a disjunction of strings
-		// separated by | characters.
-		if (!target.isValued())
-			return false;
-		String valString = target.getValue().toString();
-		String[] toks = pathTarget.split("[ ]*\\|[ ]*");
-		for (int i = 0; i < toks.length; i++)
-			if (matchesVal(toks[i], valString))
-				return true;
-		return false;
-	}
+//	private HashMap<String,FeatureNode> vars;
 
 	public FeatureNode val(String varName, Map<String,FeatureNode> vars)
 	{
 		return vars.get(varName);
 	}
 
-	// Iterate through the pathAndTargs, making sure each matches f
+	// Iterate through the pathAndTargs, making sure each matches f.
+	// The vars map is only created once there is something to put
+	// in it, so that failed matches cost no allocation.
 	public Map<String,FeatureNode> match(FeatureNode f)
 	{
-		boolean matched = true;
-		Iterator<FeaturePathAndTarget> i = pathsAndTargs.iterator();
-		Map<String,FeatureNode> vars = new HashMap<String,FeatureNode>();
-		// vars.clear();
-		while (matched && i.hasNext()) {
-			FeaturePathAndTarget pathAndTarget = i.next();
-			if (pathAndTarget.getSeparator().equals("=")) {
-				matched = match(f, pathAndTarget, vars);
-			}
-			if (pathAndTarget.getSeparator().equals("!=")) {
-				matched = !match(f, pathAndTarget, vars);
+		Map<String,FeatureNode> vars = null;
+		for (int i = 0; i < pathsAndTargs.size(); i++) {
+			FeaturePathAndTarget pathAndTarget = pathsAndTargs.get(i);
+			boolean equals = pathAndTarget.getSeparator().equals("=");
+			String var = pathAndTarget.getVariable();
+			if (var != null) {
+				// If path target is a variable name, set that variable
+				// name to the FeatureNode target. A binding made by !=
+				// is never seen, since the match then fails.
+				FeatureNode fTarget = f.pathTarget(pathAndTarget.getPath());
+				if ((fTarget != null) != equals)
+					return null;
+				if (fTarget != null) {
+					if (vars == null)
+						vars = new HashMap<String,FeatureNode>();
+					vars.put(var, fTarget);
+				}
+			} else if (match(f, pathAndTarget) != equals) {
+				return null;
 			}
 		}
-/*		if (!matched)
-			vars.clear();
-		return matched; */
-		return matched ? vars : null;
+		if (vars == null)
+			vars = new HashMap<String,FeatureNode>();
+		return vars;
 	}
 
-	private boolean match(FeatureNode f, FeaturePathAndTarget pathAndTarget, Map<String,FeatureNode> vars)
+	private boolean match(FeatureNode f, FeaturePathAndTarget pathAndTarget)
 	{
 		// get the target of the path in F
 		FeaturePath path = pathAndTarget.getPath();
@@ -125,12 +104,68 @@ public class FeatureTemplate
 				// only empty string would match null
 				return (fTarget.isEmpty() || (fTarget.isValued() && fTarget
 						.getValue().length() == 0));
-			if (!matchesString(fTarget, pathTarg, vars)) {
+			// interpret path target as a disjunction of strings
+			if (!fTarget.isValued())
 				return false;
-			}
+			return pathAndTarget.matchesValue(fTarget.getValue());
 		}
+	}
 
-		return true;
+	/**
+	 * Returns the name of a feature that every node matched by this
+	 * template must have, or null if there is no such feature (for
+	 * example, if the template consists only of != and = % tests).
+	 * Used to index nodes, so that the template need only be tried
+	 * on the few nodes that might match.
+	 *
+	 * Preference is given to a test of the form <POS> = noun | verb,
+	 * for which getIndexValues() will return the set of acceptable
+	 * values; failing that, the first step of the first path that
+	 * must exist is used.
+	 */
+	public String getIndexFeature()
+	{
+		if (!indexComputed) computeIndex();
+		return indexFeature;
+	}
+
+	/**
+	 * Returns the set of string values that the feature named by
+	 * getIndexFeature() must have, or null if any value, including
+	 * a non-string value, could match.
+	 */
+	public Set<String> getIndexValues()
+	{
+		if (!indexComputed) computeIndex();
+		return indexValues;
+	}
+
+	private void computeIndex()
+	{
+		for (FeaturePathAndTarget pat : pathsAndTargs)
+		{
+			if (!pat.getSeparator().equals("=")) continue;
+			FeaturePath path = pat.getPath();
+			if (path.size() == 0) continue;
+			if (!pat.isPathPair() && pat.getTargetString().equals(NULL_STRING))
+				continue;
+
+			String first = path.iterator().next();
+			if (indexFeature == null)
+				indexFeature = first;
+
+			// Only plain strings can be looked up by value;
+			// variables and regexes must be tried the slow way.
+			if (pat.isPathPair() || path.size() != 1) continue;
+			Set<String> vals = pat.getLiteralValues();
+			if (vals != null)
+			{
+				indexFeature = first;
+				indexValues = vals;
+				break;
+			}
+		}
+		indexComputed = true;
 	}
 
 	public String toString(Map<String,FeatureNode> vars)
@@ -59,6 +59,16 @@ public class LinkableView extends View // implements TreeNode , LinkNode
 
 	private static String INDEX_NAME = "index_in_sentence";
 
+	// The same names, as Symbols ids, for the accessors that are
+	// called in loops.
+	private static final int NUM_LEFT_LINKS = Symbols.id(NUM_LEFT_LINKS_FEATURE_NAME);
+	private static final int NUM_RIGHT_LINKS = Symbols.id(NUM_RIGHT_LINKS_FEATURE_NAME);
+	private static final int START = Symbols.id(START_NAME);
+	private static final int END = Symbols.id(END_NAME);
+	private static final int INDEX = Symbols.id(INDEX_NAME);
+	private static final int COLL_START = Symbols.id(COLLOCATION_START);
+	private static final int COLL_END = Symbols.id(COLLOCATION_END);
+
 	private static FeatureNameFilter filter;
 
 	static
@@ -110,18 +120,25 @@ public class LinkableView extends View // implements TreeNode , LinkNode
 		throwIfNoFN(ths);
 		throwIfBadDirection(direction);
 
-		FeatureNode f = null;
-		String str = null;
-		if (direction < 0)
-			str = NUM_LEFT_LINKS_FEATURE_NAME;
-		else if (direction > 0)
-			str = NUM_RIGHT_LINKS_FEATURE_NAME;
-		f = ths.get(str);
+		int key = (direction < 0) ? NUM_LEFT_LINKS : NUM_RIGHT_LINKS;
+		FeatureNode f = ths.get(key);
 		if (f == null) {
-			f = new FeatureNode(Integer.toString(num));
-			ths.set(str, f);
+			f = new FeatureNode();
+			f.forceValue(num);
+			ths.set(key, f);
 		} else
-			f.setValue(Integer.toString(num));
+			f.setValue(num);
+	}
+
+	/**
+	 * The number held by f; like Integer.parseInt(f.getValue()), but
+	 * without parsing, if the value was stored as a number.
+	 */
+	private static int number(FeatureNode f)
+	{
+		if (f.isNumber())
+			return f.getNumber(0);
+		return Integer.parseInt(f.getValue());
 	}
 
 	public int numLinks(int direction) {
@@ -132,14 +149,10 @@ public class LinkableView extends View // implements TreeNode , LinkNode
 		throwIfNoFN(ths);
 		throwIfBadDirection(direction);
 
-		FeatureNode f = null;
-		if (direction < 0)
-			f = ths.get(NUM_LEFT_LINKS_FEATURE_NAME);
-		else if (direction > 0)
-			f = ths.get(NUM_RIGHT_LINKS_FEATURE_NAME);
+		FeatureNode f = ths.get((direction < 0) ? NUM_LEFT_LINKS : NUM_RIGHT_LINKS);
 		if (f == null)
 			return 0;
-		return Integer.parseInt(f.getValue());
+		return number(f);
 	}
 
 	private static FeatureNode _getLink(FeatureNode ths, int direction, int i) {
@@ -148,9 +161,9 @@ public class LinkableView extends View // implements TreeNode , LinkNode
 
 		FeatureNode f = null;
 		if (direction < 0)
-			f = ths.get(LEFT_LINK_PREFIX + i);
+			f = ths.get(Symbols.indexed(LEFT_LINK_PREFIX, i));
 		else
-			f = ths.get(RIGHT_LINK_PREFIX + i);
+			f = ths.get(Symbols.indexed(RIGHT_LINK_PREFIX, i));
 		if (f == null)
 			return null;
 		return f;
@@ -166,7 +179,7 @@ public class LinkableView extends View // implements TreeNode , LinkNode
 
 		int lim = numLinks(ths, direction);
 		for (int i = 0; i < lim; i++) {
-			if (LinkView.getLabel(getLink(ths, direction, i), 0).equals(label))
+			if (LinkView.getLabel(_getLink(ths, direction, i), 0).equals(label))
 				return true;
 		}
 		return false;
@@ -198,9 +211,9 @@ public class LinkableView extends View // implements TreeNode , LinkNode
 		setNumLinks(ths, direction, n + 1);
 		String s = null;
 		if (direction < 0)
-			s = LEFT_LINK_PREFIX + n;
+			s = Symbols.indexed(LEFT_LINK_PREFIX, n);
 		else if (direction > 0)
-			s = RIGHT_LINK_PREFIX + n;
+			s = Symbols.indexed(RIGHT_LINK_PREFIX, n);
 		ths.set(s, link);
 	}
 
@@ -380,12 +393,7 @@ public class LinkableView extends View // implements TreeNode , LinkNode
 
 	public static int getStartChar(FeatureNode ths) {
 		throwIfNoFN(ths);
-		int val = -1;
-		try {
-			val = Integer.parseInt(ths.get(START_NAME).getValue());
-		} catch (Exception e) {
-		}
-		return val;
+		return numberOr(ths.get(START), -1);
 	}
 
 	public int getEndChar() {
@@ -394,12 +402,7 @@ public class LinkableView extends View // implements TreeNode , LinkNode
 
 	public static int getEndChar(FeatureNode ths) {
 		throwIfNoFN(ths);
-		int val = -1;
-		try {
-			val = Integer.parseInt(ths.get(END_NAME).getValue());
-		} catch (Exception e) {
-		}
-		return val;
+		return numberOr(ths.get(END), -1);
 	}
 
 	public void setStartChar(int val) {
@@ -409,7 +412,7 @@ public class LinkableView extends View // implements TreeNode , LinkNode
 	public static void setStartChar(FeatureNode ths, int val) {
 		throwIfNoFN(ths);
 		try {
-			ths.get(START_NAME).setValue(Integer.toString(val));
+			ths.get(START).setValue(val);
 		} catch (Exception e) {
 		}
 	}
@@ -421,7 +424,7 @@ public class LinkableView extends View // implements TreeNode , LinkNode
 	public static void setEndChar(FeatureNode ths, int val) {
 		throwIfNoFN(ths);
 		try {
-			ths.get(END_NAME).setValue(Integer.toString(val));
+			ths.get(END).setValue(val);
 		} catch (Exception e) {
 		}
 	}
@@ -432,13 +435,12 @@ public class LinkableView extends View // implements TreeNode , LinkNode
 
 	public static int getExpandedStartChar(FeatureNode ths) {
 		throwIfNoFN(ths);
-		int val = -1;
-		try {
-			val = Integer.parseInt(ths.get(COLLOCATION_START).get(START_NAME)
-					.getValue());
-		} catch (Exception e) {
-			val = getStartChar(ths);
-		}
+		FeatureNode coll = ths.get(COLL_START);
+		if (coll == null || coll.isValued())
+			return getStartChar(ths);
+		int val = numberOr(coll.get(START), Integer.MIN_VALUE);
+		if (val == Integer.MIN_VALUE)
+			return getStartChar(ths);
 		return val;
 	}
 
@@ -448,13 +450,12 @@ public class LinkableView extends View // implements TreeNode , LinkNode
 
 	public static int getExpandedEndChar(FeatureNode ths) {
 		throwIfNoFN(ths);
-		int val = -1;
-		try {
-			val = Integer.parseInt(ths.get(COLLOCATION_END).get(END_NAME)
-					.getValue());
-		} catch (Exception e) {
-			val = getEndChar(ths);
-		}
+		FeatureNode coll = ths.get(COLL_END);
+		if (coll == null || coll.isValued())
+			return getEndChar(ths);
+		int val = numberOr(coll.get(END), Integer.MIN_VALUE);
+		if (val == Integer.MIN_VALUE)
+			return getEndChar(ths);
 		return val;
 	}
 
@@ -465,8 +466,7 @@ public class LinkableView extends View // implements TreeNode , LinkNode
 	public static void setExpandedStartChar(FeatureNode ths, int val) {
 		throwIfNoFN(ths);
 		try {
-			ths.get(COLLOCATION_START).get(START_NAME).setValue(
-					Integer.toString(val));
+			ths.get(COLL_START).get(START).setValue(val);
 		} catch (Exception e) {
 		}
 	}
@@ -478,8 +478,7 @@ public class LinkableView extends View // implements TreeNode , LinkNode
 	public static void setExpandedEndChar(FeatureNode ths, int val) {
 		throwIfNoFN(ths);
 		try {
-			ths.get(COLLOCATION_END).get(END_NAME).setValue(
-					Integer.toString(val));
+			ths.get(COLL_END).get(END).setValue(val);
 		} catch (Exception e) {
 		}
 	}
@@ -490,12 +489,7 @@ public class LinkableView extends View // implements TreeNode , LinkNode
 
 	public static int getIndexInSentence(FeatureNode ths) {
 		throwIfNoFN(ths);
-		int val = -1;
-		try {
-			val = Integer.parseInt(ths.get(INDEX_NAME).getValue());
-		} catch (Exception e) {
-		}
-		return val;
+		return numberOr(ths.get(INDEX), -1);
 	}
 
 	public void setCharIndices(int start, int end, int indexInSentence) {
@@ -506,24 +500,36 @@ public class LinkableView extends View // implements TreeNode , LinkNode
 	                           int start, int end, int indexInSentence)
 	{
 		throwIfNoFN(ths);
-		FeatureNode f = ths.get(START_NAME);
-		if (f == null) {
-			f = new FeatureNode();
-			ths.set(START_NAME, f);
-		}
-		f.forceValue(new Integer(start).toString());
-		f = ths.get(END_NAME);
+		forceNumber(ths, START, start);
+		forceNumber(ths, END, end);
+		forceNumber(ths, INDEX, indexInSentence);
+	}
+
+	private static void forceNumber(FeatureNode ths, int key, int val)
+	{
+		FeatureNode f = ths.get(key);
 		if (f == null) {
 			f = new FeatureNode();
-			ths.set(END_NAME, f);
+			ths.set(key, f);
 		}
-		f.forceValue(new Integer(end).toString());
-		f = ths.get(INDEX_NAME);
-		if (f == null) {
-			f = new FeatureNode();
-			ths.set(INDEX_NAME, f);
+		f.forceValue(val);
+	}
+
+	/**
+	 * The number held by f, or otherwise, if there is no f, or it
+	 * does not hold a number.
+	 */
+	private static int numberOr(FeatureNode f, int otherwise)
+	{
+		if (f == null || !f.isValued())
+			return otherwise;
+		if (f.isNumber())
+			return f.getNumber(otherwise);
+		try {
+			return Integer.parseInt(f.getValue());
+		} catch (NumberFormatException e) {
+			return otherwise;
 		}
-		f.forceValue(new Integer(indexInSentence).toString());
 	}
 
 	public static void main(String[] args) {
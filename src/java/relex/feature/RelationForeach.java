@@ -55,6 +55,58 @@ import java.util.HashSet;
 
 public class RelationForeach
 {
+	private static final int NAME = Symbols.id("name");
+	private static final int LINKS = Symbols.id("links");
+	private static final int MEMBER0 = Symbols.id("member0");
+	private static final String NAME_KEY = Symbols.name(NAME);
+
+	/**
+	 * Per feature name id: 0 if not yet looked at, 1 if _graphCrawl
+	 * follows the feature, 2 if it skips it.  Grown as new names turn
+	 * up; concurrent threads at worst compute the same entry twice.
+	 * Names that are not in the Symbols table are checked every time.
+	 */
+	private static volatile byte[] crawl = new byte[0];
+
+	private static boolean skipped(String key)
+	{
+		int id = Symbols.lookup(key);
+		byte[] c = crawl;
+		if (0 <= id && id < c.length && c[id] != 0) return c[id] == 2;
+
+		boolean skip = key.equals("str")
+			|| key.equals("orig_str")
+			|| key.equals("SIG")
+			|| key.equals("POS")
+			|| key.equals("pos")
+			|| key.equals("LAB")
+			|| key.equals("PREV")
+			|| key.equals("this")
+			|| key.startsWith("phr-")
+			|| key.startsWith("F_")
+			|| key.startsWith("lab_")
+			|| key.startsWith("linkL")
+			|| key.startsWith("linkR")
+			|| key.endsWith("-FLAG")
+			|| key.endsWith("_char")
+			|| key.endsWith("_links");
+		if (id < 0) return skip;
+
+		synchronized (RelationForeach.class)
+		{
+			c = crawl;
+			if (c.length <= id)
+			{
+				byte[] d = new byte[Math.max(2 * c.length, id + 64)];
+				System.arraycopy(c, 0, d, 0, c.length);
+				c = d;
+			}
+			c[id] = skip ? (byte) 2 : (byte) 1;
+			crawl = c;
+		}
+		return skip;
+	}
+
 	/**
 	 * Walk the graph, calling a callback for each relation node visited.
 	 * The callback is called only when a node has a "name" entry. Only
@@ -75,8 +127,10 @@ public class RelationForeach
 		if (f.isValued())
 			return rc;
 
-		for (String key : f.getFeatureNames())
+		for (int i = 0; i < f.featureCount(); i++)
 		{
+			String key = f.featureName(i);
+
 			// Review the structure of the graph!
 			// FeatureNode fk = f.get(key);
 			// if(!fk.isValued())
@@ -89,27 +143,12 @@ public class RelationForeach
 			// to crawl the entire graph. In particular, comparative links
 			// to _$crVar aren't linked by words. So follow all pointers,
 			// unless they are one of the particularly boring kinds below.
-			if (key.equals("str")) continue;
-			if (key.equals("orig_str")) continue;
-			if (key.equals("SIG")) continue;
-			if (key.equals("POS")) continue;
-			if (key.equals("pos")) continue;
-			if (key.equals("LAB")) continue;
-			if (key.equals("PREV")) continue;
-			if (key.equals("this")) continue;
-			if (key.startsWith("phr-")) continue;
-			if (key.startsWith("F_")) continue;
-			if (key.startsWith("lab_")) continue;
-			if (key.startsWith("linkL")) continue;
-			if (key.startsWith("linkR")) continue;
-			if (key.endsWith("-FLAG")) continue;
-			if (key.endsWith("_char")) continue;
-			if (key.endsWith("_links")) continue;
-
-			FeatureNode fn = f.get(key);
+			if (skipped(key)) continue;
+
+			FeatureNode fn = f.featureAt(i);
 
 			// If there's a "name", look for other stuff too.
-			if (key.equals("name"))
+			if (key.equals(NAME_KEY))
 			{
 				String name = fn.getValue();
 				if (name != null) {
@@ -148,11 +187,11 @@ public class RelationForeach
 	private static	class RelCB implements FeatureNodeCallback
 	{
 		public RelationCallback rcb;
-		public String link_str;     // How normal relex links are attached.
+		public int link_str;     // How normal relex links are attached.
 		public RelCB (RelationCallback cb)
 		{
 			rcb = cb;
-			link_str = "links";
+			link_str = LINKS;
 		}
 		public Boolean FNCallback(FeatureNode fn_link_from)
 		{
@@ -199,15 +238,15 @@ public class RelationForeach
 					// There may be multiple outgoing nodes from this relation;
 					// if there are, print all of them.
 					// System.out.println ("XXX link-to >> " + fn_link_to._prt_vals());
-					FeatureNode multi = fn_link_to.get("member0");
+					FeatureNode multi = fn_link_to.get(MEMBER0);
 					if (multi != null) {
-						Integer n = 0;
+						int n = 0;
 						while (multi != null)
 						{
 							stop = rcb.BinaryRelationCB(relation_name, fn_link_from, multi);
 							if (stop) return true;
 							n++;
-							String member_name = "member" + n.toString();
+							String member_name = Symbols.indexed("member", n);
 							multi = fn_link_to.get(member_name);
 						}
 					} else {
@@ -223,7 +262,7 @@ public class RelationForeach
 
 	private static Boolean skip_left_wall(FeatureNode f)
 	{
-		FeatureNode fname = f.get("name");
+		FeatureNode fname = f.get(NAME);
 		if (fname == null) return true;
 		String name = fname.getValue();
 		if (name.equals("LEFT-WALL")) return true;
@@ -246,7 +285,7 @@ public class RelationForeach
 	{
 		HashSet<FeatureNode> alreadyVisited = new HashSet<FeatureNode>();
 		RelCB relcb = new RelCB(cb);
-		relcb.link_str = mode;
+		relcb.link_str = Symbols.id(mode);
 		Boolean rc = _graphCrawl(root, alreadyVisited, relcb);
 		return rc;
 	}
@@ -325,7 +325,7 @@ public class SemanticView extends View
 			if (hasGroupMember(ths, other))
 				return;
 			int numGroupMembers = groupMembers(ths).size();
-			ths.set(MEMBER_PREFIX + numGroupMembers, other);
+			ths.set(Symbols.indexed(MEMBER_PREFIX, numGroupMembers), other);
 		}
 	}
 
@@ -340,17 +340,16 @@ public class SemanticView extends View
 		int numGroupMembers = groupMembers(ths).size();
 		boolean found = false;
 		for (int i = 0; i < numGroupMembers; i++) {
-			FeatureNode mem = ths.get(MEMBER_PREFIX + i);
+			FeatureNode mem = ths.get(Symbols.indexed(MEMBER_PREFIX, i));
 			if (mem == other) {
 				found = true;
 			}
 			if (found) {
 				if (i == numGroupMembers - 1)
-					ths.set(MEMBER_PREFIX + i, null);
+					ths.set(Symbols.indexed(MEMBER_PREFIX, i), null);
 				else
-					ths
-							.set(MEMBER_PREFIX + i, ths.get(MEMBER_PREFIX
-									+ (i + 1)));
+					ths.set(Symbols.indexed(MEMBER_PREFIX, i),
+							ths.get(Symbols.indexed(MEMBER_PREFIX, i + 1)));
 			}
 		}
 	}
@@ -0,0 +1,198 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package relex.feature;
+
+import java.util.HashSet;
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The process-wide table of feature names.  A name is given a small,
+ * dense int id by id(), and keeps it for the life of the process.  Only
+ * the names that the code and the rule files use are put in the table:
+ * the constants of the views, the steps of the FeaturePaths made when
+ * the rules are loaded, and the families handed out by indexed().
+ * Names that come from the input, such as those that PrepositionLinkAlg
+ * makes out of words, or those read back from a stream, are never put
+ * in it; the table would otherwise grow without bound in a long-running
+ * server.  FeatureNode keeps the shared copy, and the id, of the names
+ * that are in the table, so that these are mostly found by identity,
+ * or by id.
+ *
+ * Names built on the fly, such as "member" + n, should be obtained
+ * from indexed(), which hands out one shared copy instead of a fresh
+ * string per call, for the first few n.
+ *
+ * Feature values are mostly open-class (words), but a few, such as
+ * "T", "noun" or "singular", occur in every sentence.  value() returns
+ * a shared copy of these, so that a parsed corpus holds each of them
+ * once.  More values can be added with the system property
+ * relex.symbols.values, a comma-separated list.
+ *
+ * Ids are not stable from one run to the next; never write them out.
+ */
+public class Symbols
+{
+	public static final String VALUES_PROPERTY = "relex.symbols.values";
+
+	private static final String[] CLOSED_CLASS_VALUES = {
+		"T", "F", "WORD",
+		"noun", "verb", "adj", "adv", "prep", "det", "particle",
+		"punctuation", "conjunction", "interjection", "pronoun",
+		"singular", "plural", "uncountable",
+		"past", "present", "future", "infinitive", "imperative",
+		"progressive", "perfective", "passive", "gerund",
+		"definite", "indefinite", "interrogative", "declarative",
+		"masculine", "feminine", "neuter", "person", "location",
+		"organization", "date", "time", "money",
+		"LEFT-WALL", "RIGHT-WALL",
+	};
+
+	private static final int INDEXED_MAX = 32;
+
+	private static final ConcurrentHashMap<String,Integer> ids =
+		new ConcurrentHashMap<String,Integer>();
+
+	/** Names, by id; replaced, never modified, when it grows */
+	private static volatile String[] names = new String[256];
+	private static int count = 0;
+
+	private static final ConcurrentHashMap<String,String> values =
+		new ConcurrentHashMap<String,String>();
+
+	private static final ConcurrentHashMap<String,String[]> indexedNames =
+		new ConcurrentHashMap<String,String[]>();
+
+	static
+	{
+		for (String v : CLOSED_CLASS_VALUES) values.put(v, v);
+		String extra = System.getProperty(VALUES_PROPERTY);
+		if (extra != null)
+		{
+			StringTokenizer st = new StringTokenizer(extra, ",");
+			while (st.hasMoreTokens())
+			{
+				String v = st.nextToken().trim();
+				if (v.length() > 0) values.put(v, v);
+			}
+		}
+	}
+
+	/**
+	 * Return the id of the name, giving it one if it has none yet.
+	 */
+	public static int id(String name)
+	{
+		Integer id = ids.get(name);
+		if (id != null) return id.intValue();
+		return assign(name);
+	}
+
+	/**
+	 * Return the id of the name, or -1 if the name has never been
+	 * seen; in that case, no node can have such a feature.
+	 */
+	public static int lookup(String name)
+	{
+		Integer id = ids.get(name);
+		return (id == null) ? -1 : id.intValue();
+	}
+
+	private static synchronized int assign(String name)
+	{
+		Integer id = ids.get(name);
+		if (id != null) return id.intValue();
+
+		String[] n = names;
+		if (count == n.length)
+		{
+			String[] m = new String[2 * n.length];
+			System.arraycopy(n, 0, m, 0, n.length);
+			n = m;
+		}
+		// Keep a copy of our own; the caller's string may be a
+		// substring of some much larger one.
+		n[count] = new String(name);
+		names = n;
+		ids.put(n[count], count);
+		return count++;
+	}
+
+	/**
+	 * Return the name with the given id.
+	 */
+	public static String name(int id)
+	{
+		return names[id];
+	}
+
+	/**
+	 * Return the shared copy of a feature name.
+	 */
+	public static String intern(String name)
+	{
+		// Look the id up first: it may grow the names array.
+		int id = id(name);
+		return names[id];
+	}
+
+	/**
+	 * Return the shared copy of the name prefix + n, for example
+	 * "member3".  Small n are looked up without building a string;
+	 * larger ones are built, and left out of the table.
+	 */
+	public static String indexed(String prefix, int n)
+	{
+		if (n < 0 || INDEXED_MAX <= n)
+			return prefix + n;
+
+		String[] table = indexedNames.get(prefix);
+		if (table == null)
+		{
+			table = new String[INDEXED_MAX];
+			for (int i = 0; i < INDEXED_MAX; i++)
+				table[i] = intern(prefix + i);
+			String[] t = indexedNames.putIfAbsent(prefix, table);
+			if (t != null) table = t;
+		}
+		return table[n];
+	}
+
+	/**
+	 * Return the shared copy of a closed-class value, such as "noun",
+	 * or the value itself if it is not one of those.
+	 */
+	public static String value(String v)
+	{
+		String s = values.get(v);
+		return (s == null) ? v : s;
+	}
+
+	/**
+	 * Number of names in the table.
+	 */
+	public static synchronized int size()
+	{
+		return count;
+	}
+
+	/**
+	 * The closed-class values that value() shares.
+	 */
+	public static HashSet<String> getValues()
+	{
+		return new HashSet<String>(values.keySet());
+	}
+}
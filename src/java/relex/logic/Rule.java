@@ -22,6 +22,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
@@ -59,6 +60,20 @@ public class Rule {
 
 	private List<String> _exclusionList;
 
+	/**
+	 * The output string, compiled: the literal text between the
+	 * variables, and the variables themselves.  The output is
+	 * _outputText[0] + slot 0 + _outputText[1] + slot 1 ... where
+	 * slot i is the quoted value of _outputVariables[i], followed
+	 * by its quoted UUID, if _outputUUID[i] is set.
+	 */
+	private String[] _outputText;
+	private String[] _outputVariables;
+	private boolean[] _outputUUID;
+
+	private static final String INSTANCE_PREFIX = " (get-instance-name ";
+	private static final String INSTANCE_SUFFIX = " word_index";
+
 
 	/**
 	 * Constructor to build a ReLex2LogicRule from a string in the rule file.
@@ -71,6 +86,72 @@ public class Rule {
 		// build the required data immediately
 		getCriteria();
 		getMutuallyExclusiveRuleNames();
+		compileOutput();
+	}
+
+	/**
+	 * Split the output string into literal text and variable slots,
+	 * so that it need not be searched for variables on every match.
+	 * A variable is recognized by the same rule as in getSchemeOutput:
+	 * its name followed by a space or a closing parenthesis.
+	 */
+	private void compileOutput()
+	{
+		List<String> names = new ArrayList<String>();
+		for (Criterium criterium : _criteria)
+		{
+			for (String variableName : criterium.getVariables())
+			{
+				if (variableName.startsWith("$") && !names.contains(variableName))
+					names.add(variableName);
+			}
+		}
+
+		String output = getOutputString();
+		List<String> text = new ArrayList<String>();
+		List<String> vars = new ArrayList<String>();
+		List<Boolean> uuids = new ArrayList<Boolean>();
+		StringBuilder lit = new StringBuilder();
+		int i = 0;
+		while (i < output.length())
+		{
+			String found = null;
+			if (output.charAt(i) == '$')
+			{
+				for (String name : names)
+				{
+					int end = i + name.length();
+					if (output.startsWith(name, i) && end < output.length() &&
+					    (output.charAt(end) == ' ' || output.charAt(end) == ')'))
+					{
+						found = name;
+						break;
+					}
+				}
+			}
+			if (found == null)
+			{
+				lit.append(output.charAt(i));
+				i++;
+				continue;
+			}
+
+			i += found.length();
+			boolean uuid = lit.toString().endsWith(INSTANCE_PREFIX) &&
+				output.startsWith(INSTANCE_SUFFIX, i);
+			if (uuid) i += INSTANCE_SUFFIX.length();
+			text.add(lit.toString());
+			lit.setLength(0);
+			vars.add(found);
+			uuids.add(uuid);
+		}
+		text.add(lit.toString());
+
+		_outputText = text.toArray(new String[text.size()]);
+		_outputVariables = vars.toArray(new String[vars.size()]);
+		_outputUUID = new boolean[uuids.size()];
+		for (int j = 0; j < _outputUUID.length; j++)
+			_outputUUID[j] = uuids.get(j);
 	}
 
 	/**
@@ -153,6 +234,94 @@ public class Rule {
 		return schemeOutput;
 	}
 
+	/**
+	 * Returns the Scheme output for a given set of variable bindings,
+	 * without modifying this rule. The result is the same as that of
+	 * getSchemeOutput() after the values and UUIDs have been set on
+	 * the criteria.
+	 * @param values The values of the variables, by variable name.
+	 * @param uuids The UUIDs of the variable values, by variable name.
+	 * @return Scheme output.
+	 */
+	public String getSchemeOutput(Map<String, String> values, Map<String, String> uuids)
+	{
+		// A value that itself looks like a variable, or that holds
+		// quotes, could be seen by the textual substitution; let
+		// that handle it, so that the output remains the same.
+		for (String variableName : _outputVariables)
+		{
+			String value = values.get(variableName);
+			if (value != null && (value.indexOf('$') >= 0 || value.indexOf('"') >= 0))
+				return substituteVariables(values, uuids);
+		}
+
+		StringBuilder sb = new StringBuilder(_outputText[0]);
+		for (int i = 0; i < _outputVariables.length; i++)
+		{
+			sb.append('"').append(values.get(_outputVariables[i])).append('"');
+			if (_outputUUID[i])
+				sb.append(" \"").append(uuids.get(_outputVariables[i])).append('"');
+			sb.append(_outputText[i + 1]);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Same as getSchemeOutput(), but with the values taken from maps.
+	 */
+	private String substituteVariables(Map<String, String> values, Map<String, String> uuids)
+	{
+		String schemeOutput = getOutputString();
+
+		for (Criterium criterium : _criteria) {
+			for (String variableName : criterium.getVariables()) {
+				String variableValue = values.get(variableName);
+				String variableValueUUID = uuids.get(variableName);
+				if(variableName.substring(0, 1).equals("$"))
+				{
+					schemeOutput = schemeOutput.replaceAll(
+											Pattern.quote(variableName) + "([ )])", Matcher.quoteReplacement("\"" + variableValue + "\"") + "$1");
+					schemeOutput = schemeOutput.replaceAll(
+											Pattern.quote(" (get-instance-name " + "\"" + variableValue + "\"" + " word_index"),
+											Matcher.quoteReplacement(" (get-instance-name " + "\"" + variableValue + "\" " + "\"" + variableValueUUID + "\""));
+				}
+			}
+		}
+
+		return schemeOutput;
+	}
+
+	/**
+	 * Checks whether a set of variable bindings satisfies all of the
+	 * criteria, in the sense of getAllCriteriaSatisfied(), where each
+	 * criterium has been given the values of its first and second
+	 * variables.
+	 * @param values The values of the variables, by variable name.
+	 * @return Boolean indicating whether all criteria have been satisfied.
+	 */
+	public boolean isSatisfiedBy(Map<String, String> values)
+	{
+		for (Criterium criterium : _criteria)
+		{
+			List<String> variables = criterium.getVariables();
+			if (variables.size() == 0)
+				return false;
+
+			String name1 = criterium.getFirstVariableName();
+			String name2 = criterium.getSecondVariableName();
+			for (String variable : variables)
+			{
+				String variableValue = null;
+				if (variable.equals(name1) || variable.equals(name2))
+					variableValue = values.get(variable);
+
+				if (variableValue == null || variableValue == "")
+					return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Returns a List<String> containing the criteria in the form they were supplied to the rule on constructions. In the example above, two strings, _subj($y, $x) and _obj($y, $z)
 	 * @return  A List<String> containing the original criteria strings.
@@ -0,0 +1,207 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package relex.morphy;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Morphy that remembers the results of another one. The same word
+ * is morphed once per parse, and once per occurance in the text;
+ * with MorphyJWNL, a word not found in the wordnet files costs a
+ * fork of the "wn" command, every single time.
+ *
+ * The cache is bounded: it holds at most a fixed number of words,
+ * dropping the least recently used ones first.  It is split into
+ * segments, each with its own lock, so that several threads may
+ * use it at once.  Note that a miss is passed on to the underlying
+ * Morphy as-is, so that calls to a single-threaded Morphy still need
+ * to be serialized by the caller.
+ *
+ * The cached results are never handed out: MorphyAlg links the
+ * feature nodes of a Morphed into the sentence, so each caller gets
+ * its own copy.
+ *
+ * The cache may be selected by setting the system property
+ * relex.morphy.Morphy=relex.morphy.CachingMorphy, in which case
+ * the underlying Morphy is given by relex.morphy.CachingMorphy.delegate,
+ * or by setting relex.morphy.cache=true, which wraps whatever Morphy
+ * MorphyFactory would have returned.  The size is given by the
+ * property relex.morphy.cache.size.
+ */
+public class CachingMorphy implements Morphy
+{
+	public static final String DELEGATE_PROPERTY = "relex.morphy.CachingMorphy.delegate";
+	public static final String SIZE_PROPERTY = "relex.morphy.cache.size";
+	public static final int DEFAULT_SIZE = 20000;
+
+	private static final int SEGMENTS = 16;
+
+	private Morphy delegate;
+	private Segment[] segments;
+
+	private AtomicLong hits = new AtomicLong();
+	private AtomicLong misses = new AtomicLong();
+	private AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * One part of the cache; a LinkedHashMap in access order, so that
+	 * the eldest entry is the least recently used one.
+	 */
+	private class Segment extends LinkedHashMap<String, Morphed>
+	{
+		private static final long serialVersionUID = 1L;
+		private int capacity;
+
+		Segment(int cap)
+		{
+			super(16, 0.75f, true);
+			capacity = cap;
+		}
+
+		protected boolean removeEldestEntry(Map.Entry<String, Morphed> eldest)
+		{
+			if (size() <= capacity) return false;
+			evictions.incrementAndGet();
+			return true;
+		}
+	}
+
+	/**
+	 * Used by MorphyFactory; the underlying Morphy is created by
+	 * initialize().
+	 */
+	public CachingMorphy()
+	{
+	}
+
+	/**
+	 * Cache the results of an already-initialized Morphy.
+	 */
+	public CachingMorphy(Morphy morphy)
+	{
+		this(morphy, Integer.getInteger(SIZE_PROPERTY, DEFAULT_SIZE));
+	}
+
+	public CachingMorphy(Morphy morphy, int size)
+	{
+		delegate = morphy;
+		makeSegments(size);
+	}
+
+	private void makeSegments(int size)
+	{
+		if (size < SEGMENTS) size = SEGMENTS;
+		segments = new Segment[SEGMENTS];
+		for (int i = 0; i < SEGMENTS; i++)
+			segments[i] = new Segment((size + SEGMENTS - 1) / SEGMENTS);
+	}
+
+	public void initialize()
+	{
+		if (delegate != null) return;
+
+		String name = System.getProperty(DELEGATE_PROPERTY,
+			MorphyFactory.DEFAULT_MULTI_THREAD_IMPLEMENTATION);
+		delegate = MorphyFactory.newInstance(name);
+		makeSegments(Integer.getInteger(SIZE_PROPERTY, DEFAULT_SIZE));
+	}
+
+	public Morphed morph(String word)
+	{
+		Segment seg = segments[(word.hashCode() & 0x7fffffff) % SEGMENTS];
+		Morphed m;
+		synchronized (seg)
+		{
+			m = seg.get(word);
+		}
+		if (m != null)
+		{
+			hits.incrementAndGet();
+			return new Morphed(m);
+		}
+
+		// Don't hold the lock while the word is looked up; two threads
+		// may then both morph the same word, which is harmless.
+		misses.incrementAndGet();
+		m = delegate.morph(word);
+		if (m == null) return null;
+		Morphed copy = new Morphed(m);
+		synchronized (seg)
+		{
+			seg.put(word, copy);
+		}
+		return m;
+	}
+
+	public Morphy getDelegate()
+	{
+		return delegate;
+	}
+
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	public long getMisses()
+	{
+		return misses.get();
+	}
+
+	public long getEvictions()
+	{
+		return evictions.get();
+	}
+
+	/** Number of words currently cached */
+	public int getSize()
+	{
+		int n = 0;
+		for (Segment seg : segments)
+		{
+			synchronized (seg) { n += seg.size(); }
+		}
+		return n;
+	}
+
+	/** Fraction of lookups answered from the cache */
+	public double getHitRate()
+	{
+		long h = getHits();
+		long total = h + getMisses();
+		if (total == 0) return 0.0;
+		return ((double) h) / total;
+	}
+
+	public void clear()
+	{
+		for (Segment seg : segments)
+		{
+			synchronized (seg) { seg.clear(); }
+		}
+		hits.set(0);
+		misses.set(0);
+		evictions.set(0);
+	}
+
+	public String toString()
+	{
+		return String.format(
+			"Morphy cache: hits=%d misses=%d hit rate=%.1f%% evictions=%d size=%d",
+			getHits(), getMisses(), 100.0 * getHitRate(), getEvictions(), getSize());
+	}
+}
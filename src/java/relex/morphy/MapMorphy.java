@@ -17,16 +17,11 @@ package relex.morphy;
 
 import java.io.FileNotFoundException;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.TreeMap;
-import java.util.TreeSet;
 
 import net.didion.jwnl.JWNLException;
-import net.didion.jwnl.data.Exc;
-import net.didion.jwnl.data.IndexWord;
 import net.didion.jwnl.data.POS;
-import net.didion.jwnl.dictionary.Dictionary;
 
 public class MapMorphy implements Morphy
 {
@@ -88,49 +83,20 @@ public class MapMorphy implements Morphy
 
 	public static String DEFAULT_WORDNET_CONFIG_FILE = "data/wordnet/file_properties.xml";
 
-	final POS[] pos = new POS[] { POS.NOUN, POS.VERB, POS.ADVERB, POS.ADJECTIVE };
-
-	Map<POS, Map<String, IndexWord>> partsOfSpeech = new HashMap<POS, Map<String,IndexWord>>();
+	/**
+	 * The WordNet lemmas and exceptions; shared, read-only, by all
+	 * instances.  The parts of speech are numbered as in
+	 * MorphyIndex.POS_ORDER.
+	 */
+	private MorphyIndex index;
 
-	Map<POS, Map<String, TreeSet<String>>> exceptions = new HashMap<POS, Map<String, TreeSet<String>>>();
+	private static final int NOUN = 0;
+	private static final int VERB = 1;
+	private static final int ADVERB = 2;
+	private static final int ADJECTIVE = 3;
 
-	@SuppressWarnings("unchecked")
 	public void initialize() {
-		MorphyFactory.initializeJWNL();
-
-		Dictionary d = Dictionary.getInstance();
-		for(int i = 0; i < pos.length; i++) {
-			Map<String, TreeSet<String>> posExceptions = exceptions.get(pos[i]);
-			if (posExceptions == null){
-				posExceptions = new TreeMap<String, TreeSet<String>>();
-				exceptions.put(pos[i], posExceptions);
-			}
-			try {
-				for (Iterator it = d.getExceptionIterator(pos[i]); it.hasNext(); ){
-					Exc exc = (Exc) it.next();
-					String word = exc.getLemma();
-					TreeSet<String> wordExceptions = posExceptions.get(word);
-					if (wordExceptions==null){
-						wordExceptions = new TreeSet<String>();
-						posExceptions.put(word, wordExceptions);
-					}
-					wordExceptions.addAll(exc.getExceptions());
-				}
-				Map<String, IndexWord> indexWords = partsOfSpeech.get(pos[i]);
-				if (indexWords == null){
-					indexWords = new TreeMap<String, IndexWord>();
-					partsOfSpeech.put(pos[i], indexWords);
-				}
-				for (Iterator it = d.getIndexWordIterator(pos[i]); it.hasNext(); ){
-					IndexWord word = (IndexWord) it.next();
-					String lemma = word.getLemma();
-					indexWords.put(lemma, word);
-				}
-			} catch (JWNLException e) {
-				e.printStackTrace();
-			}
-		}
-
+		index = MorphyIndex.getShared();
 	}
 
 	public Morphed morph(String word) {
@@ -139,38 +105,19 @@ public class MapMorphy implements Morphy
 		return m;
 	}
 
-	private IndexWord lookup(POS pos, String word){
-		String lookup = word.trim().toLowerCase();
-		IndexWord indexWord = partsOfSpeech.get(pos).get(lookup);
-		if (indexWord != null) return indexWord;
+	private String lookup(int pos, String word){
+		int id = index.findLemma(pos, word, true);
+		if (id < 0)
+			id = index.findException(pos, word, true);
+		if (id >= 0) return index.getLemma(pos, id);
 
-		IndexWord exception = lookupExceptions(pos, lookup);
-		if (exception!=null) return exception;
-
-		Stemmer stemmer = stemmers.get(pos);
+		Stemmer stemmer = stemmers.get(MorphyIndex.POS_ORDER[pos]);
 		if (stemmer != null){
 			for (String stemmed : stemmer.stemIt(word)){
-				IndexWord stemmedResult = partsOfSpeech.get(pos).get(stemmed.toLowerCase());
-				if (stemmedResult != null) return stemmedResult;
-				else {
-					IndexWord stemmedException = lookupExceptions(pos, stemmed.toLowerCase());
-					if (stemmedException!=null) return stemmedException;
-				}
-			}
-		}
-		return null;
-	}
-
-	/**
-	 * @param pos
-	 * @param lookup
-	 */
-	private IndexWord lookupExceptions(POS pos, String lookup) {
-		TreeSet<String> wordExceptions = exceptions.get(pos).get(lookup);
-		if ( (wordExceptions!=null) && (wordExceptions.size()>0) ){
-			for(String exception: wordExceptions){
-				IndexWord exceptionResult = partsOfSpeech.get(pos).get(exception.toLowerCase());
-				if (exceptionResult != null) return exceptionResult;
+				id = index.findLemma(pos, stemmed, false);
+				if (id < 0)
+					id = index.findException(pos, stemmed, false);
+				if (id >= 0) return index.getLemma(pos, id);
 			}
 		}
 		return null;
@@ -189,7 +136,7 @@ public class MapMorphy implements Morphy
 
 		word = convertStandardContraction(word);
 
-		IndexWord verb = lookup(POS.VERB, word);
+		String verb = lookup(VERB, word);
 
 			// Dont check for non-verb roots if we already
 			// know its a negative verb.
@@ -197,25 +144,25 @@ public class MapMorphy implements Morphy
 				return;
 			}
 
-			IndexWord noun = lookup(POS.NOUN, word);
-			IndexWord adj = lookup(POS.ADJECTIVE, word);
-			IndexWord adv = lookup(POS.ADVERB, word);
+			String noun = lookup(NOUN, word);
+			String adj = lookup(ADJECTIVE, word);
+			String adv = lookup(ADVERB, word);
 
 			if (noun != null) {
-				m.putRoot(NOUN_F, maybeChangeFirstLetter(m.getOriginal(), noun.getLemma()));
+				m.putRoot(NOUN_F, maybeChangeFirstLetter(m.getOriginal(), noun));
 			}
 			if (verb != null) {
 				if (negativeVerb) {
-					m.putRootNegative(VERB_F, maybeChangeFirstLetter(m.getOriginal(), verb.getLemma()));
+					m.putRootNegative(VERB_F, maybeChangeFirstLetter(m.getOriginal(), verb));
 				} else {
-					m.putRoot(VERB_F, maybeChangeFirstLetter(m.getOriginal(), verb.getLemma()));
+					m.putRoot(VERB_F, maybeChangeFirstLetter(m.getOriginal(), verb));
 				}
 			}
 			if (adj != null) {
-				m.putRoot(ADJ_F, maybeChangeFirstLetter(m.getOriginal(), adj.getLemma()));
+				m.putRoot(ADJ_F, maybeChangeFirstLetter(m.getOriginal(), adj));
 			}
 			if (adv != null) {
-				m.putRoot(ADV_F, maybeChangeFirstLetter(m.getOriginal(), adv.getLemma()));
+				m.putRoot(ADV_F, maybeChangeFirstLetter(m.getOriginal(), adv));
 			}
 
 
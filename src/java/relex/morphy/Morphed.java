@@ -31,6 +31,23 @@ public class Morphed
 		this.features = new HashMap<String, FeatureNode>();
 	}
 
+	/**
+	 * Copy constructor. The feature nodes are copied, so that the
+	 * copy may be linked into a sentence without touching the other.
+	 */
+	public Morphed(Morphed other)
+	{
+		this(other.original);
+		for (String type : other.features.keySet())
+		{
+			FeatureNode from = other.features.get(type);
+			FeatureNode to = new FeatureNode();
+			for (String key : from.getFeatureNames())
+				to.set(key, new FeatureNode(from.get(key).getValue()));
+			features.put(type, to);
+		}
+	}
+
 	public void putRootNegative(String type, String root)
 	{
 		putRoot(type, root);
@@ -12,6 +12,12 @@ public class MorphyFactory
 	public static final String DEFAULT_SINGLE_THREAD_IMPLEMENTATION = "relex.morphy.MorphyJWNL";
 	public static final String DEFAULT_MULTI_THREAD_IMPLEMENTATION = "relex.morphy.MapMorphy";
 
+	/**
+	 * If true, the Morphy returned by getImplementation() is wrapped
+	 * in a CachingMorphy.
+	 */
+	public static final String CACHE_PROPERTY = "relex.morphy.cache";
+
 	private static final String WORDNET_PROPERTY = "wordnet.configfile";
 	private static final String JWNL_FILE_PROPERTIES_XML = "file_properties.xml";
 	private static final String JWNL_DIR_PROPERTIES_XML = "./data/wordnet";
@@ -20,17 +26,33 @@ public class MorphyFactory
 	 * Obtains a Morphy instance. If the system property
 	 * MORPHY_IMPLEMENTATION_PROPERTY is defined, try to instantiate
 	 * the class specified by it; if not, uses the given class name.
+	 * If the system property CACHE_PROPERTY is true, the instance is
+	 * wrapped in a CachingMorphy.
 	 *
 	 * @param defaultImplementation
 	 * @return
 	 */
 	public static Morphy getImplementation(String defaultImplementation)
 	{
-		Morphy instance = null;
 		String implementationClassname =
 			System.getProperty(MORPHY_IMPLEMENTATION_PROPERTY);
 		if (implementationClassname == null)
 			implementationClassname = defaultImplementation;
+
+		Morphy instance = newInstance(implementationClassname);
+		if (Boolean.getBoolean(CACHE_PROPERTY) &&
+		    !(instance instanceof CachingMorphy))
+			instance = new CachingMorphy(instance);
+		return instance;
+	}
+
+	/**
+	 * Instantiates and initializes the named Morphy class, without
+	 * looking at any of the system properties.
+	 */
+	public static Morphy newInstance(String implementationClassname)
+	{
+		Morphy instance = null;
 		try
 		{
 			Class<?> cl = Class.forName(implementationClassname);
@@ -0,0 +1,432 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package relex.morphy;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import net.didion.jwnl.JWNLException;
+import net.didion.jwnl.data.Exc;
+import net.didion.jwnl.data.IndexWord;
+import net.didion.jwnl.data.POS;
+import net.didion.jwnl.dictionary.Dictionary;
+
+/**
+ * The WordNet lemmas and exceptions used by MapMorphy, in a compact,
+ * read-only form.  For each part of speech, there are two sorted
+ * tables: the lemmas, and the exception words (e.g. "mice"), each of
+ * which is mapped to the lemma it stands for ("mouse").  Strings are
+ * kept as chars in a single buffer, so that a lookup is a binary
+ * search that allocates nothing.
+ *
+ * Reading the WordNet dictionary through JWNL takes several seconds,
+ * and a lot of memory.  So the tables can be written to a file, once,
+ * by running
+ *
+ *     java relex.morphy.MorphyIndex [data/wordnet/morphy.idx]
+ *
+ * after which the file is memory-mapped at startup.  The index is
+ * shared by all of the MapMorphy instances in the JVM; the location
+ * of the file is given by the property relex.morphy.index.  If there
+ * is no such file, the tables are built from the dictionary, as before.
+ *
+ * File layout: the magic number, version, and number of parts of
+ * speech, followed by a lemma table and an exception table for each.
+ * A table is a count n, n+1 char offsets, (exceptions only) n lemma
+ * numbers, and the chars of the strings; all big-endian.
+ */
+public class MorphyIndex
+{
+	public static final String INDEX_PROPERTY = "relex.morphy.index";
+	public static final String DEFAULT_INDEX_FILE = "data/wordnet/morphy.idx";
+
+	/** The parts of speech, in the order of the tables. */
+	public static final POS[] POS_ORDER =
+		new POS[] { POS.NOUN, POS.VERB, POS.ADVERB, POS.ADJECTIVE };
+
+	private static final int MAGIC = 0x524c4d49;
+	private static final int VERSION = 1;
+
+	private static MorphyIndex shared;
+
+	private ByteBuffer buf;
+	private Table[] lemmas;
+	private Table[] exceptions;
+
+	/** False if String.toLowerCase() may differ from Character.toLowerCase() */
+	private boolean asciiFold;
+
+	/** Byte positions of the parts of one table within the buffer */
+	private static class Table
+	{
+		int count;
+		int offsets;
+		int values;
+		int chars;
+	}
+
+	private MorphyIndex(ByteBuffer b)
+	{
+		buf = b;
+		if (buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION)
+			throw new RuntimeException("Error: not a morphy index, or wrong version");
+
+		int npos = buf.getInt(8);
+		lemmas = new Table[npos];
+		exceptions = new Table[npos];
+		int pos = 12;
+		for (int i = 0; i < npos; i++)
+		{
+			lemmas[i] = new Table();
+			pos = readTable(lemmas[i], pos, false);
+			exceptions[i] = new Table();
+			pos = readTable(exceptions[i], pos, true);
+		}
+
+		String lang = Locale.getDefault().getLanguage();
+		asciiFold = !lang.equals("tr") && !lang.equals("az") && !lang.equals("lt");
+	}
+
+	private int readTable(Table t, int pos, boolean hasValues)
+	{
+		t.count = buf.getInt(pos);
+		t.offsets = pos + 4;
+		pos = t.offsets + 4 * (t.count + 1);
+		t.values = -1;
+		if (hasValues)
+		{
+			t.values = pos;
+			pos += 4 * t.count;
+		}
+		t.chars = pos;
+		return pos + 2 * buf.getInt(t.offsets + 4 * t.count);
+	}
+
+	/* ---------------------------------------------------------- */
+
+	/**
+	 * Returns the index shared by all MapMorphy's: the file named by
+	 * relex.morphy.index, if it exists, else built from WordNet.
+	 */
+	public static synchronized MorphyIndex getShared()
+	{
+		if (shared != null) return shared;
+
+		String filename = System.getProperty(INDEX_PROPERTY, DEFAULT_INDEX_FILE);
+		if (new File(filename).exists())
+		{
+			shared = open(filename);
+			System.err.println("Info: Using morphy index " + filename);
+		}
+		else
+		{
+			MorphyFactory.initializeJWNL();
+			shared = build(Dictionary.getInstance());
+			System.err.println("Info: No morphy index at " + filename +
+				"; run relex.morphy.MorphyIndex to create one.");
+		}
+		return shared;
+	}
+
+	/** Memory-map an index file, read-only. */
+	public static MorphyIndex open(String filename)
+	{
+		try
+		{
+			RandomAccessFile f = new RandomAccessFile(filename, "r");
+			FileChannel ch = f.getChannel();
+			ByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+			f.close();
+			return new MorphyIndex(b);
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException("Error: Unable to map morphy index " +
+				filename + ": " + e);
+		}
+	}
+
+	public void write(String filename)
+	{
+		try
+		{
+			FileOutputStream out = new FileOutputStream(filename);
+			ByteBuffer b = buf.duplicate();
+			b.clear();
+			out.getChannel().write(b);
+			out.close();
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException("Error: Unable to write morphy index " +
+				filename + ": " + e);
+		}
+	}
+
+	/**
+	 * Read the lemmas and exceptions of each part of speech from the
+	 * dictionary, the same way that MapMorphy used to.
+	 */
+	@SuppressWarnings("unchecked")
+	public static MorphyIndex build(Dictionary d)
+	{
+		List<TreeSet<String>> lemmaSets = new ArrayList<TreeSet<String>>();
+		List<TreeMap<String, TreeSet<String>>> excMaps =
+			new ArrayList<TreeMap<String, TreeSet<String>>>();
+
+		for (int i = 0; i < POS_ORDER.length; i++)
+		{
+			TreeSet<String> words = new TreeSet<String>();
+			TreeMap<String, TreeSet<String>> excs = new TreeMap<String, TreeSet<String>>();
+			lemmaSets.add(words);
+			excMaps.add(excs);
+			try
+			{
+				for (Iterator it = d.getExceptionIterator(POS_ORDER[i]); it.hasNext(); )
+				{
+					Exc exc = (Exc) it.next();
+					TreeSet<String> wordExceptions = excs.get(exc.getLemma());
+					if (wordExceptions == null)
+					{
+						wordExceptions = new TreeSet<String>();
+						excs.put(exc.getLemma(), wordExceptions);
+					}
+					wordExceptions.addAll(exc.getExceptions());
+				}
+				for (Iterator it = d.getIndexWordIterator(POS_ORDER[i]); it.hasNext(); )
+				{
+					IndexWord word = (IndexWord) it.next();
+					words.add(word.getLemma());
+				}
+			}
+			catch (JWNLException e)
+			{
+				e.printStackTrace();
+			}
+		}
+		return build(lemmaSets, excMaps);
+	}
+
+	/**
+	 * Build the index from the lemmas, and the exceptions, of each
+	 * part of speech.  An exception word stands for the first of its
+	 * exceptions that, once lower-cased, is a lemma.
+	 */
+	public static MorphyIndex build(List<TreeSet<String>> lemmaSets,
+	                                List<TreeMap<String, TreeSet<String>>> excMaps)
+	{
+		int size = 12;
+		List<String[]> lemmaArrays = new ArrayList<String[]>();
+		List<String[]> excArrays = new ArrayList<String[]>();
+		List<int[]> excValues = new ArrayList<int[]>();
+		for (int i = 0; i < lemmaSets.size(); i++)
+		{
+			String[] words = lemmaSets.get(i).toArray(new String[0]);
+			TreeMap<String, Integer> ids = new TreeMap<String, Integer>();
+			for (int j = 0; j < words.length; j++)
+				ids.put(words[j], j);
+
+			List<String> keys = new ArrayList<String>();
+			List<Integer> vals = new ArrayList<Integer>();
+			for (Map.Entry<String, TreeSet<String>> e : excMaps.get(i).entrySet())
+			{
+				for (String exception : e.getValue())
+				{
+					Integer id = ids.get(exception.toLowerCase());
+					if (id != null)
+					{
+						keys.add(e.getKey());
+						vals.add(id);
+						break;
+					}
+				}
+			}
+			int[] v = new int[vals.size()];
+			for (int j = 0; j < v.length; j++) v[j] = vals.get(j);
+
+			lemmaArrays.add(words);
+			excArrays.add(keys.toArray(new String[keys.size()]));
+			excValues.add(v);
+			size += tableSize(words, false) + tableSize(excArrays.get(i), true);
+		}
+
+		ByteBuffer b = ByteBuffer.allocate(size);
+		b.putInt(MAGIC);
+		b.putInt(VERSION);
+		b.putInt(lemmaSets.size());
+		for (int i = 0; i < lemmaSets.size(); i++)
+		{
+			putTable(b, lemmaArrays.get(i), null);
+			putTable(b, excArrays.get(i), excValues.get(i));
+		}
+		return new MorphyIndex(b);
+	}
+
+	private static int tableSize(String[] strs, boolean hasValues)
+	{
+		int size = 4 + 4 * (strs.length + 1);
+		if (hasValues) size += 4 * strs.length;
+		for (String s : strs) size += 2 * s.length();
+		return size;
+	}
+
+	private static void putTable(ByteBuffer b, String[] strs, int[] values)
+	{
+		b.putInt(strs.length);
+		int off = 0;
+		for (String s : strs)
+		{
+			b.putInt(off);
+			off += s.length();
+		}
+		b.putInt(off);
+		if (values != null)
+			for (int v : values) b.putInt(v);
+		for (String s : strs)
+			for (int i = 0; i < s.length(); i++) b.putChar(s.charAt(i));
+	}
+
+	/* ---------------------------------------------------------- */
+
+	/**
+	 * Returns the number of the lemma, or -1 if not found. If trim is
+	 * set, the word is looked up as word.trim().toLowerCase(), else as
+	 * word.toLowerCase().
+	 */
+	public int findLemma(int pos, String word, boolean trim)
+	{
+		return find(lemmas[pos], word, trim);
+	}
+
+	/**
+	 * Returns the number of the lemma that the exception word stands
+	 * for, or -1. The word is normalized as for findLemma().
+	 */
+	public int findException(int pos, String word, boolean trim)
+	{
+		Table t = exceptions[pos];
+		int i = find(t, word, trim);
+		if (i < 0) return -1;
+		return buf.getInt(t.values + 4 * i);
+	}
+
+	public String getLemma(int pos, int id)
+	{
+		Table t = lemmas[pos];
+		int start = buf.getInt(t.offsets + 4 * id);
+		int end = buf.getInt(t.offsets + 4 * (id + 1));
+		char[] cs = new char[end - start];
+		for (int i = 0; i < cs.length; i++)
+			cs[i] = buf.getChar(t.chars + 2 * (start + i));
+		return new String(cs);
+	}
+
+	public int getLemmaCount(int pos)
+	{
+		return lemmas[pos].count;
+	}
+
+	public int getExceptionCount(int pos)
+	{
+		return exceptions[pos].count;
+	}
+
+	private int find(Table t, String word, boolean trim)
+	{
+		int from = 0;
+		int to = word.length();
+		if (trim)
+		{
+			while (from < to && word.charAt(from) <= ' ') from++;
+			while (from < to && word.charAt(to - 1) <= ' ') to--;
+		}
+
+		boolean ascii = asciiFold;
+		for (int i = from; ascii && i < to; i++)
+			if (word.charAt(i) >= 128) ascii = false;
+		if (!ascii)
+		{
+			// Let String do the case-folding, with all of its rules.
+			word = word.substring(from, to).toLowerCase();
+			from = 0;
+			to = word.length();
+		}
+
+		int lo = 0;
+		int hi = t.count - 1;
+		while (lo <= hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			int cmp = compare(t, mid, word, from, to, ascii);
+			if (cmp < 0) lo = mid + 1;
+			else if (cmp > 0) hi = mid - 1;
+			else return mid;
+		}
+		return -1;
+	}
+
+	/** Same as String.compareTo(), of entry i against the word. */
+	private int compare(Table t, int i, String word, int from, int to, boolean fold)
+	{
+		int start = buf.getInt(t.offsets + 4 * i);
+		int len1 = buf.getInt(t.offsets + 4 * (i + 1)) - start;
+		int len2 = to - from;
+		int n = Math.min(len1, len2);
+		int p = t.chars + 2 * start;
+		for (int k = 0; k < n; k++)
+		{
+			char c1 = buf.getChar(p + 2 * k);
+			char c2 = word.charAt(from + k);
+			if (fold) c2 = Character.toLowerCase(c2);
+			if (c1 != c2) return c1 - c2;
+		}
+		return len1 - len2;
+	}
+
+	/* ---------------------------------------------------------- */
+
+	/**
+	 * The build step: reads WordNet, and writes the index file.
+	 */
+	public static void main(String[] args)
+	{
+		String filename = DEFAULT_INDEX_FILE;
+		if (args.length > 0) filename = args[0];
+
+		long t = System.currentTimeMillis();
+		if (!MorphyFactory.initializeJWNL())
+			System.exit(1);
+		MorphyIndex index = build(Dictionary.getInstance());
+		index.write(filename);
+
+		for (int i = 0; i < POS_ORDER.length; i++)
+			System.err.println("Info: " + POS_ORDER[i] + ": " +
+				index.getLemmaCount(i) + " lemmas, " +
+				index.getExceptionCount(i) + " exceptions");
+		System.err.println("Info: Wrote " + filename + " in " +
+			(System.currentTimeMillis() - t) + " ms");
+	}
+}
@@ -20,13 +20,16 @@ package relex.output;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Stack;
 import java.util.Iterator;
 
+import relex.Deadline;
 import relex.feature.FeatureNode;
 import relex.feature.RelationCallback;
-import relex.feature.RelationForeach;
+import relex.feature.Symbols;
 import relex.logic.Rule;
 import relex.logic.Criterium;
 import relex.logic.RuleSet;
@@ -40,9 +43,20 @@ import relex.logic.RuleSet;
 public class LogicProcessor
 {
 	/**
-	 * Relex2LogicRuleSet that contains a fresh rule set.
+	 * The rules, in order of priority. The Rule objects are only read,
+	 * never modified, so they may be shared by all sentences.
 	 */
-	private RuleSet _relex2LogicRuleSet;
+	private Rule[] _rules;
+
+	/**
+	 * _exclusive[i][j] is true if rules i and j are mutually exclusive.
+	 */
+	private boolean[][] _exclusive;
+
+	/**
+	 * The labels of all the criteria of all the rules.
+	 */
+	private HashSet<String> _labels;
 
 	/**
 	 * Boolean to control verbose output
@@ -50,12 +64,25 @@ public class LogicProcessor
 	private Boolean bVerboseMode = false;
 
 	/**
-	 * Constructor, receives a fresh rule set.
+	 * Constructor, receives a rule set. The rule set is not modified
+	 * during processing, so the LogicProcessor may be re-used for any
+	 * number of sentences.
 	 * @param relex2LogicRuleSet a RuleSet to be applied.
 	 */
 	public LogicProcessor(RuleSet relex2LogicRuleSet)
 	{
-		_relex2LogicRuleSet = relex2LogicRuleSet;
+		List<Rule> ruleSet = relex2LogicRuleSet.getRulesByPriority();
+		_rules = ruleSet.toArray(new Rule[ruleSet.size()]);
+
+		_exclusive = new boolean[_rules.length][_rules.length];
+		for (int i = 0; i < _rules.length; i++)
+			for (int j = 0; j < _rules.length; j++)
+				_exclusive[i][j] = _rules[i].isMutuallyExclusive(_rules[j]);
+
+		_labels = new HashSet<String>();
+		for (Rule rule : _rules)
+			for (Criterium criterium : rule.getCriteria())
+				_labels.add(criterium.getCriteriumLabel());
 	}
 
 	/**
@@ -64,12 +91,21 @@ public class LogicProcessor
 	private static class RuleChecker implements RelationCallback
 	{
 		// input
-		public List<Rule> orderedRulesSet;
+		private Rule[] rules;
+		private boolean[][] exclusive;
+		private RelationTable table;
+		private Deadline deadline;
+
+		// recursion steps taken, for checking the deadline now and then
+		private long steps = 0;
+
+		// whether the path search may re-use the results of a sub-search
+		private boolean memoize;
 
 		// output
 		public StringBuilder schemeBuilder;
 
-		private List<Rule> allAppliedRules;		// keep track of all the rules that has been applied
+		private HashSet<String> allOutputs;		// keep track of the output of all the rules that has been applied
 
 		/**
 		 * Helper class for returning both child and parent nodes.
@@ -88,6 +124,112 @@ public class LogicProcessor
 			}
 		}
 
+		/**
+		 * The pairs matched along one path, one per criterium of the
+		 * rule (by position in the rule), or null for the criteriums
+		 * still to be matched.  Two paths that match the same pairs
+		 * give the same result, so they are equal.
+		 */
+		private static class Assignment
+		{
+			public ChildParentPair[] pairs;
+
+			public Assignment(int numCriteria)
+			{
+				pairs = new ChildParentPair[numCriteria];
+			}
+
+			public Assignment(Assignment other)
+			{
+				pairs = other.pairs.clone();
+			}
+
+			public boolean equals(Object o)
+			{
+				if (!(o instanceof Assignment))
+					return false;
+				ChildParentPair[] other = ((Assignment) o).pairs;
+				for (int i = 0; i < pairs.length; i++)
+				{
+					if (pairs[i] == null || other[i] == null)
+					{
+						if (pairs[i] != other[i])
+							return false;
+					}
+					else if (pairs[i].child != other[i].child || pairs[i].parent != other[i].parent)
+					{
+						return false;
+					}
+				}
+				return true;
+			}
+
+			public int hashCode()
+			{
+				int h = 0;
+				for (ChildParentPair pair : pairs)
+				{
+					h *= 31;
+					if (pair != null)
+						h += System.identityHashCode(pair.child) * 17 + System.identityHashCode(pair.parent);
+				}
+				return h;
+			}
+		}
+
+		/**
+		 * The state of a path search below some node: the node, and
+		 * the criteriums still to be matched, as bits by position in
+		 * the rule.  Unless the search can get back to the node, it
+		 * can not get to any node of the path that led there either,
+		 * so the paths below do not depend on that path.
+		 */
+		private static class SearchKey
+		{
+			private FeatureNode node;
+			private long criteria;
+
+			public SearchKey(FeatureNode node, long criteria)
+			{
+				this.node = node;
+				this.criteria = criteria;
+			}
+
+			public boolean equals(Object o)
+			{
+				if (!(o instanceof SearchKey))
+					return false;
+				SearchKey other = (SearchKey) o;
+				return node == other.node && criteria == other.criteria;
+			}
+
+			public int hashCode()
+			{
+				return System.identityHashCode(node) * 31 + (int) (criteria ^ (criteria >>> 32));
+			}
+		}
+
+		/**
+		 * The per-rule state of one path search.
+		 */
+		private static class Search
+		{
+			public Rule rule;
+			public IdentityHashMap<Criterium, Integer> positions;
+			public HashMap<SearchKey, LinkedHashSet<Assignment>> memo;
+
+			public Search(Rule rule, boolean memoize)
+			{
+				this.rule = rule;
+				List<Criterium> criteria = rule.getCriteria();
+				positions = new IdentityHashMap<Criterium, Integer>();
+				for (int i = 0; i < criteria.size(); i++)
+					positions.put(criteria.get(i), i);
+				if (memoize && criteria.size() < 64)
+					memo = new HashMap<SearchKey, LinkedHashSet<Assignment>>();
+			}
+		}
+
 		/**
 		 * Helper class for storing the result of applying a rule.
 		 */
@@ -105,10 +247,16 @@ public class LogicProcessor
 			}
 		}
 
-		public RuleChecker()
+		public RuleChecker(Rule[] rules, boolean[][] exclusive, RelationTable table,
+		                   Deadline deadline, boolean memoize)
 		{
+			this.rules = rules;
+			this.exclusive = exclusive;
+			this.table = table;
+			this.deadline = deadline;
+			this.memoize = memoize && table != null && table.isSafe();
 			schemeBuilder = new StringBuilder();
-			allAppliedRules = new ArrayList<Rule>();
+			allOutputs = new HashSet<String>();
 		}
 
 		/**
@@ -155,84 +303,55 @@ public class LogicProcessor
 		 */
 		public void applyRules(FeatureNode startNode)
 		{
-			// clone the rules set before applying because data will be written into the rule
-			// and we want a clean set of rules that can be re-applied
-			List<Rule> clonedRulesSet = new ArrayList<Rule>();
-
-			for (Rule thisRule : orderedRulesSet)
-			{
-				clonedRulesSet.add(new Rule(thisRule.getRuleString()));
-			}
+			// the rules applied to this node, by index
+			boolean[] appliedRules = new boolean[rules.length];
 
-			List<Rule> appliedRules = new ArrayList<Rule>();
-
-			for (Rule thisRule: clonedRulesSet)
+			for (int r = 0; r < rules.length; r++)
 			{
+				Rule thisRule = rules[r];
 				Boolean bNotMutuallyExclusive = true;
 
-				for (Rule appliedRule : appliedRules)
+				for (int a = 0; a < rules.length; a++)
 				{
-					bNotMutuallyExclusive = !thisRule.isMutuallyExclusive(appliedRule);
-
-					if (!bNotMutuallyExclusive)
+					if (appliedRules[a] && exclusive[r][a])
+					{
+						bNotMutuallyExclusive = false;
 						break;
+					}
 				}
 
 				if (!bNotMutuallyExclusive)
 					continue;
 
-				// create structure to store all the times rules can be applied to this node
-				List<RuleResult> results = new ArrayList<RuleResult>();
+				// skip the path search if the relations can't satisfy the rule
+				if (table != null && !table.mayMatch(thisRule, startNode))
+					continue;
 
 				// search all possible path starting from this node
-				recursiveMatchAndApply(thisRule, startNode, new HashSet<FeatureNode>(), new HashSet<Criterium>(thisRule.getCriteria()), new Stack<ChildParentPair>(), results);
+				Search search = new Search(thisRule, memoize);
+				LinkedHashSet<Assignment> assignments = recursiveMatchAndApply(search, startNode, new HashSet<FeatureNode>(), new HashSet<Criterium>(thisRule.getCriteria()), false);
 
+				List<RuleResult> results = new ArrayList<RuleResult>();
+				for (Assignment assignment : assignments)
+					results.add(checkValues(thisRule, assignment));
+
+				// the same rule can be applied multiple times, even to the
+				// same node (by choosing different sub-node); each result
+				// holds the variable bindings for one such application.
 				for (RuleResult ruleResult : results)
 				{
-					// create another copy again since the same rule can be applied multiple times
-					// even to the same node (by choosing different sub-node)
-					Rule tempRule = new Rule(thisRule.getRuleString());
-
-					if (ruleResult.passed)
+					if (ruleResult.passed && thisRule.isSatisfiedBy(ruleResult.valuesMap))
 					{
-						// actually write the matched values into the rule
-						for (Criterium thisCriterium : tempRule.getCriteria())
-						{
-							String name1 = thisCriterium.getFirstVariableName();
-							String name2 = thisCriterium.getSecondVariableName();
+						String schemeOutput = thisRule.getSchemeOutput(ruleResult.valuesMap, ruleResult.uuidsMap);
 
-							thisCriterium.setVariableValue(name1, ruleResult.valuesMap.get(name1));
-							thisCriterium.setVariableValueUUID(name1, ruleResult.uuidsMap.get(name1));
-							thisCriterium.setVariableValue(name2, ruleResult.valuesMap.get(name2));
-							thisCriterium.setVariableValueUUID(name2, ruleResult.uuidsMap.get(name2));
-						}
-
-						if (tempRule.getAllCriteriaSatisfied())
+						// make sure the exact same output was not already created
+						if (allOutputs.add(schemeOutput))
 						{
-							Boolean applied = false;
-
-							// dumb way to check this rule against all others and make sure the exact same one was not created
-							for (Rule otherRule : allAppliedRules)
-							{
-								if (tempRule.getSchemeOutput().equals(otherRule.getSchemeOutput()))
-								{
-									applied = true;
-									break;
-								}
-							}
-
-							if (!applied)
-							{
-								// apply the rule
-								String schemeOutput = tempRule.getSchemeOutput();
-								schemeBuilder.append(schemeOutput);
-								schemeBuilder.append("\n");
-
-								allAppliedRules.add(tempRule);
-							}
-
-							appliedRules.add(tempRule);
+							schemeBuilder.append(schemeOutput);
+							schemeBuilder.append("\n");
 						}
+
+						appliedRules[r] = true;
 					}
 				}
 			}
@@ -267,33 +386,58 @@ public class LogicProcessor
 		 * we want to make sure all possible combination of member# are checked for matches and also
 		 * all possible path formed by choosing each combination of members.
 		 *
-		 * @param rule           The current rule we are checking
+		 * Many paths lead to the same pairs, and the same node may be
+		 * reached along many paths, so the number of paths grows
+		 * exponentially with the number of members.  So each path is
+		 * returned only once, the first time it is found, and, unless
+		 * the search is told not to, the paths below a node are
+		 * remembered and re-used for every other path that reaches the
+		 * node with the same criteriums left to match; see SearchKey.
+		 * Nodes on a cycle of the graph are searched again every time.
+		 *
+		 * @param search         The rule we are checking, and the paths remembered so far
 		 * @param parentNode     The parent node at the current recursion level
 		 * @param visitedNodes   Parent nodes visited from previous recursion level
 		 * @param criteriums     The remaining criteriums that has not been matched yet
-		 * @param matchedPairs   The matched nodes collected from previous recursion level
-		 * @param results        All possible results set
+		 * @param nested         Whether some criteriums were matched at previous recursion levels
+		 * @return               The pairs matched at and below this node, for each path found,
+		 *                       in the order in which they were first found
 		 */
-		private void recursiveMatchAndApply(
-				Rule rule,
+		private LinkedHashSet<Assignment> recursiveMatchAndApply(
+				Search search,
 				FeatureNode parentNode,
 				HashSet<FeatureNode> visitedNodes,
 				HashSet<Criterium> criteriums,
-				Stack<ChildParentPair> matchedPairs,
-				List<RuleResult> results)
+				boolean nested)
 		{
+			LinkedHashSet<Assignment> results = new LinkedHashSet<Assignment>();
+			Rule rule = search.rule;
+
 			if (visitedNodes.contains(parentNode))
-				return;
+				return results;
+
+			if ((++steps & 255) == 0)
+				deadline.check("Relex2Logic rule " + rule.getName());
+
+			SearchKey key = null;
+			if (nested && search.memo != null)
+			{
+				key = searchKey(search, parentNode, criteriums);
+				LinkedHashSet<Assignment> known = (key == null) ? null : search.memo.get(key);
+				if (known != null)
+					return known;
+			}
 
 			visitedNodes.add(parentNode);
 
 			// base case of the recursion, all criteriums matched
 			if (criteriums.isEmpty())
 			{
-				RuleResult newResult = checkValues(rule, matchedPairs);
-				results.add(newResult);
+				results.add(new Assignment(rule.getCriteria().size()));
 				visitedNodes.remove(parentNode);
-				return;
+				if (key != null)
+					search.memo.put(key, results);
+				return results;
 			}
 
 			List<List<ChildParentPair>> foundPairsList = new ArrayList<List<ChildParentPair>>();
@@ -307,7 +451,7 @@ public class LogicProcessor
 			if (foundPairsList.size() == 0)
 			{
 				// only continue if the initial parent node satisfies some criteria
-				if (matchedPairs.size() > 0 && !parentNode.isValued())
+				if (nested && !parentNode.isValued())
 				{
 					FeatureNode linksNode = parentNode.get("links");
 
@@ -329,23 +473,25 @@ public class LogicProcessor
 								Integer n = 0;
 								while (memberNode != null)
 								{
-									recursiveMatchAndApply(rule, memberNode, visitedNodes, criteriums, matchedPairs, results);
+									results.addAll(recursiveMatchAndApply(search, memberNode, visitedNodes, criteriums, nested));
 
 									n++;
-									String memberName = "member" + n.toString();
+									String memberName = Symbols.indexed("member", n);
 									memberNode = subNode.get(memberName);
 								}
 							}
 							else
 							{
-								recursiveMatchAndApply(rule, subNode, visitedNodes, criteriums, matchedPairs, results);
+								results.addAll(recursiveMatchAndApply(search, subNode, visitedNodes, criteriums, nested));
 							}
 						}
 					}
 				}
 
 				visitedNodes.remove(parentNode);
-				return;
+				if (key != null)
+					search.memo.put(key, results);
+				return results;
 			}
 
 			Iterator<List<ChildParentPair>> pairsListIter = foundPairsList.iterator();
@@ -377,15 +523,17 @@ public class LogicProcessor
 				// for each combination, search deeper for more criteriums
 				for (List<ChildParentPair> pairs : allComb)
 				{
-					for (ChildParentPair pair : pairs)
-						matchedPairs.push(pair);
-
 					// pick one node and search deeper, and do this for all nodes in this combination
 					for (ChildParentPair pair : pairs)
-						recursiveMatchAndApply(rule, pair.child, visitedNodes, criteriums, matchedPairs, results);
-
-					for (int i = 0; i < pairs.size(); i++)
-						matchedPairs.pop();
+					{
+						for (Assignment below : recursiveMatchAndApply(search, pair.child, visitedNodes, criteriums, true))
+						{
+							Assignment a = new Assignment(below);
+							for (ChildParentPair p : pairs)
+								a.pairs[search.positions.get(p.criterium)] = p;
+							results.add(a);
+						}
+					}
 				}
 
 				// add the criteriums back in, since the previous level might match
@@ -394,6 +542,25 @@ public class LogicProcessor
 			}
 
 			visitedNodes.remove(parentNode);
+			if (key != null)
+				search.memo.put(key, results);
+			return results;
+		}
+
+		/**
+		 * The key under which the paths below the node are remembered,
+		 * or null if they should not be, as the node is on a cycle.
+		 */
+		private SearchKey searchKey(Search search, FeatureNode node,
+		                            HashSet<Criterium> criteriums)
+		{
+			if (table.isCyclic(node))
+				return null;
+
+			long mask = 0;
+			for (Criterium c : criteriums)
+				mask |= 1L << search.positions.get(c);
+			return new SearchKey(node, mask);
 		}
 
 		/**
@@ -561,7 +728,7 @@ public class LogicProcessor
 				while (member != null)
 				{
 					numMembers++;
-					String memberName = "member" + numMembers.toString();
+					String memberName = Symbols.indexed("member", numMembers);
 					member = pairs.get(depth).child.get(memberName);
 				}
 			}
@@ -577,7 +744,7 @@ public class LogicProcessor
 			{
 				for (Integer i = 0; i < numMembers; i++)
 				{
-					String memberName = "member" + i.toString();
+					String memberName = Symbols.indexed("member", i);
 					FeatureNode memberNode = pairs.get(depth).child.get(memberName);
 					ChildParentPair newPair = new ChildParentPair(pairs.get(depth).criterium, memberNode, pairs.get(depth).parent);
 
@@ -592,10 +759,10 @@ public class LogicProcessor
 		 * Method to assign and match variables and constants in the rule.
 		 *
 		 * @param thisRule      The current rule we are looking at
-		 * @param matchedPairs  The list of matched child/parent pairs we are considering for this rule
+		 * @param assignment    The matched child/parent pairs we are considering for this rule
 		 * @return              A RuleResult object
 		 */
-		private RuleResult checkValues(Rule thisRule, Stack<ChildParentPair> matchedPairs)
+		private RuleResult checkValues(Rule thisRule, Assignment assignment)
 		{
 			RuleResult ruleResult = new RuleResult();
 
@@ -627,20 +794,13 @@ public class LogicProcessor
 
 			Boolean allMatched = true;
 
-			for (Criterium thisCriterium : thisRule.getCriteria())
+			List<Criterium> criteria = thisRule.getCriteria();
+			for (int c = 0; c < criteria.size(); c++)
 			{
-				// find the pair that matched this criterium
-				ChildParentPair thisPair = null;
+				Criterium thisCriterium = criteria.get(c);
 
-				for (ChildParentPair pair : matchedPairs)
-				{
-					// reference check; find the correct pair
-					if (pair.criterium == thisCriterium)
-					{
-						thisPair = pair;
-						break;
-					}
-				}
+				// the pair that matched this criterium
+				ChildParentPair thisPair = assignment.pairs[c];
 
 				FeatureNode thisNode = thisPair.child;
 				FeatureNode thisParent = thisPair.parent;
@@ -710,13 +870,51 @@ public class LogicProcessor
 	 */
 	public String applyRulesToParse(FeatureNode rootNode)
 	{
-		List<Rule> ruleSet = _relex2LogicRuleSet.getRulesByPriority();
+		return applyRulesToParse(rootNode, Deadline.NONE);
+	}
 
-		RuleChecker rc = new RuleChecker();
-		rc.orderedRulesSet = ruleSet;
+	/**
+	 * Same as above, but stop once the deadline has passed.  The
+	 * output of the rules applied so far is returned, followed by a
+	 * "; R2L TIMEOUT" comment.
+	 */
+	public String applyRulesToParse(FeatureNode rootNode, Deadline deadline)
+	{
+		return applyRules(rootNode, deadline, true).schemeBuilder.toString();
+	}
+
+	/**
+	 * The number of steps taken by the path search over the graph,
+	 * with or without re-using the paths below a node; to check that
+	 * the search does not blow up.  The output is appended to out.
+	 */
+	long countSearchSteps(FeatureNode rootNode, boolean memoize, StringBuilder out)
+	{
+		RuleChecker rc = applyRules(rootNode, Deadline.NONE, memoize);
+		out.append(rc.schemeBuilder);
+		return rc.steps;
+	}
 
-		RelationForeach.foreach(rootNode, rc);
+	private RuleChecker applyRules(FeatureNode rootNode, Deadline deadline, boolean memoize)
+	{
+		RelationTable table = new RelationTable(rootNode, _labels);
+		RuleChecker rc = new RuleChecker(_rules, _exclusive, table, deadline, memoize);
+
+		// The table has already crawled the graph for the start nodes.
+		try
+		{
+			for (FeatureNode startNode : table.getStartNodes())
+			{
+				deadline.check("Relex2Logic");
+				rc.applyRules(startNode);
+			}
+		}
+		catch (Deadline.Exceeded e)
+		{
+			System.err.println("Warning: " + e.getMessage());
+			rc.schemeBuilder.append("; R2L TIMEOUT\n");
+		}
 
-		return rc.schemeBuilder.toString();
+		return rc;
 	}
 }
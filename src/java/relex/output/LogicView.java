@@ -20,6 +20,7 @@ package relex.output;
 import relex.feature.FeatureNode;
 import relex.logic.Loader;
 import relex.logic.RuleSet;
+import relex.Deadline;
 import relex.ParsedSentence;
 import java.util.regex.Matcher;
 
@@ -36,22 +37,39 @@ public class LogicView
 	private Loader _relex2LogicRuleLoader = new Loader();
 
 	/**
-	 * Loads the ReLex2LogicRules from the rule file.
-	 * @see relex.logic.Loader
+	 * The processor for the loaded rules; built once, and re-used
+	 * for every sentence.
 	 */
-	public void loadRules()
+	private LogicProcessor _ruleProcessor = null;
+
+	/**
+	 * The rule file: the one named by the relex.orfile property,
+	 * or else the default.
+	 */
+	public static String getRuleFileName()
 	{
 		String ruleFileName = System.getProperty("relex.orfile");
 		if (ruleFileName == null)
 		{
 			ruleFileName = "./data/relex2logic-rules.txt";
 		}
+		return ruleFileName;
+	}
+
+	/**
+	 * Loads the ReLex2LogicRules from the rule file.
+	 * @see relex.logic.Loader
+	 */
+	public void loadRules()
+	{
+		String ruleFileName = getRuleFileName();
 
 		java.io.File f = new java.io.File(ruleFileName);
 		if (f.exists())
 		{
 			// Print RelEx-2-Logic output
 			_relex2LogicRuleLoader.loadRules(ruleFileName);
+			_ruleProcessor = null;
 		}
 		else
 		{
@@ -66,13 +84,24 @@ public class LogicView
 	 */
 	public String printRelationsNew(ParsedSentence parse)
 	{
-		FeatureNode root = parse.getLeft();
+		return printRelationsNew(parse, Deadline.NONE);
+	}
 
-		RuleSet relexRuleSet = _relex2LogicRuleLoader.getFreshRuleSet();
+	/**
+	 * Same as above, but stop applying rules once the deadline has
+	 * passed; see LogicProcessor.applyRulesToParse().
+	 */
+	public String printRelationsNew(ParsedSentence parse, Deadline deadline)
+	{
+		FeatureNode root = parse.getLeft();
 
-		LogicProcessor ruleProcessor = new LogicProcessor(relexRuleSet);
+		if (_ruleProcessor == null)
+		{
+			RuleSet relexRuleSet = _relex2LogicRuleLoader.getFreshRuleSet();
+			_ruleProcessor = new LogicProcessor(relexRuleSet);
+		}
 
-		String schemeOutput = ruleProcessor.applyRulesToParse(root);
+		String schemeOutput = _ruleProcessor.applyRulesToParse(root, deadline);
 		String parseNode = "(ParseNode \"" + parse.getIDString() + "\")";
 		String interpretationNode = "(InterpretationNode \"" + parse.getIDString() + "_interpretation_$X" + "\")";
 
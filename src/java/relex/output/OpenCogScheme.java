@@ -16,12 +16,10 @@
 
 package relex.output;
 
-import java.util.ArrayList;
 import java.util.HashSet;
 
 import relex.Document;
 import relex.ParsedSentence;
-import relex.Sentence;
 import relex.feature.FeatureNode;
 
 /**
@@ -35,6 +33,12 @@ import relex.feature.FeatureNode;
  *
  * This class prints just one parse at a time.
  *
+ * Word sequence numbers are printed once per word instance; the words
+ * of a sentence are only remembered until the next sentence comes
+ * along.  Sentence sequence numbers are printed once per sentence; in
+ * streaming mode, only the current sentence is remembered, so that a
+ * long run takes no more memory than a short one.
+ *
  * Copyright (c) 2007, 2008, 2013, 2014 Linas Vepstas <linas@linas.org>
  */
 public class OpenCogScheme
@@ -49,6 +53,8 @@ public class OpenCogScheme
 	private int seqno = 1;
 	private HashSet<String> previous_words;
 	private HashSet<String> previous_sents;
+	private String current_sent_id = null;
+	private boolean streaming = false;
 
 	/* -------------------------------------------------------------------- */
 	/* Constructors, and setters/getters for private members. */
@@ -67,6 +73,13 @@ public class OpenCogScheme
 	public void setShowRelex(boolean t) { do_show_relex = t; }
 	public boolean getShowRelex() { return do_show_relex; }
 
+	/**
+	 * In streaming mode, the document is to be printed a sentence at a
+	 * time, with printDocumentSentence(), right after each sentence.
+	 */
+	public void setStreaming(boolean t) { streaming = t; }
+	public boolean getStreaming() { return streaming; }
+
 	/**
 	 * Set the parse that is to be printed. After setting this, call
 	 * the toString() method to get a string representation of the
@@ -121,6 +134,15 @@ public class OpenCogScheme
 	{
 		String str = "";
 
+		// Word instances belong to just one sentence; those of the
+		// previous sentences won't be seen again.
+		String sent_id = _parse.getSentence().getID();
+		if (!sent_id.equals(current_sent_id))
+		{
+			current_sent_id = sent_id;
+			previous_words.clear();
+		}
+
 		FeatureNode fn = _parse.getLeft();
 		while (fn != null)
 		{
@@ -181,15 +203,25 @@ public class OpenCogScheme
 		// If we haven't seen this sentence before, then issue a
 		// sequence number for this sentence. This is used by opencog
 		// to determine teh order in which sentences were seen.
-		if (!previous_sents.contains(sent_id))
-		{
-			str += "(SentenceSequenceLink (stv 1 1)\n" +
-			       "	(SentenceNode \"" + sent_id + "\")\n" +
-			       "	(NumberNode \"" + getSeqNo() + "\")\n" +
-			       ")\n";
-			previous_sents.add(sent_id);
-		}
-		return str;
+		return str + printSentenceSequence(sent_id);
+	}
+
+	/**
+	 * If we haven't seen this sentence before, then issue a
+	 * sequence number for this sentence. This is used by opencog
+	 * to determine teh order in which sentences were seen.
+	 */
+	private String printSentenceSequence(String sent_id)
+	{
+		if (previous_sents.contains(sent_id))
+			return "";
+
+		if (streaming) previous_sents.clear();
+		previous_sents.add(sent_id);
+		return "(SentenceSequenceLink (stv 1 1)\n" +
+		       "	(SentenceNode \"" + sent_id + "\")\n" +
+		       "	(NumberNode \"" + getSeqNo() + "\")\n" +
+		       ")\n";
 	}
 
 	/**
@@ -198,32 +230,24 @@ public class OpenCogScheme
 	 */
 	public String printDocument(Document doco)
 	{
-		String doco_id = doco.getID();
-		String str = "";
-
-		ArrayList<Sentence> sentence_list = doco.getSentences();
-		for (int i=0; i<sentence_list.size(); i++)
-		{
-			String sent_id = sentence_list.get(i).getID();
-			str += "(SentenceLink (stv 1 1)\n" +
-			       "   (SentenceNode \"" + sent_id + "\")\n" +
-			       "   (DocumentNode \"" + doco_id + "\")\n" +
-			       ")\n";
-
-			// If we haven't seen this sentence before, then issue a
-			// sequence number for this sentence. This is used by opencog
-			// to determine teh order in which sentences were seen.
-			if (!previous_sents.contains(sent_id))
-			{
-				str += "(SentenceSequenceLink (stv 1 1)\n" +
-				       "	(SentenceNode \"" + sent_id + "\")\n" +
-				       "	(NumberNode \"" + getSeqNo() + "\")\n" +
-				       ")\n";
-				previous_sents.add(sent_id);
-			}
-		}
+		StringBuilder str = new StringBuilder();
+		for (String sent_id : doco.getSentenceIDs())
+			str.append(printDocumentSentence(doco, sent_id));
+		return str.toString();
+	}
 
-		return str;
+	/**
+	 * Print the link between the document and one of its sentences.
+	 * Calling this for each sentence, in order, prints the same thing
+	 * as printDocument() does.
+	 */
+	public String printDocumentSentence(Document doco, String sent_id)
+	{
+		return "(SentenceLink (stv 1 1)\n" +
+		       "   (SentenceNode \"" + sent_id + "\")\n" +
+		       "   (DocumentNode \"" + doco.getID() + "\")\n" +
+		       ")\n" +
+		       printSentenceSequence(sent_id);
 	}
 
 	public int getSeqNo()
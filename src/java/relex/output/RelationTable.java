@@ -0,0 +1,500 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package relex.output;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import relex.feature.FeatureNode;
+import relex.feature.RelationCallback;
+import relex.feature.RelationForeach;
+import relex.feature.Symbols;
+import relex.logic.Criterium;
+import relex.logic.Rule;
+
+/**
+ * The relations of one sentence, as a table of (label, head, dependent)
+ * tuples, indexed by label, and by label and value.  A tuple is
+ * recorded for every place where the LogicProcessor path search could
+ * match a criterium: a node reachable from one of the start nodes,
+ * holding the label either as a local feature (e.g. tense) or under
+ * its links, with the group nodes expanded into their members.
+ *
+ * The table answers one question: could the rule possibly produce a
+ * result, starting at a given node?  This is decided by joining the
+ * criteria of the rule, in rule order, on their shared variables; the
+ * variables and constants are compared exactly as the path search
+ * compares them, i.e. with String.matches().  Every result of the path
+ * search is also a solution of the join, so a rule with no solution
+ * may be skipped without changing the output.  The path search itself
+ * is still used to generate the results, as it decides their order.
+ *
+ * The table also knows which nodes lie on a cycle of the graph that
+ * the path search walks, so that the search can tell when the paths
+ * below a node do not depend on the path that led to it.  A node not
+ * in the table is taken to be on a cycle.
+ *
+ * Where the graph holds something the path search would trip over
+ * (a relation without a name, say), the labels involved are marked
+ * unsafe, and rules using them are never skipped.
+ */
+class RelationTable
+{
+	private static class Tuple
+	{
+		FeatureNode head;
+		String headName;
+		String depValue;
+
+		Tuple(FeatureNode h, String hn, String dv)
+		{
+			head = h;
+			headName = hn;
+			depValue = dv;
+		}
+	}
+
+	/** The nodes at which the rules are applied, in crawl order */
+	private List<FeatureNode> startNodes;
+
+	private HashMap<String, ArrayList<Tuple>> byLabel;
+	private HashMap<String, HashMap<String, ArrayList<Tuple>>> byHead;
+	private HashMap<String, HashMap<String, ArrayList<Tuple>>> byDep;
+
+	/** The labels of the tuples headed by each node */
+	private IdentityHashMap<FeatureNode, HashSet<String>> headLabels;
+
+	private Set<String> labels;
+	private HashSet<String> unsafeLabels;
+	private boolean unsafe;
+
+	/** Whether a rule can match anywhere at all in this sentence */
+	private IdentityHashMap<Rule, Boolean> anywhere;
+
+	/**
+	 * The nodes that the path search can step to from each node; only
+	 * kept until the strongly connected components are found.
+	 */
+	private IdentityHashMap<FeatureNode, List<FeatureNode>> steps;
+
+	/** The strongly connected component of each node */
+	private IdentityHashMap<FeatureNode, Integer> components;
+
+	/** The components with more than one node, or a node stepping to itself */
+	private HashSet<Integer> cyclic;
+
+	/**
+	 * Builds the table for the graph starting at root, recording only
+	 * the given criterium labels.
+	 */
+	RelationTable(FeatureNode root, Set<String> criteriumLabels)
+	{
+		labels = criteriumLabels;
+		startNodes = new ArrayList<FeatureNode>();
+		byLabel = new HashMap<String, ArrayList<Tuple>>();
+		byHead = new HashMap<String, HashMap<String, ArrayList<Tuple>>>();
+		byDep = new HashMap<String, HashMap<String, ArrayList<Tuple>>>();
+		headLabels = new IdentityHashMap<FeatureNode, HashSet<String>>();
+		unsafeLabels = new HashSet<String>();
+		unsafe = false;
+		anywhere = new IdentityHashMap<Rule, Boolean>();
+		steps = new IdentityHashMap<FeatureNode, List<FeatureNode>>();
+		components = new IdentityHashMap<FeatureNode, Integer>();
+		cyclic = new HashSet<Integer>();
+
+		RelationForeach.foreach(root, new StartNodeCollector());
+
+		HashSet<FeatureNode> visited = new HashSet<FeatureNode>();
+		for (FeatureNode start : startNodes)
+			addNode(start, visited);
+
+		if (!unsafe)
+		{
+			Tarjan t = new Tarjan();
+			for (FeatureNode start : startNodes)
+				if (!components.containsKey(start))
+					t.visit(start);
+		}
+		steps = null;
+	}
+
+	/**
+	 * Collects the nodes on which the LogicProcessor applies the rules:
+	 * the heads of binary relations, and the named nodes without links.
+	 */
+	private class StartNodeCollector implements RelationCallback
+	{
+		public Boolean BinaryHeadCB(FeatureNode node)
+		{
+			startNodes.add(node);
+			return false;
+		}
+
+		public Boolean BinaryRelationCB(String relName, FeatureNode srcNode, FeatureNode tgtNode)
+		{
+			return false;
+		}
+
+		public Boolean UnaryRelationCB(FeatureNode srcNode, String attrName)
+		{
+			if (attrName.equals("nameSource") && srcNode.get("links") == null)
+				startNodes.add(srcNode);
+			return false;
+		}
+	}
+
+	List<FeatureNode> getStartNodes()
+	{
+		return startNodes;
+	}
+
+	/**
+	 * Record the tuples headed by this node, then go on to every node
+	 * that the path search could step to from here.
+	 */
+	private void addNode(FeatureNode node, HashSet<FeatureNode> visited)
+	{
+		if (node.isValued() || !visited.add(node))
+			return;
+
+		FeatureNode links = node.get("links");
+		if (links != null && links.isValued())
+		{
+			unsafe = true;
+			return;
+		}
+
+		ArrayList<FeatureNode> next = new ArrayList<FeatureNode>();
+		for (String label : labels)
+		{
+			addTuples(label, node, node.get(label), next);
+			if (links != null)
+				addTuples(label, node, links.get(label), next);
+		}
+
+		if (links != null)
+		{
+			for (String linkName : links.getFeatureNames())
+			{
+				FeatureNode sub = links.get(linkName);
+				if (!sub.isValued())
+					next.addAll(members(sub));
+			}
+		}
+
+		steps.put(node, next);
+		for (FeatureNode n : next)
+			addNode(n, visited);
+	}
+
+	/**
+	 * Tarjan's algorithm for the strongly connected components of the
+	 * graph of steps.  Valued nodes have no steps, and are left out.
+	 */
+	private class Tarjan
+	{
+		private IdentityHashMap<FeatureNode, Integer> index = new IdentityHashMap<FeatureNode, Integer>();
+		private IdentityHashMap<FeatureNode, Integer> low = new IdentityHashMap<FeatureNode, Integer>();
+		private ArrayList<FeatureNode> stack = new ArrayList<FeatureNode>();
+		private int count = 0;
+		private int numComponents = 0;
+
+		void visit(FeatureNode node)
+		{
+			index.put(node, count);
+			low.put(node, count);
+			count++;
+			stack.add(node);
+
+			boolean selfStep = false;
+			List<FeatureNode> next = steps.get(node);
+			if (next != null)
+			{
+				for (FeatureNode n : next)
+				{
+					if (n.isValued())
+						continue;
+					selfStep = selfStep || (n == node);
+					if (!index.containsKey(n))
+					{
+						visit(n);
+						low.put(node, Math.min(low.get(node), low.get(n)));
+					}
+					else if (!components.containsKey(n))
+					{
+						// still on the stack
+						low.put(node, Math.min(low.get(node), index.get(n)));
+					}
+				}
+			}
+
+			if (low.get(node).intValue() != index.get(node).intValue())
+				return;
+
+			Integer component = numComponents++;
+			FeatureNode n;
+			int size = 0;
+			do
+			{
+				n = stack.remove(stack.size() - 1);
+				components.put(n, component);
+				size++;
+			}
+			while (n != node);
+			if (size > 1 || selfStep)
+				cyclic.add(component);
+		}
+	}
+
+	/** False if the graph holds something the path search trips over */
+	boolean isSafe()
+	{
+		return !unsafe;
+	}
+
+	/** True if the path search could get back to the node. */
+	boolean isCyclic(FeatureNode node)
+	{
+		Integer c = components.get(node);
+		return c == null || cyclic.contains(c);
+	}
+
+	private void addTuples(String label, FeatureNode head, FeatureNode dep, List<FeatureNode> next)
+	{
+		if (dep == null)
+			return;
+
+		String headName = nameOf(head);
+		for (FeatureNode member : members(dep))
+		{
+			next.add(member);
+
+			String depValue = member.isValued() ? member.getValue() : nameOf(member);
+			if (headName == null || depValue == null)
+			{
+				unsafeLabels.add(label);
+				continue;
+			}
+
+			Tuple t = new Tuple(head, headName, depValue);
+			list(byLabel, label).add(t);
+			list(index(byHead, label), headName).add(t);
+			list(index(byDep, label), depValue).add(t);
+
+			HashSet<String> hl = headLabels.get(head);
+			if (hl == null)
+			{
+				hl = new HashSet<String>();
+				headLabels.put(head, hl);
+			}
+			hl.add(label);
+		}
+	}
+
+	/**
+	 * The name of a relation node, or null if it lacks any of the
+	 * features that the LogicProcessor reads from it.
+	 */
+	private static String nameOf(FeatureNode node)
+	{
+		FeatureNode name = node.get("name");
+		FeatureNode source = node.get("nameSource");
+		if (name == null || !name.isValued() || source == null || source.isValued())
+			return null;
+		FeatureNode uuid = source.get("uuid");
+		if (uuid == null || !uuid.isValued())
+			return null;
+		return name.getValue();
+	}
+
+	/** The member# nodes of a group node, or else the node itself. */
+	private static List<FeatureNode> members(FeatureNode node)
+	{
+		if (node.isValued() || node.get("member0") == null)
+			return Collections.singletonList(node);
+
+		List<FeatureNode> members = new ArrayList<FeatureNode>();
+		FeatureNode member = node.get("member0");
+		for (int n = 1; member != null; n++)
+		{
+			members.add(member);
+			member = node.get(Symbols.indexed("member", n));
+		}
+		return members;
+	}
+
+	private static <T> ArrayList<T> list(HashMap<String, ArrayList<T>> map, String key)
+	{
+		ArrayList<T> l = map.get(key);
+		if (l == null)
+		{
+			l = new ArrayList<T>();
+			map.put(key, l);
+		}
+		return l;
+	}
+
+	private static HashMap<String, ArrayList<Tuple>> index(
+		HashMap<String, HashMap<String, ArrayList<Tuple>>> map, String key)
+	{
+		HashMap<String, ArrayList<Tuple>> m = map.get(key);
+		if (m == null)
+		{
+			m = new HashMap<String, ArrayList<Tuple>>();
+			map.put(key, m);
+		}
+		return m;
+	}
+
+	/**
+	 * Returns false if the rule can not produce any result when the
+	 * path search begins at the start node; true if it might.
+	 */
+	boolean mayMatch(Rule rule, FeatureNode start)
+	{
+		if (unsafe)
+			return true;
+
+		List<Criterium> criteria = rule.getCriteria();
+		for (Criterium c : criteria)
+			if (unsafeLabels.contains(c.getCriteriumLabel()))
+				return true;
+
+		// The path search only gets going if some criterium is
+		// matched at the start node itself.
+		HashSet<String> here = headLabels.get(start);
+		if (here == null)
+			return false;
+		boolean started = false;
+		for (Criterium c : criteria)
+			started = started || here.contains(c.getCriteriumLabel());
+		if (!started)
+			return false;
+
+		try
+		{
+			Boolean any = anywhere.get(rule);
+			if (any == null)
+			{
+				any = join(rule, criteria, 0, -1, null, initialValues(criteria));
+				anywhere.put(rule, any);
+			}
+			if (!any)
+				return false;
+
+			for (int k = 0; k < criteria.size(); k++)
+			{
+				if (here.contains(criteria.get(k).getCriteriumLabel()) &&
+				    join(rule, criteria, 0, k, start, initialValues(criteria)))
+					return true;
+			}
+			return false;
+		}
+		catch (RuntimeException e)
+		{
+			// e.g. a bad regex; let the path search deal with it.
+			return true;
+		}
+	}
+
+	/**
+	 * The variable values before any criterium is matched: constants
+	 * stand for themselves, variables are unbound.
+	 */
+	private static HashMap<String, String> initialValues(List<Criterium> criteria)
+	{
+		HashMap<String, String> values = new HashMap<String, String>();
+		for (Criterium c : criteria)
+		{
+			String first = c.getFirstVariableName();
+			String second = c.getSecondVariableName();
+			if (!values.containsKey(first))
+				values.put(first, first.charAt(0) == '$' ? null : first);
+			if (!values.containsKey(second))
+				values.put(second, second.charAt(0) == '$' ? null : second);
+		}
+		return values;
+	}
+
+	/**
+	 * Depth-first join of criteria k and above, given the values bound
+	 * by the earlier ones.  If anchorAt is k, criterium k may only use
+	 * tuples headed by the anchor node.
+	 */
+	private boolean join(Rule rule, List<Criterium> criteria, int k,
+	                     int anchorAt, FeatureNode anchor,
+	                     HashMap<String, String> values)
+	{
+		if (k == criteria.size())
+			return rule.isSatisfiedBy(values);
+
+		Criterium c = criteria.get(k);
+		String label = c.getCriteriumLabel();
+		String first = c.getFirstVariableName();
+		String second = c.getSecondVariableName();
+		String headValue = values.get(first);
+		String depValue = values.get(second);
+
+		List<Tuple> candidates = byLabel.get(label);
+		if (candidates == null)
+			return false;
+		if (headValue != null && isLiteral(headValue))
+			candidates = byHead.get(label).get(headValue);
+		else if (depValue != null && isLiteral(depValue))
+			candidates = byDep.get(label).get(depValue);
+		if (candidates == null)
+			return false;
+
+		for (Tuple t : candidates)
+		{
+			if (k == anchorAt && t.head != anchor)
+				continue;
+			if (headValue != null && !t.headName.matches(headValue))
+				continue;
+
+			// Bind the head first: the dependent may share its variable.
+			if (headValue == null)
+				values.put(first, t.headName);
+			String dv = values.get(second);
+			boolean ok = (dv == null) || t.depValue.matches(dv);
+			if (ok && dv == null)
+				values.put(second, t.depValue);
+
+			if (ok && join(rule, criteria, k + 1, anchorAt, anchor, values))
+				return true;
+
+			if (dv == null)
+				values.put(second, null);
+			if (headValue == null)
+				values.put(first, null);
+		}
+		return false;
+	}
+
+	/** True if the string, used as a regex, matches only itself. */
+	private static boolean isLiteral(String s)
+	{
+		for (int i = 0; i < s.length(); i++)
+		{
+			if ("\\[](){}.*+?^$|".indexOf(s.charAt(i)) >= 0)
+				return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package relex.parser;
+
+import java.io.File;
+import java.io.IOException;
+
+import relex.Sentence;
+
+/**
+ * A parser that doesn't parse: it looks the sentence up in a
+ * LinkageArchive, and builds the Sentence from the recorded
+ * link-grammar output, just as LocalLGParser would have.  This
+ * allows a corpus to be run through new or modified RelEx rules
+ * without running link-grammar again.
+ *
+ * The config is applied as the sentence is built, so a smaller
+ * max number of linkages, or disallowing skipped words, takes
+ * effect; but linkages, senses or constituent strings that were
+ * not recorded cannot be had.
+ *
+ * A sentence that is not in the archive is handed to the fallback
+ * parser, if there is one; otherwise, a ParseException is thrown.
+ */
+public class ArchiveLGParser extends LGParser
+{
+	private LinkageArchive archive;
+	private IParser fallback = null;
+
+	public ArchiveLGParser(LinkageArchive la)
+	{
+		archive = la;
+	}
+
+	public ArchiveLGParser(File f) throws IOException
+	{
+		this(new LinkageArchive(f));
+	}
+
+	public LinkageArchive getArchive()
+	{
+		return archive;
+	}
+
+	public void setFallback(IParser p)
+	{
+		fallback = p;
+	}
+
+	public IParser getFallback()
+	{
+		return fallback;
+	}
+
+	public Sentence parse(String sentence) throws ParseException
+	{
+		ParseRecord rec = archive.get(sentence);
+		if (rec == null)
+		{
+			if (fallback != null) return fallback.parse(sentence);
+			throw new ParseException("Sentence not in linkage archive " +
+				archive.getFile() + ": " + sentence);
+		}
+		return buildSentence(rec);
+	}
+
+	public String getVersion()
+	{
+		return archive.getLGVersion();
+	}
+}
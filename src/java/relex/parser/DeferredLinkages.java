@@ -0,0 +1,73 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package relex.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import relex.ParsedSentence;
+
+/**
+ * The linkages of a sentence that were ranked, but for which no
+ * feature nodes were built, best first; see LGParser.setRankFirst().
+ * A Sentence holds on to these, and builds them when asked to.
+ *
+ * A linkage of which only the costs were copied out is completed by
+ * the parser that found it, which may have to parse the sentence
+ * again.
+ */
+public class DeferredLinkages
+{
+	private LGParser parser;
+	private ParseRecord rec;
+	private List<ParseRecord.LinkageRecord> linkages;
+	private TokenAligner aligner;
+	private int next = 0;
+
+	DeferredLinkages(LGParser parser, ParseRecord rec,
+	                 List<ParseRecord.LinkageRecord> linkages,
+	                 TokenAligner aligner)
+	{
+		this.parser = parser;
+		this.rec = rec;
+		this.linkages = new ArrayList<ParseRecord.LinkageRecord>(linkages);
+		this.aligner = aligner;
+	}
+
+	/**
+	 * Number of linkages not built yet.
+	 */
+	public synchronized int size()
+	{
+		return linkages.size() - next;
+	}
+
+	/**
+	 * Build the next best linkage; return null if there are no more
+	 * that can be built.
+	 */
+	public synchronized ParsedSentence next()
+	{
+		while (next < linkages.size())
+		{
+			ParseRecord.LinkageRecord lkg = linkages.get(next);
+			// Let go of it once it is built.
+			linkages.set(next++, null);
+			ParsedSentence s = parser.buildParse(rec, lkg, aligner);
+			if (s != null) return s;
+		}
+		return null;
+	}
+}
@@ -105,22 +105,29 @@ public class JSONReader
             case 't':
                 if (c != 'r' || next() != 'u' || next() != 'e')
                 	throw new RuntimeException("Invalid JSON token: expected 'true' keyword.");
+                next();
                 token = Boolean.TRUE;
                 break;
             case'f':
                 if (c != 'a' || next() != 'l' || next() != 's' || next() != 'e')
                 	throw new RuntimeException("Invalid JSON token: expected 'false' keyword.");
+                next();
                 token = Boolean.FALSE;
                 break;
             case 'n':
                 if (c != 'u' || next() != 'l' || next() != 'l')
                 	throw new RuntimeException("Invalid JSON token: expected 'null' keyword.");
+                next();
                 token = null;
                 break;
             default:
+                if (ch == CharacterIterator.DONE)
+                    throw new RuntimeException("Invalid JSON: unexpected end of input.");
                 c = it.previous();
                 if (Character.isDigit(c) || c == '-') {
                     token = number();
+                } else {
+                    throw new RuntimeException("Invalid JSON token: unexpected character '" + ch + "'.");
                 }
         }
         // System.out.println("token: " + token); // enable this line to see the token stream
@@ -195,6 +202,8 @@ public class JSONReader
     private Object string() {
         buf.setLength(0);
         while (c != '"') {
+            if (c == CharacterIterator.DONE)
+                throw new RuntimeException("Invalid JSON token: unterminated string.");
             if (c == '\\') {
                 next();
                 if (c == 'u') {
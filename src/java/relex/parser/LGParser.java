@@ -17,14 +17,32 @@
 
 package relex.parser;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
 import org.linkgrammar.LGConfig;
 
+import relex.Deadline;
+import relex.ParsedSentence;
+import relex.Sentence;
+import relex.feature.FeatureNode;
+import relex.feature.LinkView;
+import relex.feature.LinkableView;
+import relex.feature.Symbols;
+import relex.stats.SimpleTruthValue;
+
 public abstract class LGParser implements IParser
 {
+	private static final double min_score = -0.001;
+	private static final double score_bump = 0.001;
+
 	protected LGConfig _config = new LGConfig();
 	protected String _dict_path = null;
 	protected String _lang = "en";
 	protected int _max_linkages = 1000; // consistent with jni-client.h in link-graammar
+	protected boolean _rank_first = false;
 
 	public LGConfig getConfig()
 	{
@@ -50,6 +68,346 @@ public abstract class LGParser implements IParser
 	{
 		_max_linkages = ml;
 	}	
+
+	public int getMaxLinkages()
+	{
+		return _max_linkages;
+	}
 	
 	public abstract String getVersion();
+
+	/**
+	 * Parse the sentence, with the time link-grammar is allowed cut
+	 * down to what is left before the deadline, and put back after.
+	 * Link-grammar does not check the deadline itself.  The config is
+	 * changed while the parse runs, so it must not be shared with a
+	 * parser that is in use on another thread.
+	 */
+	public Sentence parse(String sentence, Deadline deadline) throws ParseException
+	{
+		int max = _config.getMaxParseSeconds();
+		int secs = parseSecondsLeft(max, deadline);
+		if (secs == max) return parse(sentence);
+		_config.setMaxParseSeconds(secs);
+		try
+		{
+			return parse(sentence);
+		}
+		finally
+		{
+			_config.setMaxParseSeconds(max);
+		}
+	}
+
+	/**
+	 * The max parse seconds to use, given the usual setting max, and
+	 * the deadline: the time that is left, in whole seconds, rounded
+	 * up, if that is less than max, else max.  A max of zero or less
+	 * is taken as no limit.
+	 */
+	public static int parseSecondsLeft(int max, Deadline deadline)
+	{
+		if (deadline.isNone()) return max;
+		long left = Math.max(1, (deadline.remainingMillis() + 999) / 1000);
+		if (0 < max && max <= left) return max;
+		return (int) Math.min(Integer.MAX_VALUE, left);
+	}
+
+	/**
+	 * Rank the linkages before building them.  Every linkage that
+	 * link-grammar found is scored from its costs alone, just as
+	 * ParsedSentence.simpleRankParse() would score it, and feature
+	 * nodes are built only for the best ones, as many as the config
+	 * allows.  The others are set aside in the Sentence, and are
+	 * built only if asked for (see Sentence.buildDeferredParses()).
+	 *
+	 * Without this, the first linkages in link-grammar's own order
+	 * are built, and the rest are dropped; with few parses asked
+	 * for, these need not be the ones RelEx ranks highest.
+	 */
+	public void setRankFirst(boolean rank_first)
+	{
+		_rank_first = rank_first;
+	}
+
+	public boolean isRankFirst()
+	{
+		return _rank_first;
+	}
+
+	/**
+	 * Sort linkages, best first, by the rank they will be given.
+	 * The sort is stable, so linkages that rank the same keep
+	 * link-grammar's order.
+	 */
+	protected static void sortByRank(final ParseRecord rec,
+	                                 List<ParseRecord.LinkageRecord> linkages)
+	{
+		Collections.sort(linkages, new Comparator<ParseRecord.LinkageRecord>()
+		{
+			public int compare(ParseRecord.LinkageRecord a, ParseRecord.LinkageRecord b)
+			{
+				return Double.compare(rank(rec, b), rank(rec, a));
+			}
+		});
+	}
+
+	private static double rank(ParseRecord rec, ParseRecord.LinkageRecord lkg)
+	{
+		return ParsedSentence.simpleRank(rec.numSkippedWords,
+			lkg.disjunctCost, lkg.linkCost);
+	}
+
+	/**
+	 * Turn the raw link-grammar output for a sentence into RelEx
+	 * feature nodes: one node per word, linked to its neighbours,
+	 * its links, its disjunct and its senses.  The current config
+	 * decides how many linkages are kept, whether skipped words
+	 * are acceptable, and whether senses and constituent strings
+	 * are stored.
+	 */
+	protected Sentence buildSentence(ParseRecord rec)
+	{
+		Sentence sntc = new Sentence();
+
+		ArrayList<ParsedSentence> parses = new ArrayList<ParsedSentence>();
+
+		if ((rec.numLinkages < 1) ||
+		    (!_config.isAllowSkippedWords() && rec.numSkippedWords > 0))
+		{
+			System.err.println("Warning: No parses found for:\n" +
+			     rec.text);
+			return sntc;
+		}
+
+		List<ParseRecord.LinkageRecord> linkages = rec.linkages;
+		if (_rank_first)
+		{
+			linkages = new ArrayList<ParseRecord.LinkageRecord>(linkages);
+			sortByRank(rec, linkages);
+		}
+
+		TokenAligner aligner = new TokenAligner(rec.text);
+		int i = 0;
+		for (; i < linkages.size() && parses.size() < _config.getMaxLinkages(); i++)
+		{
+			ParsedSentence s = buildParse(rec, linkages.get(i), aligner);
+			if (s != null) parses.add(s);
+		}
+
+		sntc.setParses(parses);
+		sntc.setNumParses(rec.numLinkages);
+		if (_rank_first && i < linkages.size())
+		{
+			sntc.setDeferredParses(new DeferredLinkages(this, rec,
+				linkages.subList(i, linkages.size()), aligner));
+		}
+		return sntc;
+	}
+
+	/**
+	 * Copy out the rest of a linkage of which only the costs are
+	 * known.  Only a parser that makes such linkages needs to do
+	 * this; return false if the linkage cannot be had any more.
+	 */
+	protected boolean completeLinkage(ParseRecord rec, ParseRecord.LinkageRecord lkg)
+	{
+		return false;
+	}
+
+	/**
+	 * Build the feature nodes of one linkage.  Returns null if only
+	 * the costs of the linkage are known, and the rest of it cannot
+	 * be had.
+	 */
+	ParsedSentence buildParse(ParseRecord rec,
+	                          ParseRecord.LinkageRecord lkg,
+	                          TokenAligner aligner)
+	{
+		if (!lkg.isComplete() && !completeLinkage(rec, lkg))
+			return null;
+
+		boolean ignoreFirst = false; // true if first word is LEFT-WALL
+		boolean ignoreLast = false;  // true if first word is RIGHT_WALL
+
+		ParsedSentence s = new ParsedSentence(rec.text);
+
+		// Add words
+		int numWords = lkg.words.length;
+		FeatureNode lastFN = null;
+		FeatureNode leftWall = null;
+		/*
+		 * Note that we should adjust cNumWords to count the words in the
+		 * sentence -- this will have other consequences when we try to do
+		 * partial parses -- must take this action carefully
+		 */
+
+		// The character offsets of the words
+		int[] offsets = aligner.align(lkg.words);
+
+		int skip_count = 0;
+		int[] skip_map = new int[numWords];
+		for (int w = 0; w < numWords; w++)
+		{
+			String wordString = lkg.words[w];
+
+			// In Russian, some words (suffixes) can be zero-length.
+			if (0 == wordString.length())
+			{
+				skip_count ++;
+				skip_map[w] = w-skip_count;
+				continue;
+			}
+			skip_map[w] = w-skip_count;
+
+			if (wordString.equals("RIGHT-WALL"))
+			{
+				ignoreLast = true;
+			}
+			else
+			{
+				FeatureNode fn = new FeatureNode();
+				if (wordString.equals("LEFT-WALL")) leftWall = fn;
+				// LEFT-WALL should always be first word, so throw an
+				// exception if it was not.
+				if (leftWall == null)
+					throw new RuntimeException("Invalid parse: " +
+						"first word is not left wall");
+
+				// Set the word and part-of-speech
+				LinkableView.setWordAndPos(fn, wordString);
+
+				// Create a feature "this" which points to the linkable
+				fn.set("this", fn);
+
+				// set "wall" to point to the left wall
+				fn.set("wall", leftWall);
+				if (lastFN != null)
+				{
+					LinkableView.setNext(lastFN, fn);
+					LinkableView.setPrev(fn, lastFN);
+				}
+
+				// XXX This should be removed, it really doesn't belong here.
+				if (Character.isUpperCase(wordString.charAt(0)))
+					LinkableView.setEntityFlag(fn);
+
+				s.addWord(fn);
+
+				// Add char-index information to the feature node
+				LinkableView.setCharIndices(fn, offsets[2*w], offsets[2*w+1], w-skip_count);
+				lastFN = fn;
+			}
+		}
+
+		// set meta data
+		FeatureNode meta = new FeatureNode();
+		meta.set("num_skipped_words", new FeatureNode(Integer.toString(
+				rec.numSkippedWords)));
+		meta.set("disjunct_cost", new FeatureNode(Double.toString(
+				lkg.disjunctCost)));
+		meta.set("link_cost", new FeatureNode(Double.toString(
+				lkg.linkCost)));
+		meta.set("num_violations", new FeatureNode(Integer.toString(
+				lkg.numViolations)));
+		s.setMetaData(meta);
+
+		// add linkage and tree structure
+		addLinkageStructure(s, lkg, ignoreFirst, ignoreLast,
+			_config.isStoreSense(), skip_map);
+		if (_config.isStoreConstituentString())
+		{
+			s.setPhraseString(lkg.constituentString);
+		}
+		return s;
+	}
+
+	private void addLinkageStructure(ParsedSentence s,
+	                                 ParseRecord.LinkageRecord lkg,
+	                                 boolean ignoreFirst,
+	                                 boolean ignoreLast,
+	                                 boolean load_senses,
+	                                 int[] skip_map)
+	{
+		// Russian sentences can have 'blank words' in them which we skip.
+		// That means that the count of actual non-empty words no longer
+		// matches the link-parser count.  Technically, this is a link-parser
+		// bug, but fixing it would require a major re-write of the parser.
+		// int length = LinkGrammar.getNumWords();
+		int length = skip_map[skip_map.length-1] + 1;
+		int numLinks = lkg.getNumLinks();
+		s.setLinkString(lkg.linkString);
+		for (int i = 0; i < numLinks; i++)
+		{
+			boolean bad = false;
+			int left = lkg.linkLeft[i];
+			int right = lkg.linkRight[i];
+			left = skip_map[left];
+			right = skip_map[right];
+			if (ignoreLast && (right == length - 1))
+			{
+				bad = true;
+			}
+			if (ignoreFirst)
+			{
+				if (left == 0) bad = true;
+				--left;
+				--right;
+			}
+			if (!bad)
+			{
+				FeatureNode f = new FeatureNode();
+				LinkView.setLinkFeatures(f,
+						lkg.linkLeftLabel[i],
+						lkg.linkRightLabel[i],
+						lkg.linkLabel[i],
+						s.getWordAsNode(left),
+						s.getWordAsNode(right)
+				);
+			}
+		}
+
+		if (load_senses && lkg.disjuncts != null)
+		{
+			for (int i = 0; i < length-1 && i < lkg.disjuncts.length; i++)
+			{
+				// We'll hang disjunct and senses right off the word node.
+				FeatureNode f = s.getWordAsNode(i);
+				String dj = lkg.disjuncts[i];
+				if (dj != null)
+				{
+					f.set("DISJUNCT", new FeatureNode(dj));
+				}
+
+				// Get the total weight of all senses, for normalization.
+				String[] senses = lkg.senses[i];
+				double[] scores = lkg.senseScores[i];
+				double tot = 0.0;
+				for (int n = 0; n < senses.length; n++)
+				{
+					double score = scores[n];
+					if (score > min_score)
+					{
+						if (0.0 >= score) score = score_bump;
+						tot += score;
+					}
+				}
+
+				// Tag words with word-senses, Use truth values to store
+				// the weight (as a confidence value).
+				for (int n = 0; n < senses.length; n++)
+				{
+					double score = scores[n];
+					if (score > min_score)
+					{
+						if (0.0 >= score) score = score_bump;
+						SimpleTruthValue stv = new SimpleTruthValue(1.0, score/tot);
+						FeatureNode sns = new FeatureNode(senses[n]);
+						sns.setTruthValue(stv);
+						f.set(Symbols.indexed("DISJUNCT", n), sns);
+					}
+				}
+			}
+		}
+	}
 }
@@ -0,0 +1,298 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package relex.parser;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A file of link-grammar parses (ParseRecords), one per sentence, in
+ * the order in which the sentences were parsed.  An archive is written
+ * while a corpus is parsed (see LocalLGParser.setArchive()), and can
+ * then be read back by ArchiveLGParser, to run the RelEx rules over the
+ * corpus again without running link-grammar.
+ *
+ * The file is a header, followed by the records, each preceded by its
+ * length.  The header holds the link-grammar version string.  For
+ * reading, the file is memory-mapped, and so is limited to 2GB; split
+ * larger corpora across several archives.
+ */
+public class LinkageArchive implements Iterable<ParseRecord>
+{
+	private static final int MAGIC = 0x524c5841; // "RLXA"
+	private static final int VERSION = 1;
+
+	private File file;
+	private String lgVersion;
+	private MappedByteBuffer map;
+
+	/** Offsets of the records, in file order */
+	private ArrayList<Integer> offsets;
+
+	/** Offset of the record for a given sentence */
+	private HashMap<String,Integer> index;
+
+	/**
+	 * Appends records to an archive file.  Several threads may add
+	 * records at once.
+	 */
+	public static class Writer
+	{
+		private DataOutputStream out;
+		private int count = 0;
+
+		/**
+		 * Create the file, or, if it exists and append is true,
+		 * add to its end.  A record left half-written at the end of
+		 * the file, by a writer that did not get to close it, is cut
+		 * off first; otherwise the records added after it could not
+		 * be found.
+		 */
+		public Writer(File f, String lgVersion, boolean append)
+			throws IOException
+		{
+			boolean header = !(append && f.exists() && f.length() > 0);
+			if (!header) truncate(f);
+			out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(f, !header), 1 << 16));
+			if (header)
+			{
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeUTF(lgVersion == null ? "" : lgVersion);
+			}
+		}
+
+		public synchronized void add(ParseRecord rec) throws IOException
+		{
+			ByteArrayOutputStream bos = new ByteArrayOutputStream(1024);
+			rec.write(new DataOutputStream(bos));
+			out.writeInt(bos.size());
+			bos.writeTo(out);
+			count++;
+		}
+
+		public synchronized int getCount()
+		{
+			return count;
+		}
+
+		public synchronized void flush() throws IOException
+		{
+			out.flush();
+		}
+
+		public synchronized void close() throws IOException
+		{
+			out.close();
+		}
+
+		/**
+		 * Check the header, and cut the file off after the last of
+		 * the records that are complete.
+		 */
+		private static void truncate(File f) throws IOException
+		{
+			RandomAccessFile raf = new RandomAccessFile(f, "rw");
+			try
+			{
+				if (raf.length() < 8 || raf.readInt() != MAGIC || raf.readInt() != VERSION)
+					throw new IOException("Error: not a linkage archive: " + f);
+				raf.readUTF();
+
+				long size = raf.length();
+				long end = raf.getFilePointer();
+				while (end + 4 <= size)
+				{
+					raf.seek(end);
+					int len = raf.readInt();
+					if (len < 0 || size < end + 4 + len) break;
+					end += 4 + len;
+				}
+				if (end < size)
+				{
+					System.err.println("Warning: dropping truncated record at end of linkage archive " + f);
+					raf.setLength(end);
+				}
+			}
+			finally
+			{
+				raf.close();
+			}
+		}
+	}
+
+	/**
+	 * Open an archive for reading, and index the sentences in it.
+	 * If a sentence occurs more than once, the first parse of it is
+	 * the one that is found by get().
+	 */
+	public LinkageArchive(File f) throws IOException
+	{
+		file = f;
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try
+		{
+			long size = raf.length();
+			if (size > Integer.MAX_VALUE)
+				throw new IOException("Error: linkage archive larger than 2GB: " + f);
+			map = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+		finally
+		{
+			// The mapping stays valid after the file is closed.
+			raf.close();
+		}
+
+		ByteBuffer buf = map.duplicate();
+		if (buf.remaining() < 8 || buf.getInt() != MAGIC)
+			throw new IOException("Error: not a linkage archive: " + f);
+		int version = buf.getInt();
+		if (version != VERSION)
+			throw new IOException("Error: unsupported linkage archive version " + version + ": " + f);
+		int vlen = buf.getShort() & 0xffff;
+		byte[] vb = new byte[vlen];
+		buf.get(vb);
+		lgVersion = new String(vb, "UTF-8");
+
+		offsets = new ArrayList<Integer>();
+		index = new HashMap<String,Integer>();
+		while (buf.remaining() >= 4)
+		{
+			int len = buf.getInt();
+			int off = buf.position();
+			if (len < 0 || len > buf.remaining())
+			{
+				System.err.println("Warning: truncated record at end of linkage archive " + f);
+				break;
+			}
+			String text = ParseRecord.readText(buf);
+			offsets.add(off);
+			if (!index.containsKey(text)) index.put(text, off);
+			buf.position(off + len);
+		}
+	}
+
+	public File getFile()
+	{
+		return file;
+	}
+
+	/** The link-grammar version that made the parses */
+	public String getLGVersion()
+	{
+		return lgVersion;
+	}
+
+	/** Number of records */
+	public int size()
+	{
+		return offsets.size();
+	}
+
+	public boolean contains(String text)
+	{
+		return index.containsKey(text);
+	}
+
+	/**
+	 * Return the parse of the sentence, or null if it is not in the
+	 * archive.
+	 */
+	public ParseRecord get(String text)
+	{
+		Integer off = index.get(text);
+		if (off == null) return null;
+		return recordAt(off);
+	}
+
+	/** Return the i'th record in the file */
+	public ParseRecord get(int i)
+	{
+		return recordAt(offsets.get(i));
+	}
+
+	private ParseRecord recordAt(int off)
+	{
+		// Each reader gets its own position in the shared mapping.
+		ByteBuffer buf = map.duplicate();
+		buf.position(off);
+		return ParseRecord.read(buf);
+	}
+
+	/** The records, in the order in which they were written */
+	public Iterator<ParseRecord> iterator()
+	{
+		return new Iterator<ParseRecord>()
+		{
+			private int next = 0;
+
+			public boolean hasNext()
+			{
+				return next < offsets.size();
+			}
+
+			public ParseRecord next()
+			{
+				if (!hasNext()) throw new NoSuchElementException();
+				return get(next++);
+			}
+
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/** The sentences, in the order in which they were written */
+	public Iterator<String> sentences()
+	{
+		return new Iterator<String>()
+		{
+			private int next = 0;
+
+			public boolean hasNext()
+			{
+				return next < offsets.size();
+			}
+
+			public String next()
+			{
+				if (!hasNext()) throw new NoSuchElementException();
+				ByteBuffer buf = map.duplicate();
+				buf.position(offsets.get(next++));
+				return ParseRecord.readText(buf);
+			}
+
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
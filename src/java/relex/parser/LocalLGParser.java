@@ -16,24 +16,23 @@
 
 package relex.parser;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 
 import org.linkgrammar.LGService;
 import org.linkgrammar.LinkGrammar;
 
 import relex.ParsedSentence;
 import relex.Sentence;
-import relex.feature.FeatureNode;
-import relex.feature.LinkView;
-import relex.feature.LinkableView;
-import relex.stats.SimpleTruthValue;
 
 public class LocalLGParser extends LGParser
 {
 	private static final int verbosity = 0;
-	private static final double min_score = -0.001;
-	private static final double score_bump = 0.001;
+
+	private LinkageArchive.Writer _archive = null;
+
+	/** The sentence that link-grammar last parsed, on this thread */
+	private ThreadLocal<ParseRecord> current = new ThreadLocal<ParseRecord>();
 
 	private ThreadLocal<Boolean> initialized = new ThreadLocal<Boolean>()
 	{
@@ -80,6 +79,21 @@ public class LocalLGParser extends LGParser
 		initialized.set(Boolean.FALSE);
 	}
 
+	/**
+	 * Record every sentence parsed from now on in the archive, so
+	 * that ArchiveLGParser can replay the parses later.  Pass null to
+	 * stop.
+	 */
+	public void setArchive(LinkageArchive.Writer archive)
+	{
+		_archive = archive;
+	}
+
+	public LinkageArchive.Writer getArchive()
+	{
+		return _archive;
+	}
+
 	public Sentence parse(String sentence) throws ParseException
 	{
 		if (!initialized.get())
@@ -87,165 +101,19 @@ public class LocalLGParser extends LGParser
 		Long starttime;
 		if (verbosity > 0) starttime = System.currentTimeMillis();
 
-		Sentence sntc = new Sentence();
-
-		boolean ignoreFirst = false; // true if first word is LEFT-WALL
-		boolean ignoreLast = false;  // true if first word is RIGHT_WALL
-		if (verbosity >= 5) System.err.println("about to parse [" + sentence + "]");
-		LinkGrammar.parse(sentence);
-		if (verbosity >= 5) System.err.println("parsed [" + sentence + "]");
-
-		int numParses = LinkGrammar.getNumLinkages();
-		if (verbosity >= 5) System.err.println("found " + numParses + " parse(s)");
-
-		ArrayList<ParsedSentence> parses = new ArrayList<ParsedSentence>();
-
-		if ((numParses < 1) ||
-		    (!_config.isAllowSkippedWords() && LinkGrammar.getNumSkippedWords() > 0))
-		{
-			System.err.println("Warning: No parses found for:\n" +
-			     sentence);
-			return sntc;
-		}
-
-		for (int i = 0; i < numParses && i < _config.getMaxLinkages(); i++)
+		ParseRecord rec = record(sentence);
+		if (_archive != null)
 		{
-			if (verbosity >= 5) System.err.println("making linkage for parse " + i);
-			LinkGrammar.makeLinkage(i);
-
-			if (verbosity >= 5) System.err.println("making sentence for parse " + i);
-			ParsedSentence s = new ParsedSentence(sentence);
-
-			// Add words
-			int numWords = LinkGrammar.getNumWords();
-			FeatureNode lastFN = null;
-			FeatureNode leftWall = null;
-			/*
-			 * Note that we should adjust cNumWords to count the words in the
-			 * sentence -- this will have other consequences when we try to do
-			 * partial parses -- must take this action carefully
-			 */
-
-			/*
-			 * In order to find the start character of each word/token, we need
-			 * to keep track of previous instances of the word (in case the same
-			 * word appears more than once in the sentence). The variables
-			 * "index" and "timesTokenSeen" are used for this:
-			 */
-			int startChar = 0;
-			HashMap<String,Integer> timesTokenSeen = new HashMap<String,Integer>();
-
-			int skip_count = 0;
-			int[] skip_map = new int[numWords];
-			for (int w = 0; w < numWords; w++)
+			try
 			{
-				String wordString = LinkGrammar.getLinkageWord(w);
-				if (verbosity >= 5) System.err.println(" Processing Word " + wordString);
-
-				// In Russian, some words (suffixes) can be zero-length.
-				if (0 == wordString.length())
-				{
-					skip_count ++;
-					skip_map[w] = w-skip_count;
-					continue;
-				}
-				skip_map[w] = w-skip_count;
-
-				if (wordString.equals("RIGHT-WALL"))
-				{
-					ignoreLast = true;
-				}
-				else
-				{
-					FeatureNode fn = new FeatureNode();
-					if (wordString.equals("LEFT-WALL")) leftWall = fn;
-					// LEFT-WALL should always be first word, so throw an
-					// exception if it was not.
-					if (leftWall == null)
-						throw new RuntimeException("Invalid parse: " +
-							"first word is not left wall");
-
-					// Set the word and part-of-speech
-					LinkableView.setWordAndPos(fn, wordString);
-
-					// Create a feature "this" which points to the linkable
-					fn.set("this", fn);
-
-					// set "wall" to point to the left wall
-					fn.set("wall", leftWall);
-					if (lastFN != null)
-					{
-						LinkableView.setNext(lastFN, fn);
-						LinkableView.setPrev(fn, lastFN);
-					}
-
-					// XXX This should be removed, it really doesn't belong here.
-					if (Character.isUpperCase(wordString.charAt(0)))
-						LinkableView.setEntityFlag(fn);
-
-					s.addWord(fn);
-
-					// Add char-index information to the feature node
-					// FYI, the JNI call (*env)->NewStringUTF(env, str);
-					// will return NULL if str is utf8-encoded Japanese or Chinese. Go figure.
-					String tokenString = wordString;
-					if (null != tokenString) tokenString = tokenString.toLowerCase(); // normalize cases
-					else tokenString = "";
-
-					// System.err.println("DOING INFO FOR " + tokenString);
-					String sentenceString = sentence.toLowerCase();
-					Integer timesSeenInt = timesTokenSeen.get(tokenString);
-					int timesSeen = (timesSeenInt == null ? 0 : timesSeenInt.intValue());
-
-					// "x<=" means we will do at least once
-					for (int x = 0; x <= timesSeen; x++)
-					{
-						startChar = sentenceString.indexOf(tokenString,startChar);
-					}
-
-					timesTokenSeen.put(tokenString, new Integer(timesSeen + 1));
-					int endChar = (startChar >= 0 ? startChar + tokenString.length() : -1);
-					// System.err.println("INFO IS " + startChar + "," + endChar);
-					LinkableView.setCharIndices(fn, startChar, endChar, w-skip_count);
-
-					// Increment index to start looking for next tokenString
-					// after the current one. Use "max" to prevent decreasing
-					// index in the case the tokenString end is -1
-					startChar = Math.max(startChar, endChar);
-					lastFN = fn;
-				}
+				_archive.add(rec);
 			}
-
-			if (verbosity >= 5) System.err.println("Done with parse " + i);
-
-			// set meta data
-			FeatureNode meta = new FeatureNode();
-			meta.set("num_skipped_words", new FeatureNode(Integer.toString(
-					LinkGrammar.getNumSkippedWords())));
-			meta.set("disjunct_cost", new FeatureNode(Double.toString(
-					LinkGrammar.getLinkageDisjunctCost())));
-			meta.set("link_cost", new FeatureNode(Double.toString(
-					LinkGrammar.getLinkageLinkCost())));
-			meta.set("num_violations", new FeatureNode(Integer.toString(
-					LinkGrammar.getLinkageNumViolations())));
-			s.setMetaData(meta);
-
-			// add linkage and tree structure
-			if (verbosity >= 5) System.err.println("Adding Linkage Structure");
-			addLinkageStructure(s, ignoreFirst, ignoreLast, _config.isStoreSense(), skip_map);
-			if (_config.isStoreConstituentString())
+			catch (IOException e)
 			{
-				if (verbosity >= 5) System.err.println("Adding Tree Structure");
-				s.setPhraseString(LinkGrammar.getConstituentString());
+				throw new ParseException("Cannot write linkage archive", e);
 			}
-			if (verbosity >= 5) System.err.println("Ready To Finish");
-
-			// add to return list
-			parses.add(s);
 		}
-
-		sntc.setParses(parses);
-		sntc.setNumParses(LinkGrammar.getNumLinkages());
+		Sentence sntc = buildSentence(rec);
 
 		if (verbosity > 0)
 		{
@@ -258,103 +126,184 @@ public class LocalLGParser extends LGParser
 		return sntc;
 	}
 
-	private void addLinkageStructure(ParsedSentence s,
-	                                 boolean ignoreFirst,
-	                                 boolean ignoreLast,
-	                                 boolean load_senses,
-	                                 int[] skip_map)
+	/**
+	 * Parse the sentence, and copy out everything that link-grammar
+	 * has to say about each of the linkages that will be kept.
+	 */
+	private ParseRecord record(String sentence)
 	{
-		// Russian sentences can have 'blank words' in them which we skip.
-		// That means that the count of actual non-empty words no longer
-		// matches the link-parser count.  Technically, this is a link-parser
-		// bug, but fixing it would require a major re-write of the parser.
-		// int length = LinkGrammar.getNumWords();
-		int length = skip_map[skip_map.length-1] + 1;
-		int numLinks = LinkGrammar.getNumLinks();
-		s.setLinkString(LinkGrammar.getLinkString());
-		for (int i = 0; i < numLinks; i++)
+		ParseRecord rec = new ParseRecord();
+		rec.text = sentence;
+
+		if (verbosity >= 5) System.err.println("about to parse [" + sentence + "]");
+		// The time allowed may be cut short for a sentence with a
+		// deadline (see RelationExtractor), so it is set on every parse.
+		LinkGrammar.setMaxParseSeconds(_config.getMaxParseSeconds());
+		LinkGrammar.parse(sentence);
+		current.set(rec);
+		if (verbosity >= 5) System.err.println("parsed [" + sentence + "]");
+
+		rec.numLinkages = LinkGrammar.getNumLinkages();
+		if (verbosity >= 5) System.err.println("found " + rec.numLinkages + " parse(s)");
+		if (rec.numLinkages < 1) return rec;
+
+		rec.numSkippedWords = LinkGrammar.getNumSkippedWords();
+
+		// Nothing will be kept; unless archiving, don't bother.
+		if (!_config.isAllowSkippedWords() && rec.numSkippedWords > 0 &&
+		    _archive == null)
+			return rec;
+
+		if (_rank_first)
 		{
-			boolean bad = false;
-			int left = LinkGrammar.getLinkLWord(i);
-			int right = LinkGrammar.getLinkRWord(i);
-			left = skip_map[left];
-			right = skip_map[right];
-			if (ignoreLast && (right == length - 1))
+			// The costs of all the linkages, to rank them by; the
+			// rest only for the best few.
+			int n = Math.min(rec.numLinkages, _max_linkages);
+			for (int i = 0; i < n; i++)
 			{
-				bad = true;
+				LinkGrammar.makeLinkage(i);
+				ParseRecord.LinkageRecord lkg = new ParseRecord.LinkageRecord();
+				lkg.index = i;
+				readCosts(lkg);
+				rec.linkages.add(lkg);
 			}
-			if (ignoreFirst)
+			sortByRank(rec, rec.linkages);
+			for (int i = 0; i < n && i < _config.getMaxLinkages(); i++)
 			{
-				if (left == 0) bad = true;
-				--left;
-				--right;
-			}
-			if (!bad)
-			{
-				/*
-				 * System.err.println("ADDING LINK " + left + "," + right);
-				 * System.err.println("labels: " + cLinkLLabel(i) + ":" +
-				 * cLinkRLabel(i) + ":" + cLinkLabel(i) + ":");
-				 */
-				FeatureNode f = new FeatureNode();
-				LinkView.setLinkFeatures(f,
-						LinkGrammar.getLinkLLabel(i),
-						LinkGrammar.getLinkRLabel(i),
-						LinkGrammar.getLinkLabel(i),
-						s.getWordAsNode(left),
-						s.getWordAsNode(right)
-				);
+				ParseRecord.LinkageRecord lkg = rec.linkages.get(i);
+				if (verbosity >= 5) System.err.println("making linkage for parse " + lkg.index);
+				LinkGrammar.makeLinkage(lkg.index);
+				readLinkage(lkg);
 			}
+			return rec;
 		}
 
-		if (load_senses)
+		for (int i = 0; i < rec.numLinkages && i < _config.getMaxLinkages(); i++)
 		{
-			for (int i = 0; i < length-1; i++)
-			{
-				// We'll hang disjunct and senses right off the word node.
-				FeatureNode f = s.getWordAsNode(i);
-				String dj = LinkGrammar.getLinkageDisjunct(i);
-				if (dj != null)
-				{
-					f.set("DISJUNCT", new FeatureNode(dj));
-				}
+			if (verbosity >= 5) System.err.println("making linkage for parse " + i);
+			LinkGrammar.makeLinkage(i);
 
-				// Get the total weight of all senses, for normalization.
-				int n = 0;
-				String sense = LinkGrammar.getLinkageSense(i,n);
-				double tot = 0.0;
-				while (sense != null)
-				{
-					double score = LinkGrammar.getLinkageSenseScore(i,n);
-					if (score > min_score)
-					{
-						if (0.0 >= score) score = score_bump;
-						tot += score;
-					}
-					n++;
-					sense = LinkGrammar.getLinkageSense(i,n);
-				}
+			ParseRecord.LinkageRecord lkg = new ParseRecord.LinkageRecord();
+			lkg.index = i;
+			readCosts(lkg);
+			readLinkage(lkg);
+			rec.linkages.add(lkg);
+		}
+		return rec;
+	}
+
+	/**
+	 * Copy out the costs of the current linkage.
+	 */
+	private void readCosts(ParseRecord.LinkageRecord lkg)
+	{
+		lkg.disjunctCost = LinkGrammar.getLinkageDisjunctCost();
+		lkg.linkCost = LinkGrammar.getLinkageLinkCost();
+		lkg.numViolations = LinkGrammar.getLinkageNumViolations();
+	}
+
+	/**
+	 * Copy out all but the costs of the current linkage.
+	 */
+	private void readLinkage(ParseRecord.LinkageRecord lkg)
+	{
+		int numWords = LinkGrammar.getNumWords();
+		String[] words = new String[numWords];
+		int skip_count = 0;
+		for (int w = 0; w < numWords; w++)
+		{
+			words[w] = LinkGrammar.getLinkageWord(w);
+			if (0 == words[w].length()) skip_count++;
+		}
 
-				// Tag words with word-senses, Use truth values to store
-				// the weight (as a confidence value).
-				n = 0;
-				sense = LinkGrammar.getLinkageSense(i,n);
+		lkg.linkString = LinkGrammar.getLinkString();
+		int numLinks = LinkGrammar.getNumLinks();
+		lkg.linkLeft = new int[numLinks];
+		lkg.linkRight = new int[numLinks];
+		lkg.linkLeftLabel = new String[numLinks];
+		lkg.linkRightLabel = new String[numLinks];
+		lkg.linkLabel = new String[numLinks];
+		for (int l = 0; l < numLinks; l++)
+		{
+			lkg.linkLeft[l] = LinkGrammar.getLinkLWord(l);
+			lkg.linkRight[l] = LinkGrammar.getLinkRWord(l);
+			lkg.linkLeftLabel[l] = LinkGrammar.getLinkLLabel(l);
+			lkg.linkRightLabel[l] = LinkGrammar.getLinkRLabel(l);
+			lkg.linkLabel[l] = LinkGrammar.getLinkLabel(l);
+		}
+
+		// Disjuncts and senses are looked up by the index of the
+		// word with the empty words left out; see buildSentence().
+		if (_config.isStoreSense())
+		{
+			int length = numWords - skip_count;
+			int nw = Math.max(0, length-1);
+			lkg.disjuncts = new String[nw];
+			lkg.senses = new String[nw][];
+			lkg.senseScores = new double[nw][];
+			for (int w = 0; w < nw; w++)
+			{
+				lkg.disjuncts[w] = LinkGrammar.getLinkageDisjunct(w);
+				ArrayList<String> senses = new ArrayList<String>();
+				ArrayList<Double> scores = new ArrayList<Double>();
+				int n = 0;
+				String sense = LinkGrammar.getLinkageSense(w,n);
 				while (sense != null)
 				{
-					double score = LinkGrammar.getLinkageSenseScore(i,n);
-					if (score > min_score)
-					{
-						if (0.0 >= score) score = score_bump;
-						SimpleTruthValue stv = new SimpleTruthValue(1.0, score/tot);
-						FeatureNode sns = new FeatureNode(sense);
-						sns.setTruthValue(stv);
-						f.set("DISJUNCT"+n, sns);
-					}
+					senses.add(sense);
+					scores.add(LinkGrammar.getLinkageSenseScore(w,n));
 					n++;
-					sense = LinkGrammar.getLinkageSense(i,n);
+					sense = LinkGrammar.getLinkageSense(w,n);
 				}
+				lkg.senses[w] = senses.toArray(new String[senses.size()]);
+				lkg.senseScores[w] = new double[scores.size()];
+				for (int k = 0; k < scores.size(); k++)
+					lkg.senseScores[w][k] = scores.get(k);
 			}
 		}
+
+		if (_config.isStoreConstituentString())
+		{
+			if (verbosity >= 5) System.err.println("Adding Tree Structure");
+			lkg.constituentString = LinkGrammar.getConstituentString();
+		}
+
+		// Last, as this is what marks the record as complete.
+		lkg.words = words;
+	}
+
+	/**
+	 * Copy out a linkage that was passed over when the sentence was
+	 * parsed in rank-first mode.  If link-grammar has gone on to
+	 * other sentences since, the sentence is parsed again.
+	 */
+	protected boolean completeLinkage(ParseRecord rec, ParseRecord.LinkageRecord lkg)
+	{
+		if (lkg.index < 0) return false;
+		if (current.get() != rec)
+		{
+			if (!initialized.get())
+				init();
+			LinkGrammar.parse(rec.text);
+			current.set(rec);
+		}
+
+		// A parse that ran out of time may not find the same linkages
+		// the second time around.
+		if (LinkGrammar.getNumLinkages() != rec.numLinkages)
+		{
+			System.err.println("Warning: Linkages changed on re-parsing: " + rec.text);
+			return false;
+		}
+		LinkGrammar.makeLinkage(lkg.index);
+		if (LinkGrammar.getLinkageDisjunctCost() != lkg.disjunctCost ||
+		    LinkGrammar.getLinkageLinkCost() != lkg.linkCost)
+		{
+			System.err.println("Warning: Linkages changed on re-parsing: " + rec.text);
+			return false;
+		}
+		readLinkage(lkg);
+		return true;
 	}
 
 	public String getVersion()
@@ -0,0 +1,237 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package relex.parser;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The raw output of link-grammar for one sentence, exactly as it
+ * was obtained from the LinkGrammar JNI calls: the words, links,
+ * costs, diagrams, disjuncts and senses of each linkage.  Nothing
+ * RelEx-specific is in here; LGParser.buildSentence() turns it
+ * into feature nodes.
+ *
+ * Records are what LinkageArchive stores, so that a corpus can be
+ * run through the RelEx rules again without being re-parsed.
+ */
+public class ParseRecord
+{
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** The sentence, as given to the parser */
+	public String text;
+
+	/** Number of linkages found, which may be more than were kept */
+	public int numLinkages;
+
+	public int numSkippedWords;
+
+	public List<LinkageRecord> linkages = new ArrayList<LinkageRecord>();
+
+	/**
+	 * A linkage.  When linkages are ranked before they are copied
+	 * out (see LGParser.setRankFirst()), the ones that did not make
+	 * the cut hold only their costs and their index, and words is
+	 * null; such records are never written to an archive.
+	 */
+	public static class LinkageRecord
+	{
+		/** The number of the linkage, as given to makeLinkage() */
+		public int index = -1;
+
+		/** All words, including the walls and any empty words */
+		public String[] words;
+
+		public double disjunctCost;
+		public double linkCost;
+		public int numViolations;
+
+		public String linkString;
+
+		/** null if the constituent string was not asked for */
+		public String constituentString;
+
+		public int[] linkLeft;
+		public int[] linkRight;
+		public String[] linkLeftLabel;
+		public String[] linkRightLabel;
+		public String[] linkLabel;
+
+		/**
+		 * Per word, indexed like LinkGrammar.getLinkageDisjunct();
+		 * all three are null if senses were not asked for.
+		 */
+		public String[] disjuncts;
+		public String[][] senses;
+		public double[][] senseScores;
+
+		public int getNumLinks()
+		{
+			return linkLeft.length;
+		}
+
+		/** False if only the costs of the linkage were copied out */
+		public boolean isComplete()
+		{
+			return words != null;
+		}
+	}
+
+	/* ---------------------------------------------------------- */
+	/* Binary form, as used by LinkageArchive */
+
+	public void write(DataOutput out) throws IOException
+	{
+		writeString(out, text);
+		out.writeInt(numLinkages);
+		out.writeInt(numSkippedWords);
+		int complete = 0;
+		for (LinkageRecord lkg : linkages)
+			if (lkg.isComplete()) complete++;
+		out.writeInt(complete);
+		for (LinkageRecord lkg : linkages)
+		{
+			if (!lkg.isComplete()) continue;
+			out.writeInt(lkg.words.length);
+			for (String w : lkg.words) writeString(out, w);
+
+			out.writeDouble(lkg.disjunctCost);
+			out.writeDouble(lkg.linkCost);
+			out.writeInt(lkg.numViolations);
+			writeString(out, lkg.linkString);
+			writeString(out, lkg.constituentString);
+
+			out.writeInt(lkg.getNumLinks());
+			for (int i = 0; i < lkg.getNumLinks(); i++)
+			{
+				out.writeInt(lkg.linkLeft[i]);
+				out.writeInt(lkg.linkRight[i]);
+				writeString(out, lkg.linkLeftLabel[i]);
+				writeString(out, lkg.linkRightLabel[i]);
+				writeString(out, lkg.linkLabel[i]);
+			}
+
+			if (lkg.disjuncts == null)
+			{
+				out.writeInt(-1);
+				continue;
+			}
+			out.writeInt(lkg.disjuncts.length);
+			for (int i = 0; i < lkg.disjuncts.length; i++)
+			{
+				writeString(out, lkg.disjuncts[i]);
+				out.writeInt(lkg.senses[i].length);
+				for (int n = 0; n < lkg.senses[i].length; n++)
+				{
+					writeString(out, lkg.senses[i][n]);
+					out.writeDouble(lkg.senseScores[i][n]);
+				}
+			}
+		}
+	}
+
+	public static ParseRecord read(ByteBuffer in)
+	{
+		ParseRecord rec = new ParseRecord();
+		rec.text = readString(in);
+		rec.numLinkages = in.getInt();
+		rec.numSkippedWords = in.getInt();
+		int n = in.getInt();
+		for (int k = 0; k < n; k++)
+		{
+			LinkageRecord lkg = new LinkageRecord();
+			lkg.words = new String[in.getInt()];
+			for (int w = 0; w < lkg.words.length; w++)
+				lkg.words[w] = readString(in);
+
+			lkg.disjunctCost = in.getDouble();
+			lkg.linkCost = in.getDouble();
+			lkg.numViolations = in.getInt();
+			lkg.linkString = readString(in);
+			lkg.constituentString = readString(in);
+
+			int numLinks = in.getInt();
+			lkg.linkLeft = new int[numLinks];
+			lkg.linkRight = new int[numLinks];
+			lkg.linkLeftLabel = new String[numLinks];
+			lkg.linkRightLabel = new String[numLinks];
+			lkg.linkLabel = new String[numLinks];
+			for (int i = 0; i < numLinks; i++)
+			{
+				lkg.linkLeft[i] = in.getInt();
+				lkg.linkRight[i] = in.getInt();
+				lkg.linkLeftLabel[i] = readString(in);
+				lkg.linkRightLabel[i] = readString(in);
+				lkg.linkLabel[i] = readString(in);
+			}
+
+			int nw = in.getInt();
+			if (0 <= nw)
+			{
+				lkg.disjuncts = new String[nw];
+				lkg.senses = new String[nw][];
+				lkg.senseScores = new double[nw][];
+				for (int i = 0; i < nw; i++)
+				{
+					lkg.disjuncts[i] = readString(in);
+					int ns = in.getInt();
+					lkg.senses[i] = new String[ns];
+					lkg.senseScores[i] = new double[ns];
+					for (int s = 0; s < ns; s++)
+					{
+						lkg.senses[i][s] = readString(in);
+						lkg.senseScores[i][s] = in.getDouble();
+					}
+				}
+			}
+			rec.linkages.add(lkg);
+		}
+		return rec;
+	}
+
+	/**
+	 * Read only the text of the record; used to index an archive.
+	 */
+	static String readText(ByteBuffer in)
+	{
+		return readString(in);
+	}
+
+	private static void writeString(DataOutput out, String s) throws IOException
+	{
+		if (s == null)
+		{
+			out.writeInt(-1);
+			return;
+		}
+		byte[] b = s.getBytes(UTF8);
+		out.writeInt(b.length);
+		out.write(b);
+	}
+
+	private static String readString(ByteBuffer in)
+	{
+		int len = in.getInt();
+		if (len < 0) return null;
+		byte[] b = new byte[len];
+		in.get(b);
+		return new String(b, UTF8);
+	}
+}
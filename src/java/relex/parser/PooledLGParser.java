@@ -0,0 +1,638 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package relex.parser;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.linkgrammar.LGConfig;
+
+import relex.Deadline;
+import relex.Sentence;
+
+/**
+ * Parses with a farm of link-grammar servers (as started by
+ * link-grammar-server.sh), given as a list of host:port endpoints.
+ * One instance is meant to be shared by all the threads of a RelEx
+ * pipeline.
+ *
+ * Each sentence goes to the endpoint with the fewest sentences in
+ * progress; no endpoint gets more than maxPerEndpoint at once (one,
+ * by default, as a server parses one sentence at a time), and if
+ * they are all busy, parse() waits for one.  A request that fails,
+ * or gets no reply within the timeout, is sent again to another
+ * endpoint, up to maxAttempts endpoints in all; parsing has no side
+ * effects, so this is always safe.
+ *
+ * An endpoint that fails ejectAfter times in a row, or does not reply
+ * in time even once, is ejected: nothing more is sent to it.  Every
+ * probeMillis, a background thread asks the ejected endpoints, and the
+ * idle ones, for their version; an ejected endpoint that answers is
+ * let back in, and an idle one that does not is ejected.
+ *
+ * A request that times out is abandoned: its thread is interrupted,
+ * and the client it used is dropped.  LGRemoteClient opens its socket
+ * itself, and offers no way to time out a read on it, or to close it;
+ * so a thread that is stuck reading from a server that does not reply
+ * stays stuck until the server replies, or drops the connection.  To
+ * keep such threads from piling up, nothing more, not even a probe,
+ * is sent to an endpoint while a request given up on is still stuck
+ * there; an endpoint thus holds at most maxPerEndpoint of them, plus
+ * one probe.
+ */
+public class PooledLGParser extends LGParser
+{
+	public static final long DEFAULT_TIMEOUT_MILLIS = 60000;
+	public static final long DEFAULT_PROBE_MILLIS = 5000;
+
+	/** Probes are short requests, and get a short timeout */
+	private static final long PROBE_TIMEOUT_MILLIS = 5000;
+
+	/** Guarded by the lock on the pool, as are the endpoints */
+	private List<Endpoint> endpoints = new ArrayList<Endpoint>();
+
+	private int maxPerEndpoint = 1;
+	private int maxAttempts = 3;
+	private int ejectAfter = 2;
+	private long timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+	private volatile long probeMillis = DEFAULT_PROBE_MILLIS;
+
+	/** Runs the requests, so that a stuck server can be given up on */
+	private ExecutorService calls;
+	private Thread prober;
+	private volatile boolean closed = false;
+
+	/**
+	 * A link-grammar server, and the idle clients connected to it.
+	 */
+	private static class Endpoint
+	{
+		final String host;
+		final int port;
+		int active = 0;
+		int failures = 0;
+		long served = 0;
+		boolean up = true;
+		int stuck = 0;
+		Request<String> probe = null;
+		long probeStarted;
+		LinkedList<RemoteLGParser> idle = new LinkedList<RemoteLGParser>();
+
+		Endpoint(String host, int port)
+		{
+			this.host = host;
+			this.port = port;
+		}
+
+		public String toString()
+		{
+			return host + ":" + port;
+		}
+	}
+
+	/**
+	 * A request to an endpoint, run on a thread of its own.  One that
+	 * is given up on before it ends counts as stuck at the endpoint
+	 * until it does end.
+	 */
+	private class Request<T> implements Callable<T>
+	{
+		final Endpoint endpoint;
+		final Callable<T> task;
+		Future<T> future;
+		boolean done = false;
+		boolean abandoned = false;
+
+		Request(Endpoint e, Callable<T> c)
+		{
+			endpoint = e;
+			task = c;
+		}
+
+		public T call() throws Exception
+		{
+			try
+			{
+				return task.call();
+			}
+			finally
+			{
+				ended(this);
+			}
+		}
+	}
+
+	/**
+	 * @param servers The endpoints, separated by commas or blanks;
+	 *                each is host:port, or host:first-last for a
+	 *                range of ports, as in localhost:9000-9007.
+	 */
+	public PooledLGParser(String servers)
+	{
+		StringTokenizer st = new StringTokenizer(servers, ", \t\r\n");
+		while (st.hasMoreTokens())
+			addEndpoints(st.nextToken());
+		if (endpoints.isEmpty())
+			throw new RuntimeException("Error: no link-grammar servers given");
+
+		calls = Executors.newCachedThreadPool(new ThreadFactory()
+		{
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "lg-pool-request");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		prober = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				probeLoop();
+			}
+		}, "lg-pool-prober");
+		prober.setDaemon(true);
+		prober.start();
+	}
+
+	private void addEndpoints(String address)
+	{
+		try
+		{
+			int colon = address.lastIndexOf(':');
+			String host = address.substring(0, colon);
+			String ports = address.substring(colon + 1);
+			int dash = ports.indexOf('-');
+			int first = Integer.parseInt(dash < 0 ? ports : ports.substring(0, dash));
+			int last = (dash < 0) ? first : Integer.parseInt(ports.substring(dash + 1));
+			if (host.length() == 0 || last < first) throw new NumberFormatException();
+			for (int port = first; port <= last; port++)
+				endpoints.add(new Endpoint(host, port));
+		}
+		catch (RuntimeException e)
+		{
+			throw new RuntimeException("Error: bad link-grammar server address: " + address);
+		}
+	}
+
+	/**
+	 * The max number of sentences sent to one endpoint at once.
+	 */
+	public synchronized void setMaxPerEndpoint(int n)
+	{
+		maxPerEndpoint = Math.max(1, n);
+		notifyAll();
+	}
+
+	/**
+	 * The max number of endpoints a sentence is sent to, before
+	 * parse() gives up.
+	 */
+	public void setMaxAttempts(int n)
+	{
+		maxAttempts = Math.max(1, n);
+	}
+
+	/**
+	 * The number of failures in a row after which an endpoint is
+	 * ejected.
+	 */
+	public void setEjectAfter(int n)
+	{
+		ejectAfter = Math.max(1, n);
+	}
+
+	/**
+	 * How long to wait for a server to reply to a sentence, in
+	 * millisecs; zero to wait for as long as it takes.
+	 */
+	public void setTimeoutMillis(long millis)
+	{
+		timeoutMillis = millis;
+	}
+
+	/**
+	 * How often the endpoints are probed, in millisecs.
+	 */
+	public void setProbeMillis(long millis)
+	{
+		probeMillis = Math.max(1, millis);
+	}
+
+	/**
+	 * The clients made from now on use the new config; the idle
+	 * ones are dropped, so that none are left with the old one.
+	 */
+	public synchronized void setConfig(LGConfig config)
+	{
+		super.setConfig(config);
+		for (Endpoint e : endpoints)
+			e.idle.clear();
+	}
+
+	public synchronized int getNumEndpoints()
+	{
+		return endpoints.size();
+	}
+
+	/**
+	 * The number of endpoints that have not been ejected.
+	 */
+	public synchronized int getNumUp()
+	{
+		int n = 0;
+		for (Endpoint e : endpoints)
+			if (e.up) n++;
+		return n;
+	}
+
+	private RemoteLGParser newClient(Endpoint e)
+	{
+		RemoteLGParser rp = new RemoteLGParser();
+		rp.setConfig(_config);
+		rp.getLinkGrammarClient().setConfig(_config);
+		rp.getLinkGrammarClient().setHostname(e.host);
+		rp.getLinkGrammarClient().setPort(e.port);
+		return rp;
+	}
+
+	/**
+	 * Wait for the least loaded endpoint that is up, and has not been
+	 * tried yet, and count the sentence as in progress there.  Returns
+	 * null if there is no such endpoint.
+	 */
+	private synchronized Endpoint acquire(List<Endpoint> tried) throws InterruptedException
+	{
+		while (true)
+		{
+			if (closed)
+				throw new ParseException("Error: the link-grammar server pool is closed");
+
+			Endpoint best = null;
+			boolean any = false;
+			for (Endpoint e : endpoints)
+			{
+				if (!e.up || tried.contains(e)) continue;
+				any = true;
+				if (maxPerEndpoint <= e.active) continue;
+
+				// Break ties by the number served so far, so that an
+				// idle farm is used round-robin.
+				if (best == null || e.active < best.active ||
+				    (e.active == best.active && e.served < best.served))
+					best = e;
+			}
+			if (best != null)
+			{
+				best.active++;
+				best.served++;
+				return best;
+			}
+			if (!any) return null;
+			wait();
+		}
+	}
+
+	private synchronized RemoteLGParser takeClient(Endpoint e)
+	{
+		RemoteLGParser rp = e.idle.poll();
+		return (rp != null) ? rp : newClient(e);
+	}
+
+	/**
+	 * The sentence is no longer in progress at e; rp, if not null,
+	 * may be used again.
+	 */
+	private synchronized void release(Endpoint e, RemoteLGParser rp, boolean ok)
+	{
+		e.active--;
+		if (rp != null) e.idle.add(rp);
+		if (ok) e.failures = 0;
+		notifyAll();
+	}
+
+	private synchronized void failed(Endpoint e, boolean stuck, Object why)
+	{
+		e.failures++;
+		if (e.up && (stuck || ejectAfter <= e.failures))
+		{
+			e.up = false;
+			e.idle.clear();
+
+			// A probe begun before the failure says nothing.
+			if (e.probe != null) abandon(e.probe);
+			e.probe = null;
+			System.err.println("Warning: link-grammar server " + e +
+				" ejected from the pool: " + why);
+		}
+		notifyAll();
+	}
+
+	private synchronized <T> Request<T> submit(Endpoint e, Callable<T> c)
+	{
+		Request<T> r = new Request<T>(e, c);
+		r.future = calls.submit(r);
+		return r;
+	}
+
+	private synchronized void ended(Request<?> r)
+	{
+		r.done = true;
+		if (r.abandoned) r.endpoint.stuck--;
+	}
+
+	/**
+	 * Give up on the request; if it has not ended, count it as stuck
+	 * at its endpoint until it does.
+	 */
+	private synchronized void abandon(Request<?> r)
+	{
+		r.future.cancel(true);
+		if (!r.done && !r.abandoned)
+		{
+			r.abandoned = true;
+			r.endpoint.stuck++;
+		}
+	}
+
+	/**
+	 * Run the call to e, giving up on it after millis (if positive).
+	 */
+	private <T> T call(Endpoint e, Callable<T> c, long millis) throws Exception
+	{
+		if (millis <= 0) return c.call();
+		Request<T> r = submit(e, c);
+		try
+		{
+			return r.future.get(millis, TimeUnit.MILLISECONDS);
+		}
+		catch (ExecutionException ex)
+		{
+			Throwable t = ex.getCause();
+			if (t instanceof Exception) throw (Exception) t;
+			throw ex;
+		}
+		finally
+		{
+			abandon(r);
+		}
+	}
+
+	public Sentence parse(final String sentence)
+	{
+		List<Endpoint> tried = new ArrayList<Endpoint>();
+		Throwable last = null;
+		for (int i = 0; i < maxAttempts; i++)
+		{
+			Endpoint e;
+			try
+			{
+				e = acquire(tried);
+			}
+			catch (InterruptedException ex)
+			{
+				throw new ParseException("Thread interrupted.", ex);
+			}
+			if (e == null) break;
+			tried.add(e);
+
+			final RemoteLGParser rp = takeClient(e);
+			try
+			{
+				Sentence sntc = call(e, new Callable<Sentence>()
+				{
+					public Sentence call()
+					{
+						return rp.parse(sentence);
+					}
+				}, timeoutMillis);
+				if (sntc == null)
+					throw new ParseException("no reply to: " + sentence);
+				release(e, rp, true);
+				return sntc;
+			}
+			catch (InterruptedException ex)
+			{
+				release(e, null, false);
+				throw new ParseException("Thread interrupted.", ex);
+			}
+			catch (TimeoutException ex)
+			{
+				// The request may still be waiting on the server;
+				// leave the client to it.
+				last = new ParseException("no reply within " + timeoutMillis + " ms");
+				failed(e, true, last);
+				release(e, null, false);
+			}
+			catch (Exception ex)
+			{
+				if (ex.getCause() instanceof InterruptedException)
+				{
+					release(e, null, false);
+					throw new ParseException("Thread interrupted.", ex.getCause());
+				}
+				last = ex;
+				failed(e, false, (ex.getCause() != null) ? ex.getCause() : ex);
+				release(e, null, false);
+			}
+		}
+		if (last == null)
+			throw new ParseException("Error: no link-grammar server is up, for: " + sentence);
+		throw new ParseException("Error: no link-grammar server could parse: " + sentence, last);
+	}
+
+	/**
+	 * The config is shared by all the threads that use the pool, and
+	 * cannot be changed for one sentence; the servers bound the parse
+	 * by the usual setting, and the pool by its timeout.
+	 */
+	@Override
+	public Sentence parse(String sentence, Deadline deadline)
+	{
+		return parse(sentence);
+	}
+
+	/**
+	 * Ask the endpoint for its version, in the background.
+	 */
+	private Request<String> ping(Endpoint e)
+	{
+		final RemoteLGParser rp = newClient(e);
+		return submit(e, new Callable<String>()
+		{
+			public String call()
+			{
+				return rp.getVersion();
+			}
+		});
+	}
+
+	private void probeLoop()
+	{
+		while (!closed)
+		{
+			try
+			{
+				Thread.sleep(probeMillis);
+			}
+			catch (InterruptedException e)
+			{
+				return;
+			}
+
+			synchronized (this)
+			{
+				if (closed) return;
+				for (Endpoint e : endpoints)
+					probe(e);
+			}
+		}
+	}
+
+	/**
+	 * Start a probe of the endpoint, if it needs one, or take the
+	 * result of the one in progress.  Call with the pool locked.
+	 * Probes run in the background, so that a server that hangs
+	 * does not hold up the probes of the others.
+	 */
+	private void probe(Endpoint e)
+	{
+		if (e.probe == null)
+		{
+			if (e.up && e.active != 0) return;
+			if (e.stuck != 0) return;
+			e.probe = ping(e);
+			e.probeStarted = System.currentTimeMillis();
+			return;
+		}
+
+		boolean alive;
+		if (e.probe.future.isDone())
+		{
+			try
+			{
+				alive = e.probe.future.get() != null;
+			}
+			catch (Exception ex)
+			{
+				alive = false;
+			}
+		}
+		else if (System.currentTimeMillis() - e.probeStarted < PROBE_TIMEOUT_MILLIS)
+		{
+			return;
+		}
+		else
+		{
+			abandon(e.probe);
+			alive = false;
+		}
+		e.probe = null;
+
+		if (alive && !e.up)
+		{
+			e.up = true;
+			e.failures = 0;
+			System.err.println("Info: link-grammar server " + e +
+				" is back in the pool");
+			notifyAll();
+		}
+		else if (!alive && e.up && e.active == 0)
+		{
+			failed(e, true, "no reply to probe");
+		}
+	}
+
+	/**
+	 * Stop probing, and fail any parse that is waiting for an
+	 * endpoint.  Requests in progress are left to finish.
+	 */
+	public synchronized void close()
+	{
+		if (closed) return;
+		closed = true;
+		prober.interrupt();
+		calls.shutdown();
+		notifyAll();
+	}
+
+	@Override
+	public String getVersion()
+	{
+		List<Endpoint> up = new ArrayList<Endpoint>();
+		synchronized (this)
+		{
+			for (Endpoint e : endpoints)
+				if (e.up) up.add(e);
+		}
+		for (Endpoint e : up)
+		{
+			try
+			{
+				String version = newClient(e).getVersion();
+				if (version != null) return version;
+			}
+			catch (RuntimeException ex)
+			{
+				// Try the next one.
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * One line per endpoint: address, state, sentences in progress,
+	 * sentences sent to it so far, and requests stuck there, if any.
+	 */
+	public synchronized String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+		for (Endpoint e : endpoints)
+		{
+			sb.append(e).append(e.up ? " up" : " ejected");
+			sb.append(", active ").append(e.active);
+			sb.append(", served ").append(e.served);
+			if (e.stuck != 0) sb.append(", stuck ").append(e.stuck);
+			sb.append("\n");
+		}
+		return sb.toString();
+	}
+
+	public static void main(String[] args)
+	{
+		if (args.length != 2)
+		{
+			System.out.println("Syntax: PooledLGParser host:port[,host:port...] sentence");
+			System.exit(-1);
+		}
+		PooledLGParser parser = new PooledLGParser(args[0]);
+		parser.getConfig().setAllowSkippedWords(true);
+		parser.getConfig().setMaxLinkages(5);
+		Sentence sntc = parser.parse(args[1]);
+		System.out.println("Parses: " + sntc.getParses().size());
+		System.out.print(parser);
+		parser.close();
+	}
+}
@@ -16,8 +16,6 @@
 
 package relex.parser;
 
-import java.util.HashMap;
-
 import org.linkgrammar.*;
 
 import relex.ParsedSentence;
@@ -39,7 +37,7 @@ public class RemoteLGParser extends LGParser
 			!_config.isAllowSkippedWords() && parseResult.getNumSkippedWords() > 0)
 			return sntc;
 
-		String lowerCaseText = parseResult.getText().toLowerCase();
+		TokenAligner aligner = new TokenAligner(parseResult.getText());
 
 		for (Linkage linkage : parseResult)
 		{
@@ -51,11 +49,14 @@ public class RemoteLGParser extends LGParser
 			FeatureNode lastFN = null;
 			FeatureNode leftWall = null;
 
-			int startChar = 0;
-			HashMap<String,Integer> timesTokenSeen = new HashMap<String,Integer>();
-			for (int w = 0; w < linkage.getLinkedWordCount(); w++)
+			String[] words = new String[linkage.getLinkedWordCount()];
+			for (int w = 0; w < words.length; w++)
+				words[w] = linkage.wordAt(w);
+			int[] offsets = aligner.align(words);
+
+			for (int w = 0; w < words.length; w++)
 			{
-				String wordString = linkage.wordAt(w);
+				String wordString = words[w];
 
 				if (wordString.equals("RIGHT-WALL"))
 				{
@@ -97,26 +98,7 @@ public class RemoteLGParser extends LGParser
 					// Boris: I don't quite understand this code which is copied over previous
 					// version of this class. In case of skipped words, how are you going to get the
 					// character index right? Need to know which words exactly have been skipped.
-					String tokenString = linkage.wordAt(w).toLowerCase(); // normalize cases
-
-					Integer timesSeenInt = timesTokenSeen.get(tokenString);
-					int timesSeen = (timesSeenInt == null ? 0 : timesSeenInt.intValue());
-
-					// "x<=" means we will do at least once
-					for (int x = 0; x <= timesSeen; x++)
-					{
-						startChar = lowerCaseText.indexOf(tokenString,startChar);
-					}
-
-					timesTokenSeen.put(tokenString, new Integer(timesSeen + 1));
-					int endChar = (startChar >= 0 ? startChar + tokenString.length() : -1);
-					// System.out.println("INFO IS " + startChar + "," + endChar);
-					fnv.setCharIndices(startChar, endChar, w);
-
-					// Increment index to start looking for next tokenString
-					// after the current one. Use "max" to prevent decreasing
-					// index in the case the tokenString end is -1
-					startChar = Math.max(startChar, endChar);
+					fnv.setCharIndices(offsets[2*w], offsets[2*w+1], w);
 					lastFN = fnv.fn();
 				}
 			}
@@ -0,0 +1,144 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package relex.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Finds the character offsets, in the sentence, of the words of a
+ * linkage; these become the start_char and end_char of the words.
+ * One aligner is made per sentence, and used for all its linkages.
+ *
+ * Matching is case-insensitive, and proceeds left to right: each
+ * word is looked for after the end of the previous one.  A word that
+ * is not found there, but was seen earlier in the sentence, is put at
+ * its first occurrence; a word that is not found at all gets -1.
+ * (These are the offsets that the parsers have always computed.)
+ *
+ * The sentence is lower-cased once, and the occurrences of each
+ * distinct word are found with a single pass over it; after that,
+ * placing a word is a binary search.  Linkages usually have the same
+ * words, differing only in their links, and the offsets computed for
+ * a word sequence are handed out again for the next linkage with the
+ * same words.
+ */
+public class TokenAligner
+{
+	private String text;
+
+	/** Word to the positions at which it occurs in text */
+	private HashMap<String,int[]> occurrences = new HashMap<String,int[]>();
+
+	private ArrayList<String[]> doneWords = new ArrayList<String[]>();
+	private ArrayList<int[]> doneOffsets = new ArrayList<int[]>();
+
+	public TokenAligner(String sentence)
+	{
+		text = (sentence == null) ? "" : sentence.toLowerCase();
+	}
+
+	/**
+	 * Align the words of a linkage.  Returns an array holding, for
+	 * each word w, its start at 2*w and its end at 2*w+1.  The
+	 * RIGHT-WALL is not aligned, and gets -1 for both.  An empty (or
+	 * null) word is found where the search stands, as indexOf("")
+	 * would find it, with its start and end the same.  The returned
+	 * array is shared, and must not be modified.
+	 */
+	public int[] align(String[] words)
+	{
+		for (int i = 0; i < doneWords.size(); i++)
+		{
+			if (Arrays.equals(words, doneWords.get(i)))
+				return doneOffsets.get(i);
+		}
+
+		int[] offsets = new int[2 * words.length];
+		Arrays.fill(offsets, -1);
+		HashSet<String> seen = new HashSet<String>();
+		int startChar = 0;
+		for (int w = 0; w < words.length; w++)
+		{
+			String word = words[w];
+			if (word == null || word.length() == 0)
+			{
+				startChar = Math.min(Math.max(startChar, 0), text.length());
+				offsets[2*w] = startChar;
+				offsets[2*w+1] = startChar;
+				continue;
+			}
+			if (word.equals("RIGHT-WALL"))
+				continue;
+
+			String token = word.toLowerCase();
+			startChar = find(token, startChar);
+			if (startChar < 0 && seen.contains(token))
+				startChar = find(token, 0);
+			seen.add(token);
+
+			int endChar = (startChar >= 0 ? startChar + token.length() : -1);
+			offsets[2*w] = startChar;
+			offsets[2*w+1] = endChar;
+
+			// Look for the next word after the current one; "max"
+			// keeps the position from going back when this word was
+			// not found.
+			startChar = Math.max(startChar, endChar);
+		}
+
+		doneWords.add(words.clone());
+		doneOffsets.add(offsets);
+		return offsets;
+	}
+
+	/**
+	 * The first occurrence of token at or after from, or -1.
+	 */
+	private int find(String token, int from)
+	{
+		int[] occ = occurrences.get(token);
+		if (occ == null)
+		{
+			occ = scan(token);
+			occurrences.put(token, occ);
+		}
+		if (from < 0) from = 0;
+
+		int lo = 0;
+		int hi = occ.length;
+		while (lo < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if (occ[mid] < from) lo = mid + 1;
+			else hi = mid;
+		}
+		return (lo < occ.length) ? occ[lo] : -1;
+	}
+
+	private int[] scan(String token)
+	{
+		int n = 0;
+		int[] occ = new int[4];
+		for (int p = text.indexOf(token); p >= 0; p = text.indexOf(token, p + 1))
+		{
+			if (n == occ.length) occ = Arrays.copyOf(occ, 2 * n);
+			occ[n++] = p;
+		}
+		return Arrays.copyOf(occ, n);
+	}
+}
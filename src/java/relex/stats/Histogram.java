@@ -24,6 +24,8 @@ import java.lang.Math;
  */
 public class Histogram implements TruthValue
 {
+	private static final long serialVersionUID = -7226046115324386103L;
+
 	// strict histograming stuff
 	private int nbins;
 	private double min_value;
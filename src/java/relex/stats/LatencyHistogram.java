@@ -0,0 +1,151 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package relex.stats;
+
+/**
+ * A histogram of elapsed times. Unlike Histogram, the bins are not
+ * of uniform width: times are kept in microseconds, in bins whose
+ * width doubles with every power of two, each power being split
+ * into 8 sub-bins.  Thus, percentiles are accurate to about 12%,
+ * whether the times measured are microseconds or minutes, and the
+ * storage is fixed.
+ *
+ * Times are recorded in nanoseconds, and reported in milliseconds.
+ * Methods are synchronized, so that one histogram may be shared by
+ * several threads.
+ */
+public class LatencyHistogram
+{
+	private static final int SUB_BITS = 3;
+	private static final int SUB_BINS = 1 << SUB_BITS;
+	private static final int LINEAR = 2 * SUB_BINS;
+	private static final int NBINS = LINEAR + (64 - SUB_BITS - 1) * SUB_BINS;
+
+	private long[] bins;
+	private long count;
+	private long sum_nanos;
+	private long max_nanos;
+	private long last_nanos;
+
+	public LatencyHistogram()
+	{
+		bins = new long[NBINS];
+		reset();
+	}
+
+	public synchronized void reset()
+	{
+		for (int i = 0; i < NBINS; i++) bins[i] = 0;
+		count = 0;
+		sum_nanos = 0;
+		max_nanos = 0;
+		last_nanos = 0;
+	}
+
+	/** Record one elapsed time, given in nanoseconds. */
+	public synchronized void record(long nanos)
+	{
+		if (nanos < 0) nanos = 0;
+		bins[binOf(nanos / 1000)] ++;
+		count ++;
+		sum_nanos += nanos;
+		if (nanos > max_nanos) max_nanos = nanos;
+		last_nanos = nanos;
+	}
+
+	private static int binOf(long micros)
+	{
+		if (micros < LINEAR) return (int) micros;
+		int pow = 63 - Long.numberOfLeadingZeros(micros);
+		int sub = (int) (micros >>> (pow - SUB_BITS)) & (SUB_BINS - 1);
+		return LINEAR + (pow - SUB_BITS - 1) * SUB_BINS + sub;
+	}
+
+	/** The smallest number of microseconds falling in bin b */
+	private static long lowerBound(int b)
+	{
+		if (b < LINEAR) return b;
+		int pow = (b - LINEAR) / SUB_BINS + SUB_BITS + 1;
+		int sub = (b - LINEAR) % SUB_BINS;
+		return (((long) SUB_BINS + sub) << (pow - SUB_BITS));
+	}
+
+	public synchronized long getCount()
+	{
+		return count;
+	}
+
+	/** Sum of all recorded times, in milliseconds */
+	public synchronized double getTotal()
+	{
+		return sum_nanos * 1.0e-6;
+	}
+
+	/** Average time, in milliseconds */
+	public synchronized double getMean()
+	{
+		if (count == 0) return 0.0;
+		return sum_nanos * 1.0e-6 / count;
+	}
+
+	/** Most recently recorded time, in milliseconds */
+	public synchronized double getLast()
+	{
+		return last_nanos * 1.0e-6;
+	}
+
+	/** Longest time seen, in milliseconds */
+	public synchronized double getMax()
+	{
+		return max_nanos * 1.0e-6;
+	}
+
+	/**
+	 * Returns the time, in milliseconds, below which the fraction
+	 * p (between 0 and 1) of the recorded times fall.
+	 */
+	public synchronized double getPercentile(double p)
+	{
+		if (count == 0) return 0.0;
+		long rank = (long) Math.ceil(p * count);
+		if (rank < 1) rank = 1;
+		long seen = 0;
+		for (int b = 0; b < NBINS; b++)
+		{
+			seen += bins[b];
+			if (seen >= rank)
+			{
+				// Report the middle of the bin, but never more than
+				// the maximum actually seen.
+				double mid = 0.5 * (lowerBound(b) + lowerBound(b+1)) * 1.0e-3;
+				return Math.min(mid, getMax());
+			}
+		}
+		return getMax();
+	}
+
+	public double getMedian()
+	{
+		return getPercentile(0.5);
+	}
+
+	public String toString()
+	{
+		return String.format(
+			"cnt=%d avg=%.3f p50=%.3f p90=%.3f p99=%.3f max=%.3f millisecs",
+			getCount(), getMean(), getMedian(), getPercentile(0.9),
+			getPercentile(0.99), getMax());
+	}
+}
@@ -23,6 +23,8 @@ package relex.stats;
  */
 public class SimpleTruthValue implements TruthValue
 {
+	private static final long serialVersionUID = 3184419210671405826L;
+
 	private double count;
 	private int offset;
 	private double mean;
@@ -81,6 +83,16 @@ public class SimpleTruthValue implements TruthValue
 		count = cnt;
 	}
 
+	public void setCount(double cnt)
+	{
+		count = cnt;
+	}
+
+	public int getOffset()
+	{
+		return offset;
+	}
+
 	public void setOffset(int off)
 	{
 		offset = off;
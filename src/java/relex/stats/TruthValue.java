@@ -15,13 +15,15 @@
  */
 package relex.stats;
 
+import java.io.Serializable;
+
 /**
  * This class provides a simple OpenCog-like TruthValue object.
  * It is similar to, but not the same as, OpenCog TV objects.
  *
  * Copyright (C) 2008 Linas Vepstas <linas@linas.org>
  */
-public interface TruthValue
+public interface TruthValue extends Serializable
 {
 	public double getMean();
 	public double getCount();
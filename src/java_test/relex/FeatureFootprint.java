@@ -0,0 +1,238 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package relex;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import relex.feature.FeatureNode;
+import relex.parser.ArchiveLGParser;
+
+/**
+ * Measures how much memory the feature graphs of processed sentences
+ * take: the number of FeatureNodes and features per sentence, the heap
+ * that a finished Sentence keeps alive, and the number of bytes that
+ * are allocated while it is being processed.
+ *
+ * Sentences are read from stdin, one per line, or, with --replay, are
+ * taken from a linkage archive (see RelationExtractor --archive), so
+ * that link-grammar need not be run, and the figures are those of RelEx
+ * itself.
+ *
+ * The allocation figure needs a JVM that can count the bytes allocated
+ * by a thread (HotSpot can); elsewhere, it is not printed.  The retained
+ * heap is measured by holding on to every sentence, so feed it a few
+ * hundred sentences, not a whole corpus.
+ */
+public class FeatureFootprint
+{
+	private int sentences = 0;
+	private long nodes = 0;
+	private long valued = 0;
+	private long features = 0;
+	private long allocated = 0;
+	private long retained = 0;
+
+	private static Method allocMethod = null;
+	private static Object threadBean = null;
+
+	static
+	{
+		try
+		{
+			threadBean = ManagementFactory.getThreadMXBean();
+			Class<?> c = Class.forName("com.sun.management.ThreadMXBean");
+			if (c.isInstance(threadBean))
+			{
+				allocMethod = c.getMethod("getThreadAllocatedBytes", long.class);
+				if (allocatedBytes() < 0) allocMethod = null;
+			}
+		}
+		catch (Exception e)
+		{
+			allocMethod = null;
+		}
+	}
+
+	/** Bytes allocated by this thread so far, or -1 if unknown */
+	private static long allocatedBytes()
+	{
+		if (allocMethod == null) return -1;
+		try
+		{
+			Object n = allocMethod.invoke(threadBean, Thread.currentThread().getId());
+			return ((Long) n).longValue();
+		}
+		catch (Exception e)
+		{
+			return -1;
+		}
+	}
+
+	private static long usedHeap()
+	{
+		Runtime rt = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		// Collect until the figure settles.
+		for (int i = 0; i < 8; i++)
+		{
+			System.gc();
+			try { Thread.sleep(20); } catch (InterruptedException e) {}
+			long u = rt.totalMemory() - rt.freeMemory();
+			if (u >= used) break;
+			used = u;
+		}
+		return used;
+	}
+
+	/**
+	 * Count the nodes, valued nodes and features reachable from
+	 * the parses of the sentence.
+	 */
+	private void count(Sentence sntc)
+	{
+		IdentityHashMap<FeatureNode,Boolean> seen =
+			new IdentityHashMap<FeatureNode,Boolean>();
+		LinkedList<FeatureNode> todo = new LinkedList<FeatureNode>();
+		for (ParsedSentence parse : sntc.getParses())
+		{
+			FeatureNode left = parse.getLeft();
+			if (left != null && seen.put(left, Boolean.TRUE) == null)
+				todo.add(left);
+		}
+		while (!todo.isEmpty())
+		{
+			FeatureNode fn = todo.removeFirst();
+			nodes++;
+			if (fn.isValued())
+			{
+				valued++;
+				continue;
+			}
+			for (String name : fn.getFeatureNames())
+			{
+				features++;
+				FeatureNode f = fn.get(name);
+				if (seen.put(f, Boolean.TRUE) == null) todo.add(f);
+			}
+		}
+	}
+
+	/**
+	 * Process the sentences, and keep them all, so that the heap
+	 * they hold can be measured.
+	 */
+	public void run(RelationExtractor re, Iterator<String> text)
+	{
+		List<Sentence> keep = new ArrayList<Sentence>();
+		long before = usedHeap();
+		while (text.hasNext())
+		{
+			String line = text.next().trim();
+			if (line.length() == 0) continue;
+
+			long a0 = allocatedBytes();
+			Sentence sntc = re.processSentence(line);
+			long a1 = allocatedBytes();
+			if (sntc == null) continue;
+
+			if (0 <= a0) allocated += a1 - a0;
+			sentences++;
+			count(sntc);
+			keep.add(sntc);
+		}
+		retained = usedHeap() - before;
+
+		// Keep the sentences alive until the heap has been measured.
+		if (keep.size() != sentences)
+			throw new RuntimeException("Error: lost track of sentences");
+	}
+
+	public String toString()
+	{
+		if (sentences == 0) return "No sentences processed";
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("Sentences: %d\n", sentences));
+		sb.append(String.format("FeatureNodes per sentence:  %10.1f (%.1f valued)\n",
+			((double) nodes) / sentences, ((double) valued) / sentences));
+		sb.append(String.format("Features per non-valued node: %8.2f\n",
+			nodes == valued ? 0.0 : ((double) features) / (nodes - valued)));
+		sb.append(String.format("Retained heap per sentence: %10.0f bytes (%.1f per node)\n",
+			((double) retained) / sentences, ((double) retained) / nodes));
+		if (allocMethod != null)
+			sb.append(String.format("Allocated per sentence:     %10.0f bytes\n",
+				((double) allocated) / sentences));
+		else
+			sb.append("Allocated per sentence:     not available on this JVM\n");
+		return sb.toString();
+	}
+
+	public static void main(String[] args)
+	{
+		String usage = "FeatureFootprint [--replay archive] [-n max number of parses]" +
+			" (sentences are read from stdin, unless --replay is given)";
+		String replay = null;
+		int maxParses = 1;
+		for (int i = 0; i < args.length; i++)
+		{
+			if (args[i].equals("--replay") && i+1 < args.length) replay = args[++i];
+			else if (args[i].equals("-n") && i+1 < args.length) maxParses = Integer.parseInt(args[++i]);
+			else
+			{
+				System.err.println(usage);
+				System.exit(1);
+			}
+		}
+
+		try
+		{
+			RelationExtractor re = new RelationExtractor();
+			re.setMaxParses(maxParses);
+			Iterator<String> text;
+			if (replay != null)
+			{
+				ArchiveLGParser alp = new ArchiveLGParser(new File(replay));
+				re.setParser(alp);
+				text = alp.getArchive().sentences();
+			}
+			else
+			{
+				List<String> lines = new ArrayList<String>();
+				BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+				String line;
+				while ((line = in.readLine()) != null) lines.add(line);
+				text = lines.iterator();
+			}
+
+			FeatureFootprint ff = new FeatureFootprint();
+			ff.run(re, text);
+			System.out.print(ff);
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+			System.exit(1);
+		}
+		System.exit(0);
+	}
+}
@@ -0,0 +1,180 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package relex;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares SentenceCodec with Java serialization, for size and for
+ * speed.  The sentences are read from stdin, one per line, and parsed;
+ * with the argument -samples, the SampleSentences are used instead, so
+ * that no parser is needed.  A further argument gives the number of
+ * times the whole list is encoded and decoded.
+ */
+public class SentenceCodecBenchmark
+{
+	private static byte[] serialize(Sentence sntc) throws IOException
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(bos);
+		oos.writeObject(sntc);
+		oos.close();
+		return bos.toByteArray();
+	}
+
+	private static Sentence deserialize(byte[] data) throws Exception
+	{
+		ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data));
+		Sentence sntc = (Sentence) ois.readObject();
+		ois.close();
+		return sntc;
+	}
+
+	/**
+	 * Check that every sentence survives a round trip, then time
+	 * both encodings over the whole list, reps times, and print
+	 * the results.  Returns the number of sentences that did not
+	 * survive the round trip.
+	 */
+	public static int benchmark(List<Sentence> sents, int reps)
+		throws Exception
+	{
+		int failed = 0;
+		long codecBytes = 0;
+		long javaBytes = 0;
+		for (Sentence sntc : sents)
+		{
+			byte[] data = SentenceCodec.encode(sntc);
+			codecBytes += data.length;
+			javaBytes += serialize(sntc).length;
+			if (!TestSentenceCodec.sameSentence(sntc, SentenceCodec.decode(data)))
+			{
+				System.err.println("Error: round trip failed for: " + sntc.getSentence());
+				failed++;
+			}
+		}
+
+		// Let the JIT warm up, then time each direction.
+		byte[][] codec = new byte[sents.size()][];
+		byte[][] java = new byte[sents.size()][];
+		long codecWrite = 0, codecRead = 0, javaWrite = 0, javaRead = 0;
+		for (int pass = 0; pass < 2; pass++)
+		{
+			long t0 = System.nanoTime();
+			for (int r = 0; r < reps; r++)
+				for (int i = 0; i < codec.length; i++)
+					codec[i] = SentenceCodec.encode(sents.get(i));
+			long t1 = System.nanoTime();
+			for (int r = 0; r < reps; r++)
+				for (int i = 0; i < codec.length; i++)
+					SentenceCodec.decode(codec[i]);
+			long t2 = System.nanoTime();
+			for (int r = 0; r < reps; r++)
+				for (int i = 0; i < java.length; i++)
+					java[i] = serialize(sents.get(i));
+			long t3 = System.nanoTime();
+			for (int r = 0; r < reps; r++)
+				for (int i = 0; i < java.length; i++)
+					deserialize(java[i]);
+			long t4 = System.nanoTime();
+
+			codecWrite = t1 - t0;
+			codecRead = t2 - t1;
+			javaWrite = t3 - t2;
+			javaRead = t4 - t3;
+		}
+
+		long n = ((long) reps) * sents.size();
+		System.out.println("Sentences: " + sents.size() + ", repeated " + reps + " times");
+		report("codec", codecBytes, sents.size(), codecWrite, codecRead, n);
+		report("java serialization", javaBytes, sents.size(), javaWrite, javaRead, n);
+		if (codecBytes > 0)
+		{
+			System.out.println(String.format(
+				"Size ratio: %.2f; encode speedup: %.1fx; decode speedup: %.1fx",
+				((double) javaBytes) / codecBytes,
+				((double) javaWrite) / Math.max(1, codecWrite),
+				((double) javaRead) / Math.max(1, codecRead)));
+		}
+		return failed;
+	}
+
+	private static void report(String name, long bytes, int nsents,
+	                           long writeNanos, long readNanos, long n)
+	{
+		System.out.println(String.format(
+			"%-20s %8d bytes/sentence  encode %8.1f sentences/sec  decode %8.1f sentences/sec",
+			name + ":", bytes / Math.max(1, nsents),
+			n * 1.0e9 / Math.max(1, writeNanos),
+			n * 1.0e9 / Math.max(1, readNanos)));
+	}
+
+	public static void main(String[] args)
+	{
+		boolean samples = false;
+		int reps = 100;
+		for (String arg : args)
+		{
+			if (arg.equals("-samples")) samples = true;
+			else reps = Integer.parseInt(arg);
+		}
+
+		List<Sentence> sents = new ArrayList<Sentence>();
+		try
+		{
+			if (samples)
+			{
+				sents = TestSentenceCodec.samples();
+			}
+			else
+			{
+				RelationExtractor re = new RelationExtractor();
+				re.setAllowSkippedWords(true);
+				re.do_penn_tagging = true;
+				re.do_stanford = true;
+
+				BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+				String line;
+				while ((line = in.readLine()) != null)
+				{
+					line = line.trim();
+					if (line.length() == 0) continue;
+					Sentence sntc = re.processSentence(line);
+					if (sntc != null) sents.add(sntc);
+				}
+			}
+			int failed = benchmark(sents, reps);
+			if (failed > 0)
+			{
+				System.err.println("Error: " + failed + " sentences failed the round trip");
+				System.exit(1);
+			}
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+			System.exit(1);
+		}
+		System.exit(0);
+	}
+}
@@ -0,0 +1,346 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package relex;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+import relex.algs.SentenceAlgorithmApplier;
+import relex.concurrent.RelexContext;
+import relex.feature.FeatureNode;
+import relex.output.LogicView;
+import relex.stats.SimpleTruthValue;
+import relex.stats.TruthValue;
+import relex.test.SampleSentences;
+
+/**
+ * Checks that sentences come out of SentenceCodec as they went in:
+ * the same strings, ID's, truth values and timed-out flags, and
+ * feature graphs of the same shape, with the same features, in the
+ * same order, and the same values.  The graphs are compared node by node, with a one-to-one map
+ * from the nodes of the one to those of the other, so that a node that
+ * is shared, or on a cycle, must be shared, or on a cycle, in both.
+ *
+ * The sentences are the SampleSentences, run through all of the algs
+ * and given truth values, and some made-up graphs: a deep chain, a
+ * cycle, odd strings, a truth value that is not a SimpleTruthValue,
+ * and sentences that timed out.
+ */
+public class TestSentenceCodec
+{
+	private int pass = 0;
+	private int fail = 0;
+
+	private void check(String what, boolean ok)
+	{
+		if (ok)
+		{
+			pass++;
+			return;
+		}
+		fail++;
+		System.err.println("Error: " + what);
+	}
+
+	/* ---------------------------------------------------------- */
+
+	/**
+	 * Return true if the two sentences have the same strings, truth
+	 * values and ID's, and feature graphs of the same shape, with the
+	 * same features, in the same order, and the same values.
+	 */
+	public static boolean sameSentence(Sentence a, Sentence b)
+	{
+		if (!same(a.getSentence(), b.getSentence())) return false;
+		if (!same(a.getID(), b.getID())) return false;
+		if (a.getNumParses() != b.getNumParses()) return false;
+		if (a.getParses().size() != b.getParses().size()) return false;
+		if (a.isTimedOut() != b.isTimedOut()) return false;
+
+		IdentityHashMap<FeatureNode,FeatureNode> map =
+			new IdentityHashMap<FeatureNode,FeatureNode>();
+		IdentityHashMap<FeatureNode,FeatureNode> back =
+			new IdentityHashMap<FeatureNode,FeatureNode>();
+		LinkedList<FeatureNode> todo = new LinkedList<FeatureNode>();
+		for (int p = 0; p < a.getParses().size(); p++)
+		{
+			ParsedSentence pa = a.getParses().get(p);
+			ParsedSentence pb = b.getParses().get(p);
+			if (!same(pa.getIDString(), pb.getIDString())) return false;
+			if (!same(pa.getOriginalSentence(), pb.getOriginalSentence())) return false;
+			if (!same(pa.getLinkString(), pb.getLinkString())) return false;
+			if (!same(pa.getPhraseString(), pb.getPhraseString())) return false;
+			if (!same(pa.getErrorString(), pb.getErrorString())) return false;
+			if (!sameTruth(pa.getTruthValue(), pb.getTruthValue())) return false;
+			if (pa.isTimedOut() != pb.isTimedOut()) return false;
+			if (pb.getSentence() != b) return false;
+			if (pa.getNumWords() != pb.getNumWords()) return false;
+			for (int i = 0; i < pa.getNumWords(); i++)
+			{
+				if (!pair(map, back, todo, pa.getWordAsNode(i), pb.getWordAsNode(i)))
+					return false;
+			}
+		}
+
+		while (!todo.isEmpty())
+		{
+			FeatureNode fa = todo.removeFirst();
+			FeatureNode fb = map.get(fa);
+			if (fa.isValued() != fb.isValued()) return false;
+			if (!sameTruth(fa.getTruthValue(), fb.getTruthValue())) return false;
+			if (fa.isValued())
+			{
+				if (!same(fa.getValue(), fb.getValue())) return false;
+				continue;
+			}
+			List<String> names = new ArrayList<String>(fa.getFeatureNames());
+			if (!names.equals(new ArrayList<String>(fb.getFeatureNames()))) return false;
+			for (String name : names)
+			{
+				if (!pair(map, back, todo, fa.get(name), fb.get(name))) return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean pair(IdentityHashMap<FeatureNode,FeatureNode> map,
+	                            IdentityHashMap<FeatureNode,FeatureNode> back,
+	                            LinkedList<FeatureNode> todo,
+	                            FeatureNode a, FeatureNode b)
+	{
+		if (a == null || b == null) return a == b;
+		FeatureNode seen = map.get(a);
+		if (seen != null) return seen == b;
+		if (back.containsKey(b)) return false;
+		map.put(a, b);
+		back.put(b, a);
+		todo.add(a);
+		return true;
+	}
+
+	private static boolean same(Object a, Object b)
+	{
+		if (a == null) return b == null;
+		return a.equals(b);
+	}
+
+	private static boolean sameTruth(TruthValue a, TruthValue b)
+	{
+		if (a == null) return b == null;
+		if (b == null) return false;
+		return a.getClass() == b.getClass()
+			&& Double.compare(a.getMean(), b.getMean()) == 0
+			&& Double.compare(a.getCount(), b.getCount()) == 0
+			&& Double.compare(a.getConfidence(), b.getConfidence()) == 0;
+	}
+
+	/* ---------------------------------------------------------- */
+
+	/** A truth value that the codec has to fall back to serializing. */
+	static class OddTruthValue implements TruthValue
+	{
+		private static final long serialVersionUID = 1L;
+		private double mean;
+
+		OddTruthValue(double m)
+		{
+			mean = m;
+		}
+
+		public double getMean()
+		{
+			return mean;
+		}
+
+		public double getCount()
+		{
+			return 7.0;
+		}
+
+		public double getConfidence()
+		{
+			return 0.25;
+		}
+	}
+
+	/**
+	 * The sample sentences, with all of the algs applied, and with
+	 * truth values on the parses and on some of the nodes.
+	 */
+	public static List<Sentence> samples()
+	{
+		SentenceAlgorithmApplier applier = new SentenceAlgorithmApplier();
+		RelexContext context = new RelexContext(null, new SampleSentences.SampleMorphy());
+		List<Sentence> sents = new ArrayList<Sentence>();
+		int n = 0;
+		for (String[] spec : SampleSentences.SENTENCES)
+		{
+			ParsedSentence parse = SampleSentences.build(spec);
+			ArrayList<ParsedSentence> parses = new ArrayList<ParsedSentence>();
+			parses.add(parse);
+			Sentence sntc = new Sentence(spec[0], parses);
+			applier.applyAlgs(parse, context);
+			applier.extractStanford(parse, context);
+			applier.pennTag(parse, context);
+			sntc.simpleParseRank();
+			parse.setLinkString("links of " + spec[0]);
+			parse.getWordAsNode(1).setTruthValue(new SimpleTruthValue(0.5, 0.125 * n));
+			n++;
+			sents.add(sntc);
+		}
+		return sents;
+	}
+
+	/** A sentence of one parse, with the given words, and no links. */
+	private static Sentence made(String text, String[] words)
+	{
+		ParsedSentence parse = new ParsedSentence(text);
+		FeatureNode last = null;
+		for (String w : words)
+		{
+			FeatureNode fn = new FeatureNode();
+			fn.set("orig_str", new FeatureNode(w));
+			fn.set("str", new FeatureNode(w));
+			if (last != null)
+			{
+				last.set("NEXT", fn);
+				fn.set("PREV", last);
+			}
+			parse.addWord(fn);
+			last = fn;
+		}
+		ArrayList<ParsedSentence> parses = new ArrayList<ParsedSentence>();
+		parses.add(parse);
+		return new Sentence(text, parses);
+	}
+
+	public void roundTrip(String what, Sentence sntc)
+	{
+		byte[] data = SentenceCodec.encode(sntc);
+		Sentence copy = SentenceCodec.decode(data);
+		check(what + ": decoded sentence differs", sameSentence(sntc, copy));
+		check(what + ": decoded sentence encodes differently",
+			Arrays.equals(data, SentenceCodec.encode(copy)));
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		TestSentenceCodec t = new TestSentenceCodec();
+
+		List<Sentence> sents = samples();
+		LogicView logic = new LogicView();
+		logic.loadRules();
+		for (Sentence sntc : sents)
+		{
+			t.roundTrip(sntc.getSentence(), sntc);
+
+			// The relex2logic rules see the same graph.
+			Sentence copy = SentenceCodec.decode(SentenceCodec.encode(sntc));
+			String expected = logic.printRelationsNew(sntc.getParses().get(0));
+			String got = logic.printRelationsNew(copy.getParses().get(0));
+			t.check(sntc.getSentence() + ": relex2logic output differs:\n" +
+				expected + "\nvs\n" + got, expected.equals(got));
+		}
+
+		// Several sentences, one after the other, on a stream.
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		for (Sentence sntc : sents)
+			SentenceCodec.write(sntc, bos);
+		ByteArrayInputStream bis = new ByteArrayInputStream(bos.toByteArray());
+		for (Sentence sntc : sents)
+		{
+			Sentence copy = SentenceCodec.read(bis);
+			t.check("stream: " + sntc.getSentence(),
+				copy != null && sameSentence(sntc, copy));
+		}
+		t.check("stream: no end of stream", SentenceCodec.read(bis) == null);
+
+		// No parses, and no text.
+		Sentence empty = new Sentence();
+		t.roundTrip("empty sentence", empty);
+
+		// A sentence that timed out part-way through its parses.
+		ArrayList<ParsedSentence> three = new ArrayList<ParsedSentence>();
+		for (int i = 0; i < 3; i++)
+			three.add(made("timed out", new String[] {"a", "b"}).getParses().get(0));
+		Sentence late = new Sentence("timed out", three);
+		late.markTimedOut(1);
+		t.roundTrip("timed-out sentence", late);
+		Sentence lateCopy = SentenceCodec.decode(SentenceCodec.encode(late));
+		t.check("timed-out sentence: flags lost",
+			lateCopy.isTimedOut() &&
+			!lateCopy.getParses().get(0).isTimedOut() &&
+			lateCopy.getParses().get(1).isTimedOut() &&
+			lateCopy.getParses().get(2).isTimedOut());
+
+		// Timed out before its first parse was done with.
+		Sentence early = made("timed out early", new String[] {"a"});
+		early.markTimedOut(0);
+		t.roundTrip("sentence timed out early", early);
+		t.check("sentence timed out early: flags lost",
+			SentenceCodec.decode(SentenceCodec.encode(early)).getParses().get(0).isTimedOut());
+
+		// A chain far deeper than a recursive writer could manage,
+		// closed into a cycle, with a node shared by all the links.
+		Sentence deep = made("deep", new String[] {"a", "b"});
+		FeatureNode node = deep.getParses().get(0).getWordAsNode(1);
+		FeatureNode shared = new FeatureNode("shared");
+		FeatureNode first = node;
+		for (int i = 0; i < 100000; i++)
+		{
+			FeatureNode next = new FeatureNode();
+			next.set("tag", shared);
+			node.set("down", next);
+			node = next;
+		}
+		node.set("down", first);
+		t.roundTrip("deep chain", deep);
+
+		// Odd strings, a node with very many features, and a truth
+		// value of a class of its own.
+		Sentence odd = made("Caf\u00e9 \u4e2d\u6587 \ud83d\ude00 \"quoted\"\n",
+			new String[] {"LEFT-WALL", "Caf\u00e9", "\u4e2d\u6587", "\ud83d\ude00", "", "\"quoted\""});
+		FeatureNode wide = odd.getParses().get(0).getWordAsNode(2);
+		for (int i = 0; i < 500; i++)
+			wide.set("feature" + i, new FeatureNode(Integer.toString(i * 7919)));
+		wide.set("minus", new FeatureNode("-12"));
+		wide.setTruthValue(new OddTruthValue(0.75));
+		odd.getParses().get(0).setTruthValue(new OddTruthValue(0.5));
+		t.roundTrip("odd strings", odd);
+
+		// A truncated encoding is refused.
+		byte[] data = SentenceCodec.encode(sents.get(0));
+		boolean refused = false;
+		try
+		{
+			SentenceCodec.decode(Arrays.copyOf(data, data.length / 2));
+		}
+		catch (RuntimeException e)
+		{
+			refused = true;
+		}
+		t.check("truncated encoding was decoded", refused);
+
+		System.err.println("Sentence codec test: " + t.pass + " passed, " + t.fail + " failed");
+		if (t.fail != 0)
+			System.exit(1);
+		System.err.println("Sentence codec test passed OK");
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package relex.algs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import relex.ParsedSentence;
+import relex.feature.FeatureNode;
+import relex.feature.FeatureTemplate;
+import relex.feature.LinkView;
+import relex.feature.LinkableView;
+
+/**
+ * Template-matching benchmark.  In the relex.algs package, so as to
+ * get at the templates of a loaded AlgorithmApplier.
+ */
+public class TemplateBenchmark
+{
+	/**
+	 * Tries every template in the semantic algs file against every
+	 * node of a small, hand-linked sentence, and reports the average cost of a match attempt.
+	 * Takes an optional iteration count as argument.
+	 */
+	public static void main(String[] args)
+	{
+		int iterations = 2000;
+		if (args.length > 0) iterations = Integer.parseInt(args[0]);
+
+		AlgorithmApplier aa = new AlgorithmApplier(
+			"relex.semalgpath", "relex-semantic.algs");
+		ArrayList<FeatureTemplate> templates = new ArrayList<FeatureTemplate>();
+		for (SentenceAlgorithm alg : aa.getAlgs())
+		{
+			if (alg instanceof TemplateMatchingAlg)
+				templates.add(((TemplateMatchingAlg) alg).getTemplate());
+		}
+
+		// "The big dog chased a cat."
+		String[] words = {"LEFT-WALL", "the", "big.a", "dog.n",
+		                  "chased.v-d", "a", "cat.n", "."};
+		String[][] links = {
+			{"Xp", "Xp", "Xp", "0", "7"}, {"WV", "WV", "WV", "0", "4"},
+			{"Wd", "Wd", "Wd", "0", "3"}, {"Ds**c", "Ds", "Ds", "1", "3"},
+			{"A", "A", "A", "2", "3"}, {"Ss", "Ss*s", "Ss", "3", "4"},
+			{"Os", "Os", "Os", "4", "6"}, {"Ds**c", "Ds", "Ds", "5", "6"}};
+		ParsedSentence sent = new ParsedSentence("The big dog chased a cat.");
+		FeatureNode last = null;
+		for (int i = 0; i < words.length; i++)
+		{
+			FeatureNode fn = new FeatureNode();
+			LinkableView.setWordAndPos(fn, words[i]);
+			fn.set("this", fn);
+			fn.set("wall", (last == null) ? fn : sent.getWordAsNode(0));
+			if (last != null)
+			{
+				LinkableView.setNext(last, fn);
+				LinkableView.setPrev(fn, last);
+			}
+			sent.addWord(fn);
+			last = fn;
+		}
+		for (String[] l : links)
+		{
+			LinkView.setLinkFeatures(new FeatureNode(), l[0], l[1], l[2],
+				sent.getWordAsNode(Integer.parseInt(l[3])),
+				sent.getWordAsNode(Integer.parseInt(l[4])));
+		}
+		List<FeatureNode> nodes = new NodeIndex(sent).getNodes();
+
+		// Warm up, then time.
+		int matches = 0;
+		for (int n = 0; n < 2; n++)
+		{
+			long start = System.nanoTime();
+			matches = 0;
+			for (int it = 0; it < iterations; it++)
+			{
+				for (FeatureTemplate t : templates)
+				{
+					for (FeatureNode node : nodes)
+					{
+						if (t.match(node) != null) matches++;
+					}
+				}
+			}
+			long elapsed = System.nanoTime() - start;
+			long tries = (long) iterations * templates.size() * nodes.size();
+			if (n == 1)
+			{
+				System.out.println(templates.size() + " templates, " +
+					nodes.size() + " nodes, " + matches / iterations +
+					" matches per pass");
+				System.out.println("Average time per match attempt: " +
+					(elapsed / tries) + " nanoseconds");
+			}
+		}
+	}
+}
@@ -0,0 +1,181 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package relex.feature;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Times the merges done by the <a> = <b> actions of an algs file,
+ * when one side of the merge is a hub: a node with many parents,
+ * some of which point to it through many features, much as every
+ * word points to the left wall, and a conjunction points to each of
+ * its members.  The cost of such a merge is in re-pointing the
+ * parents, so this is where FeatureNode's parent bookkeeping shows.
+ *
+ * Usage: MergeBenchmark [-f algs file] [-n parents] [-m features
+ * of the busiest parent] [-r repetitions]
+ *
+ * The defaults are data/relex-semantic.algs, 500, 500 and 20.
+ */
+public class MergeBenchmark
+{
+	private List<FeatureAction> actions = new ArrayList<FeatureAction>();
+	private int numParents;
+	private int hubFeatures;
+	private int merges;
+
+	public MergeBenchmark(int parents, int features)
+	{
+		numParents = parents;
+		hubFeatures = features;
+	}
+
+	/**
+	 * Collect the actions of the form <path> = <path> from an algs
+	 * file; they are the lines after a lone "=", up to the next rule.
+	 */
+	public void read(String filename) throws Exception
+	{
+		BufferedReader in = new BufferedReader(new FileReader(filename));
+		boolean inActions = false;
+		String line;
+		while ((line = in.readLine()) != null)
+		{
+			line = line.trim();
+			if (line.length() == 0 || line.startsWith("#") || line.startsWith(";"))
+			{
+				inActions = false;
+				continue;
+			}
+			if (line.equals("="))
+			{
+				inActions = true;
+				continue;
+			}
+			if (!inActions || !line.startsWith("<")) continue;
+
+			FeatureAction act = new FeatureAction(line);
+			if (act.getAction().equals("=") && act.isPathPair()
+			    && act.getPath().size() > 0 && act.getTargetPath().size() > 0)
+				actions.add(act);
+		}
+		in.close();
+	}
+
+	public int size()
+	{
+		return actions.size();
+	}
+
+	/**
+	 * Build a graph on which act merges a node with a hub, or return
+	 * null if the two paths of act cannot both be made.
+	 */
+	private FeatureNode build(FeatureAction act)
+	{
+		FeatureNode root = new FeatureNode();
+		FeatureNode left = new FeatureNode();
+		FeatureNode hub = new FeatureNode();
+		try
+		{
+			root.makePath(act.getPath(), left);
+			if (root.pathTarget(act.getTargetPath()) != null)
+				return null;
+			root.makePath(act.getTargetPath(), hub);
+		}
+		catch (RuntimeException e)
+		{
+			return null;
+		}
+
+		// Many parents, each with a few features, one of them the hub.
+		for (int i = 0; i < numParents; i++)
+		{
+			FeatureNode p = new FeatureNode();
+			p.set("str", new FeatureNode("w" + i));
+			p.set("pos", new FeatureNode("noun"));
+			p.set("LEFT-WALL", hub);
+			p.set("index_in_sentence", new FeatureNode(Integer.toString(i)));
+		}
+
+		// And one parent that points to the hub many times over.
+		FeatureNode busy = new FeatureNode();
+		for (int i = 0; i < hubFeatures; i++)
+			busy.set(Symbols.indexed("member", i), hub);
+		return root;
+	}
+
+	/**
+	 * Apply every action, reps times, each time to a freshly built
+	 * graph (if one can be built); return the time spent in the
+	 * actions alone, in nanosecs.
+	 */
+	public long run(int reps)
+	{
+		long total = 0;
+		merges = 0;
+		for (int r = 0; r < reps; r++)
+		{
+			for (FeatureAction act : actions)
+			{
+				FeatureNode root = build(act);
+				if (root == null) continue;
+				long start = System.nanoTime();
+				act.doAction(root);
+				total += System.nanoTime() - start;
+				merges++;
+			}
+		}
+		return total;
+	}
+
+	public static void main(String[] args)
+	{
+		String filename = "data/relex-semantic.algs";
+		int parents = 500;
+		int features = 500;
+		int reps = 20;
+		for (int i = 0; i+1 < args.length; i += 2)
+		{
+			if (args[i].equals("-f")) filename = args[i+1];
+			else if (args[i].equals("-n")) parents = Integer.parseInt(args[i+1]);
+			else if (args[i].equals("-m")) features = Integer.parseInt(args[i+1]);
+			else if (args[i].equals("-r")) reps = Integer.parseInt(args[i+1]);
+		}
+
+		try
+		{
+			MergeBenchmark mb = new MergeBenchmark(parents, features);
+			mb.read(filename);
+			System.out.println("Merge actions in " + filename + ": " + mb.size());
+
+			// Warm up, then measure.
+			mb.run(Math.max(1, reps / 4));
+			long ns = mb.run(reps);
+			double per = ((double) ns) / Math.max(1, mb.merges);
+			System.out.println(String.format(
+				"%d parents, busiest with %d features: %.1f usecs per merge",
+				parents, features, per / 1000.0));
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+}
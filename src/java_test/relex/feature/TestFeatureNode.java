@@ -0,0 +1,264 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package relex.feature;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks the features of a FeatureNode against a HashMap that has the
+ * same features put into it, and taken out of it: both must find the
+ * same target for every name, and list the names in the same order.
+ * The nodes are grown well past the point where they are indexed, and
+ * where the HashMap would have grown its table, and are checked again
+ * after a round trip through Java serialization.  None of the names
+ * may end up in the Symbols table.
+ *
+ * Then, a pool of nodes is linked up at random, and nodes are merged
+ * with, and replaced by, others: after each step, the parents of
+ * every node must be just those nodes with a feature pointing to it,
+ * and a node that has been replaced must have no parents left.
+ */
+public class TestFeatureNode
+{
+	private Random rand;
+	private String[] names;
+	private int pass = 0;
+	private int fail = 0;
+
+	public TestFeatureNode(long seed)
+	{
+		rand = new Random(seed);
+		names = new String[200];
+		for (int i = 0; i < names.length; i++)
+			names[i] = (i % 3 == 0 ? "link" : i % 3 == 1 ? "_" : "X-") + i;
+	}
+
+	private void check(String what, boolean ok)
+	{
+		if (ok)
+		{
+			pass++;
+			return;
+		}
+		fail++;
+		System.err.println("Error: " + what);
+	}
+
+	private void compare(String what, FeatureNode fn, HashMap<String,FeatureNode> map)
+	{
+		List<String> got = new ArrayList<String>(fn.getFeatureNames());
+		List<String> expected = new ArrayList<String>(map.keySet());
+		check(what + ": names in order " + got + ", expected " + expected,
+			got.equals(expected));
+		boolean same = true;
+		for (String name : names)
+			same &= (fn.get(name) == map.get(name));
+		check(what + ": a name has the wrong target", same);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T roundTrip(T obj) throws Exception
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bos);
+		out.writeObject(obj);
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(
+			new ByteArrayInputStream(bos.toByteArray()));
+		return (T) in.readObject();
+	}
+
+	public void run(int round, int size, int ops) throws Exception
+	{
+		FeatureNode fn = new FeatureNode();
+		HashMap<String,FeatureNode> map = new HashMap<String,FeatureNode>();
+		int n = Math.min(size, names.length);
+		for (int op = 0; op < ops; op++)
+		{
+			String name = names[rand.nextInt(n)];
+			int what = rand.nextInt(10);
+			if (what < 7)
+			{
+				FeatureNode target = new FeatureNode(name + op);
+				fn.set(name, target);
+				map.put(name, target);
+			}
+			else if (what < 9)
+			{
+				fn.set(name, null);
+				map.remove(name);
+			}
+			else
+			{
+				// Remove through the key set iterator.
+				Iterator<String> it = fn.getFeatureNames().iterator();
+				while (it.hasNext())
+				{
+					String k = it.next();
+					if (k.equals(name)) it.remove();
+				}
+				map.remove(name);
+			}
+			compare("round " + round + ", op " + op, fn, map);
+		}
+
+		// Serialized, a node keeps its names, and their order, as
+		// does a HashMap.
+		FeatureNode holder = new FeatureNode();
+		holder.set("node", fn);
+		HashMap<String,FeatureNode> copy = roundTrip(map);
+		FeatureNode fnCopy = roundTrip(holder).get("node");
+		List<String> got = new ArrayList<String>(fnCopy.getFeatureNames());
+		List<String> expected = new ArrayList<String>(copy.keySet());
+		check("round " + round + ", serialized: names in order " + got +
+			", expected " + expected, got.equals(expected));
+		boolean same = true;
+		for (String name : names)
+		{
+			FeatureNode a = fnCopy.get(name);
+			FeatureNode b = copy.get(name);
+			same &= (a == null) ? (b == null) : (b != null && a.getValue().equals(b.getValue()));
+		}
+		check("round " + round + ", serialized: a name has the wrong target", same);
+	}
+
+	/**
+	 * Check that the parents of each node of the pool are exactly the
+	 * nodes of the pool that have a feature pointing to it.
+	 */
+	private void checkParents(String what, List<FeatureNode> pool)
+	{
+		IdentityHashMap<FeatureNode,IdentityHashMap<FeatureNode,Boolean>> expected =
+			new IdentityHashMap<FeatureNode,IdentityHashMap<FeatureNode,Boolean>>();
+		for (FeatureNode fn : pool)
+			expected.put(fn, new IdentityHashMap<FeatureNode,Boolean>());
+		for (FeatureNode p : pool)
+		{
+			for (int i = 0; i < p.featureCount(); i++)
+			{
+				IdentityHashMap<FeatureNode,Boolean> ps = expected.get(p.featureAt(i));
+				if (ps != null) ps.put(p, Boolean.TRUE);
+			}
+		}
+
+		boolean same = true;
+		for (FeatureNode fn : pool)
+		{
+			IdentityHashMap<FeatureNode,Boolean> got =
+				new IdentityHashMap<FeatureNode,Boolean>();
+			Iterator<FeatureNode> it = fn.getParents();
+			int n = 0;
+			while (it.hasNext())
+			{
+				got.put(it.next(), Boolean.TRUE);
+				n++;
+			}
+			same &= (n == got.size()) && got.equals(expected.get(fn));
+		}
+		check(what + ": the parents of a node are wrong", same);
+	}
+
+	/** True if no node of the pool has a feature pointing to fn */
+	private static boolean orphaned(FeatureNode fn, List<FeatureNode> pool)
+	{
+		for (FeatureNode p : pool)
+			for (int i = 0; i < p.featureCount(); i++)
+				if (p.featureAt(i) == fn) return false;
+		return !fn.getParents().hasNext();
+	}
+
+	public void runParents(int round, int size, int ops)
+	{
+		List<FeatureNode> pool = new ArrayList<FeatureNode>();
+		for (int i = 0; i < size; i++)
+			pool.add(new FeatureNode());
+
+		// Few names, so that a node often points to another more than once.
+		int n = 12;
+		for (int op = 0; op < ops; op++)
+		{
+			String what = "parents, round " + round + ", op " + op;
+			FeatureNode a = pool.get(rand.nextInt(pool.size()));
+			FeatureNode b = pool.get(rand.nextInt(pool.size()));
+			int kind = rand.nextInt(10);
+			if (kind < 6)
+			{
+				a.set(names[rand.nextInt(n)], b);
+			}
+			else if (kind < 8)
+			{
+				a.set(names[rand.nextInt(n)], null);
+			}
+			else if (kind < 9)
+			{
+				if (a == b) continue;
+				a.replaceSelfWith(b);
+				check(what + ": replaced node still has parents", orphaned(a, pool));
+			}
+			else
+			{
+				// Merge a new, empty node, that some nodes point to,
+				// one way or the other.
+				FeatureNode e = new FeatureNode();
+				for (int i = rand.nextInt(2*size); i > 0; i--)
+					pool.get(rand.nextInt(pool.size())).set(names[rand.nextInt(n)], e);
+				pool.add(e);
+				FeatureNode gone = e;
+				if (rand.nextBoolean())
+				{
+					// If b is empty too, it is b that is replaced.
+					if (b.isEmpty()) gone = b;
+					e.mergeWith(b);
+				}
+				else
+				{
+					b.mergeWith(e);
+				}
+				check(what + ": merged node still has parents", orphaned(gone, pool));
+			}
+			checkParents(what, pool);
+		}
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		TestFeatureNode t = new TestFeatureNode(20081018L);
+		int symbols = Symbols.size();
+		int round = 0;
+		for (int size = 4; size <= 200; size *= 2)
+			for (int i = 0; i < 10; i++)
+				t.run(round++, size, 300);
+		for (int size = 2; size <= 64; size *= 2)
+			for (int i = 0; i < 5; i++)
+				t.runParents(round++, size, 300);
+		t.check("feature names were added to the Symbols table: " +
+			symbols + " names before, " + Symbols.size() + " after",
+			Symbols.size() == symbols);
+
+		System.err.println("FeatureNode test: " + t.pass + " passed, " + t.fail + " failed");
+		if (t.fail != 0)
+			System.exit(1);
+		System.err.println("FeatureNode test passed OK");
+	}
+}
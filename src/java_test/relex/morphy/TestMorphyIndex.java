@@ -0,0 +1,194 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package relex.morphy;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Compares the lookups of a MorphyIndex with those of the TreeSet and
+ * TreeMap it was built from, done the way MapMorphy used to do them:
+ * a lemma is found if the set contains the normalized word, and an
+ * exception stands for the first of its exceptions that, lower-cased,
+ * is in the set.
+ *
+ * The words are random, with upper case, white space and non-ASCII
+ * letters mixed in, so that the case-folding and trimming of the index
+ * are checked as well as its search.  The index is checked as built,
+ * and again after being written out and mapped back in.
+ */
+public class TestMorphyIndex
+{
+	private static final String LETTERS = "abcdeABCDE\u00e9\u00c9\u0130\u00df ";
+	private static final int POS_COUNT = 4;
+
+	private Random rand;
+	private int pass = 0;
+	private int fail = 0;
+
+	public TestMorphyIndex(long seed)
+	{
+		rand = new Random(seed);
+	}
+
+	private String word(int maxLen)
+	{
+		int len = rand.nextInt(maxLen + 1);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < len; i++)
+			sb.append(LETTERS.charAt(rand.nextInt(LETTERS.length())));
+		return sb.toString();
+	}
+
+	/** Mostly lower-case, trimmed words, as WordNet has. */
+	private String lemma()
+	{
+		String w = word(6).trim();
+		if (rand.nextInt(8) != 0) w = w.toLowerCase();
+		return w;
+	}
+
+	/** A query: one of the given words, or a random one, re-cased and padded. */
+	private String query(List<String> known)
+	{
+		String w = (known.isEmpty() || rand.nextInt(3) == 0) ?
+			word(6) : known.get(rand.nextInt(known.size()));
+		switch (rand.nextInt(4))
+		{
+			case 0: w = w.toUpperCase(); break;
+			case 1: w = " " + w + "\t"; break;
+			case 2: w = "\n" + w.toUpperCase(); break;
+			default: break;
+		}
+		return w;
+	}
+
+	private static String normalize(String word, boolean trim)
+	{
+		return trim ? word.trim().toLowerCase() : word.toLowerCase();
+	}
+
+	private static String expectLemma(TreeSet<String> lemmas, String word, boolean trim)
+	{
+		String w = normalize(word, trim);
+		return lemmas.contains(w) ? w : null;
+	}
+
+	private static String expectException(TreeSet<String> lemmas,
+		TreeMap<String, TreeSet<String>> excs, String word, boolean trim)
+	{
+		TreeSet<String> wordExceptions = excs.get(normalize(word, trim));
+		if (wordExceptions == null) return null;
+		for (String exception : wordExceptions)
+		{
+			if (lemmas.contains(exception.toLowerCase()))
+				return exception.toLowerCase();
+		}
+		return null;
+	}
+
+	private void check(String what, String expected, String got)
+	{
+		if ((expected == null) ? (got == null) : expected.equals(got))
+		{
+			pass++;
+			return;
+		}
+		fail++;
+		System.err.println("Error: " + what + ": expected " + expected + ", got " + got);
+	}
+
+	private static String lemmaOf(MorphyIndex index, int pos, int id)
+	{
+		return (id < 0) ? null : index.getLemma(pos, id);
+	}
+
+	public void run(String name, MorphyIndex index, List<TreeSet<String>> lemmaSets,
+		List<TreeMap<String, TreeSet<String>>> excMaps, int queries)
+	{
+		for (int pos = 0; pos < POS_COUNT; pos++)
+		{
+			TreeSet<String> lemmas = lemmaSets.get(pos);
+			TreeMap<String, TreeSet<String>> excs = excMaps.get(pos);
+			List<String> known = new ArrayList<String>(lemmas);
+			known.addAll(excs.keySet());
+
+			for (int q = 0; q < queries; q++)
+			{
+				String w = query(known);
+				boolean trim = rand.nextBoolean();
+				String what = name + " pos " + pos + " \"" + w + "\" trim=" + trim;
+				check("lemma of " + what, expectLemma(lemmas, w, trim),
+					lemmaOf(index, pos, index.findLemma(pos, w, trim)));
+				check("exception of " + what, expectException(lemmas, excs, w, trim),
+					lemmaOf(index, pos, index.findException(pos, w, trim)));
+			}
+		}
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		long seed = 20081018L;
+		if (args.length > 0) seed = Long.parseLong(args[0]);
+		TestMorphyIndex t = new TestMorphyIndex(seed);
+
+		File file = File.createTempFile("morphy", ".idx");
+		file.deleteOnExit();
+		for (int round = 0; round < 20; round++)
+		{
+			List<TreeSet<String>> lemmaSets = new ArrayList<TreeSet<String>>();
+			List<TreeMap<String, TreeSet<String>>> excMaps =
+				new ArrayList<TreeMap<String, TreeSet<String>>>();
+			for (int pos = 0; pos < POS_COUNT; pos++)
+			{
+				TreeSet<String> lemmas = new TreeSet<String>();
+				int n = t.rand.nextInt(200);
+				for (int i = 0; i < n; i++)
+					lemmas.add(t.lemma());
+				List<String> known = new ArrayList<String>(lemmas);
+
+				TreeMap<String, TreeSet<String>> excs = new TreeMap<String, TreeSet<String>>();
+				int m = t.rand.nextInt(50);
+				for (int i = 0; i < m; i++)
+				{
+					TreeSet<String> forms = new TreeSet<String>();
+					int k = 1 + t.rand.nextInt(3);
+					for (int j = 0; j < k; j++)
+						forms.add(t.rand.nextBoolean() ? t.query(known) : t.lemma());
+					excs.put(t.lemma(), forms);
+				}
+				lemmaSets.add(lemmas);
+				excMaps.add(excs);
+			}
+
+			MorphyIndex built = MorphyIndex.build(lemmaSets, excMaps);
+			t.run("built, round " + round, built, lemmaSets, excMaps, 500);
+
+			built.write(file.getPath());
+			MorphyIndex mapped = MorphyIndex.open(file.getPath());
+			t.run("mapped, round " + round, mapped, lemmaSets, excMaps, 500);
+		}
+
+		System.err.println("Morphy index test: " + t.pass + " passed, " + t.fail + " failed");
+		if (t.fail != 0)
+			System.exit(1);
+		System.err.println("Morphy index test passed OK");
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package relex.output;
+
+import relex.feature.FeatureNode;
+import relex.logic.Rule;
+import relex.logic.RuleSet;
+
+/**
+ * Checks that the relex2logic path search does not blow up on graphs
+ * where many paths lead to the same nodes, and that re-using the paths
+ * below a node gives the same output as searching them all again.
+ *
+ * The graphs are chains of diamonds: word i links, through a group of
+ * "width" members, to word i+1, and the last word has the one relation
+ * that completes the rule.  Without re-use, the search walks all
+ * width^depth paths down the chain.  A second set of graphs has a
+ * relation back from the last word to the first, so that the whole
+ * chain is a cycle, and nothing may be re-used; these only check that
+ * the output is the same.
+ *
+ * In the relex.output package, for LogicProcessor.countSearchSteps().
+ */
+public class TestPathSearch
+{
+	private static final String[] RULES = {
+		"[DEEP] {1} <> _a($x, $y) & _b($y, $z) & _c($p, $q) => (deep-rule $x $y $z $p $q)",
+		"[NEAR] {2} <> _a($x, $y) & _b($y, $z) => (near-rule $x $y $z)",
+		"[FAR] {3} <> _c($p, $q) => (far-rule $p $q)",
+	};
+
+	private int pass = 0;
+	private int fail = 0;
+
+	private static FeatureNode named(String name)
+	{
+		FeatureNode fn = new FeatureNode();
+		fn.set("name", new FeatureNode(name));
+		FeatureNode source = new FeatureNode();
+		source.set("uuid", new FeatureNode(name + "-uuid"));
+		fn.set("nameSource", source);
+		return fn;
+	}
+
+	private static FeatureNode links(FeatureNode fn)
+	{
+		FeatureNode links = fn.get("links");
+		if (links == null)
+		{
+			links = new FeatureNode();
+			fn.set("links", links);
+		}
+		return links;
+	}
+
+	/**
+	 * Builds a chain of depth diamonds, each width members wide, and
+	 * returns its first word.
+	 */
+	private static FeatureNode chain(int depth, int width, boolean cyclic)
+	{
+		FeatureNode first = named("w0");
+		FeatureNode word = first;
+		for (int i = 0; i < depth; i++)
+		{
+			FeatureNode next = named("w" + (i + 1));
+			FeatureNode group = new FeatureNode();
+			for (int j = 0; j < width; j++)
+			{
+				FeatureNode member = named("m" + i + "_" + j);
+				links(member).set("_b", next);
+				group.set("member" + j, member);
+			}
+			links(word).set("_a", group);
+			word = next;
+		}
+		links(word).set("_c", named("end"));
+		if (cyclic)
+			links(word).set("_d", first);
+		return first;
+	}
+
+	private void check(String what, boolean ok)
+	{
+		if (ok)
+		{
+			pass++;
+			return;
+		}
+		fail++;
+		System.err.println("Error: " + what);
+	}
+
+	public static void main(String[] args)
+	{
+		RuleSet rules = new RuleSet();
+		for (String r : RULES)
+			rules.addRule(new Rule(r));
+		LogicProcessor lp = new LogicProcessor(rules);
+		TestPathSearch t = new TestPathSearch();
+
+		// Both ways give the same output, on the acyclic graphs and
+		// on the cyclic ones; the search without re-use is kept small.
+		for (int depth = 1; depth <= 6; depth++)
+		{
+			for (int c = 0; c < 2; c++)
+			{
+				boolean cyclic = (c == 1);
+				FeatureNode root = chain(depth, 3, cyclic);
+				StringBuilder memo = new StringBuilder();
+				StringBuilder full = new StringBuilder();
+				lp.countSearchSteps(root, true, memo);
+				lp.countSearchSteps(root, false, full);
+				t.check("output differs at depth " + depth +
+					(cyclic ? ", cyclic" : "") + ":\n" + memo + "\nvs\n" + full,
+					memo.toString().equals(full.toString()) && memo.length() > 0);
+			}
+		}
+
+		// Doubling the depth of the acyclic chain should no more than
+		// about quadruple the steps taken (one search per start node,
+		// each linear in the depth), where a full search takes more
+		// than 3^depth.
+		long last = 0;
+		for (int depth = 4; depth <= 64; depth *= 2)
+		{
+			long steps = lp.countSearchSteps(chain(depth, 3, false), true, new StringBuilder());
+			if (last > 0)
+				t.check("path search steps went from " + last + " to " + steps +
+					" when the depth doubled to " + depth, steps <= 5 * last);
+			last = steps;
+		}
+		long full = lp.countSearchSteps(chain(8, 3, false), false, new StringBuilder());
+		long memo = lp.countSearchSteps(chain(8, 3, false), true, new StringBuilder());
+		t.check("full search took " + full + " steps, expected more than 3^8",
+			full > 6561);
+		t.check("search with re-use took " + memo + " steps, full search " + full,
+			10 * memo < full);
+
+		System.err.println("Path search test: " + t.pass + " passed, " + t.fail + " failed");
+		if (t.fail != 0)
+			System.exit(1);
+		System.err.println("Path search test passed OK");
+	}
+}
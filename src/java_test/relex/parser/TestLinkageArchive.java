@@ -0,0 +1,420 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package relex.parser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import relex.ParsedSentence;
+import relex.Sentence;
+
+/**
+ * Checks that ParseRecords come out of a LinkageArchive as they went
+ * in: by index, by sentence, and in order; and that ArchiveLGParser
+ * builds the same Sentences from them as are built from the records
+ * that were written.
+ *
+ * The records are made up: a few linkages per sentence, with links,
+ * senses and constituent strings, some of them missing, and linkages
+ * of which only the costs are known, which are not written.  Some
+ * sentences occur twice.  The archive is then added to, once after
+ * being closed, and once after a writer died half-way through a
+ * record.
+ */
+public class TestLinkageArchive
+{
+	private static final String LG_VERSION = "link-grammar-test-1.0";
+
+	private static final String[] WORDS = {
+		"the", "cat", "sat", "on", "mat", "Alice", "saw", "it",
+		"caf\u00e9", "\u4e2d\u6587", "", "cat"
+	};
+
+	private Random rand = new Random(20131020L);
+	private int pass = 0;
+	private int fail = 0;
+
+	private void check(String what, boolean ok)
+	{
+		if (ok)
+		{
+			pass++;
+			return;
+		}
+		fail++;
+		System.err.println("Error: " + what);
+	}
+
+	/* --------------------------------------------------------------- */
+
+	private String string()
+	{
+		if (rand.nextInt(5) == 0) return null;
+		return "s" + rand.nextInt(1000);
+	}
+
+	private ParseRecord.LinkageRecord linkage(String[] words)
+	{
+		ParseRecord.LinkageRecord lkg = new ParseRecord.LinkageRecord();
+		lkg.index = rand.nextInt(100);
+		lkg.disjunctCost = rand.nextInt(4);
+		lkg.linkCost = rand.nextInt(20);
+		lkg.numViolations = rand.nextInt(2);
+
+		// Only the costs are known of some linkages.
+		if (rand.nextInt(5) == 0) return lkg;
+
+		lkg.words = words;
+		lkg.linkString = "diagram " + rand.nextInt();
+		lkg.constituentString = rand.nextBoolean() ? "(S (NP the cat))" : null;
+
+		// Each word but the first linked to the one before it.
+		int n = words.length - 1;
+		lkg.linkLeft = new int[n];
+		lkg.linkRight = new int[n];
+		lkg.linkLeftLabel = new String[n];
+		lkg.linkRightLabel = new String[n];
+		lkg.linkLabel = new String[n];
+		for (int i = 0; i < n; i++)
+		{
+			lkg.linkLeft[i] = i;
+			lkg.linkRight[i] = i + 1;
+			lkg.linkLeftLabel[i] = "L" + rand.nextInt(5);
+			lkg.linkRightLabel[i] = "R" + rand.nextInt(5);
+			lkg.linkLabel[i] = "X" + rand.nextInt(5);
+		}
+
+		if (rand.nextBoolean()) return lkg;
+		lkg.disjuncts = new String[words.length];
+		lkg.senses = new String[words.length][];
+		lkg.senseScores = new double[words.length][];
+		for (int i = 0; i < words.length; i++)
+		{
+			lkg.disjuncts[i] = string();
+			int ns = rand.nextInt(3);
+			lkg.senses[i] = new String[ns];
+			lkg.senseScores[i] = new double[ns];
+			for (int s = 0; s < ns; s++)
+			{
+				lkg.senses[i][s] = "sense" + rand.nextInt(10);
+				lkg.senseScores[i][s] = rand.nextDouble() - 0.1;
+			}
+		}
+		return lkg;
+	}
+
+	private ParseRecord record(String text)
+	{
+		ParseRecord rec = new ParseRecord();
+		rec.text = text;
+		rec.numSkippedWords = rand.nextInt(4) == 0 ? 1 : 0;
+
+		List<String> words = new ArrayList<String>();
+		words.add("LEFT-WALL");
+		for (String w : text.split(" "))
+			words.add(w);
+		words.add(".");
+		words.add("RIGHT-WALL");
+		String[] wa = words.toArray(new String[words.size()]);
+
+		int n = 1 + rand.nextInt(3);
+		for (int i = 0; i < n; i++)
+			rec.linkages.add(linkage(wa));
+		rec.numLinkages = n + rand.nextInt(3);
+		return rec;
+	}
+
+	private String sentence()
+	{
+		StringBuilder sb = new StringBuilder("The");
+		int n = 1 + rand.nextInt(8);
+		for (int i = 0; i < n; i++)
+			sb.append(' ').append(WORDS[rand.nextInt(WORDS.length)]);
+		return sb.toString();
+	}
+
+	private List<ParseRecord> records(int n)
+	{
+		List<ParseRecord> recs = new ArrayList<ParseRecord>();
+		for (int i = 0; i < n; i++)
+		{
+			// Now and then, a sentence that was parsed before.
+			if (0 < i && rand.nextInt(10) == 0)
+				recs.add(record(recs.get(rand.nextInt(i)).text));
+			else
+				recs.add(record(sentence() + " " + i));
+		}
+		return recs;
+	}
+
+	/* --------------------------------------------------------------- */
+
+	private static byte[] bytes(ParseRecord rec)
+	{
+		try
+		{
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			rec.write(new DataOutputStream(bos));
+			return bos.toByteArray();
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException("Error: can't write record", e);
+		}
+	}
+
+	/** Records are the same if they are written the same. */
+	private static boolean same(ParseRecord a, ParseRecord b)
+	{
+		return a != null && b != null && Arrays.equals(bytes(a), bytes(b));
+	}
+
+	private static void write(File f, List<ParseRecord> recs, boolean append)
+		throws IOException
+	{
+		LinkageArchive.Writer w = new LinkageArchive.Writer(f, LG_VERSION, append);
+		for (ParseRecord rec : recs)
+			w.add(rec);
+		w.close();
+	}
+
+	/**
+	 * Builds sentences straight from the records, as LocalLGParser
+	 * does from what link-grammar hands it.
+	 */
+	private static class RecordParser extends LGParser
+	{
+		private HashMap<String,ParseRecord> records = new HashMap<String,ParseRecord>();
+
+		void add(ParseRecord rec)
+		{
+			if (!records.containsKey(rec.text)) records.put(rec.text, rec);
+		}
+
+		public Sentence parse(String sentence)
+		{
+			return buildSentence(records.get(sentence));
+		}
+
+		public String getVersion()
+		{
+			return LG_VERSION;
+		}
+	}
+
+	/** The sentence and its parses, but for their ID's. */
+	private static String describe(Sentence s)
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append(s.getNumParses()).append(" parses\n");
+		for (ParsedSentence p : s.getParses())
+		{
+			sb.append(p.getOriginalSentence()).append('\n');
+			sb.append(p.getLinkString()).append('\n');
+			sb.append(p.getPhraseString()).append('\n');
+			sb.append(p.getMetaData()).append('\n');
+			sb.append(p.getLeft()).append('\n');
+		}
+
+		// The ID's are new UUID's each time.
+		return sb.toString().replaceAll("@[-0-9a-f]{36}", "@");
+	}
+
+	private static void configure(LGParser p)
+	{
+		p.getConfig().setMaxLinkages(2);
+		p.getConfig().setAllowSkippedWords(true);
+		p.getConfig().setStoreSense(true);
+		p.getConfig().setStoreConstituentString(true);
+	}
+
+	/* --------------------------------------------------------------- */
+
+	/**
+	 * Check the archive in the file against the records that were
+	 * written to it.
+	 */
+	public void checkArchive(String what, File f, List<ParseRecord> recs)
+		throws IOException
+	{
+		LinkageArchive la = new LinkageArchive(f);
+		check(what + ": version " + la.getLGVersion(), LG_VERSION.equals(la.getLGVersion()));
+		check(what + ": " + la.size() + " records, expected " + recs.size(),
+			la.size() == recs.size());
+		if (la.size() != recs.size()) return;
+
+		HashMap<String,ParseRecord> first = new HashMap<String,ParseRecord>();
+		for (ParseRecord rec : recs)
+			if (!first.containsKey(rec.text)) first.put(rec.text, rec);
+
+		for (int i = 0; i < recs.size(); i++)
+		{
+			ParseRecord rec = recs.get(i);
+			check(what + ": record " + i + " by index", same(rec, la.get(i)));
+			check(what + ": record " + i + " by text", same(first.get(rec.text), la.get(rec.text)));
+			check(what + ": contains record " + i, la.contains(rec.text));
+		}
+		check(what + ": found a sentence that is not there",
+			la.get("not in the archive") == null && !la.contains("not in the archive"));
+
+		int i = 0;
+		for (Iterator<String> it = la.sentences(); it.hasNext(); i++)
+		{
+			String text = it.next();
+			check(what + ": sentence " + i + " is \"" + text + "\"",
+				i < recs.size() && recs.get(i).text.equals(text));
+		}
+		check(what + ": " + i + " sentences", i == recs.size());
+
+		i = 0;
+		for (ParseRecord rec : la)
+		{
+			check(what + ": iterated record " + i, i < recs.size() && same(recs.get(i), rec));
+			i++;
+		}
+		check(what + ": iterated " + i + " records", i == recs.size());
+
+		// The sentences built from the archive are those built from
+		// the records, whether ranked first or not.
+		for (int rank = 0; rank < 2; rank++)
+		{
+			RecordParser direct = new RecordParser();
+			configure(direct);
+			for (ParseRecord rec : recs)
+				direct.add(rec);
+			ArchiveLGParser archived = new ArchiveLGParser(la);
+			configure(archived);
+			direct.setRankFirst(rank == 1);
+			archived.setRankFirst(rank == 1);
+			for (String text : first.keySet())
+			{
+				String expected = describe(direct.parse(text));
+				String got;
+				try
+				{
+					got = describe(archived.parse(text));
+				}
+				catch (ParseException e)
+				{
+					got = e.toString();
+				}
+				check(what + ": sentence built from the archive differs:\n" +
+					expected + "\nvs\n" + got, expected.equals(got));
+			}
+		}
+	}
+
+	public void checkParser(File f) throws IOException
+	{
+		ArchiveLGParser p = new ArchiveLGParser(f);
+		check("parser version", LG_VERSION.equals(p.getVersion()));
+		boolean thrown = false;
+		try
+		{
+			p.parse("not in the archive");
+		}
+		catch (ParseException e)
+		{
+			thrown = true;
+		}
+		check("no ParseException for a missing sentence", thrown);
+
+		final Sentence fallback = new Sentence();
+		p.setFallback(new IParser()
+		{
+			public Sentence parse(String text)
+			{
+				return fallback;
+			}
+		});
+		try
+		{
+			check("fallback not used", p.parse("not in the archive") == fallback);
+		}
+		catch (ParseException e)
+		{
+			check("fallback threw " + e, false);
+		}
+	}
+
+	public static void main(String[] args)
+	{
+		TestLinkageArchive t = new TestLinkageArchive();
+		File f = null;
+		try
+		{
+			f = File.createTempFile("relex-archive", ".lga");
+			List<ParseRecord> recs = t.records(200);
+			write(f, recs, false);
+			t.checkArchive("written", f, recs);
+			t.checkParser(f);
+
+			// Add to it.
+			List<ParseRecord> more = t.records(50);
+			write(f, more, true);
+			recs.addAll(more);
+			t.checkArchive("appended", f, recs);
+
+			// A writer that died half-way through a record: the
+			// length is there, but not all of the record.
+			byte[] partial = bytes(t.record("half written"));
+			FileOutputStream fos = new FileOutputStream(f, true);
+			DataOutputStream out = new DataOutputStream(fos);
+			out.writeInt(partial.length);
+			out.write(partial, 0, partial.length / 2);
+			out.close();
+			more = t.records(50);
+			write(f, more, true);
+			recs.addAll(more);
+			t.checkArchive("appended after a half-written record", f, recs);
+
+			// ... and one that died before it got the length out.
+			fos = new FileOutputStream(f, true);
+			fos.write(new byte[] {0, 0});
+			fos.close();
+			more = t.records(10);
+			write(f, more, true);
+			recs.addAll(more);
+			t.checkArchive("appended after a half-written length", f, recs);
+
+			// Writing afresh throws away what was there.
+			recs = t.records(20);
+			write(f, recs, false);
+			t.checkArchive("rewritten", f, recs);
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException("Error: linkage archive test failed", e);
+		}
+		finally
+		{
+			if (f != null) f.delete();
+		}
+
+		System.err.println("Linkage archive test: " + t.pass + " passed, " + t.fail + " failed");
+		if (t.fail != 0)
+			System.exit(1);
+		System.err.println("Linkage archive test passed OK");
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package relex.parser;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Checks TokenAligner against the way the parsers used to find the
+ * offsets of the words: an indexOf over the lower-cased sentence for
+ * each word, repeated once for every earlier occurrence of the same
+ * word.
+ *
+ * The sentences and words are made up from a small vocabulary of
+ * words that overlap one another ("a", "aa", "ab", ...), so that
+ * words repeat, are found inside other words, or are not found at
+ * all.  Some of the words are empty, or null, and some are the
+ * RIGHT-WALL.  Several linkages are aligned with the same aligner,
+ * some of them twice, as the parsers do.
+ */
+public class TestTokenAligner
+{
+	private static final String[] VOCABULARY = {
+		"a", "b", "ab", "ba", "aa", "A", "Ab", "x", "zz", "", null,
+		"RIGHT-WALL", "LEFT-WALL"
+	};
+
+	private int pass = 0;
+	private int fail = 0;
+
+	private void check(String what, boolean ok)
+	{
+		if (ok)
+		{
+			pass++;
+			return;
+		}
+		fail++;
+		System.err.println("Error: " + what);
+	}
+
+	/**
+	 * The offsets as the parsers used to compute them.  The RIGHT-WALL
+	 * was given none; it gets -1 here, as from TokenAligner.
+	 */
+	private static int[] oldAlign(String sentence, String[] words)
+	{
+		int[] offsets = new int[2 * words.length];
+		Arrays.fill(offsets, -1);
+		String sentenceString = sentence.toLowerCase();
+		HashMap<String,Integer> timesTokenSeen = new HashMap<String,Integer>();
+		int startChar = 0;
+		for (int w = 0; w < words.length; w++)
+		{
+			if ("RIGHT-WALL".equals(words[w])) continue;
+
+			String tokenString = words[w];
+			if (null != tokenString) tokenString = tokenString.toLowerCase();
+			else tokenString = "";
+
+			Integer timesSeenInt = timesTokenSeen.get(tokenString);
+			int timesSeen = (timesSeenInt == null ? 0 : timesSeenInt.intValue());
+			for (int x = 0; x <= timesSeen; x++)
+				startChar = sentenceString.indexOf(tokenString, startChar);
+			timesTokenSeen.put(tokenString, timesSeen + 1);
+
+			int endChar = (startChar >= 0 ? startChar + tokenString.length() : -1);
+			offsets[2*w] = startChar;
+			offsets[2*w+1] = endChar;
+			startChar = Math.max(startChar, endChar);
+		}
+		return offsets;
+	}
+
+	private void compare(String what, TokenAligner aligner, String sentence, String[] words)
+	{
+		int[] expected = oldAlign(sentence, words);
+		int[] got = aligner.align(words);
+		check(what + ": \"" + sentence + "\" " + Arrays.toString(words) +
+			" expected " + Arrays.toString(expected) +
+			" got " + Arrays.toString(got),
+			Arrays.equals(expected, got));
+	}
+
+	private static String[] words(Random rand, int n)
+	{
+		String[] words = new String[n];
+		for (int i = 0; i < n; i++)
+			words[i] = VOCABULARY[rand.nextInt(VOCABULARY.length)];
+		return words;
+	}
+
+	public static void main(String[] args)
+	{
+		TestTokenAligner t = new TestTokenAligner();
+
+		String s = "The cat saw the other cat.";
+		String[] w = {"LEFT-WALL", "the", "cat", "saw", "the", "other", "cat", ".", "RIGHT-WALL"};
+		t.compare("repeated words", new TokenAligner(s), s, w);
+
+		s = "Dogs bark.";
+		w = new String[] {"LEFT-WALL", "dogs", "barked", "bark", ".", "barked", "RIGHT-WALL"};
+		t.compare("words not found", new TokenAligner(s), s, w);
+
+		s = "It is, it is.";
+		w = new String[] {"LEFT-WALL", "it", "", "is", null, ",", "it", "is", "", "."};
+		t.compare("empty words", new TokenAligner(s), s, w);
+
+		s = "a b a";
+		w = new String[] {"a", "b", "zz", null, "a", "a", "", "b"};
+		t.compare("empty word after a miss", new TokenAligner(s), s, w);
+
+		t.compare("null sentence", new TokenAligner(null), "", new String[] {"a", "", null});
+
+		Random rand = new Random(20131019L);
+		for (int i = 0; i < 50000; i++)
+		{
+			StringBuilder sb = new StringBuilder();
+			int n = rand.nextInt(12);
+			for (int j = 0; j < n; j++)
+			{
+				String word = VOCABULARY[rand.nextInt(VOCABULARY.length)];
+				if (word != null) sb.append(word);
+				if (rand.nextBoolean()) sb.append(' ');
+			}
+			String sentence = sb.toString();
+
+			// Several linkages of the one sentence, each aligned twice.
+			TokenAligner aligner = new TokenAligner(sentence);
+			for (int k = 0; k < 3; k++)
+			{
+				String[] words = words(rand, rand.nextInt(9));
+				t.compare("random", aligner, sentence, words);
+				t.compare("random, again", aligner, sentence, words.clone());
+			}
+		}
+
+		System.err.println("Token aligner test: " + t.pass + " passed, " + t.fail + " failed");
+		if (t.fail != 0)
+			System.exit(1);
+		System.err.println("Token aligner test passed OK");
+	}
+}
@@ -0,0 +1,192 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package relex.test;
+
+import java.util.HashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import relex.ParsedSentence;
+import relex.feature.FeatureNode;
+import relex.feature.LinkView;
+import relex.feature.LinkableView;
+import relex.morphy.Morphed;
+import relex.morphy.Morphy;
+
+/**
+ * A handful of sentences, with their linkages written out by hand, so
+ * that the algs and the relex2logic rules can be tested without a
+ * link-grammar parser or a wordnet install.
+ *
+ * Each sentence is given as three strings: the text; the words, with
+ * their link-grammar subscripts; and the links, as "label left-label
+ * right-label left-word right-word", separated by semicolons.
+ */
+public class SampleSentences
+{
+	public static final String[][] SENTENCES = {
+		{"John threw the ball.",
+		 "LEFT-WALL John threw.v-d the ball.n .",
+		 "Xp Xp Xp 0 5;WV WV WV 0 2;Wd Wd Wd 0 1;Ss Ss*s Ss 1 2;" +
+		 "Os Os Os 2 4;Ds**c Ds Ds 3 4"},
+		{"Mary gave the dog a bone in the park.",
+		 "LEFT-WALL Mary gave.v-d the dog.n a bone.n in the park.n .",
+		 "Xp Xp Xp 0 10;WV WV WV 0 2;Wd Wd Wd 0 1;Ss Ss*s Ss 1 2;" +
+		 "Ox Ox Ox 2 4;Os Os Os 2 6;Ds**c Ds Ds 3 4;Ds**c Ds Ds 5 6;" +
+		 "MVp MVp MVp 2 7;Js Js Js 7 9;Ds**c Ds Ds 8 9"},
+		{"The big cat is not sleeping on the red mat.",
+		 "LEFT-WALL the big.a cat.n is.v not.e sleeping.v on the red.a mat.n .",
+		 "Xp Xp Xp 0 11;WV WV WV 0 4;Wd Wd Wd 0 3;Ds**c Ds Ds 1 3;" +
+		 "A A A 2 3;Ss Ss*s Ss 3 4;N N N 4 5;Pg*b Pg Pg 4 6;" +
+		 "MVp MVp MVp 6 7;Js Js Js 7 10;Ds**c Ds Ds 8 10;A A A 9 10"},
+		{"Alice and Bob quickly ate apples.",
+		 "LEFT-WALL Alice and.j-n Bob quickly.e ate.v-d apples.n .",
+		 "Xp Xp Xp 0 7;WV WV WV 0 5;Wd Wd Wd 0 2;SJls SJl SJl 1 2;" +
+		 "SJr SJr SJr 2 3;Sp Sp Sp 2 5;E E E 4 5;Op Op Op 5 6"},
+		{"She said that he wanted to see the tall men.",
+		 "LEFT-WALL she said.v-d that.j-c he wanted.v-d to.r see.v the tall.a men.n .",
+		 "Xp Xp Xp 0 11;WV WV WV 0 2;Wd Wd Wd 0 1;Ss Ss Ss 1 2;" +
+		 "Ce Ce Ce 3 4;TH TH TH 2 3;Ss Ss Ss 4 5;TO TO TO 5 6;" +
+		 "I I I 6 7;Op Op Op 7 10;Dmc Dmc Dmc 8 10;A A A 9 10"},
+		{"The cake was eaten by John.",
+		 "LEFT-WALL the cake.n was.v-d eaten.v by John .",
+		 "Xp Xp Xp 0 7;WV WV WV 0 3;Wd Wd Wd 0 2;Ds**c Ds Ds 1 2;" +
+		 "Ss Ss*s Ss 2 3;Pv Pv Pv 3 4;MVp MVp MVp 4 5;Js Js Js 5 6"},
+		{"John's dog has big teeth.",
+		 "LEFT-WALL John 's.p dog.n has.v big.a teeth.n .",
+		 "Xp Xp Xp 0 7;WV WV WV 0 4;Wd Wd Wd 0 3;YS YS YS 1 2;" +
+		 "D*u D D 2 3;Ss Ss*s Ss 3 4;Op Op Op 4 6;A A A 5 6"},
+	};
+
+	private static final HashMap<String,String> VERBS = new HashMap<String,String>();
+	static
+	{
+		String[] v = {"threw", "throw", "gave", "give", "is", "be",
+		              "was", "be", "eaten", "eat", "has", "have",
+		              "sleeping", "sleep", "ate", "eat", "said", "say",
+		              "wanted", "want"};
+		for (int i = 0; i < v.length; i += 2)
+			VERBS.put(v[i], v[i+1]);
+	}
+
+	/**
+	 * Just enough of a morphology for the sample sentences.
+	 */
+	public static class SampleMorphy implements Morphy
+	{
+		public void initialize()
+		{
+		}
+
+		public Morphed morph(String word)
+		{
+			Morphed m = new Morphed(word);
+			String w = word.toLowerCase();
+			m.putRoot(VERB_F, VERBS.containsKey(w) ? VERBS.get(w) : w);
+			if (w.equals("men"))
+				m.putRoot(NOUN_F, "man");
+			else if (w.equals("teeth"))
+				m.putRoot(NOUN_F, "tooth");
+			else if (w.endsWith("s") && w.length() > 3)
+				m.putRoot(NOUN_F, w.substring(0, w.length() - 1));
+			else
+				m.putRoot(NOUN_F, w);
+			m.putRoot(ADJ_F, w);
+			m.putRoot(ADV_F, w);
+			return m;
+		}
+	}
+
+	/**
+	 * Builds the parse of one of the SENTENCES, as the link-grammar
+	 * parser would hand it to the algs.
+	 */
+	public static ParsedSentence build(String[] spec)
+	{
+		ParsedSentence sent = new ParsedSentence(spec[0]);
+		String lower = spec[0].toLowerCase();
+		String[] words = spec[1].split(" ");
+		FeatureNode wall = null;
+		FeatureNode last = null;
+		int start = 0;
+		for (int i = 0; i < words.length; i++)
+		{
+			FeatureNode fn = new FeatureNode();
+			if (wall == null) wall = fn;
+			LinkableView.setWordAndPos(fn, words[i]);
+			fn.set("this", fn);
+			fn.set("wall", wall);
+			if (last != null)
+			{
+				LinkableView.setNext(last, fn);
+				LinkableView.setPrev(fn, last);
+			}
+			if (Character.isUpperCase(words[i].charAt(0)))
+				LinkableView.setEntityFlag(fn);
+			sent.addWord(fn);
+
+			String tok = words[i];
+			if (tok.length() > 1 && tok.indexOf('.') > 0)
+				tok = tok.substring(0, tok.indexOf('.'));
+			int sc = lower.indexOf(tok.toLowerCase(), start);
+			int ec = (sc < 0) ? -1 : sc + tok.length();
+			LinkableView.setCharIndices(fn, sc, ec, i);
+			start = Math.max(start, ec);
+			last = fn;
+		}
+
+		FeatureNode meta = new FeatureNode();
+		meta.set("num_skipped_words", new FeatureNode("0"));
+		meta.set("disjunct_cost", new FeatureNode("0.0"));
+		meta.set("link_cost", new FeatureNode("10.0"));
+		meta.set("num_violations", new FeatureNode("0"));
+		sent.setMetaData(meta);
+
+		for (String link : spec[2].split(";"))
+		{
+			String[] l = link.split(" ");
+			LinkView.setLinkFeatures(new FeatureNode(), l[0], l[1], l[2],
+				sent.getWordAsNode(Integer.parseInt(l[3])),
+				sent.getWordAsNode(Integer.parseInt(l[4])));
+		}
+		return sent;
+	}
+
+	private static final Pattern UUID = Pattern.compile(
+		"[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+
+	/**
+	 * Replaces the random UUIDs in the output by ID0, ID1 ... in order
+	 * of appearance, so that the output of two runs may be compared.
+	 */
+	public static String normalize(String output)
+	{
+		HashMap<String,String> ids = new HashMap<String,String>();
+		Matcher m = UUID.matcher(output);
+		StringBuffer sb = new StringBuffer();
+		while (m.find())
+		{
+			String id = ids.get(m.group());
+			if (id == null)
+			{
+				id = "ID" + ids.size();
+				ids.put(m.group(), id);
+			}
+			m.appendReplacement(sb, id);
+		}
+		m.appendTail(sb);
+		return sb.toString();
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package relex.test;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+
+import relex.ParsedSentence;
+import relex.Sentence;
+import relex.algs.SentenceAlgorithmApplier;
+import relex.concurrent.RelexContext;
+import relex.output.LogicView;
+
+/**
+ * Runs the relex2logic rules over the SampleSentences, and compares
+ * the output, sentence by sentence, with the output recorded in the
+ * expected file.  The rules are applied twice to each sentence, by the
+ * same LogicView, as the rule processor is re-used across sentences.
+ *
+ * With the argument -print, the output is printed instead, in the
+ * format of the expected file; use this to regenerate the file after
+ * a deliberate change to the rules.
+ */
+public class TestRelex2Logic
+{
+	public static final String EXPECTED_PROPERTY = "relex.test.r2lexpected";
+	public static final String DEFAULT_EXPECTED =
+		"./src/java_test/relex/test/relex2logic-expected.txt";
+
+	private static final String SEPARATOR = "== ";
+
+	private SentenceAlgorithmApplier applier;
+	private RelexContext context;
+	private LogicView logic;
+
+	public TestRelex2Logic()
+	{
+		applier = new SentenceAlgorithmApplier();
+		context = new RelexContext(null, new SampleSentences.SampleMorphy());
+		logic = new LogicView();
+		logic.loadRules();
+	}
+
+	public String output(String[] spec)
+	{
+		ParsedSentence parse = SampleSentences.build(spec);
+		ArrayList<ParsedSentence> parses = new ArrayList<ParsedSentence>();
+		parses.add(parse);
+		new Sentence(spec[0], parses);
+		applier.applyAlgs(parse, context);
+		applier.extractStanford(parse, context);
+		applier.pennTag(parse, context);
+		return SampleSentences.normalize(logic.printRelationsNew(parse));
+	}
+
+	/**
+	 * Reads the expected file: each sentence on a line of its own,
+	 * after the separator, followed by its output.
+	 */
+	private static ArrayList<String[]> readExpected(String filename)
+		throws IOException
+	{
+		ArrayList<String[]> expected = new ArrayList<String[]>();
+		BufferedReader in = new BufferedReader(new InputStreamReader(
+			new FileInputStream(filename), "UTF-8"));
+		try
+		{
+			String sent = null;
+			StringBuilder out = new StringBuilder();
+			String line;
+			while ((line = in.readLine()) != null)
+			{
+				if (line.startsWith(SEPARATOR))
+				{
+					if (sent != null)
+						expected.add(new String[] {sent, out.toString()});
+					sent = line.substring(SEPARATOR.length());
+					out.setLength(0);
+				}
+				else
+				{
+					out.append(line).append("\n");
+				}
+			}
+			if (sent != null)
+				expected.add(new String[] {sent, out.toString()});
+		}
+		finally
+		{
+			in.close();
+		}
+		return expected;
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		TestRelex2Logic t = new TestRelex2Logic();
+
+		if (args.length > 0 && args[0].equals("-print"))
+		{
+			for (String[] spec : SampleSentences.SENTENCES)
+			{
+				System.out.println(SEPARATOR + spec[0]);
+				System.out.println(t.output(spec).trim());
+			}
+			return;
+		}
+
+		String filename = System.getProperty(EXPECTED_PROPERTY, DEFAULT_EXPECTED);
+		ArrayList<String[]> expected = readExpected(filename);
+		if (expected.size() != SampleSentences.SENTENCES.length)
+		{
+			System.err.println("Error: " + filename + " has " + expected.size() +
+				" sentences, expected " + SampleSentences.SENTENCES.length);
+			System.exit(1);
+		}
+
+		int pass = 0;
+		int fail = 0;
+		for (int round = 0; round < 2; round++)
+		{
+			for (int i = 0; i < expected.size(); i++)
+			{
+				String[] spec = SampleSentences.SENTENCES[i];
+				String[] exp = expected.get(i);
+				String got = t.output(spec);
+				if (exp[0].equals(spec[0]) && exp[1].trim().equals(got.trim()))
+				{
+					pass++;
+					continue;
+				}
+				fail++;
+				System.err.println("Error: relex2logic output differs for sentence: " + spec[0]);
+				System.err.println("Expected:\n" + exp[1]);
+				System.err.println("Got:\n" + got);
+			}
+		}
+
+		System.err.println("Relex2logic test: " + pass + " passed, " + fail + " failed");
+		if (fail != 0)
+			System.exit(1);
+		System.err.println("Relex2logic test passed OK");
+	}
+}
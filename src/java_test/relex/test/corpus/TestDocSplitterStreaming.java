@@ -0,0 +1,418 @@
+package relex.test.corpus;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import opennlp.tools.sentdetect.SentenceDetectorME;
+import opennlp.tools.sentdetect.SentenceModel;
+import opennlp.tools.util.Span;
+
+import relex.corpus.DocSplitter;
+import relex.corpus.DocSplitterOpenNLP15Impl;
+import relex.corpus.TextInterval;
+
+/**
+ * Checks the OpenNLP splitter against the way it used to work: the
+ * detector run over all of the text, and, in FIFO mode, over all of
+ * the buffered text on every call.
+ *
+ * The documents are made up of random sentences, wrapped over several
+ * lines, with "Mr." and "Ms." in them, paragraphs that end without
+ * punctuation, and sentences longer than the window that the FIFO mode
+ * gives the detector.  They are fed in one go, line by line, and in
+ * small random pieces.
+ */
+@SuppressWarnings("UseOfSystemOutOrSystemErr")
+public class TestDocSplitterStreaming
+{
+	private static final String[] WORDS = {
+		"the", "cat", "sat", "on", "a", "mat", "and", "then", "it", "went",
+		"home", "with", "Mr. Smith", "Ms. Jones", "Dr. Brown", "St. Louis",
+		"over", "river", "in", "green", "Alice", "Bob", "e.g. apples",
+		"version 2.5", "said", "nothing", "U.S.", "about", "it", "all"
+	};
+	private static final String[] ENDS = {".", ".", ".", "?", "!", "\"."};
+
+	private SentenceDetectorME reference;
+	private Random rand;
+	private int pass = 0;
+	private int fail = 0;
+
+	public TestDocSplitterStreaming(SentenceModel model, long seed)
+	{
+		reference = new SentenceDetectorME(model);
+		rand = new Random(seed);
+	}
+
+	private void check(String what, boolean ok)
+	{
+		if (ok)
+		{
+			pass++;
+			return;
+		}
+		fail++;
+		System.err.println("Error: " + what);
+	}
+
+	private void checkSame(String what, List<?> expected, List<?> got)
+	{
+		if (expected.equals(got))
+		{
+			pass++;
+			return;
+		}
+		fail++;
+		int i = 0;
+		while (i < expected.size() && i < got.size() && expected.get(i).equals(got.get(i)))
+			i++;
+		System.err.println("Error: " + what + ": " + expected.size() + " vs " +
+			got.size() + " sentences, first difference at " + i + ":\n" +
+			(i < expected.size() ? expected.get(i) : "(none)") + "\nvs\n" +
+			(i < got.size() ? got.get(i) : "(none)"));
+	}
+
+	/* --------------------------------------------------------------- */
+
+	private String sentence(int words)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < words; i++)
+		{
+			String w = WORDS[rand.nextInt(WORDS.length)];
+			if (i == 0) w = Character.toUpperCase(w.charAt(0)) + w.substring(1);
+			if (0 < i) sb.append(' ');
+			sb.append(w);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * A document of the given number of paragraphs, with its lines
+	 * wrapped at about 70 chars.  One in every fragmentOdds paragraphs
+	 * ends without a full stop, or with a title, so that its last
+	 * sentence runs on into the next paragraph.
+	 */
+	public String document(int paragraphs, int fragmentOdds)
+	{
+		StringBuilder doc = new StringBuilder();
+		for (int p = 0; p < paragraphs; p++)
+		{
+			StringBuilder para = new StringBuilder();
+			int n = 1 + rand.nextInt(8);
+			for (int s = 0; s < n; s++)
+			{
+				int words = 3 + rand.nextInt(15);
+				if (rand.nextInt(40) == 0) words = 600 + rand.nextInt(600);
+				if (0 < s) para.append(' ');
+				para.append(sentence(words));
+				if (s < n - 1 || rand.nextInt(fragmentOdds) != 0)
+					para.append(ENDS[rand.nextInt(ENDS.length)]);
+				else if (rand.nextBoolean())
+					para.append(" Mr.");
+			}
+
+			int col = 0;
+			for (int i = 0; i < para.length(); i++)
+			{
+				char c = para.charAt(i);
+				if (c == ' ' && 70 < col)
+				{
+					doc.append('\n');
+					col = 0;
+					continue;
+				}
+				doc.append(c);
+				col++;
+			}
+			doc.append(rand.nextInt(4) == 0 ? "\n \n" : "\n\n");
+		}
+		return doc.toString();
+	}
+
+	/** The text cut after each newline. */
+	private static List<String> lines(String text)
+	{
+		List<String> pieces = new ArrayList<String>();
+		int from = 0;
+		for (int nl = text.indexOf('\n'); 0 <= nl; nl = text.indexOf('\n', from))
+		{
+			pieces.add(text.substring(from, nl + 1));
+			from = nl + 1;
+		}
+		if (from < text.length()) pieces.add(text.substring(from));
+		return pieces;
+	}
+
+	/** The text cut into random pieces of up to max chars. */
+	private List<String> pieces(String text, int max)
+	{
+		List<String> pieces = new ArrayList<String>();
+		int from = 0;
+		while (from < text.length())
+		{
+			int to = Math.min(text.length(), from + 1 + rand.nextInt(max));
+			pieces.add(text.substring(from, to));
+			from = to;
+		}
+		return pieces;
+	}
+
+	/* --------------------------------------------------------------- */
+	// The splitter as it was, with the detector run over all of the text.
+
+	private static boolean acceptableBreak(String s, int start, int end)
+	{
+		String[] unacceptable = {"Ms.", "Mr."};
+		for (String endString : unacceptable)
+		{
+			int len = endString.length();
+			if (end >= start + len &&
+			    s.substring(end - len, end).equals(endString) &&
+			    (end == start + len || Character.isWhitespace(s.charAt(end - len - 1))))
+				return false;
+		}
+		char e = s.charAt(end - 1);
+		return e == '.' || e == '?' || e == '!';
+	}
+
+	/**
+	 * Returns the interval of the sentence that runs from start to
+	 * end, trimmed, or null if there is none, or it does not end in an
+	 * acceptable break.
+	 */
+	private static TextInterval trimmed(String text, int start, int end)
+	{
+		String s = text.substring(start, end).trim();
+		if (s.length() == 0) return null;
+		int ts = text.indexOf(s.charAt(0), start);
+		int te = ts + s.length();
+		if (!acceptableBreak(text, ts, te)) return null;
+		return new TextInterval(ts, te);
+	}
+
+	public List<TextInterval> referenceProcess(String text)
+	{
+		List<TextInterval> out = new ArrayList<TextInterval>();
+		int start = 0;
+		for (Span span : reference.sentPosDetect(text))
+		{
+			TextInterval ti = trimmed(text, start, span.getEnd());
+			if (ti == null) continue;
+			out.add(ti);
+			start = span.getEnd();
+		}
+		return out;
+	}
+
+	public List<String> referenceStream(List<String> pieces)
+	{
+		List<String> out = new ArrayList<String>();
+		String buffer = "";
+		for (String piece : pieces)
+		{
+			buffer += piece;
+			while (true)
+			{
+				TextInterval ti = null;
+				for (Span span : reference.sentPosDetect(buffer))
+				{
+					ti = trimmed(buffer, 0, span.getEnd());
+					if (ti != null) break;
+				}
+				if (ti == null) break;
+				out.add(buffer.substring(ti.getStart(), ti.getEnd()));
+				buffer = buffer.substring(ti.getEnd());
+			}
+		}
+		if (buffer.trim().length() != 0) out.add("REMAINDER: " + buffer.trim());
+		return out;
+	}
+
+	/* --------------------------------------------------------------- */
+
+	public static List<String> stream(DocSplitter ds, List<String> pieces)
+	{
+		List<String> out = new ArrayList<String>();
+		ds.clearBuffer();
+		for (String piece : pieces)
+		{
+			ds.addText(piece);
+			String s;
+			while ((s = ds.getNextSentence()) != null)
+				out.add(s);
+		}
+		String rest = ds.getRemainder();
+		if (rest != null && rest.trim().length() != 0)
+			out.add("REMAINDER: " + rest.trim());
+		return out;
+	}
+
+	private static List<String> strings(String text, List<TextInterval> intervals)
+	{
+		List<String> out = new ArrayList<String>();
+		for (TextInterval ti : intervals)
+			out.add(text.substring(ti.getStart(), ti.getEnd()));
+		return out;
+	}
+
+	/** No sentence may end with a title, such as "Mr." */
+	private void checkTitles(String what, List<String> sentences)
+	{
+		for (String s : sentences)
+		{
+			if (s.startsWith("REMAINDER: ")) continue;
+			check(what + " broke after a title: " + s,
+				!s.equals("Mr.") && !s.equals("Ms.") &&
+				!s.endsWith(" Mr.") && !s.endsWith(" Ms.") &&
+				!s.endsWith("\nMr.") && !s.endsWith("\nMs."));
+		}
+	}
+
+	public void checkDocument(DocSplitterOpenNLP15Impl ds, String name, String doc)
+	{
+		List<TextInterval> expected = referenceProcess(doc);
+		List<TextInterval> got = ds.process(doc);
+		checkSame(name + ": process()", expected, got);
+		List<String> sentences = strings(doc, expected);
+		checkSame(name + ": split()", sentences, ds.split(doc));
+		checkTitles(name, ds.split(doc));
+
+		List<String> whole = new ArrayList<String>();
+		whole.add(doc);
+		List<String> oneShot = stream(ds, whole);
+		checkSame(name + ": one-shot FIFO", referenceStream(whole), oneShot);
+		List<String> oneShotSentences = new ArrayList<String>(oneShot);
+		if (!oneShotSentences.isEmpty() &&
+		    oneShotSentences.get(oneShotSentences.size() - 1).startsWith("REMAINDER: "))
+			oneShotSentences.remove(oneShotSentences.size() - 1);
+		checkSame(name + ": one-shot FIFO vs split()", sentences, oneShotSentences);
+
+		List<String> byLine = lines(doc);
+		List<String> lineSentences = stream(ds, byLine);
+		checkSame(name + ": line-by-line FIFO", referenceStream(byLine), lineSentences);
+		checkTitles(name + " line by line", lineSentences);
+
+		List<String> bits = pieces(doc, 40);
+		checkSame(name + ": FIFO in small pieces", referenceStream(bits), stream(ds, bits));
+	}
+
+	/**
+	 * Splitting on several threads must give the same intervals as
+	 * splitting on one, whatever the number of threads, and so where
+	 * the text is cut.
+	 */
+	public void checkParallel(DocSplitterOpenNLP15Impl ds, String name, String doc)
+	{
+		List<TextInterval> serial = new ArrayList<TextInterval>(ds.process(doc));
+		checkSame(name + ": serial process()", referenceProcess(doc), serial);
+		List<String> sentences = new ArrayList<String>(ds.split(doc));
+		for (int n = 2; n <= 16; n *= 2)
+		{
+			checkSame(name + ": process() on " + n + " threads", serial, ds.process(doc, n));
+			checkSame(name + ": split() on " + n + " threads", sentences, ds.split(doc, n));
+		}
+		checkSame(name + ": process() on 3 threads", serial, ds.process(doc, 3));
+	}
+
+	/**
+	 * Several splitters, each on a thread of its own, must not get in
+	 * each other's way.
+	 */
+	public void checkConcurrent(final String doc, int nThreads)
+	{
+		final List<TextInterval> serial =
+			new ArrayList<TextInterval>(new DocSplitterOpenNLP15Impl().process(doc));
+		final List<List<TextInterval>> results = new ArrayList<List<TextInterval>>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < nThreads; i++)
+		{
+			Thread th = new Thread()
+			{
+				public void run()
+				{
+					DocSplitterOpenNLP15Impl ds = new DocSplitterOpenNLP15Impl();
+					for (int k = 0; k < 3; k++)
+					{
+						List<TextInterval> got = ds.process(doc);
+						synchronized (results)
+						{
+							results.add(got);
+						}
+					}
+				}
+			};
+			threads.add(th);
+			th.start();
+		}
+		try
+		{
+			for (Thread th : threads)
+				th.join();
+		}
+		catch (InterruptedException e)
+		{
+			throw new RuntimeException("Error: interrupted", e);
+		}
+		check("got " + results.size() + " results from " + nThreads + " threads",
+			results.size() == 3 * nThreads);
+		for (List<TextInterval> got : results)
+			checkSame("splitter on its own thread", serial, got);
+	}
+
+	/* --------------------------------------------------------------- */
+
+	public static void main(String[] args)
+	{
+		DocSplitterOpenNLP15Impl ds = new DocSplitterOpenNLP15Impl();
+		if (!ds.operational())
+		{
+			System.err.println("Warning: no OpenNLP sentence model; " +
+				"only the fallback splitter was tested");
+			System.out.println("Doc splitter streaming test passed OK");
+			return;
+		}
+
+		SentenceModel model;
+		try
+		{
+			String filename = System.getProperty("EnglishModelFilename");
+			if (filename == null || filename.length() == 0)
+				filename = "data/opennlp/models-1.5/en-sent.bin";
+			InputStream in = new FileInputStream(filename);
+			model = new SentenceModel(in);
+			in.close();
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException("Error: can't load the sentence model", e);
+		}
+		TestDocSplitterStreaming t = new TestDocSplitterStreaming(model, 20131018L);
+
+		t.checkDocument(ds, "titles",
+			"Mr. Smith went to Washington.  Ms. Jones stayed\nhome with Mr.\n" +
+			"Brown.  Then Mr. Smith came back. Mr.\n\nJones said nothing.");
+		for (int i = 0; i < 20; i++)
+			t.checkDocument(ds, "document " + i, t.document(5 + 10 * i, 6));
+
+		// Big enough to be cut into several pieces; in the second, most
+		// paragraphs run on into the next, so that sentences cross the
+		// cuts; the third has a paragraph longer than a piece.
+		t.checkParallel(ds, "big document", t.document(1500, 6));
+		t.checkParallel(ds, "run-on paragraphs", t.document(1500, 1));
+		t.checkParallel(ds, "long paragraph",
+			t.document(200, 6) + t.document(1, 6).replace("\n\n", " ") +
+			t.document(1200, 6).replace("\n\n", "\n").replace("\n \n", "\n") +
+			"\n\n" + t.document(300, 3));
+		t.checkConcurrent(t.document(200, 6), 4);
+
+		System.err.println("Doc splitter streaming test: " + t.pass + " passed, " + t.fail + " failed");
+		if (t.fail != 0)
+			System.exit(1);
+		System.out.println("Doc splitter streaming test passed OK");
+	}
+}